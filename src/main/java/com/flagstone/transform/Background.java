@@ -88,7 +88,7 @@ public final class Background implements MovieTag {
             length = coder.readInt();
         }
         coder.mark();
-        color = new Color(coder, context);
+        color = context.intern(new Color(coder, context));
         coder.check(length);
         coder.unmark();
     }
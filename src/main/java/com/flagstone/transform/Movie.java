@@ -40,10 +40,14 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -51,6 +55,7 @@ import com.flagstone.transform.coder.Coder;
 import com.flagstone.transform.coder.Context;
 import com.flagstone.transform.coder.Copyable;
 import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.Interner;
 import com.flagstone.transform.coder.SWFDecoder;
 import com.flagstone.transform.coder.SWFEncoder;
 import com.flagstone.transform.coder.SWFFactory;
@@ -98,6 +103,8 @@ public final class Movie implements Copyable<Movie> {
     private static final String FORMAT = "Movie: { objects=%s}";
     /** The registry for the different types of decoder. */
     private transient DecoderRegistry registry;
+    /** The Interner used to share values when decoding. */
+    private transient Interner interner;
     /** The character encoding used for strings. */
     private transient CharacterEncoding encoding;
     /** The list of objects that make up the movie. */
@@ -121,6 +128,7 @@ public final class Movie implements Copyable<Movie> {
         if (movie.registry != null) {
             registry = movie.registry.copy();
         }
+        interner = movie.interner;
         encoding = movie.encoding;
 
         objects = new ArrayList<MovieTag>(movie.objects.size());
@@ -141,6 +149,18 @@ public final class Movie implements Copyable<Movie> {
         registry = decoderRegistry;
     }
 
+    /**
+     * Sets the Interner used to share immutable values such as colours and
+     * transforms between the objects decoded from a movie, for example a
+     * ValueCache. If set to null (the default) each decoded object holds its
+     * own values.
+     *
+     * @param valueInterner the Interner used when decoding a movie.
+     */
+    public void setInterner(final Interner valueInterner) {
+        interner = valueInterner;
+    }
+
     /**
      * Sets the encoding scheme for strings encoded and decoded from Flash
      * files.
@@ -259,6 +279,7 @@ public final class Movie implements Copyable<Movie> {
         try {
             final Context context = new Context();
             context.setRegistry(registry);
+            context.setInterner(interner);
             context.setEncoding(encoding.getEncoding());
 
             final byte[] signature = new byte[SIGNATURE_LENGTH];
@@ -358,37 +379,10 @@ public final class Movie implements Copyable<Movie> {
 
         try {
             final MovieHeader header = (MovieHeader) objects.get(0);
-
             final Context context = new Context();
-            context.setEncoding(encoding.getEncoding());
-            context.put(Context.VERSION, header.getVersion());
+            final int length = prepareToEncode(header, context);
 
-            // length of signature, version, length and end
-            // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
-            int length = 10;
-            int frameCount = 0;
-
-            for (final MovieTag tag : objects) {
-                length += tag.prepareToEncode(context);
-
-                if (tag instanceof ShowFrame) {
-                    frameCount++;
-                }
-            }
-
-            header.setFrameCount(frameCount);
-
-            if (header.isCompressed()) {
-                stream.write(CWS);
-            } else {
-                stream.write(FWS);
-            }
-
-            stream.write(header.getVersion());
-            stream.write(length);
-            stream.write(length >>> Coder.ALIGN_BYTE1);
-            stream.write(length >>> Coder.ALIGN_BYTE2);
-            stream.write(length >>> Coder.ALIGN_BYTE3);
+            stream.write(encodeSignature(header, length));
 
             if (header.isCompressed()) {
                 streamOut = new DeflaterOutputStream(stream);
@@ -410,4 +404,123 @@ public final class Movie implements Copyable<Movie> {
             }
         }
     }
+
+    /**
+     * Encodes the list of objects and writes the data to a channel. For
+     * uncompressed movies the large blocks of data for images, sounds, video
+     * and scripts are written directly to the channel using gathering writes
+     * rather than being copied to an intermediate buffer. Compressed movies
+     * are encoded to a stream created for the channel. The channel is not
+     * closed.
+     *
+     * @param channel
+     *            the channel that the movie will be encoded to.
+     * @throws IOException
+     *             - if an I/O error occurs while encoding the file.
+     * @throws DataFormatException
+     *             if an error occurs when compressing the flash file.
+     */
+    public void encodeToChannel(final WritableByteChannel channel)
+            throws DataFormatException, IOException {
+
+        final MovieHeader header = (MovieHeader) objects.get(0);
+        final Context context = new Context();
+        final int length = prepareToEncode(header, context);
+        final ByteBuffer signature = ByteBuffer.wrap(
+                encodeSignature(header, length));
+
+        while (signature.hasRemaining()) {
+            channel.write(signature);
+        }
+
+        if (header.isCompressed()) {
+            final Deflater deflater = new Deflater();
+            try {
+                final DeflaterOutputStream streamOut =
+                    new DeflaterOutputStream(
+                            Channels.newOutputStream(channel), deflater);
+                encodeObjects(new SWFEncoder(streamOut), context);
+                streamOut.finish();
+                streamOut.flush();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            encodeObjects(new SWFEncoder(channel), context);
+        }
+    }
+
+    /**
+     * Encode the objects in the movie, followed by the end of movie marker.
+     *
+     * @param coder the encoder used to write the objects.
+     * @param context the Context used to pass information between objects.
+     * @throws IOException if an I/O error occurs while encoding the objects.
+     */
+    private void encodeObjects(final SWFEncoder coder, final Context context)
+            throws IOException {
+        coder.setEncoding(encoding);
+
+        for (final MovieTag tag : objects) {
+            tag.encode(coder, context);
+        }
+        coder.writeShort(0);
+        coder.flush();
+    }
+
+    /**
+     * Prepare the objects in the movie for encoding.
+     *
+     * @param header the MovieHeader which is updated with the number of
+     * frames in the movie.
+     * @param context the Context used to pass information between objects.
+     * @return the length of the encoded movie in bytes.
+     */
+    private int prepareToEncode(final MovieHeader header,
+            final Context context) {
+        context.setEncoding(encoding.getEncoding());
+        context.put(Context.VERSION, header.getVersion());
+
+        // length of signature, version, length and end
+        // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
+        int length = 10;
+        int frameCount = 0;
+
+        for (final MovieTag tag : objects) {
+            length += tag.prepareToEncode(context);
+
+            if (tag instanceof ShowFrame) {
+                frameCount++;
+            }
+        }
+
+        header.setFrameCount(frameCount);
+        return length;
+    }
+
+    /**
+     * Encode the signature, version and length fields that start the file.
+     *
+     * @param header the MovieHeader for the movie.
+     * @param length the length of the encoded movie in bytes.
+     * @return the encoded fields.
+     */
+    private byte[] encodeSignature(final MovieHeader header,
+            final int length) {
+        final byte[] bytes = new byte[HEADER_LENGTH];
+
+        if (header.isCompressed()) {
+            System.arraycopy(CWS, 0, bytes, 0, SIGNATURE_LENGTH);
+        } else {
+            System.arraycopy(FWS, 0, bytes, 0, SIGNATURE_LENGTH);
+        }
+        // CHECKSTYLE:OFF
+        bytes[3] = (byte) header.getVersion();
+        bytes[4] = (byte) length;
+        bytes[5] = (byte) (length >>> Coder.ALIGN_BYTE1);
+        bytes[6] = (byte) (length >>> Coder.ALIGN_BYTE2);
+        bytes[7] = (byte) (length >>> Coder.ALIGN_BYTE3);
+        // CHECKSTYLE:ON
+        return bytes;
+    }
 }
@@ -80,7 +80,7 @@ public final class MovieHeader implements MovieTag {
             throws IOException {
         version = context.get(Context.VERSION);
         compressed = context.get(Context.COMPRESSED) == 1;
-        frameSize = new Bounds(coder);
+        frameSize = context.intern(new Bounds(coder));
         frameRate = coder.readUnsignedShort();
         frameCount = coder.readUnsignedShort();
     }
@@ -107,9 +107,10 @@ public final class Place implements MovieTag {
         coder.mark();
         identifier = coder.readUnsignedShort();
         layer = coder.readUnsignedShort();
-        transform = new CoordTransform(coder);
+        transform = context.intern(new CoordTransform(coder));
         if (coder.bytesRead() < length) {
-            colorTransform = new ColorTransform(coder, context);
+            colorTransform = context.intern(
+                    new ColorTransform(coder, context));
         }
         coder.check(length);
         coder.unmark();
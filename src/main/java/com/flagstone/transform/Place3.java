@@ -242,11 +242,12 @@ public final class Place3 implements MovieTag {
         }
 
         if (hasTransform) {
-            transform = new CoordTransform(coder);
+            transform = context.intern(new CoordTransform(coder));
         }
 
         if (hasColorTransform) {
-            colorTransform = new ColorTransform(coder, context);
+            colorTransform = context.intern(
+                    new ColorTransform(coder, context));
         }
 
         if (hasRatio) {
@@ -33,13 +33,14 @@ package com.flagstone.transform.action;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.flagstone.transform.coder.Coder;
-import com.flagstone.transform.coder.CoderException;
 import com.flagstone.transform.coder.Context;
 import com.flagstone.transform.coder.SWFDecoder;
 import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
 
 /**
  * Push is used to push values on the Flash Player's internal stack.
@@ -202,8 +203,49 @@ public final class Push implements Action {
     /** Length of encoded indices for Tables with more than 255 entries. */
     private static final int LENGTH_LTINDEX = 3;
 
-    /** The list of values that will be pushed onto the Flash Player's stack. */
-    private final transient List<Object> values;
+    /** The type of value used by each encoded type. */
+    private static final Type[] TYPES = {Type.STRING, Type.PROPERTY,
+        Type.NULL, Type.VOID, Type.REGISTER, Type.BOOLEAN, Type.DOUBLE,
+        Type.INTEGER, Type.TABLE_INDEX, Type.TABLE_INDEX};
+
+    /** The initial number of values allocated when decoding. */
+    private static final int INITIAL_SIZE = 4;
+
+    /**
+     * The types of value that can be pushed onto the stack.
+     */
+    public enum Type {
+        /** A String. */
+        STRING,
+        /** A movie clip or Flash Player property. */
+        PROPERTY,
+        /** A null value. */
+        NULL,
+        /** A void value. */
+        VOID,
+        /** The number of one of the Flash Player's internal registers. */
+        REGISTER,
+        /** A boolean value. */
+        BOOLEAN,
+        /** A double-precision floating-point number. */
+        DOUBLE,
+        /** A signed 32-bit integer. */
+        INTEGER,
+        /** An index into a table of strings. */
+        TABLE_INDEX;
+    }
+
+    /** The encoded type of each value. */
+    private transient byte[] types;
+    /**
+     * The values for each type except Strings, Null and Void. Doubles are
+     * stored as the bits used to encode them.
+     */
+    private transient long[] numbers;
+    /** The String values. */
+    private transient String[] strings;
+    /** The number of values that will be pushed onto the stack. */
+    private transient int count;
 
     /** The length of the action, minus the header, when it is encoded. */
     private transient int length;
@@ -227,68 +269,71 @@ public final class Push implements Action {
                 throws IOException {
 
         length = coder.readUnsignedShort();
-        values = new ArrayList<Object>();
+        allocate(Math.min(length, INITIAL_SIZE));
 
         int valuesLength = length;
 
         while (valuesLength > 0) {
             final int dataType = coder.readByte();
 
+            if (count == types.length) {
+                allocate(count * 2);
+            }
+
             switch (dataType) {
             case TYPE_STRING:
                 final String str = coder.readString();
-                values.add(str);
+                strings[count] = str;
                 valuesLength -= 1 + context.strlen(str);
                 break;
             case TYPE_PROPERTY:
                 if (context.get(Context.VERSION) < Property.VERSION_WITH_INTS) {
-                    values.add(new Property(
-                            (int) Float.intBitsToFloat(coder.readInt())));
+                    numbers[count] =
+                        (int) Float.intBitsToFloat(coder.readInt());
                 } else {
-                    values.add(new Property(coder.readInt()));
+                    numbers[count] = coder.readInt();
                 }
-                 valuesLength -= LENGTH_PROPERTY;
+                valuesLength -= LENGTH_PROPERTY;
                 break;
             case TYPE_NULL:
-                values.add(Null.getInstance());
                 valuesLength -= LENGTH_NULL;
                 break;
             case TYPE_VOID:
-                values.add(Void.getInstance());
                 valuesLength -= LENGTH_VOID;
                 break;
             case TYPE_REGISTER:
-                values.add(new RegisterIndex(coder.readByte()));
+                numbers[count] = coder.readByte();
                 valuesLength -= LENGTH_RINDEX;
                 break;
             case TYPE_BOOLEAN:
-                values.add(coder.readByte() != 0);
+                numbers[count] = coder.readByte() == 0 ? 0 : 1;
                 valuesLength -= LENGTH_BOOLEAN;
                 break;
             case TYPE_DOUBLE:
                 long longValue = (long) coder.readInt() << WORD_ALIGN;
                 longValue |= coder.readInt() & MASK_32;
-                values.add(Double.longBitsToDouble(longValue));
+                numbers[count] = longValue;
                 valuesLength -= LENGTH_DOUBLE;
                 break;
             case TYPE_INTEGER:
-                values.add(coder.readInt());
+                numbers[count] = coder.readInt();
                 valuesLength -= LENGTH_INTEGER;
                 break;
             case TYPE_TINDEX:
-                values.add(new TableIndex(coder.readByte()));
+                numbers[count] = coder.readByte();
                 valuesLength -= LENGTH_TINDEX;
                 break;
             case TYPE_LARGE_TINDEX:
-                values.add(new TableIndex(coder.readUnsignedShort()));
+                numbers[count] = coder.readUnsignedShort();
                 valuesLength -= LENGTH_LTINDEX;
                 break;
             default:
-                break;
+                continue;
             }
+            types[count++] = (byte) dataType;
         }
-    }
-
+    }
+
     /**
      * Creates a Push action that will push the values in the list onto the
      * stack.
@@ -296,13 +341,17 @@ public final class Push implements Action {
      * @param list
      *            a list of values to be pushed onto the stack. The values must
      *            be one of the following classes: Boolean, Integer, Double,
-     *            String, RegisterIndex or TableIndex. Must not be null.
+     *            String, Property, Null, Void, RegisterIndex or TableIndex.
+     *            Must not be null.
      */
     public Push(final List<Object> list) {
         if (list == null) {
             throw new IllegalArgumentException();
         }
-        values = new ArrayList<Object>(list);
+        allocate(list.size());
+        for (final Object obj : list) {
+            append(obj);
+        }
     }
 
     /**
@@ -311,12 +360,233 @@ public final class Push implements Action {
      *
      * @param object
      *            a Push action from which the values will be
-     *            copied. References to immutable objects will be shared.
+     *            copied.
      */
     public Push(final Push object) {
-        values = new ArrayList<Object>(object.values);
-    }
-
+        count = object.count;
+        types = Arrays.copyOf(object.types, count);
+        numbers = Arrays.copyOf(object.numbers, count);
+        strings = Arrays.copyOf(object.strings, count);
+    }
+
+    /**
+     * Resize the arrays used to store the values.
+     *
+     * @param size the number of values that can be stored.
+     */
+    private void allocate(final int size) {
+        if (types == null) {
+            types = new byte[size];
+            numbers = new long[size];
+            strings = new String[size];
+        } else {
+            types = Arrays.copyOf(types, size);
+            numbers = Arrays.copyOf(numbers, size);
+            strings = Arrays.copyOf(strings, size);
+        }
+    }
+
+    /**
+     * Add a value to the end of the list of values.
+     *
+     * @param obj the value.
+     */
+    // CHECKSTYLE IGNORE CyclomaticComplexityCheck FOR NEXT 1 LINES
+    private void append(final Object obj) {
+        if (obj instanceof String) {
+            types[count] = TYPE_STRING;
+            strings[count] = (String) obj;
+        } else if (obj instanceof Integer) {
+            types[count] = TYPE_INTEGER;
+            numbers[count] = (Integer) obj;
+        } else if (obj instanceof Double) {
+            types[count] = TYPE_DOUBLE;
+            numbers[count] = Double.doubleToLongBits((Double) obj);
+        } else if (obj instanceof Boolean) {
+            types[count] = TYPE_BOOLEAN;
+            numbers[count] = ((Boolean) obj) ? 1 : 0;
+        } else if (obj instanceof TableIndex) {
+            types[count] = TYPE_TINDEX;
+            numbers[count] = ((TableIndex) obj).getIndex();
+        } else if (obj instanceof RegisterIndex) {
+            types[count] = TYPE_REGISTER;
+            numbers[count] = ((RegisterIndex) obj).getNumber();
+        } else if (obj instanceof Property) {
+            types[count] = TYPE_PROPERTY;
+            numbers[count] = ((Property) obj).getValue();
+        } else if (obj instanceof Null) {
+            types[count] = TYPE_NULL;
+        } else if (obj instanceof Void) {
+            types[count] = TYPE_VOID;
+        } else {
+            throw new IllegalArgumentException("Unsupported type: "
+                    + (obj == null ? null : obj.getClass().getName()));
+        }
+        count++;
+    }
+
+    /**
+     * Get the number of values that will be pushed onto the stack.
+     *
+     * @return the number of values.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the type of a value.
+     *
+     * @param index the position of the value in the list.
+     * @return the type of the value.
+     */
+    public Type getType(final int index) {
+        checkIndex(index);
+        return TYPES[types[index]];
+    }
+
+    /**
+     * Get a String value.
+     *
+     * @param index the position of the value in the list.
+     * @return the String.
+     */
+    public String getString(final int index) {
+        checkType(index, Type.STRING);
+        return strings[index];
+    }
+
+    /**
+     * Get an Integer value.
+     *
+     * @param index the position of the value in the list.
+     * @return the integer.
+     */
+    public int getInteger(final int index) {
+        checkType(index, Type.INTEGER);
+        return (int) numbers[index];
+    }
+
+    /**
+     * Get a Double value.
+     *
+     * @param index the position of the value in the list.
+     * @return the double.
+     */
+    public double getDouble(final int index) {
+        checkType(index, Type.DOUBLE);
+        return Double.longBitsToDouble(numbers[index]);
+    }
+
+    /**
+     * Get a Boolean value.
+     *
+     * @param index the position of the value in the list.
+     * @return the boolean.
+     */
+    public boolean getBoolean(final int index) {
+        checkType(index, Type.BOOLEAN);
+        return numbers[index] != 0;
+    }
+
+    /**
+     * Get the number of the register for a RegisterIndex value.
+     *
+     * @param index the position of the value in the list.
+     * @return the register number.
+     */
+    public int getRegister(final int index) {
+        checkType(index, Type.REGISTER);
+        return (int) numbers[index];
+    }
+
+    /**
+     * Get the index into the table of strings for a TableIndex value.
+     *
+     * @param index the position of the value in the list.
+     * @return the index into the table.
+     */
+    public int getTableIndex(final int index) {
+        checkType(index, Type.TABLE_INDEX);
+        return (int) numbers[index];
+    }
+
+    /**
+     * Get the value that identifies a Property.
+     *
+     * @param index the position of the value in the list.
+     * @return the value of the property.
+     */
+    public int getProperty(final int index) {
+        checkType(index, Type.PROPERTY);
+        return (int) numbers[index];
+    }
+
+    /**
+     * Get a value as an object.
+     *
+     * @param index the position of the value in the list.
+     * @return the value, using the classes supported when the Push is created.
+     */
+    public Object getValue(final int index) {
+        checkIndex(index);
+
+        final Object value;
+
+        switch (types[index]) {
+        case TYPE_STRING:
+            value = strings[index];
+            break;
+        case TYPE_PROPERTY:
+            value = new Property((int) numbers[index]);
+            break;
+        case TYPE_NULL:
+            value = Null.getInstance();
+            break;
+        case TYPE_VOID:
+            value = Void.getInstance();
+            break;
+        case TYPE_REGISTER:
+            value = new RegisterIndex((int) numbers[index]);
+            break;
+        case TYPE_BOOLEAN:
+            value = numbers[index] != 0;
+            break;
+        case TYPE_DOUBLE:
+            value = Double.longBitsToDouble(numbers[index]);
+            break;
+        case TYPE_INTEGER:
+            value = (int) numbers[index];
+            break;
+        default:
+            value = new TableIndex((int) numbers[index]);
+            break;
+        }
+        return value;
+    }
+
+    /**
+     * Check the position of a value is in range.
+     *
+     * @param index the position of the value in the list.
+     */
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentRangeException(0, count - 1, index);
+        }
+    }
+
+    /**
+     * Check the type of a value.
+     *
+     * @param index the position of the value in the list.
+     * @param type the expected type.
+     */
+    private void checkType(final int index, final Type type) {
+        if (getType(index) != type) {
+            throw new IllegalArgumentException("Value is not a " + type);
+        }
+    }
 
     /**
      * Get the list of values that will be pushed onto the Flash Player's
@@ -325,103 +595,124 @@ public final class Push implements Action {
      * @return a copy of the list of values.
      */
     public List<Object> getValues() {
-        return new ArrayList<Object>(values);
+        final List<Object> list = new ArrayList<Object>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(getValue(i));
+        }
+        return list;
     }
 
     /** {@inheritDoc} */
     public Push copy() {
-        return this;
+        return new Push(this);
     }
 
     /** {@inheritDoc} */
     @Override
     public String toString() {
-        return String.format(FORMAT, values);
+        return String.format(FORMAT, getValues());
     }
 
-    /** {@inheritDoc} */
+    /** {@inheritDoc} */
     public int prepareToEncode(final Context context) {
 
         length = 0;
 
-        for (final Object obj : values) {
-            if (obj instanceof Boolean) {
-                length += LENGTH_BOOLEAN;
-            } else if (obj instanceof Property) {
+        for (int i = 0; i < count; i++) {
+            switch (types[i]) {
+            case TYPE_STRING:
+                length += 1 + context.strlen(strings[i]);
+                break;
+            case TYPE_PROPERTY:
                 length += LENGTH_PROPERTY;
-            } else if (obj instanceof Integer) {
-                length += LENGTH_INTEGER;
-            } else if (obj instanceof Double) {
-                length += LENGTH_DOUBLE;
-            } else if (obj instanceof String) {
-                length += 1 + context.strlen(obj.toString());
-            } else if (obj instanceof Null) {
+                break;
+            case TYPE_NULL:
                 length += LENGTH_NULL;
-            } else if (obj instanceof Void) {
+                break;
+            case TYPE_VOID:
                 length += LENGTH_VOID;
-            } else if (obj instanceof TableIndex) {
-                if (((TableIndex) obj).getIndex() <= LAST_REGISTER) {
+                break;
+            case TYPE_REGISTER:
+                length += LENGTH_RINDEX;
+                break;
+            case TYPE_BOOLEAN:
+                length += LENGTH_BOOLEAN;
+                break;
+            case TYPE_DOUBLE:
+                length += LENGTH_DOUBLE;
+                break;
+            case TYPE_INTEGER:
+                length += LENGTH_INTEGER;
+                break;
+            default:
+                if (numbers[i] <= LAST_REGISTER) {
                     length += LENGTH_TINDEX;
                 } else {
                     length += LENGTH_LTINDEX;
                 }
-            } else if (obj instanceof RegisterIndex) {
-                length += 2;
+                break;
             }
         }
 
         return Coder.ACTION_HEADER + length;
     }
 
-    /** {@inheritDoc} */
+    /** {@inheritDoc} */
     public void encode(final SWFEncoder coder, final Context context)
             throws IOException {
 
         coder.writeByte(ActionTypes.PUSH);
         coder.writeShort(length);
 
-        for (final Object obj : values) {
-            if (obj instanceof Boolean) {
-                coder.writeByte(TYPE_BOOLEAN);
-                if (((Boolean) obj).booleanValue()) {
-                    coder.writeByte(1);
+        for (int i = 0; i < count; i++) {
+            final long value = numbers[i];
+
+            switch (types[i]) {
+            case TYPE_STRING:
+                coder.writeByte(TYPE_STRING);
+                coder.writeString(strings[i]);
+                break;
+            case TYPE_PROPERTY:
+                coder.writeByte(TYPE_PROPERTY);
+                if (context.get(Context.VERSION)
+                        < Property.VERSION_WITH_INTS) {
+                    coder.writeInt(Float.floatToIntBits((int) value));
                 } else {
-                    coder.writeByte(0);
+                    coder.writeInt((int) value);
                 }
-            } else if (obj instanceof Integer) {
-                coder.writeByte(TYPE_INTEGER);
-                coder.writeInt(((Integer) obj).intValue());
-            } else if (obj instanceof Property) {
-                coder.writeByte(TYPE_PROPERTY);
-                coder.writeInt(((Property) obj).getValue(
-                        context.get(Context.VERSION)));
-            } else if (obj instanceof Double) {
-                coder.writeByte(TYPE_DOUBLE);
-                final long longValue = Double.doubleToLongBits(
-                        ((Double) obj).doubleValue());
-                coder.writeInt((int) (longValue >> BITS_PER_INT));
-                coder.writeInt((int) longValue);
-            } else if (obj instanceof String) {
-                coder.writeByte(TYPE_STRING);
-                coder.writeString(obj.toString());
-            } else if (obj instanceof Null) {
+                break;
+            case TYPE_NULL:
                 coder.writeByte(TYPE_NULL);
-            } else if (obj instanceof Void) {
+                break;
+            case TYPE_VOID:
                 coder.writeByte(TYPE_VOID);
-            } else if (obj instanceof TableIndex) {
-                if (((TableIndex) obj).getIndex() <= LAST_REGISTER) {
+                break;
+            case TYPE_REGISTER:
+                coder.writeByte(TYPE_REGISTER);
+                coder.writeByte((int) value);
+                break;
+            case TYPE_BOOLEAN:
+                coder.writeByte(TYPE_BOOLEAN);
+                coder.writeByte((int) value);
+                break;
+            case TYPE_DOUBLE:
+                coder.writeByte(TYPE_DOUBLE);
+                coder.writeInt((int) (value >> BITS_PER_INT));
+                coder.writeInt((int) value);
+                break;
+            case TYPE_INTEGER:
+                coder.writeByte(TYPE_INTEGER);
+                coder.writeInt((int) value);
+                break;
+            default:
+                if (value <= LAST_REGISTER) {
                     coder.writeByte(TYPE_TINDEX);
-                    coder.writeByte(((TableIndex) obj).getIndex());
+                    coder.writeByte((int) value);
                 } else {
                     coder.writeByte(TYPE_LARGE_TINDEX);
-                    coder.writeShort(((TableIndex) obj).getIndex());
+                    coder.writeShort((int) value);
                 }
-            } else if (obj instanceof RegisterIndex) {
-                coder.writeByte(TYPE_REGISTER);
-                coder.writeByte(((RegisterIndex) obj).getNumber());
-            } else {
-                throw new CoderException(0, "Unsupported type: "
-                        + obj.getClass().getName());
+                break;
             }
         }
     }
@@ -97,7 +97,7 @@ public final class ButtonColorTransform implements MovieTag {
         }
         coder.mark();
         identifier = coder.readUnsignedShort();
-        colorTransform = new ColorTransform(coder, context);
+        colorTransform = context.intern(new ColorTransform(coder, context));
         coder.check(length);
         coder.unmark();
     }
@@ -129,11 +129,12 @@ public final class ButtonShape implements SWFEncodeable, Copyable<ButtonShape> {
 
         identifier = coder.readUnsignedShort();
         layer = coder.readUnsignedShort();
-        transform = new CoordTransform(coder);
+        transform = context.intern(new CoordTransform(coder));
 
         if (context.get(Context.TYPE) != null && context.get(Context.TYPE)
                 == MovieTypes.DEFINE_BUTTON_2) {
-            colorTransform = new ColorTransform(coder, context);
+            colorTransform = context.intern(
+                    new ColorTransform(coder, context));
         }
 
         if (hasFilters) {
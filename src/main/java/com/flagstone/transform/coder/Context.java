@@ -79,6 +79,8 @@ public class Context {
     private String encoding;
     /** The registry containing the objects that perform the decoding. */
     private DecoderRegistry registry;
+    /** The Interner used to share values between decoded objects. */
+    private Interner interner;
     /** A table of variables used to pass information between objects. */
     private final transient Map<Integer, Integer> variables;
 
@@ -152,6 +154,40 @@ public class Context {
         registry = decoderRegistry;
     }
 
+    /**
+     * Get the Interner used to share values between decoded objects.
+     * @return the Interner or null if values are not shared.
+     */
+    public final Interner getInterner() {
+        return interner;
+    }
+
+    /**
+     * Set the Interner used to share values between decoded objects.
+     * @param valueInterner the Interner used to return canonical values. May
+     * be null in which case each decoded object holds its own values.
+     */
+    public final void setInterner(final Interner valueInterner) {
+        interner = valueInterner;
+    }
+
+    /**
+     * Return the canonical instance of a decoded value, if an Interner is
+     * set, otherwise the value is returned unchanged.
+     * @param <T> the type of the value.
+     * @param value a decoded immutable value.
+     * @return a value that is equal to the one decoded.
+     */
+    public final <T> T intern(final T value) {
+        T result;
+        if (interner == null) {
+            result = value;
+        } else {
+            result = interner.intern(value);
+        }
+        return result;
+    }
+
     /**
      * Is a variable set.
      * @param key the name of the variable.
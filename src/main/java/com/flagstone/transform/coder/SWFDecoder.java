@@ -234,6 +234,15 @@ public final class SWFDecoder {
         return delta;
     }
 
+    /**
+     * Get the number of bytes read from the start of the stream.
+     *
+     * @return the current position relative to the start of the stream.
+     */
+    public int getPosition() {
+        return pos + index;
+    }
+
     /**
      * Get the number of bytes read from the last saved position.
      *
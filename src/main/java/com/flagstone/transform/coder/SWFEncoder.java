@@ -33,6 +33,13 @@ package com.flagstone.transform.coder;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 import com.flagstone.transform.CharacterEncoding;
@@ -41,11 +48,26 @@ import com.flagstone.transform.CharacterEncoding;
  * SWFEncoder wraps an OutputStream with a buffer to reduce the amount of
  * memory required to encode a movie and to improve efficiency by writing
  * data to a file or external source in blocks.
- */
+ *
+ * <p>
+ * An SWFEncoder may also be created for a WritableByteChannel. The internal
+ * buffer is then only used for the small, encoded fields of each object.
+ * Large arrays of bytes such as image, sound, video or script data are not
+ * copied into the buffer but are queued and written along with the encoded
+ * fields using a single, gathering write when the buffer is flushed.
+ * </p>
+ */
 @SuppressWarnings("PMD.TooManyMethods")
 public final class SWFEncoder {
     /** The default size, in bytes, for the internal buffer. */
     public static final int BUFFER_SIZE = 4096;
+    /**
+     * The size, in bytes, of arrays that will be written directly to a
+     * channel rather than being copied to the internal buffer.
+     */
+    public static final int GATHER_SIZE = 256;
+    /** The maximum number of buffers queued before a write is performed. */
+    private static final int GATHER_LIMIT = 64;
 
     /** Bit mask applied to bytes when converting to unsigned integers. */
     private static final int BYTE_MASK = 255;
@@ -67,8 +89,14 @@ public final class SWFEncoder {
     private static final int TO_BYTE3 = 24;
 
 
-    /** The underlying input stream. */
+    /** The underlying output stream. */
     private final transient OutputStream stream;
+    /** The underlying channel. */
+    private final transient WritableByteChannel channel;
+    /** Buffers queued for writing to the channel. */
+    private final transient List<ByteBuffer> queue;
+    /** The start of the data in the buffer not yet queued for writing. */
+    private transient int start;
     /** The buffer for data read from the stream. */
     private final transient byte[] buffer;
     /** The index in bytes to the current location in the buffer. */
@@ -91,6 +119,8 @@ public final class SWFEncoder {
      */
     public SWFEncoder(final OutputStream streamOut, final int length) {
         stream = streamOut;
+        channel = null;
+        queue = null;
         buffer = new byte[length];
         encoding = CharacterEncoding.UTF8.getEncoding();
         locations = new Stack<Integer>();
@@ -103,12 +133,36 @@ public final class SWFEncoder {
      * @param streamOut the stream from which data will be written.
      */
     public SWFEncoder(final OutputStream streamOut) {
-        stream = streamOut;
-        buffer = new byte[BUFFER_SIZE];
+        this(streamOut, BUFFER_SIZE);
+    }
+
+    /**
+     * Create a new SWFEncoder for the underlying WritableByteChannel with the
+     * specified buffer size. Arrays of GATHER_SIZE bytes or more are written
+     * directly to the channel rather than being copied to the buffer.
+     *
+     * @param channelOut the channel to which data will be written.
+     * @param length the size in bytes of the buffer.
+     */
+    public SWFEncoder(final WritableByteChannel channelOut, final int length) {
+        stream = null;
+        channel = channelOut;
+        queue = new ArrayList<ByteBuffer>(GATHER_LIMIT);
+        buffer = new byte[length];
         encoding = CharacterEncoding.UTF8.getEncoding();
         locations = new Stack<Integer>();
     }
 
+    /**
+     * Create a new SWFEncoder for the underlying WritableByteChannel using the
+     * default buffer size.
+     *
+     * @param channelOut the channel to which data will be written.
+     */
+    public SWFEncoder(final WritableByteChannel channelOut) {
+        this(channelOut, BUFFER_SIZE);
+    }
+
     /**
      * Sets the character encoding scheme used when encoding or decoding
      * strings.
@@ -168,8 +222,16 @@ public final class SWFEncoder {
      * stream.
      */
     public void flush() throws IOException {
-        stream.write(buffer, 0, index);
-        stream.flush();
+        if (channel == null) {
+            stream.write(buffer, 0, index);
+            stream.flush();
+        } else {
+            if (index > start) {
+                queue.add(ByteBuffer.wrap(buffer, start, index - start));
+            }
+            writeQueue();
+            start = 0;
+        }
 
         int diff;
         if (offset == 0) {
@@ -255,7 +317,10 @@ public final class SWFEncoder {
      * stream.
      */
     public int writeBytes(final byte[] bytes) throws IOException {
-        if (index + bytes.length < buffer.length) {
+        if (channel != null && (bytes.length >= GATHER_SIZE
+                || index + bytes.length >= buffer.length)) {
+            queueBuffer(ByteBuffer.wrap(bytes));
+        } else if (index + bytes.length < buffer.length) {
             System.arraycopy(bytes, 0, buffer, index, bytes.length);
             index += bytes.length;
         } else {
@@ -266,6 +331,123 @@ public final class SWFEncoder {
         return bytes.length;
     }
 
+    /**
+     * Write the remaining bytes in a ByteBuffer. For encoders created for a
+     * channel the buffer is queued and written, without copying, when the
+     * encoder is next flushed so the contents must not be changed until then.
+     * Slices of a MappedByteBuffer can be used to copy data from an existing
+     * file.
+     *
+     * @param bytes
+     *            the buffer to be written.
+     *
+     * @return the number of bytes written.
+     * @throws IOException if there is an error writing data to the underlying
+     * stream or channel.
+     */
+    public int writeBuffer(final ByteBuffer bytes) throws IOException {
+        final int count = bytes.remaining();
+        if (channel == null) {
+            final byte[] data = new byte[count];
+            bytes.duplicate().get(data);
+            writeBytes(data);
+        } else {
+            queueBuffer(bytes.duplicate());
+        }
+        return count;
+    }
+
+    /**
+     * Copy a region of a file directly to the output using
+     * FileChannel.transferTo() so that, for an uncompressed movie, the
+     * data can be copied by the operating system without passing through
+     * the Java heap.
+     *
+     * @param source
+     *            the FileChannel containing the data.
+     * @param position
+     *            the location of the first byte to copy.
+     * @param count
+     *            the number of bytes to copy.
+     *
+     * @return the number of bytes written.
+     * @throws IOException if there is an error reading from the file or
+     * writing data to the underlying stream or channel.
+     */
+    public int transfer(final FileChannel source, final long position,
+            final int count) throws IOException {
+        flush();
+        WritableByteChannel target;
+        if (channel == null) {
+            target = Channels.newChannel(stream);
+        } else {
+            target = channel;
+        }
+        long done = 0;
+        while (done < count) {
+            final long written = source.transferTo(position + done,
+                    count - done, target);
+            if (written <= 0) {
+                throw new IOException("Could not transfer data from file.");
+            }
+            done += written;
+        }
+        pos += count;
+        return count;
+    }
+
+    /**
+     * Add a buffer to the queue of buffers that will be written to the
+     * channel, along with any data encoded in the internal buffer since the
+     * last buffer was queued.
+     *
+     * @param bytes the buffer to be written.
+     * @throws IOException if there is an error writing data to the underlying
+     * channel.
+     */
+    private void queueBuffer(final ByteBuffer bytes) throws IOException {
+        if (index > start) {
+            queue.add(ByteBuffer.wrap(buffer, start, index - start));
+        }
+        queue.add(bytes);
+        pos += bytes.remaining();
+        start = index;
+
+        if (queue.size() >= GATHER_LIMIT) {
+            flush();
+        }
+    }
+
+    /**
+     * Write all the queued buffers to the channel, using a gathering write if
+     * the channel supports it.
+     *
+     * @throws IOException if there is an error writing data to the underlying
+     * channel.
+     */
+    private void writeQueue() throws IOException {
+        if (channel instanceof GatheringByteChannel) {
+            final ByteBuffer[] buffers = queue.toArray(
+                    new ByteBuffer[queue.size()]);
+            final GatheringByteChannel gather = (GatheringByteChannel) channel;
+            int first = 0;
+            while (first < buffers.length) {
+                gather.write(buffers, first, buffers.length - first);
+                while (first < buffers.length
+                        && !buffers[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        } else {
+            for (final ByteBuffer bytes : queue) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+        }
+        queue.clear();
+    }
+
     /**
      * Write a string using the default character set defined in the encoder.
      *
@@ -277,7 +459,7 @@ public final class SWFEncoder {
     public void writeString(final String str) throws IOException {
         try {
             writeBytes(str.getBytes(encoding));
-            buffer[index++] = 0;
+            writeByte(0);
         } catch (final java.io.UnsupportedEncodingException e) {
             throw new AssertionError(e);
         }
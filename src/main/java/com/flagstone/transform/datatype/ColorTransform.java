@@ -125,6 +125,14 @@ public final class ColorTransform implements SWFEncodeable {
      */
     private static final int DEFAULT_ADD = 0;
 
+    /**
+     * The identity transform that leaves colours unchanged. Since
+     * ColorTransform objects are immutable it may be shared freely rather
+     * than creating a new object each time a default transform is required.
+     */
+    public static final ColorTransform IDENTITY =
+            new ColorTransform(1.0f, 1.0f, 1.0f, 1.0f);
+
     /** Multiply term for the red colour channel. */
     private final transient int multiplyRed;
     /** Multiply term for the green colour channel. */
@@ -154,18 +162,6 @@ public final class ColorTransform implements SWFEncodeable {
      */
     private final transient boolean hasAdd;
 
-    /**
-     * Used to store the number of bits required to encode or decode the
-     * transform terms.
-     */
-    private transient int size;
-    /**
-     * Used to optimise decoding and encoding so checking the context to see
-     * whether add and multiply terms for the alpha channel should be read
-     * written is only performed once.
-     */
-    private transient boolean hasAlpha;
-
     /**
      * Creates and initialises a ColorTransform object using values encoded
      * in the Flash binary format.
@@ -184,10 +180,10 @@ public final class ColorTransform implements SWFEncodeable {
     public ColorTransform(final SWFDecoder coder, final Context context)
             throws IOException {
 
-        hasAlpha = context.contains(Context.TRANSPARENT);
+        final boolean hasAlpha = context.contains(Context.TRANSPARENT);
         hasAdd = coder.readBits(1, false) != 0;
         hasMultiply = coder.readBits(1, false) != 0;
-        size = coder.readBits(FIELD_SIZE, false);
+        final int size = coder.readBits(FIELD_SIZE, false);
 
         if (hasMultiply) {
             multiplyRed = coder.readBits(size, true);
@@ -445,8 +441,8 @@ public final class ColorTransform implements SWFEncodeable {
 
         int numberOfBits = 2 + FIELD_SIZE + ROUND_TO_BYTES;
 
-        hasAlpha = context.contains(Context.TRANSPARENT);
-        size = 0;
+        final boolean hasAlpha = context.contains(Context.TRANSPARENT);
+        final int size = fieldSize(hasAlpha);
 
         int numberOfBytes;
 
@@ -456,14 +452,6 @@ public final class ColorTransform implements SWFEncodeable {
             numberOfBytes = Color.RGB;
         }
 
-        if (hasMultiply) {
-            sizeTerms(multiplyRed, multiplyGreen, multiplyBlue, multiplyAlpha);
-        }
-
-        if (hasAdd) {
-            sizeTerms(addRed, addGreen, addBlue, addAlpha);
-        }
-
         if (hasMultiply) {
             numberOfBits += size * numberOfBytes;
         }
@@ -479,39 +467,83 @@ public final class ColorTransform implements SWFEncodeable {
     public void encode(final SWFEncoder coder, final Context context)
             throws IOException {
 
+        final boolean hasAlpha = context.contains(Context.TRANSPARENT);
+        final int size = fieldSize(hasAlpha);
+
         coder.writeBits(hasAdd ? 1 : 0, 1);
         coder.writeBits(hasMultiply ? 1 : 0, 1);
         coder.writeBits(size, FIELD_SIZE);
 
         if (hasMultiply) {
             encodeTerms(multiplyRed, multiplyGreen, multiplyBlue,
-                    multiplyAlpha, coder);
+                    multiplyAlpha, hasAlpha, size, coder);
         }
 
         if (hasAdd) {
-            encodeTerms(addRed, addGreen, addBlue, addAlpha, coder);
+            encodeTerms(addRed, addGreen, addBlue, addAlpha, hasAlpha,
+                    size, coder);
         }
 
         coder.alignToByte();
     }
 
+    /**
+     * Returns true if another ColorTransform has the same terms and is
+     * encoded in the same way, i.e. both contain the same add and multiply
+     * terms.
+     *
+     * @param transform the ColorTransform to compare.
+     * @return true if both objects generate the same encoded data.
+     */
+    boolean isEncodedAs(final ColorTransform transform) {
+        return equals(transform) && hasAdd == transform.hasAdd
+                && hasMultiply == transform.hasMultiply;
+    }
+
+    /**
+     * Calculate the number of bits required to encode the add and multiply
+     * terms. The values are recalculated each time rather than being stored
+     * so a ColorTransform can be shared between objects, movies and threads.
+     *
+     * @param hasAlpha whether the alpha channel is encoded.
+     * @return the number of bits required to encode each term.
+     */
+    private int fieldSize(final boolean hasAlpha) {
+        int size = 0;
+
+        if (hasMultiply) {
+            size = sizeTerms(size, multiplyRed, multiplyGreen, multiplyBlue,
+                    multiplyAlpha, hasAlpha);
+        }
+
+        if (hasAdd) {
+            size = sizeTerms(size, addRed, addGreen, addBlue, addAlpha,
+                    hasAlpha);
+        }
+        return size;
+    }
+
     /**
      * Calculate the number of bits to encode either the add or multiply terms.
      *
+     * @param current the number of bits calculated so far.
      * @param red the term for the red channel.
      * @param green the term for the green channel.
      * @param blue the term for the blue channel.
      * @param alpha the term for the alpha channel.
+     * @param hasAlpha whether the alpha channel is encoded.
+     * @return the number of bits required to encode the terms.
      */
-    private void sizeTerms(final int red, final int green, final int blue,
-            final int alpha) {
-        size = Math.max(size, Coder.size(red));
+    private int sizeTerms(final int current, final int red, final int green,
+            final int blue, final int alpha, final boolean hasAlpha) {
+        int size = Math.max(current, Coder.size(red));
         size = Math.max(size, Coder.size(green));
         size = Math.max(size, Coder.size(blue));
 
         if (hasAlpha) {
             size = Math.max(size, Coder.size(alpha));
         }
+        return size;
     }
 
     /**
@@ -521,13 +553,15 @@ public final class ColorTransform implements SWFEncodeable {
      * @param green the term for the green channel.
      * @param blue the term for the blue channel.
      * @param alpha the term for the alpha channel.
+     * @param hasAlpha whether the alpha channel is encoded.
+     * @param size the number of bits used to encode each term.
      * @param coder the Coder used to encode the data.
-     *
-     * @throws IOException if there is an error writing to the underlying
-     * stream.
+     * @throws IOException if there is an error writing the encoded data.
      */
+    // CHECKSTYLE IGNORE ParameterNumberCheck FOR NEXT 3 LINES
     private void encodeTerms(final int red, final int green, final int blue,
-            final int alpha, final SWFEncoder coder) throws IOException {
+            final int alpha, final boolean hasAlpha, final int size,
+            final SWFEncoder coder) throws IOException {
         coder.writeBits(red, size);
         coder.writeBits(green, size);
         coder.writeBits(blue, size);
@@ -107,6 +107,15 @@ public final class CoordTransform implements SWFEncodeable {
     /** Default value for shearing terms. */
     private static final int DEFAULT_INT_SHEAR = 0;
 
+    /**
+     * The identity transform that leaves coordinates unchanged. Since
+     * CoordTransform objects are immutable it may be shared freely rather than
+     * creating a new object each time a default transform is required.
+     */
+    public static final CoordTransform IDENTITY = new CoordTransform(
+            DEFAULT_SCALE, DEFAULT_SCALE, DEFAULT_SHEAR, DEFAULT_SHEAR,
+            DEFAULT_COORD, DEFAULT_COORD);
+
     /**
      * Create a new coordinate transform by multiplying two matrices together to
      * calculate the product. Since matrix multiplication is not commutative the
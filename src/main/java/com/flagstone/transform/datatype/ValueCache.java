@@ -0,0 +1,191 @@
+/*
+ * ValueCache.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.datatype;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.flagstone.transform.coder.Interner;
+
+/**
+ * ValueCache is used to share the immutable values - Color, Bounds,
+ * CoordTransform and ColorTransform - that are repeated many times in a movie.
+ * Large movies contain thousands of shapes, styles and display list entries
+ * where the same colour or transform is used over and over again. When a
+ * ValueCache is added to the Context used to decode a movie only a single
+ * instance of each distinct value is retained, reducing the memory required
+ * to hold a decoded movie.
+ *
+ * <p>The cache holds a limited number of values. When the limit is reached
+ * the value that was used least recently is discarded. Values of other
+ * types are returned unchanged. A ValueCache may be used for a single
+ * decoding session or shared between movies and threads, see
+ * {@link #getShared()}.</p>
+ *
+ * <p>The cache is initialised with the identity transforms,
+ * {@link CoordTransform#IDENTITY} and {@link ColorTransform#IDENTITY}.</p>
+ */
+public final class ValueCache implements Interner {
+
+    /** The default maximum number of values held in a cache. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "ValueCache: { capacity=%d; size=%d}";
+
+    /** The cache that can be shared between movies. */
+    private static final ValueCache SHARED = new ValueCache(DEFAULT_CAPACITY);
+
+    /**
+     * Get the cache that can be shared between different movies. The
+     * methods of a ValueCache are synchronized so the cache may be used
+     * when decoding movies in different threads.
+     *
+     * @return the shared ValueCache.
+     */
+    public static ValueCache getShared() {
+        return SHARED;
+    }
+
+    /** The maximum number of values held in the cache. */
+    private final transient int capacity;
+    /** The table of canonical values, in access order. */
+    private final transient Map<Object, Object> table;
+
+    /**
+     * Create a ValueCache with the default capacity.
+     */
+    public ValueCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a ValueCache with the specified capacity.
+     *
+     * @param limit the maximum number of values held by the cache. Must be
+     * greater than zero.
+     */
+    public ValueCache(final int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        capacity = limit;
+        table = new LinkedHashMap<Object, Object>(
+                Math.min(limit, DEFAULT_CAPACITY), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Object, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+        addIdentities();
+    }
+
+    /**
+     * Get the maximum number of values held in the cache.
+     *
+     * @return the capacity of the cache.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of values currently held in the cache.
+     *
+     * @return the number of canonical values.
+     */
+    public synchronized int size() {
+        return table.size();
+    }
+
+    /**
+     * Discard all the values held in the cache. The identity transforms are
+     * added again so they remain the canonical instances.
+     */
+    public synchronized void clear() {
+        table.clear();
+        addIdentities();
+    }
+
+    /**
+     * Add the identity transforms to the cache.
+     */
+    private void addIdentities() {
+        table.put(CoordTransform.IDENTITY, CoordTransform.IDENTITY);
+        table.put(ColorTransform.IDENTITY, ColorTransform.IDENTITY);
+    }
+
+    /**
+     * Return the canonical instance of a Color, Bounds, CoordTransform or
+     * ColorTransform. The first value seen becomes the canonical instance
+     * for all the values that are equal to it. Objects of other types, and
+     * null, are returned unchanged.
+     *
+     * ColorTransforms are only shared if they also contain the same add
+     * and multiply terms so the encoded data is not changed.
+     *
+     * @param <T> the type of the value.
+     * @param value the object to intern.
+     * @return a canonical object equal to value.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T intern(final T value) {
+        T result = value;
+
+        if (value instanceof Color || value instanceof Bounds
+                || value instanceof CoordTransform) {
+            final Object cached = table.get(value);
+            if (cached == null) {
+                table.put(value, value);
+            } else {
+                result = (T) cached;
+            }
+        } else if (value instanceof ColorTransform) {
+            final Object cached = table.get(value);
+            if (cached == null) {
+                table.put(value, value);
+            } else if (((ColorTransform) cached).isEncodedAs(
+                    (ColorTransform) value)) {
+                result = (T) cached;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(FORMAT, capacity, table.size());
+    }
+}
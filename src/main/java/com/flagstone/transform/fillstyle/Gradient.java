@@ -104,7 +104,7 @@ public final class Gradient implements SWFEncodeable {
     public Gradient(final SWFDecoder coder, final Context context)
             throws IOException {
         ratio = coder.readByte();
-        color = new Color(coder, context);
+        color = context.intern(new Color(coder, context));
     }
 
     /**
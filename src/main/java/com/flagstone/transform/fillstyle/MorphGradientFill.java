@@ -87,8 +87,8 @@ public final class MorphGradientFill implements FillStyle {
     public MorphGradientFill(final int fillType, final SWFDecoder coder,
             final Context context) throws IOException {
         type = fillType;
-        startTransform = new CoordTransform(coder);
-        endTransform = new CoordTransform(coder);
+        startTransform = context.intern(new CoordTransform(coder));
+        endTransform = context.intern(new CoordTransform(coder));
         count = coder.readByte() & Gradient.MAX_GRADIENTS;
 
         gradients = new ArrayList<MorphGradient>(count);
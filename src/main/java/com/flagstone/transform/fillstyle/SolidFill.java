@@ -68,7 +68,7 @@ public final class SolidFill implements FillStyle {
      */
     public SolidFill(final SWFDecoder coder, final Context context)
             throws IOException {
-        color = new Color(coder, context);
+        color = context.intern(new Color(coder, context));
     }
 
     /**
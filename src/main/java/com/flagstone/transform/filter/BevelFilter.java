@@ -234,8 +234,8 @@ public final class BevelFilter implements Filter {
      */
     public BevelFilter(final SWFDecoder coder, final Context context)
             throws IOException {
-        shadow = new Color(coder, context);
-        highlight = new Color(coder, context);
+        shadow = context.intern(new Color(coder, context));
+        highlight = context.intern(new Color(coder, context));
         blurX = coder.readInt();
         blurY = coder.readInt();
         angle = coder.readInt();
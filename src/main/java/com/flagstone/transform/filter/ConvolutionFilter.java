@@ -207,7 +207,7 @@ public final class ConvolutionFilter implements Filter {
                 matrix[i][j] = Float.intBitsToFloat(coder.readInt());
             }
         }
-        color = new Color(coder, context);
+        color = context.intern(new Color(coder, context));
         final int bits = coder.readByte();
         clamp = (bits & Coder.BIT1) != 0;
         alpha = (bits & Coder.BIT0) != 0;
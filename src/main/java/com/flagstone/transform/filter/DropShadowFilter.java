@@ -217,7 +217,7 @@ public final class DropShadowFilter implements Filter {
      */
     public DropShadowFilter(final SWFDecoder coder, final Context context)
             throws IOException {
-        color = new Color(coder, context);
+        color = context.intern(new Color(coder, context));
         blurX = coder.readInt();
         blurY = coder.readInt();
         angle = coder.readInt();
@@ -197,7 +197,7 @@ public final class DefineFont3 implements DefineTag {
         for (int i = 0; i < glyphCount; i++) {
             shape = new Shape();
             shape.add(new ShapeData(offset[i + 1] - offset[i], coder));
-            shapes.add(shape);
+            shapes.add(context.intern(shape));
         }
 
         if (wideCodes) {
@@ -220,7 +220,7 @@ public final class DefineFont3 implements DefineTag {
             }
 
             for (int i = 0; i < glyphCount; i++) {
-                bounds.add(new Bounds(coder));
+                bounds.add(context.intern(new Bounds(coder)));
             }
 
             final int kerningCount = coder.readUnsignedShort();
@@ -779,7 +779,18 @@ public final class DefineFont3 implements DefineTag {
         final int count = shapes.size();
         int index = 0;
         int tableEntry;
-        int shapeLength;
+
+        table = new int[count + 1];
+
+        int glyphLength = 0;
+
+        // The size of each glyph is needed to decide the size of the offsets.
+        for (final Shape shape : shapes) {
+            table[index] = shape.prepareToEncode(context);
+            glyphLength += table[index++];
+        }
+
+        wideOffsets = ((count + 1) * 2 + glyphLength) > Coder.USHORT_MAX;
 
         if (wideOffsets) {
             tableEntry = (count << 2) + 4;
@@ -787,21 +798,13 @@ public final class DefineFont3 implements DefineTag {
             tableEntry = (count << 1) + 2;
         }
 
-        table = new int[count + 1];
-
-        int glyphLength = 0;
-
-        for (final Shape shape : shapes) {
-            table[index++] = tableEntry;
-            shapeLength = shape.prepareToEncode(context);
-            glyphLength += shapeLength;
+        for (index = 0; index < count; index++) {
+            final int shapeLength = table[index];
+            table[index] = tableEntry;
             tableEntry += shapeLength;
         }
 
-        table[index++] = tableEntry;
-
-        wideOffsets = (shapes.size() * 2 + glyphLength)
-                > Coder.USHORT_MAX;
+        table[index] = tableEntry;
 
         length = 5;
         length += context.strlen(name);
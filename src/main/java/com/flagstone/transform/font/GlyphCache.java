@@ -0,0 +1,308 @@
+/*
+ * GlyphCache.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.font;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.flagstone.transform.coder.Interner;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeData;
+import com.flagstone.transform.shape.ShapeRecord;
+
+/**
+ * GlyphCache is used to share the outlines of glyphs between the fonts
+ * decoded from, or generated for, different movies. When the same few fonts
+ * are embedded in many movies the same glyphs are decoded over and over
+ * again. When a GlyphCache is used as the Interner for a Movie each glyph
+ * decoded from a DefineFont2 or DefineFont3 object is replaced by a single,
+ * shared instance of a Shape with the same encoded outline.
+ *
+ * <p>Glyphs are identified by the contents of their encoded outlines so
+ * glyphs from different fonts, or different copies of the same font, are
+ * shared. Only glyphs that contain a single ShapeData object with the
+ * encoded outline are cached. Since the outline is already encoded the bytes
+ * are copied directly when the font definition is encoded again.</p>
+ *
+ * <p>The cache is bounded by the size of the encoded outlines it holds. When
+ * the limit is reached the glyphs that were used least recently are
+ * discarded. Other values can be passed to another Interner, for example a
+ * ValueCache, so both glyphs and values are shared when decoding a movie.
+ * The methods are synchronized so a cache may be shared between threads,
+ * see {@link #getShared()}. The shapes returned are shared and must be treated
+ * as read-only - use DefineFont2.copy() or DefineFont3.copy() to create
+ * definitions that can be modified.</p>
+ */
+public final class GlyphCache implements Interner {
+
+    /** The default limit, in bytes, on the size of the cached glyphs. */
+    public static final long DEFAULT_CAPACITY = 4L * 1024 * 1024;
+
+    /** The estimated memory, in bytes, used for each entry in the table. */
+    private static final int ENTRY_SIZE = 96;
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "GlyphCache: { capacity=%d; size=%d;"
+            + " glyphs=%d}";
+
+    /** The cache that can be shared between movies. */
+    private static final GlyphCache SHARED = new GlyphCache(DEFAULT_CAPACITY);
+
+    /**
+     * Get the cache that can be shared between different movies. The
+     * methods of a GlyphCache are synchronized so the cache may be used
+     * when decoding movies in different threads.
+     *
+     * @return the shared GlyphCache.
+     */
+    public static GlyphCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Key identifies a glyph by the contents of its encoded outline.
+     */
+    private static final class Key {
+        /** The hash code of the encoded outline. */
+        private final transient int hash;
+        /** The length of the encoded outline. */
+        private final transient int length;
+        /** The encoded outline. */
+        private final transient ShapeData record;
+        /** The encoded bytes, only held while looking up a glyph. */
+        private final transient byte[] bytes;
+
+        /**
+         * Create a Key.
+         * @param data the encoded outline.
+         * @param encoded the bytes of the encoded outline.
+         */
+        Key(final ShapeData data, final byte[] encoded) {
+            hash = Arrays.hashCode(encoded);
+            length = encoded.length;
+            record = data;
+            bytes = encoded;
+        }
+
+        /**
+         * Create the Key stored in the table, which does not hold a separate
+         * copy of the encoded outline.
+         * @param key the Key used to look up the glyph.
+         */
+        Key(final Key key) {
+            hash = key.hash;
+            length = key.length;
+            record = key.record;
+            bytes = null;
+        }
+
+        /**
+         * Get the encoded outline.
+         * @return the bytes of the encoded outline.
+         */
+        private byte[] getBytes() {
+            return bytes == null ? record.getData() : bytes;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            boolean result;
+            Key key;
+
+            if (object == null) {
+                result = false;
+            } else if (object == this) {
+                result = true;
+            } else if (object instanceof Key) {
+                key = (Key) object;
+                result = hash == key.hash && length == key.length
+                        && Arrays.equals(getBytes(), key.getBytes());
+            } else {
+                result = false;
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** The maximum size of the encoded glyphs held in the cache. */
+    private final transient long capacity;
+    /** The Interner used for values other than glyphs. */
+    private final transient Interner values;
+    /** The table of canonical glyphs, in access order. */
+    private final transient Map<Key, Shape> table;
+    /** The memory used by the glyphs currently held. */
+    private transient long size;
+
+    /**
+     * Create a GlyphCache with the default capacity.
+     */
+    public GlyphCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a GlyphCache with the specified capacity.
+     *
+     * @param limit the maximum size, in bytes, of the glyphs held in the
+     * cache. Must be greater than zero.
+     */
+    public GlyphCache(final long limit) {
+        this(limit, null);
+    }
+
+    /**
+     * Create a GlyphCache with the specified capacity that passes all other
+     * values to another Interner.
+     *
+     * @param limit the maximum size, in bytes, of the glyphs held in the
+     * cache. Must be greater than zero.
+     * @param interner the Interner used for values other than glyphs. May
+     * be null in which case other values are returned unchanged.
+     */
+    public GlyphCache(final long limit, final Interner interner) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        capacity = limit;
+        values = interner;
+        table = new LinkedHashMap<Key, Shape>(16, 0.75f, true);
+    }
+
+    /**
+     * Get the maximum size of the glyphs held in the cache.
+     *
+     * @return the capacity of the cache in bytes.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the estimated memory used by the glyphs currently held.
+     *
+     * @return the size of the cached glyphs in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of glyphs currently held in the cache.
+     *
+     * @return the number of canonical glyphs.
+     */
+    public synchronized int size() {
+        return table.size();
+    }
+
+    /**
+     * Discard all the glyphs held in the cache.
+     */
+    public synchronized void clear() {
+        table.clear();
+        size = 0;
+    }
+
+    /**
+     * Return the canonical instance of a glyph. The first glyph seen with a
+     * given outline becomes the canonical instance for all the glyphs with
+     * the same encoded outline. Shapes that do not contain a single ShapeData
+     * object are returned unchanged. Other values are passed to the Interner
+     * specified when the cache was created.
+     *
+     * @param <T> the type of the value.
+     * @param value the object to intern.
+     * @return a canonical object equal to value.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T intern(final T value) {
+        T result;
+
+        if (value instanceof Shape) {
+            result = (T) glyph((Shape) value);
+        } else if (values == null) {
+            result = value;
+        } else {
+            result = values.intern(value);
+        }
+        return result;
+    }
+
+    /**
+     * Return the canonical instance of a glyph.
+     * @param shape the outline of the glyph.
+     * @return a glyph with the same encoded outline.
+     */
+    private Shape glyph(final Shape shape) {
+        final List<ShapeRecord> records = shape.getObjects();
+        Shape result = shape;
+
+        if (records.size() == 1 && records.get(0) instanceof ShapeData) {
+            final ShapeData data = (ShapeData) records.get(0);
+            final byte[] bytes = data.getData();
+            final Key key = new Key(data, bytes);
+
+            synchronized (this) {
+                final Shape cached = table.get(key);
+
+                if (cached != null) {
+                    result = cached;
+                } else if (bytes.length + ENTRY_SIZE <= capacity) {
+                    table.put(new Key(key), shape);
+                    size += bytes.length + ENTRY_SIZE;
+
+                    final Iterator<Key> iter = table.keySet().iterator();
+
+                    while (size > capacity) {
+                        size -= iter.next().length + ENTRY_SIZE;
+                        iter.remove();
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(FORMAT, capacity, size, table.size());
+    }
+}
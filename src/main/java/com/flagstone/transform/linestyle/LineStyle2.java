@@ -149,7 +149,7 @@ public final class LineStyle2 implements LineStyle {
             decoder.getObject(styles, coder, context);
             fillStyle = styles.get(0);
         } else {
-            color = new Color(coder, context);
+            color = context.intern(new Color(coder, context));
         }
     }
 
@@ -158,8 +158,8 @@ public final class DefineMorphShape implements ShapeTag {
 
         identifier = coder.readUnsignedShort();
 
-        bounds = new Bounds(coder);
-        endBounds = new Bounds(coder);
+        bounds = context.intern(new Bounds(coder));
+        endBounds = context.intern(new Bounds(coder));
         fillStyles = new ArrayList<FillStyle>();
         lineStyles = new ArrayList<LineStyle>();
 
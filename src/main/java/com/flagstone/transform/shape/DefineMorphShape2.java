@@ -164,10 +164,10 @@ public final class DefineMorphShape2 implements ShapeTag {
         context.put(Context.ARRAY_EXTENDED, 1);
         context.put(Context.TYPE, MovieTypes.DEFINE_MORPH_SHAPE);
 
-        bounds = new Bounds(coder);
-        endBounds = new Bounds(coder);
-        edgeBounds = new Bounds(coder);
-        endEdgeBounds = new Bounds(coder);
+        bounds = context.intern(new Bounds(coder));
+        endBounds = context.intern(new Bounds(coder));
+        edgeBounds = context.intern(new Bounds(coder));
+        endEdgeBounds = context.intern(new Bounds(coder));
 
         fillStyles = new ArrayList<FillStyle>();
         lineStyles = new ArrayList<LineStyle>();
@@ -114,7 +114,7 @@ public final class DefineShape implements ShapeTag {
         }
         coder.mark();
         identifier = coder.readUnsignedShort();
-        bounds = new Bounds(coder);
+        bounds = context.intern(new Bounds(coder));
 
         fillStyles = new ArrayList<FillStyle>();
         lineStyles = new ArrayList<LineStyle>();
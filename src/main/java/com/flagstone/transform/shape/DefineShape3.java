@@ -110,7 +110,7 @@ public final class DefineShape3 implements ShapeTag {
         context.put(Context.TRANSPARENT, 1);
         context.put(Context.TYPE, MovieTypes.DEFINE_SHAPE_3);
 
-        bounds = new Bounds(coder);
+        bounds = context.intern(new Bounds(coder));
 
         int fillStyleCount = coder.readByte();
 
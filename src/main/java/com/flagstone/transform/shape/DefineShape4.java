@@ -120,8 +120,8 @@ public final class DefineShape4 implements ShapeTag {
         context.put(Context.TRANSPARENT, 1);
         context.put(Context.TYPE, MovieTypes.DEFINE_SHAPE_4);
 
-        bounds = new Bounds(coder);
-        edgeBounds = new Bounds(coder);
+        bounds = context.intern(new Bounds(coder));
+        edgeBounds = context.intern(new Bounds(coder));
 
         // scaling hints are implied by the line styles used
         winding = coder.readByte() & Coder.BIT2;
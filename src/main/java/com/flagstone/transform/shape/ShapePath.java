@@ -0,0 +1,763 @@
+/*
+ * ShapePath.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.shape;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.flagstone.transform.MovieTypes;
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+
+/**
+ * ShapePath is a compact container for the Line, Curve and ShapeStyle records
+ * that describe how a shape is drawn.
+ *
+ * <p>Rather than creating an object for each record the type of each record
+ * is stored in an array of bytes and the coordinates and style indices are
+ * stored in an array of integers. Only ShapeStyle and ShapeStyle2 records
+ * that define new fill and line styles are stored as objects. A ShapePath
+ * is added to a Shape like any other ShapeRecord and is encoded in exactly
+ * the same way as the records it contains.</p>
+ *
+ * <p>Shapes can be decoded directly into ShapePaths by registering a
+ * ShapePathDecoder with the DecoderRegistry used to decode a movie:</p>
+ *
+ * <pre>
+ * DecoderRegistry registry = new DecoderRegistry(DecoderRegistry.getDefault());
+ * registry.setShapeDecoder(new ShapePathDecoder());
+ * movie.setRegistry(registry);
+ * </pre>
+ *
+ * <p>The list returned by getObjects() creates the Line, Curve and ShapeStyle
+ * objects on demand so code that works with the individual records can still
+ * be used. The list cannot be modified.</p>
+ */
+public final class ShapePath implements ShapeRecord {
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "ShapePath: { records=%s}";
+
+    /** Type for a ShapeStyle, the lower 4 bits contain the flags. */
+    private static final int STYLE = 0x00;
+    /** Type for a ShapeStyle2, the lower 4 bits contain the flags. */
+    private static final int STYLE2 = 0x10;
+    /** Type for a straight line. */
+    private static final int LINE = 0x20;
+    /** Type for a quadratic Bezier curve. */
+    private static final int CURVE = 0x21;
+    /** Type for a record stored as an object. */
+    private static final int RECORD = 0x22;
+
+    /** Mask for the flags in a style record. */
+    private static final int FLAGS = 0x0F;
+    /** Flag for a style that defines new fill and line styles. */
+    private static final int HAS_STYLES = Coder.BIT4;
+    /** Flag for a style that selects a line style. */
+    private static final int HAS_LINE = Coder.BIT3;
+    /** Flag for a style that selects an alternate fill style. */
+    private static final int HAS_ALT = Coder.BIT2;
+    /** Flag for a style that selects a fill style. */
+    private static final int HAS_FILL = Coder.BIT1;
+    /** Flag for a style that moves the drawing point. */
+    private static final int HAS_MOVE = Coder.BIT0;
+
+    /** Number of bits in the type and flags fields. */
+    private static final int TYPE_FIELD = 6;
+    /** Number of bits in the size field of a Line or Curve. */
+    private static final int SIZE_FIELD = 4;
+    /** Number of bits in the size field of a move. */
+    private static final int MOVE_FIELD = 5;
+    /** The number of bits in a line: type, size, general line flag. */
+    private static final int LINE_FIELDS = 7;
+    /** The initial capacity of the arrays. */
+    private static final int CAPACITY = 16;
+
+    /** The type of each record. */
+    private transient byte[] types;
+    /** The coordinates and style indices for each record. */
+    private transient int[] values;
+    /** The records stored as objects. */
+    private transient List<ShapeRecord> records;
+    /** The number of records. */
+    private transient int count;
+    /** The number of entries used in values. */
+    private transient int length;
+    /** The index into values for each record, created on demand. */
+    private transient int[] offsets;
+
+    /**
+     * Creates an empty ShapePath.
+     */
+    public ShapePath() {
+        types = new byte[CAPACITY];
+        values = new int[CAPACITY];
+        records = new ArrayList<ShapeRecord>();
+    }
+
+    /**
+     * Creates a ShapePath containing a list of shape records.
+     *
+     * @param list
+     *            the list of Line, Curve, ShapeStyle or ShapeStyle2 objects.
+     *            Must not be null.
+     */
+    public ShapePath(final List<ShapeRecord> list) {
+        this();
+        for (final ShapeRecord record : list) {
+            add(record);
+        }
+    }
+
+    /**
+     * Creates and initialises a ShapePath object using the values copied from
+     * another ShapePath object.
+     *
+     * @param object
+     *            a ShapePath object from which the values will be copied.
+     */
+    public ShapePath(final ShapePath object) {
+        types = Arrays.copyOf(object.types, Math.max(object.count, 1));
+        values = Arrays.copyOf(object.values, Math.max(object.length, 1));
+        records = new ArrayList<ShapeRecord>(object.records.size());
+        for (final ShapeRecord record : object.records) {
+            records.add(record.copy());
+        }
+        count = object.count;
+        length = object.length;
+    }
+
+    /**
+     * Get the number of records in the path.
+     *
+     * @return the number of Line, Curve and ShapeStyle records.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Adds a record to the path. Line and Curve objects and ShapeStyle and
+     * ShapeStyle2 objects that do not define new fill or line styles are
+     * stored as values. All other records are stored as objects.
+     *
+     * @param record
+     *            a Line, Curve, ShapeStyle or ShapeStyle2 object. Must not be
+     *            null.
+     * @return this object.
+     */
+    public ShapePath add(final ShapeRecord record) {
+        if (record == null) {
+            throw new IllegalArgumentException();
+        }
+        if (record instanceof Line) {
+            final Line line = (Line) record;
+            line(line.getX(), line.getY());
+        } else if (record instanceof Curve) {
+            final Curve curve = (Curve) record;
+            curve(curve.getControlX(), curve.getControlY(),
+                    curve.getAnchorX(), curve.getAnchorY());
+        } else if (record instanceof ShapeStyle
+                && ((ShapeStyle) record).getFillStyles().isEmpty()
+                && ((ShapeStyle) record).getLineStyles().isEmpty()) {
+            final ShapeStyle style = (ShapeStyle) record;
+            addStyle(STYLE, style.getMoveX(), style.getMoveY(),
+                    style.getFillStyle(), style.getAltFillStyle(),
+                    style.getLineStyle());
+        } else if (record instanceof ShapeStyle2
+                && ((ShapeStyle2) record).getFillStyles().isEmpty()
+                && ((ShapeStyle2) record).getLineStyles().isEmpty()) {
+            final ShapeStyle2 style = (ShapeStyle2) record;
+            addStyle(STYLE2, style.getMoveX(), style.getMoveY(),
+                    style.getFillStyle(), style.getAltFillStyle(),
+                    style.getLineStyle());
+        } else {
+            addRecord(record);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a straight line to the path.
+     *
+     * @param xCoord
+     *            the distance along the x-axis to the end of the line.
+     * @param yCoord
+     *            the distance along the y-axis to the end of the line.
+     * @return this object.
+     */
+    public ShapePath line(final int xCoord, final int yCoord) {
+        checkCoord(xCoord);
+        checkCoord(yCoord);
+        addType(LINE);
+        addValue(xCoord);
+        addValue(yCoord);
+        return this;
+    }
+
+    /**
+     * Adds a quadratic Bezier curve to the path.
+     *
+     * @param xControl
+     *            the distance along the x-axis to the control point.
+     * @param yControl
+     *            the distance along the y-axis to the control point.
+     * @param xAnchor
+     *            the distance along the x-axis from the control point to the
+     *            anchor point.
+     * @param yAnchor
+     *            the distance along the y-axis from the control point to the
+     *            anchor point.
+     * @return this object.
+     */
+    public ShapePath curve(final int xControl, final int yControl,
+            final int xAnchor, final int yAnchor) {
+        checkCoord(xControl);
+        checkCoord(yControl);
+        checkCoord(xAnchor);
+        checkCoord(yAnchor);
+        addType(CURVE);
+        addValue(xControl);
+        addValue(yControl);
+        addValue(xAnchor);
+        addValue(yAnchor);
+        return this;
+    }
+
+    /**
+     * Adds a move to the path.
+     *
+     * @param xCoord
+     *            the x-coordinate of the new drawing point.
+     * @param yCoord
+     *            the y-coordinate of the new drawing point.
+     * @return this object.
+     */
+    public ShapePath move(final int xCoord, final int yCoord) {
+        checkCoord(xCoord);
+        checkCoord(yCoord);
+        addType(STYLE | HAS_MOVE);
+        addValue(xCoord);
+        addValue(yCoord);
+        return this;
+    }
+
+    /**
+     * Get a list containing the records in the path. The Line, Curve and
+     * ShapeStyle objects are created each time they are accessed so changing
+     * them has no effect on the path. The list cannot be modified.
+     *
+     * @return the records in the path.
+     */
+    public List<ShapeRecord> getObjects() {
+        return new Records();
+    }
+
+    /** {@inheritDoc} */
+    public ShapePath copy() {
+        return new ShapePath(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT, getObjects());
+    }
+
+    /**
+     * Decode a record and add it to the path.
+     *
+     * @param coder
+     *            an SWFDecoder object that contains the encoded Flash data.
+     * @param context
+     *            a Context object used to pass the number of bits used for
+     *            fill and line style indices.
+     * @throws IOException
+     *             if an error occurs while decoding the data.
+     */
+    void decode(final SWFDecoder coder, final Context context)
+            throws IOException {
+
+        final int type = coder.readBits(2, false);
+
+        if (type == Coder.BIT1) {
+            final int size = coder.readBits(SIZE_FIELD, false) + 2;
+            addType(CURVE);
+            addValue(coder.readBits(size, true));
+            addValue(coder.readBits(size, true));
+            addValue(coder.readBits(size, true));
+            addValue(coder.readBits(size, true));
+        } else if (type == (Coder.BIT0 | Coder.BIT1)) {
+            final int size = coder.readBits(SIZE_FIELD, false) + 2;
+            addType(LINE);
+            if (coder.readBits(1, false) == 0) {
+                if (coder.readBits(1, false) == 0) {
+                    addValue(coder.readBits(size, true));
+                    addValue(0);
+                } else {
+                    addValue(0);
+                    addValue(coder.readBits(size, true));
+                }
+            } else {
+                addValue(coder.readBits(size, true));
+                addValue(coder.readBits(size, true));
+            }
+        } else {
+            final int flags = (type << SIZE_FIELD)
+                    + coder.readBits(SIZE_FIELD, false);
+            final int tag = context.get(Context.TYPE);
+            final boolean style2 = tag == MovieTypes.DEFINE_SHAPE_4
+                    || tag == MovieTypes.DEFINE_MORPH_SHAPE_2;
+
+            if ((flags & HAS_STYLES) == 0) {
+                decodeStyle(style2 ? STYLE2 : STYLE, flags, coder, context);
+            } else if (style2) {
+                addRecord(new ShapeStyle2(flags, coder, context));
+            } else {
+                addRecord(new ShapeStyle(flags, coder, context));
+            }
+        }
+    }
+
+    /**
+     * Decode a style record that does not contain new fill or line styles.
+     *
+     * @param base the type used for the record.
+     * @param flags the flags identifying the fields in the record.
+     * @param coder the SWFDecoder containing the encoded record.
+     * @param context the Context containing the sizes of the style indices.
+     * @throws IOException if an error occurs while decoding the data.
+     */
+    private void decodeStyle(final int base, final int flags,
+            final SWFDecoder coder, final Context context)
+            throws IOException {
+        addType(base | flags);
+
+        if ((flags & HAS_MOVE) != 0) {
+            final int size = coder.readBits(MOVE_FIELD, false);
+            addValue(coder.readBits(size, true));
+            addValue(coder.readBits(size, true));
+        }
+        if ((flags & HAS_FILL) != 0) {
+            addValue(coder.readBits(context.get(Context.FILL_SIZE), false));
+        }
+        if ((flags & HAS_ALT) != 0) {
+            addValue(coder.readBits(context.get(Context.FILL_SIZE), false));
+        }
+        if ((flags & HAS_LINE) != 0) {
+            addValue(coder.readBits(context.get(Context.LINE_SIZE), false));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int prepareToEncode(final Context context) {
+        int numberOfBits = 0;
+        int index = 0;
+        int record = 0;
+        int bits;
+
+        for (int i = 0; i < count; i++) {
+            final int type = types[i];
+
+            if (type == LINE) {
+                bits = lineSize(values[index], values[index + 1]);
+                index += 2;
+            } else if (type == CURVE) {
+                // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 3 LINES
+                bits = TYPE_FIELD + (Coder.maxSize(values[index],
+                        values[index + 1], values[index + 2],
+                        values[index + 3], 1) << 2);
+                index += 4;
+            } else if (type == RECORD) {
+                bits = 0;
+                numberOfBits += records.get(record++).prepareToEncode(
+                        context);
+                index++;
+            } else {
+                bits = TYPE_FIELD;
+                if ((type & HAS_MOVE) != 0) {
+                    bits += MOVE_FIELD + (Coder.maxSize(values[index],
+                            values[index + 1]) << 1);
+                    index += 2;
+                }
+                if ((type & HAS_FILL) != 0) {
+                    bits += context.get(Context.FILL_SIZE);
+                    index++;
+                }
+                if ((type & HAS_ALT) != 0) {
+                    bits += context.get(Context.FILL_SIZE);
+                    index++;
+                }
+                if ((type & HAS_LINE) != 0) {
+                    bits += context.get(Context.LINE_SIZE);
+                    index++;
+                }
+            }
+            if (bits > 0) {
+                context.put(Context.SHAPE_SIZE,
+                        context.get(Context.SHAPE_SIZE) + bits);
+                numberOfBits += bits;
+            }
+        }
+        return numberOfBits;
+    }
+
+    /** {@inheritDoc} */
+    public void encode(final SWFEncoder coder, final Context context)
+            throws IOException {
+        int index = 0;
+        int record = 0;
+
+        for (int i = 0; i < count; i++) {
+            final int type = types[i];
+
+            if (type == LINE) {
+                encodeLine(coder, values[index], values[index + 1]);
+                index += 2;
+            } else if (type == CURVE) {
+                // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 9 LINES
+                final int size = Coder.maxSize(values[index],
+                        values[index + 1], values[index + 2],
+                        values[index + 3], 1);
+                coder.writeBits(2, 2);
+                coder.writeBits(size - 2, SIZE_FIELD);
+                coder.writeBits(values[index], size);
+                coder.writeBits(values[index + 1], size);
+                coder.writeBits(values[index + 2], size);
+                coder.writeBits(values[index + 3], size);
+                index += 4;
+            } else if (type == RECORD) {
+                records.get(record++).encode(coder, context);
+                index++;
+            } else {
+                index = encodeStyle(coder, context, type & FLAGS, index);
+            }
+        }
+    }
+
+    /**
+     * Calculate the number of bits used to encode a straight line.
+     *
+     * @param xCoord the distance along the x-axis.
+     * @param yCoord the distance along the y-axis.
+     * @return the number of bits used to encode the line.
+     */
+    private int lineSize(final int xCoord, final int yCoord) {
+        final int size = Coder.maxSize(xCoord, yCoord, 1);
+        int bits = LINE_FIELDS;
+
+        if ((xCoord != 0) && (yCoord != 0)) {
+            bits += size << 1;
+        } else {
+            bits += 1 + size;
+        }
+        return bits;
+    }
+
+    /**
+     * Encode a straight line.
+     *
+     * @param coder the SWFEncoder where the line will be written.
+     * @param xCoord the distance along the x-axis.
+     * @param yCoord the distance along the y-axis.
+     * @throws IOException if an error occurs while encoding the data.
+     */
+    private void encodeLine(final SWFEncoder coder, final int xCoord,
+            final int yCoord) throws IOException {
+        final boolean vertical = xCoord == 0;
+        final boolean general = (xCoord != 0) && (yCoord != 0);
+        final int size = Coder.maxSize(xCoord, yCoord, 1);
+
+        // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
+        coder.writeBits(3, 2);
+        coder.writeBits(size - 2, SIZE_FIELD);
+        coder.writeBits(general ? 1 : 0, 1);
+
+        if (general) {
+            coder.writeBits(xCoord, size);
+            coder.writeBits(yCoord, size);
+        } else {
+            coder.writeBits(vertical ? 1 : 0, 1);
+            coder.writeBits(vertical ? yCoord : xCoord, size);
+        }
+    }
+
+    /**
+     * Encode a style record that does not contain new fill or line styles.
+     *
+     * @param coder the SWFEncoder where the record will be written.
+     * @param context the Context containing the sizes of the style indices.
+     * @param flags the flags identifying the fields in the record.
+     * @param start the index of the first value for the record.
+     * @return the index of the first value for the next record.
+     * @throws IOException if an error occurs while encoding the data.
+     */
+    private int encodeStyle(final SWFEncoder coder, final Context context,
+            final int flags, final int start) throws IOException {
+        int index = start;
+
+        coder.writeBits(flags, TYPE_FIELD);
+
+        if ((flags & HAS_MOVE) != 0) {
+            final int size = Coder.maxSize(values[index], values[index + 1]);
+            coder.writeBits(size, MOVE_FIELD);
+            coder.writeBits(values[index++], size);
+            coder.writeBits(values[index++], size);
+        }
+        if ((flags & HAS_FILL) != 0) {
+            coder.writeBits(values[index++], context.get(Context.FILL_SIZE));
+        }
+        if ((flags & HAS_ALT) != 0) {
+            coder.writeBits(values[index++], context.get(Context.FILL_SIZE));
+        }
+        if ((flags & HAS_LINE) != 0) {
+            coder.writeBits(values[index++], context.get(Context.LINE_SIZE));
+        }
+        return index;
+    }
+
+    /**
+     * Add a style record that does not contain new fill or line styles.
+     *
+     * @param base the type used for the record.
+     * @param moveX the x-coordinate of the move or null.
+     * @param moveY the y-coordinate of the move or null.
+     * @param fill the index of the fill style or null.
+     * @param alt the index of the alternate fill style or null.
+     * @param line the index of the line style or null.
+     */
+    private void addStyle(final int base, final Integer moveX,
+            final Integer moveY, final Integer fill, final Integer alt,
+            final Integer line) {
+        int flags = 0;
+
+        if ((moveX != null) && (moveY != null)) {
+            flags |= HAS_MOVE;
+        }
+        if (fill != null) {
+            flags |= HAS_FILL;
+        }
+        if (alt != null) {
+            flags |= HAS_ALT;
+        }
+        if (line != null) {
+            flags |= HAS_LINE;
+        }
+        addType(base | flags);
+
+        if ((flags & HAS_MOVE) != 0) {
+            addValue(moveX);
+            addValue(moveY);
+        }
+        if (fill != null) {
+            addValue(fill);
+        }
+        if (alt != null) {
+            addValue(alt);
+        }
+        if (line != null) {
+            addValue(line);
+        }
+    }
+
+    /**
+     * Add a record that is stored as an object. The value for the record
+     * contains the index of the object.
+     *
+     * @param record the record.
+     */
+    private void addRecord(final ShapeRecord record) {
+        addType(RECORD);
+        addValue(records.size());
+        records.add(record);
+    }
+
+    /**
+     * Add the type of a record, increasing the size of the array if required.
+     *
+     * @param type the type of record.
+     */
+    private void addType(final int type) {
+        if (count == types.length) {
+            types = Arrays.copyOf(types, count << 1);
+        }
+        types[count++] = (byte) type;
+        offsets = null;
+    }
+
+    /**
+     * Add a value, increasing the size of the array if required.
+     *
+     * @param value the coordinate or style index.
+     */
+    private void addValue(final int value) {
+        if (length == values.length) {
+            values = Arrays.copyOf(values, length << 1);
+        }
+        values[length++] = value;
+    }
+
+    /**
+     * Check that a coordinate is in the range supported by shapes.
+     *
+     * @param coord the coordinate.
+     */
+    private void checkCoord(final int coord) {
+        if ((coord < Shape.MIN_COORD) || (coord > Shape.MAX_COORD)) {
+            throw new IllegalArgumentRangeException(
+                    Shape.MIN_COORD, Shape.MAX_COORD, coord);
+        }
+    }
+
+    /**
+     * Get the index into the values for each record.
+     *
+     * @return an array containing the index of the first value for each
+     * record.
+     */
+    private int[] getOffsets() {
+        if (offsets == null) {
+            offsets = new int[count];
+            int index = 0;
+            for (int i = 0; i < count; i++) {
+                offsets[i] = index;
+                index += valueCount(types[i]);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Get the number of values used by a record.
+     *
+     * @param type the type of record.
+     * @return the number of values used.
+     */
+    private int valueCount(final int type) {
+        final int number;
+
+        if (type == LINE) {
+            number = 2;
+        } else if (type == CURVE) {
+            // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
+            number = 4;
+        } else if (type == RECORD) {
+            number = 1;
+        } else {
+            number = ((type & HAS_MOVE) == 0 ? 0 : 2)
+                    + ((type & HAS_FILL) == 0 ? 0 : 1)
+                    + ((type & HAS_ALT) == 0 ? 0 : 1)
+                    + ((type & HAS_LINE) == 0 ? 0 : 1);
+        }
+        return number;
+    }
+
+    /**
+     * Create the object for a record.
+     *
+     * @param index the position of the record in the path.
+     * @return the record.
+     */
+    private ShapeRecord getRecord(final int index) {
+        final int type = types[index];
+        int value = getOffsets()[index];
+        final ShapeRecord record;
+
+        if (type == LINE) {
+            record = new Line(values[value], values[value + 1]);
+        } else if (type == CURVE) {
+            // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 2 LINES
+            record = new Curve(values[value], values[value + 1],
+                    values[value + 2], values[value + 3]);
+        } else if (type == RECORD) {
+            record = records.get(values[value]);
+        } else {
+            Integer moveX = null;
+            Integer moveY = null;
+            Integer fill = null;
+            Integer alt = null;
+            Integer line = null;
+
+            if ((type & HAS_MOVE) != 0) {
+                moveX = values[value++];
+                moveY = values[value++];
+            }
+            if ((type & HAS_FILL) != 0) {
+                fill = values[value++];
+            }
+            if ((type & HAS_ALT) != 0) {
+                alt = values[value++];
+            }
+            if ((type & HAS_LINE) != 0) {
+                line = values[value];
+            }
+            if ((type & STYLE2) == 0) {
+                record = new ShapeStyle().setMove(moveX, moveY)
+                        .setFillStyle(fill).setAltFillStyle(alt)
+                        .setLineStyle(line);
+            } else {
+                record = new ShapeStyle2().setMove(moveX, moveY)
+                        .setFillStyle(fill).setAltFillStyle(alt)
+                        .setLineStyle(line);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Records is a read-only view of the records in the path.
+     */
+    private final class Records extends AbstractList<ShapeRecord>
+            implements RandomAccess {
+        /** {@inheritDoc} */
+        @Override
+        public ShapeRecord get(final int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return getRecord(index);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
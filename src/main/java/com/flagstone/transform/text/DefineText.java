@@ -112,7 +112,7 @@ public final class DefineText implements StaticTextTag {
         }
         coder.mark();
         identifier = coder.readUnsignedShort();
-        bounds = new Bounds(coder);
+        bounds = context.intern(new Bounds(coder));
 
         /*
          * This code is used to get round a bug in Flash - sometimes 16, 8-bit
@@ -133,7 +133,7 @@ public final class DefineText implements StaticTextTag {
         }
         coder.unmark();
 
-        transform = new CoordTransform(coder);
+        transform = context.intern(new CoordTransform(coder));
 
         glyphBits = coder.readByte();
         advanceBits = coder.readByte();
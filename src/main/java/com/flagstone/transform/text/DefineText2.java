@@ -111,7 +111,7 @@ public final class DefineText2 implements StaticTextTag {
         }
         coder.mark();
         identifier = coder.readUnsignedShort();
-        bounds = new Bounds(coder);
+        bounds = context.intern(new Bounds(coder));
 
         /*
          * This code is used to get round a bug in Flash - sometimes 16, 8-bit
@@ -132,7 +132,7 @@ public final class DefineText2 implements StaticTextTag {
         }
         coder.unmark();
 
-        transform = new CoordTransform(coder);
+        transform = context.intern(new CoordTransform(coder));
 
         glyphBits = coder.readByte();
         advanceBits = coder.readByte();
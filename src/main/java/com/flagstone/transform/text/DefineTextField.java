@@ -300,7 +300,7 @@ public final class DefineTextField implements DefineTag {
         identifier = coder.readUnsignedShort();
         context.put(Context.TRANSPARENT, 1);
 
-        bounds = new Bounds(coder);
+        bounds = context.intern(new Bounds(coder));
 
         int bits = coder.readByte();
         final boolean containsText = (bits & Coder.BIT7) != 0;
@@ -332,7 +332,7 @@ public final class DefineTextField implements DefineTag {
         }
 
         if (containsColor) {
-            color = new Color(coder, context);
+            color = context.intern(new Color(coder, context));
         }
 
         if (containsMaxLength) {
@@ -157,7 +157,7 @@ public final class TextSpan implements SWFEncodeable, Copyable<TextSpan> {
             identifier = coder.readUnsignedShort();
         }
         if (hasColor) {
-            color = new Color(coder, context);
+            color = context.intern(new Color(coder, context));
         }
         if (hasX) {
             offsetX = coder.readSignedShort();
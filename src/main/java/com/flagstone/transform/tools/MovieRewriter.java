@@ -0,0 +1,471 @@
+/*
+ * MovieRewriter.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.flagstone.transform.CharacterEncoding;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.MovieTypes;
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.util.action.ActionRewriter;
+
+/**
+ * MovieRewriter streams a Flash file, rewriting the URLs and strings in the
+ * actions it contains without decoding the rest of the movie.
+ *
+ * <p>Only the objects that contain actions are decoded: DoAction,
+ * InitializeMovieClip, DefineButton, DefineButton2 and Place2 or Place3
+ * objects that define event handlers for movie clips. The objects in
+ * movie clips are scanned in the same way. All other objects, and any
+ * object where the actions were not changed, are copied byte-for-byte. The
+ * ActionRewriter determines how the actions are changed.</p>
+ *
+ * <p>The encoded objects are collected in memory so the length of the file
+ * can be written in the header. Compressed files are decompressed as they
+ * are read and compressed again when written.</p>
+ *
+ * <pre>
+ * ActionRewriter actions = new ActionRewriter();
+ * actions.setUrlMapping(mapping);
+ *
+ * MovieRewriter rewriter = new MovieRewriter(actions);
+ * rewriter.rewrite(new File("in.swf"), new File("out.swf"));
+ * </pre>
+ */
+public final class MovieRewriter {
+
+    /** Length of the signature identifying the file. */
+    private static final int SIGNATURE_LENGTH = 3;
+    /** Length of the signature, version and file length fields. */
+    private static final int HEADER_LENGTH = 8;
+    /** Length of the frame rate and frame count fields. */
+    private static final int RATE_AND_COUNT = 4;
+    /** Number of bits used to encode the size of the frame fields. */
+    private static final int FIELD_SIZE = 5;
+    /** Number of fields in the frame size. */
+    private static final int FIELDS = 4;
+    /** Length of the identifier and frame count in a movie clip. */
+    private static final int CLIP_HEADER = 4;
+    /** Length of a tag header containing the type and a short length. */
+    private static final int SHORT_HEADER = 2;
+    /** Length of a tag header containing the type and a long length. */
+    private static final int LONG_HEADER = 6;
+    /** Bit flag set when a Place2 or Place3 object defines events. */
+    private static final int HAS_EVENTS = 0x80;
+    /** Number of bytes in a 32-bit integer. */
+    private static final int INT_LENGTH = 4;
+    /** Number of bits to shift to read or write the next byte. */
+    private static final int BYTE = 8;
+    /** Mask for the lowest byte in a value. */
+    private static final int MASK = 0xFF;
+
+    /** The rewriter applied to the actions in the movie. */
+    private final transient ActionRewriter rewriter;
+    /** The character encoding used for strings. */
+    private transient CharacterEncoding encoding;
+    /** The number of objects that were changed. */
+    private transient int count;
+
+    /**
+     * Create a MovieRewriter that uses an ActionRewriter to change the
+     * actions in a movie.
+     *
+     * @param actions the ActionRewriter used to change the actions.
+     */
+    public MovieRewriter(final ActionRewriter actions) {
+        rewriter = actions;
+        encoding = CharacterEncoding.UTF8;
+    }
+
+    /**
+     * Set the character encoding used for strings in the movie. The
+     * encoding is also used by the ActionRewriter.
+     *
+     * @param enc the character encoding used for strings.
+     */
+    public void setEncoding(final CharacterEncoding enc) {
+        encoding = enc;
+        rewriter.setEncoding(enc);
+    }
+
+    /**
+     * Get the number of objects that were changed the last time a movie was
+     * rewritten.
+     *
+     * @return the number of objects that contained actions that were
+     * changed.
+     */
+    public int getRewrittenCount() {
+        return count;
+    }
+
+    /**
+     * Rewrite the actions in a Flash file.
+     *
+     * @param source the file containing the movie.
+     * @param dest the file where the rewritten movie will be written.
+     * @throws DataFormatException if the file does not contain Flash data.
+     * @throws IOException if an error occurs reading or writing the files.
+     */
+    public void rewrite(final File source, final File dest)
+            throws DataFormatException, IOException {
+        final InputStream streamIn = new BufferedInputStream(
+                new FileInputStream(source));
+        try {
+            final OutputStream streamOut = new BufferedOutputStream(
+                    new FileOutputStream(dest));
+            try {
+                rewrite(streamIn, streamOut);
+            } finally {
+                streamOut.close();
+            }
+        } finally {
+            streamIn.close();
+        }
+    }
+
+    /**
+     * Rewrite the actions in a movie read from a stream. Neither stream is
+     * closed.
+     *
+     * @param source the stream containing the movie.
+     * @param dest the stream where the rewritten movie will be written.
+     * @throws DataFormatException if the stream does not contain Flash data.
+     * @throws IOException if an error occurs reading or writing the streams.
+     */
+    public void rewrite(final InputStream source, final OutputStream dest)
+            throws DataFormatException, IOException {
+
+        final byte[] header = new byte[HEADER_LENGTH];
+        final DataInputStream stream = new DataInputStream(source);
+        stream.readFully(header);
+
+        final byte[] signature = Arrays.copyOf(header, SIGNATURE_LENGTH);
+        final boolean compressed;
+
+        if (Arrays.equals(Movie.CWS, signature)) {
+            compressed = true;
+        } else if (Arrays.equals(Movie.FWS, signature)) {
+            compressed = false;
+        } else {
+            throw new DataFormatException("Could not read file signature");
+        }
+
+        final DataInputStream streamIn;
+
+        if (compressed) {
+            streamIn = new DataInputStream(new InflaterInputStream(source));
+        } else {
+            streamIn = stream;
+        }
+
+        final Context context = new Context();
+        context.setRegistry(DecoderRegistry.getDefault());
+        context.setEncoding(encoding.getEncoding());
+        context.put(Context.VERSION, header[SIGNATURE_LENGTH] & MASK);
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final int first = streamIn.read();
+
+        if (first < 0) {
+            throw new DataFormatException("Could not read movie header");
+        }
+
+        final int bits = FIELD_SIZE + FIELDS * (first >>> (BYTE - FIELD_SIZE));
+        final byte[] frame = new byte[(bits + BYTE - 1) / BYTE
+                                      + RATE_AND_COUNT];
+        frame[0] = (byte) first;
+        streamIn.readFully(frame, 1, frame.length - 1);
+        body.write(frame);
+
+        count = 0;
+        copyTags(streamIn, body, context);
+
+        final int length = HEADER_LENGTH + body.size();
+
+        for (int i = 0; i < INT_LENGTH; i++) {
+            header[SIGNATURE_LENGTH + 1 + i] = (byte) (length >>> (i * BYTE));
+        }
+        dest.write(header);
+
+        if (compressed) {
+            final DeflaterOutputStream streamOut =
+                new DeflaterOutputStream(dest);
+            body.writeTo(streamOut);
+            streamOut.finish();
+        } else {
+            body.writeTo(dest);
+        }
+        dest.flush();
+    }
+
+    /**
+     * Copy the objects from a movie or movie clip, rewriting the objects
+     * that contain actions. Objects are copied up to and including the
+     * End object that terminates the list.
+     *
+     * @param streamIn the stream containing the encoded objects.
+     * @param streamOut the stream where the objects will be written.
+     * @param context the Context used to decode objects.
+     * @return true if any objects were changed.
+     * @throws IOException if an error occurs reading or writing the objects.
+     */
+    private boolean copyTags(final DataInputStream streamIn,
+            final OutputStream streamOut, final Context context)
+            throws IOException {
+
+        boolean changed = false;
+        int type;
+
+        do {
+            final int value = readShort(streamIn);
+            type = value >>> Coder.LENGTH_FIELD_SIZE;
+            int length = value & Coder.LENGTH_FIELD;
+            final boolean extended = length == Coder.IS_EXTENDED;
+
+            if (extended) {
+                length = readInt(streamIn);
+            }
+
+            final byte[] data = new byte[length];
+            streamIn.readFully(data);
+
+            if (type == MovieTypes.DEFINE_MOVIE_CLIP) {
+                changed |= copyMovieClip(data, extended, streamOut, context);
+            } else if (hasActions(type, data)) {
+                changed |= copyActions(type, data, extended, streamOut,
+                        context);
+            } else {
+                writeHeader(streamOut, type, length, extended);
+                streamOut.write(data);
+            }
+        } while (type != MovieTypes.END);
+
+        return changed;
+    }
+
+    /**
+     * Copy a movie clip, rewriting the objects that contain actions.
+     *
+     * @param data the encoded movie clip, excluding the header.
+     * @param extended true if the header for the movie clip uses the long
+     * form.
+     * @param streamOut the stream where the movie clip will be written.
+     * @param context the Context used to decode objects.
+     * @return true if any objects were changed.
+     * @throws IOException if an error occurs reading or writing the objects.
+     */
+    private boolean copyMovieClip(final byte[] data, final boolean extended,
+            final OutputStream streamOut, final Context context)
+            throws IOException {
+
+        final ByteArrayOutputStream tags = new ByteArrayOutputStream();
+        final boolean changed = copyTags(new DataInputStream(
+                new ByteArrayInputStream(data, CLIP_HEADER,
+                        data.length - CLIP_HEADER)), tags, context);
+
+        if (changed) {
+            final int length = CLIP_HEADER + tags.size();
+            writeHeader(streamOut, MovieTypes.DEFINE_MOVIE_CLIP, length,
+                    extended || length > Coder.HEADER_LIMIT);
+            streamOut.write(data, 0, CLIP_HEADER);
+            tags.writeTo(streamOut);
+        } else {
+            writeHeader(streamOut, MovieTypes.DEFINE_MOVIE_CLIP, data.length,
+                    extended);
+            streamOut.write(data);
+        }
+        return changed;
+    }
+
+    /**
+     * Decode an object containing actions, rewrite them and write the object.
+     * If the actions are not changed then the original data is written.
+     *
+     * @param type the type of object.
+     * @param data the encoded object, excluding the header.
+     * @param extended true if the header uses the long form.
+     * @param streamOut the stream where the object will be written.
+     * @param context the Context used to decode objects.
+     * @return true if the object was changed.
+     * @throws IOException if an error occurs reading or writing the object.
+     */
+    private boolean copyActions(final int type, final byte[] data,
+            final boolean extended, final OutputStream streamOut,
+            final Context context) throws IOException {
+
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream(
+                data.length + LONG_HEADER);
+        writeHeader(encoded, type, data.length, extended);
+        encoded.write(data);
+
+        final SWFDecoder decoder = new SWFDecoder(
+                new ByteArrayInputStream(encoded.toByteArray()),
+                encoded.size());
+        decoder.setEncoding(encoding);
+
+        final List<MovieTag> list = new ArrayList<MovieTag>(1);
+        context.getRegistry().getMovieDecoder().getObject(list, decoder,
+                context);
+        final MovieTag tag = list.get(0);
+        final boolean changed = rewriter.rewrite(tag);
+
+        if (changed) {
+            final Context target = new Context();
+            target.setEncoding(context.getEncoding());
+            target.put(Context.VERSION, context.get(Context.VERSION));
+            tag.prepareToEncode(target);
+
+            final SWFEncoder coder = new SWFEncoder(streamOut);
+            coder.setEncoding(encoding);
+            tag.encode(coder, target);
+            coder.flush();
+            count++;
+        } else {
+            encoded.writeTo(streamOut);
+        }
+        return changed;
+    }
+
+    /**
+     * Does an object contain actions.
+     *
+     * @param type the type of object.
+     * @param data the encoded object, excluding the header.
+     * @return true if the object contains actions.
+     */
+    private boolean hasActions(final int type, final byte[] data) {
+        final boolean actions;
+
+        switch (type) {
+        case MovieTypes.DO_ACTION:
+        case MovieTypes.INITIALIZE:
+        case MovieTypes.DEFINE_BUTTON:
+        case MovieTypes.DEFINE_BUTTON_2:
+            actions = true;
+            break;
+        case MovieTypes.PLACE_2:
+        case MovieTypes.PLACE_3:
+            actions = data.length > 0 && (data[0] & HAS_EVENTS) != 0;
+            break;
+        default:
+            actions = false;
+            break;
+        }
+        return actions;
+    }
+
+    /**
+     * Write the header for an object.
+     *
+     * @param stream the stream where the header will be written.
+     * @param type the type of object.
+     * @param length the length of the encoded object, excluding the header.
+     * @param extended true if the long form of the header is used.
+     * @throws IOException if an error occurs writing the header.
+     */
+    private void writeHeader(final OutputStream stream, final int type,
+            final int length, final boolean extended) throws IOException {
+        if (extended) {
+            writeShort(stream, (type << Coder.LENGTH_FIELD_SIZE)
+                    | Coder.IS_EXTENDED);
+            for (int i = 0; i < INT_LENGTH; i++) {
+                stream.write(length >>> (i * BYTE));
+            }
+        } else {
+            writeShort(stream, (type << Coder.LENGTH_FIELD_SIZE) | length);
+        }
+    }
+
+    /**
+     * Write a 16-bit value in little-endian order.
+     *
+     * @param stream the stream where the value will be written.
+     * @param value the value.
+     * @throws IOException if an error occurs writing the value.
+     */
+    private void writeShort(final OutputStream stream, final int value)
+            throws IOException {
+        stream.write(value);
+        stream.write(value >>> BYTE);
+    }
+
+    /**
+     * Read an unsigned 16-bit value in little-endian order.
+     *
+     * @param stream the stream containing the value.
+     * @return the value.
+     * @throws IOException if an error occurs reading the value.
+     */
+    private int readShort(final DataInputStream stream) throws IOException {
+        final int value = stream.readUnsignedByte();
+        return value | (stream.readUnsignedByte() << BYTE);
+    }
+
+    /**
+     * Read a 32-bit value in little-endian order.
+     *
+     * @param stream the stream containing the value.
+     * @return the value.
+     * @throws IOException if an error occurs reading the value.
+     */
+    private int readInt(final DataInputStream stream) throws IOException {
+        int value = 0;
+        for (int i = 0; i < INT_LENGTH; i++) {
+            value |= stream.readUnsignedByte() << (i * BYTE);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,980 @@
+/*
+ * MovieValidator.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieTypes;
+import com.flagstone.transform.action.ActionTypes;
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.filter.FilterTypes;
+
+/**
+ * MovieValidator checks the structure of an encoded Flash file without
+ * decoding it into objects. It can be used to reject files quickly before
+ * they are decoded using Movie.decodeFromStream().
+ *
+ * <p>
+ * The following checks are performed:
+ * </p>
+ *
+ * <ul>
+ * <li>the file signature and the length in the header.</li>
+ * <li>the length of each tag, including those in movie clips, does not
+ * extend beyond the end of the file or movie clip.</li>
+ * <li>the movie and each movie clip are terminated by an End tag and movie
+ * clips are not nested.</li>
+ * <li>the number of frames matches the frame count in the header or
+ * movie clip.</li>
+ * <li>the actions in DoAction, InitializeMovieClip, DefineButton,
+ * DefineButton2 and the clip events in PlaceObject2 and PlaceObject3 are
+ * terminated by an End action, the length of each action and the size of
+ * functions, With and exception handler blocks do not extend beyond the end
+ * of the actions and the targets of If and Jump actions lie within the
+ * actions.</li>
+ * <li>the bounding rectangles of the movie, shapes, morphing shapes and text
+ * fit within the tag and define a valid area.</li>
+ * </ul>
+ *
+ * <p>
+ * Each problem found is reported with the offset in the uncompressed movie,
+ * including the 8 bytes of the signature, version and length fields, where it
+ * was detected. Validation continues after a problem is found unless the
+ * position of the next tag cannot be determined.
+ * </p>
+ *
+ * <pre>
+ * MovieValidator validator = new MovieValidator();
+ *
+ * if (!validator.validate(file)) {
+ *     for (MovieValidator.Problem problem : validator.getProblems()) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>
+ * A MovieValidator may be reused to check several files but it is not
+ * thread-safe.
+ * </p>
+ */
+@SuppressWarnings({"PMD.TooManyMethods", "PMD.CyclomaticComplexity" })
+public final class MovieValidator {
+
+    /**
+     * Problem describes an error found in the structure of a movie.
+     */
+    public static final class Problem {
+        /** Format string used in toString() method. */
+        private static final String FORMAT = "Problem: { offset=%d;"
+                + " message=%s}";
+
+        /** The location of the error. */
+        private final transient int offset;
+        /** The description of the error. */
+        private final transient String message;
+
+        /**
+         * Creates a Problem.
+         *
+         * @param location the offset where the error was detected.
+         * @param text a description of the error.
+         */
+        public Problem(final int location, final String text) {
+            offset = location;
+            message = text;
+        }
+
+        /**
+         * Get the offset, in bytes, from the start of the uncompressed file
+         * where the error was detected.
+         *
+         * @return the location of the error.
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Get the description of the error.
+         *
+         * @return the message describing the error.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(FORMAT, offset, message);
+        }
+    }
+
+    /** Length in bytes of the signature, version and length fields. */
+    private static final int HEADER_LENGTH = 8;
+    /** Length in bytes of the signature. */
+    private static final int SIGNATURE_LENGTH = 3;
+    /** Number of bits used to encode the field size in a bounding box. */
+    private static final int FIELD_SIZE = 5;
+    /** Number of fields in a bounding box. */
+    private static final int BOUNDS_FIELDS = 4;
+    /** Number of bits used to round up to a whole number of bytes. */
+    private static final int ROUND_TO_BYTES = 7;
+    /** Right shift to convert bits to bytes. */
+    private static final int BITS_TO_BYTES = 3;
+    /** Number of bounding boxes in DefineShape4 and DefineMorphShape. */
+    private static final int TWO_BOUNDS = 2;
+    /** Number of bounding boxes in DefineMorphShape2. */
+    private static final int FOUR_BOUNDS = 4;
+    /** Number of channels in a ColorTransform containing alpha. */
+    private static final int CHANNELS = 4;
+    /** First version where clip events are encoded in 32-bit fields. */
+    private static final int WIDE_EVENTS = 6;
+    /** Flag for clip events that contain a key code. */
+    private static final int KEY_PRESS = 0x00020000;
+    /** Size in bytes of a BlurFilter. */
+    private static final int BLUR_SIZE = 10;
+    /** Size in bytes of a GlowFilter. */
+    private static final int GLOW_SIZE = 16;
+    /** Size in bytes of a DropShadowFilter. */
+    private static final int SHADOW_SIZE = 24;
+    /** Size in bytes of a BevelFilter. */
+    private static final int BEVEL_SIZE = 28;
+    /** Size in bytes of a ColorMatrixFilter. */
+    private static final int MATRIX_SIZE = 81;
+    /** Size in bytes of a gradient filter, excluding the gradients. */
+    private static final int GRADIENT_SIZE = 21;
+    /** Size in bytes of each colour and ratio in a gradient filter. */
+    private static final int GRADIENT_ENTRY = 5;
+    /** Size in bytes of a ConvolutionFilter, excluding the matrix. */
+    private static final int CONVOLUTION_SIZE = 16;
+    /** Size in bytes of each value in a ConvolutionFilter matrix. */
+    private static final int CONVOLUTION_ENTRY = 4;
+
+    /** The problems found in the last movie validated. */
+    private final transient List<Problem> problems;
+    /** The decoder for the movie being validated. */
+    private transient SWFDecoder coder;
+    /** The Flash version of the movie being validated. */
+    private transient int version;
+
+    /**
+     * Creates a MovieValidator.
+     */
+    public MovieValidator() {
+        problems = new ArrayList<Problem>();
+    }
+
+    /**
+     * Get the problems found in the last movie validated.
+     *
+     * @return an unmodifiable list of problems, which is empty if the movie
+     * is valid.
+     */
+    public List<Problem> getProblems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * Validate a Flash file.
+     *
+     * @param file the file to check.
+     * @return true if no problems were found, false otherwise.
+     * @throws IOException if there is an error reading the file.
+     */
+    public boolean validate(final File file) throws IOException {
+        final InputStream stream = new FileInputStream(file);
+        try {
+            return validate(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Validate a Flash file read from a stream. The stream is not closed.
+     *
+     * @param stream the stream containing the encoded movie.
+     * @return true if no problems were found, false otherwise.
+     * @throws IOException if there is an error reading from the stream.
+     */
+    public boolean validate(final InputStream stream) throws IOException {
+        problems.clear();
+
+        final byte[] header = new byte[HEADER_LENGTH];
+        int read = 0;
+        int count;
+
+        while (read < header.length) {
+            count = stream.read(header, read, header.length - read);
+            if (count == -1) {
+                problems.add(new Problem(read, "File is too short."));
+                return false;
+            }
+            read += count;
+        }
+
+        boolean compressed = false;
+        version = header[SIGNATURE_LENGTH] & 0xFF;
+
+        if (matches(header, Movie.CWS)) {
+            compressed = true;
+        } else if (!matches(header, Movie.FWS)) {
+            problems.add(new Problem(0, "Unrecognised file signature."));
+            return false;
+        }
+
+        // CHECKSTYLE:OFF
+        final int length = (header[4] & 0xFF)
+                | (header[5] & 0xFF) << Coder.ALIGN_BYTE1
+                | (header[6] & 0xFF) << Coder.ALIGN_BYTE2
+                | (header[7] & 0xFF) << Coder.ALIGN_BYTE3;
+        // CHECKSTYLE:ON
+
+        if (length <= HEADER_LENGTH) {
+            problems.add(new Problem(SIGNATURE_LENGTH + 1,
+                    "Invalid movie length: " + length));
+            return false;
+        }
+
+        InputStream streamIn;
+
+        if (compressed) {
+            streamIn = new InflaterInputStream(stream);
+        } else {
+            streamIn = stream;
+        }
+
+        if (length - HEADER_LENGTH < SWFDecoder.BUFFER_SIZE) {
+            coder = new SWFDecoder(streamIn, length - HEADER_LENGTH);
+        } else {
+            coder = new SWFDecoder(streamIn);
+        }
+
+        final int end = length - HEADER_LENGTH;
+
+        try {
+            if (validateBounds(end)) {
+                if (require(4, end)) {
+                    coder.readUnsignedShort();
+                    final int frames = coder.readUnsignedShort();
+                    if (validateTags(end, false) != frames) {
+                        problem("Frame count does not match header: "
+                                + frames);
+                    }
+                    if (coder.getPosition() != end) {
+                        problem("Movie length does not match header: "
+                                + length);
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            problem("Unexpected end of file.");
+        } catch (ZipException e) {
+            problem("Compressed data is corrupt.");
+        } finally {
+            coder = null;
+        }
+        return problems.isEmpty();
+    }
+
+    /**
+     * Compare the signature in the file header.
+     *
+     * @param header the header read from the file.
+     * @param signature the expected signature.
+     * @return true if the signatures match.
+     */
+    private boolean matches(final byte[] header, final byte[] signature) {
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record a problem at the current location.
+     *
+     * @param message the description of the problem.
+     */
+    private void problem(final String message) {
+        problem(coder.getPosition(), message);
+    }
+
+    /**
+     * Record a problem at a given location in the decoded data.
+     *
+     * @param location the position in the decoded data.
+     * @param message the description of the problem.
+     */
+    private void problem(final int location, final String message) {
+        problems.add(new Problem(location + HEADER_LENGTH, message));
+    }
+
+    /**
+     * Check that a number of bytes can be read before a given limit is
+     * reached.
+     *
+     * @param count the number of bytes to be read.
+     * @param limit the position of the end of the enclosing structure.
+     * @return true if the bytes can be read, false if a problem was recorded.
+     */
+    private boolean require(final int count, final int limit) {
+        boolean available = true;
+        if (coder.getPosition() + count > limit) {
+            problem("Data extends beyond end of tag.");
+            available = false;
+        }
+        return available;
+    }
+
+    /**
+     * Validate a sequence of tags terminated by an End tag.
+     *
+     * @param end the position of the end of the movie or movie clip.
+     * @param nested true if the tags are from a movie clip.
+     * @return the number of ShowFrame tags found.
+     * @throws IOException if there is an error reading the data.
+     */
+    @SuppressWarnings("PMD.ExcessiveMethodLength")
+    private int validateTags(final int end, final boolean nested)
+            throws IOException {
+
+        int frames = 0;
+        int start;
+        int type;
+        long length;
+        int tagEnd;
+
+        while (true) {
+            start = coder.getPosition();
+
+            if (start + 2 > end) {
+                problem("Missing End tag.");
+                coder.skip(end - start);
+                return frames;
+            }
+
+            type = coder.readUnsignedShort();
+            length = type & Coder.LENGTH_FIELD;
+            type >>>= Coder.LENGTH_FIELD_SIZE;
+
+            if (length == Coder.IS_EXTENDED) {
+                if (!require(4, end)) {
+                    return frames;
+                }
+                length = coder.readInt() & 0xFFFFFFFFL;
+            }
+
+            if (coder.getPosition() + length > end) {
+                problem(start, "Length of tag " + type
+                        + " extends beyond end of "
+                        + (nested ? "movie clip." : "movie."));
+                coder.skip(end - coder.getPosition());
+                return frames;
+            }
+
+            tagEnd = coder.getPosition() + (int) length;
+
+            switch (type) {
+            case MovieTypes.END:
+                if (length != 0) {
+                    problem(start, "End tag has non-zero length.");
+                    coder.skip((int) length);
+                }
+                return frames;
+            case MovieTypes.SHOW_FRAME:
+                frames++;
+                break;
+            case MovieTypes.DEFINE_MOVIE_CLIP:
+                if (nested) {
+                    problem(start, "Movie clips cannot be nested.");
+                } else if (require(4, tagEnd)) {
+                    coder.readUnsignedShort();
+                    final int count = coder.readUnsignedShort();
+                    if (validateTags(tagEnd, true) != count) {
+                        problem(start, "Frame count does not match movie"
+                                + " clip: " + count);
+                    }
+                }
+                break;
+            case MovieTypes.DO_ACTION:
+                validateActions(tagEnd);
+                break;
+            case MovieTypes.INITIALIZE:
+                if (require(2, tagEnd)) {
+                    coder.readUnsignedShort();
+                    validateActions(tagEnd);
+                }
+                break;
+            case MovieTypes.DEFINE_BUTTON:
+                validateButtonShapes(tagEnd);
+                break;
+            case MovieTypes.DEFINE_BUTTON_2:
+                validateButton(tagEnd);
+                break;
+            case MovieTypes.PLACE_2:
+                validatePlace(tagEnd, false);
+                break;
+            case MovieTypes.PLACE_3:
+                validatePlace(tagEnd, true);
+                break;
+            case MovieTypes.DEFINE_SHAPE:
+            case MovieTypes.DEFINE_SHAPE_2:
+            case MovieTypes.DEFINE_SHAPE_3:
+            case MovieTypes.DEFINE_TEXT:
+            case MovieTypes.DEFINE_TEXT_2:
+            case MovieTypes.DEFINE_TEXT_FIELD:
+                validateDefinition(tagEnd, 1);
+                break;
+            case MovieTypes.DEFINE_SHAPE_4:
+            case MovieTypes.DEFINE_MORPH_SHAPE:
+                validateDefinition(tagEnd, TWO_BOUNDS);
+                break;
+            case MovieTypes.DEFINE_MORPH_SHAPE_2:
+                validateDefinition(tagEnd, FOUR_BOUNDS);
+                break;
+            default:
+                break;
+            }
+
+            if (coder.getPosition() > tagEnd) {
+                problem(start, "Contents of tag " + type
+                        + " extend beyond end of tag.");
+                return frames;
+            }
+            coder.skip(tagEnd - coder.getPosition());
+        }
+    }
+
+    /**
+     * Validate the bounding boxes that follow the identifier in a definition.
+     *
+     * @param end the position of the end of the tag.
+     * @param count the number of bounding boxes.
+     * @throws IOException if there is an error reading the data.
+     */
+    private void validateDefinition(final int end, final int count)
+            throws IOException {
+        if (require(2, end)) {
+            coder.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                if (!validateBounds(end)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Validate an encoded bounding box.
+     *
+     * @param end the position of the end of the enclosing structure.
+     * @return true if the bounding box could be read, false otherwise.
+     * @throws IOException if there is an error reading the data.
+     */
+    private boolean validateBounds(final int end) throws IOException {
+        if (!require(1, end)) {
+            return false;
+        }
+        final int start = coder.getPosition();
+        final int size = coder.scanBits(FIELD_SIZE, false);
+
+        if (!require((FIELD_SIZE + BOUNDS_FIELDS * size + ROUND_TO_BYTES)
+                >>> BITS_TO_BYTES, end)) {
+            return false;
+        }
+
+        coder.readBits(FIELD_SIZE, false);
+        final int minX = coder.readBits(size, true);
+        final int maxX = coder.readBits(size, true);
+        final int minY = coder.readBits(size, true);
+        final int maxY = coder.readBits(size, true);
+        coder.alignToByte();
+
+        if (minX > maxX || minY > maxY) {
+            problem(start, "Invalid bounding box.");
+        }
+        return true;
+    }
+
+    /**
+     * Validate the actions defined for a DefineButton2.
+     *
+     * @param end the position of the end of the tag.
+     * @throws IOException if there is an error reading the data.
+     */
+    private void validateButton(final int end) throws IOException {
+        if (!require(SIGNATURE_LENGTH + 2, end)) {
+            return;
+        }
+        coder.skip(SIGNATURE_LENGTH);
+
+        int start = coder.getPosition();
+        int offset = coder.readUnsignedShort();
+
+        if (offset == 0) {
+            return;
+        }
+        if (start + offset > end) {
+            problem(start, "Offset to button actions is invalid.");
+            return;
+        }
+        coder.skip(start + offset - coder.getPosition());
+
+        while (offset != 0) {
+            start = coder.getPosition();
+            if (!require(4, end)) {
+                return;
+            }
+            offset = coder.readUnsignedShort();
+            coder.readUnsignedShort();
+
+            int limit = end;
+            if (offset != 0) {
+                limit = start + offset;
+                if (limit > end) {
+                    problem(start, "Offset to next button event is invalid.");
+                    return;
+                }
+            }
+            validateActions(limit);
+            coder.skip(limit - coder.getPosition());
+        }
+    }
+
+    /**
+     * Validate the actions defined for a DefineButton. The button shapes are
+     * skipped to find the start of the actions.
+     *
+     * @param end the position of the end of the tag.
+     * @throws IOException if there is an error reading the data.
+     */
+    private void validateButtonShapes(final int end) throws IOException {
+        if (!require(2, end)) {
+            return;
+        }
+        coder.readUnsignedShort();
+
+        int start;
+        int flags;
+
+        while (true) {
+            start = coder.getPosition();
+            if (!require(1, end)) {
+                return;
+            }
+            flags = coder.readByte();
+            if (flags == 0) {
+                break;
+            }
+            if (!require(4, end)) {
+                return;
+            }
+            coder.readUnsignedShort();
+            coder.readUnsignedShort();
+            skipTransform();
+
+            if ((flags & Coder.BIT4) != 0 && !skipFilters(end)) {
+                return;
+            }
+            if ((flags & Coder.BIT5) != 0) {
+                coder.readByte();
+            }
+            if (coder.getPosition() > end) {
+                problem(start, "Button shape extends beyond end of tag.");
+                return;
+            }
+        }
+        validateActions(end);
+    }
+
+    /**
+     * Validate the actions in the clip events defined for a PlaceObject2 or
+     * PlaceObject3. The fields preceding the events are skipped.
+     *
+     * @param end the position of the end of the tag.
+     * @param place3 true if the tag is a PlaceObject3.
+     * @throws IOException if there is an error reading the data.
+     */
+    @SuppressWarnings("PMD.NPathComplexity")
+    private void validatePlace(final int end, final boolean place3)
+            throws IOException {
+        final int start = coder.getPosition();
+
+        if (!require(place3 ? 4 : 3, end)) {
+            return;
+        }
+        final int flags = coder.readByte();
+        final int extra = place3 ? coder.readByte() : 0;
+
+        if ((flags & Coder.BIT7) == 0) {
+            return;
+        }
+        coder.readUnsignedShort();
+
+        if ((extra & Coder.BIT3) != 0 && !skipString(end)) {
+            return;
+        }
+        if ((flags & Coder.BIT1) != 0) {
+            coder.readUnsignedShort();
+        }
+        if ((flags & Coder.BIT2) != 0) {
+            skipTransform();
+        }
+        if ((flags & Coder.BIT3) != 0) {
+            skipColorTransform();
+        }
+        if ((flags & Coder.BIT4) != 0) {
+            coder.readUnsignedShort();
+        }
+        if ((flags & Coder.BIT5) != 0 && !skipString(end)) {
+            return;
+        }
+        if ((flags & Coder.BIT6) != 0) {
+            coder.readUnsignedShort();
+        }
+        if ((extra & Coder.BIT0) != 0 && !skipFilters(end)) {
+            return;
+        }
+        if ((extra & Coder.BIT1) != 0) {
+            coder.readByte();
+        }
+        if ((extra & Coder.BIT2) != 0) {
+            coder.readByte();
+        }
+        if (coder.getPosition() > end) {
+            problem(start, "Contents of tag extend beyond end of tag.");
+            return;
+        }
+        validateEvents(end, place3 || version >= WIDE_EVENTS);
+    }
+
+    /**
+     * Validate the actions for each clip event in a PlaceObject2 or
+     * PlaceObject3.
+     *
+     * @param end the position of the end of the tag.
+     * @param wide true if the event flags are 32-bit values, false if they
+     * are 16-bit values.
+     * @throws IOException if there is an error reading the data.
+     */
+    private void validateEvents(final int end, final boolean wide)
+            throws IOException {
+        final int size = wide ? 4 : 2;
+
+        if (!require(2 + size, end)) {
+            return;
+        }
+        coder.skip(2 + size);
+
+        int start;
+        int event;
+        int length;
+        int limit;
+
+        while (true) {
+            start = coder.getPosition();
+            if (!require(size, end)) {
+                return;
+            }
+            event = wide ? coder.readInt() : coder.readUnsignedShort();
+            if (event == 0) {
+                return;
+            }
+            if (!require(4, end)) {
+                return;
+            }
+            length = coder.readInt();
+            limit = coder.getPosition() + length;
+
+            if (length < 0 || limit > end) {
+                problem(start, "Length of clip event extends beyond end"
+                        + " of tag.");
+                return;
+            }
+            if (wide && (event & KEY_PRESS) != 0) {
+                if (!require(1, limit)) {
+                    return;
+                }
+                coder.readByte();
+            }
+            validateActions(limit);
+            coder.skip(limit - coder.getPosition());
+        }
+    }
+
+    /**
+     * Skip an encoded CoordTransform.
+     *
+     * @throws IOException if there is an error reading the data.
+     */
+    private void skipTransform() throws IOException {
+        int size;
+
+        coder.alignToByte();
+
+        if (coder.readBits(1, false) != 0) {
+            size = coder.readBits(FIELD_SIZE, false);
+            coder.readBits(size, true);
+            coder.readBits(size, true);
+        }
+        if (coder.readBits(1, false) != 0) {
+            size = coder.readBits(FIELD_SIZE, false);
+            coder.readBits(size, true);
+            coder.readBits(size, true);
+        }
+        size = coder.readBits(FIELD_SIZE, false);
+        coder.readBits(size, true);
+        coder.readBits(size, true);
+        coder.alignToByte();
+    }
+
+    /**
+     * Skip an encoded ColorTransform that contains an alpha channel.
+     *
+     * @throws IOException if there is an error reading the data.
+     */
+    private void skipColorTransform() throws IOException {
+        final boolean hasAdd = coder.readBits(1, false) != 0;
+        final boolean hasMultiply = coder.readBits(1, false) != 0;
+        final int size = coder.readBits(FIELD_SIZE, false);
+
+        int fields = 0;
+
+        if (hasMultiply) {
+            fields += CHANNELS;
+        }
+        if (hasAdd) {
+            fields += CHANNELS;
+        }
+        for (int i = 0; i < fields; i++) {
+            coder.readBits(size, true);
+        }
+        coder.alignToByte();
+    }
+
+    /**
+     * Skip a null-terminated string.
+     *
+     * @param end the position of the end of the tag.
+     * @return true if the string was skipped, false if a problem was recorded.
+     * @throws IOException if there is an error reading the data.
+     */
+    private boolean skipString(final int end) throws IOException {
+        while (require(1, end)) {
+            if (coder.readByte() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skip a list of filters.
+     *
+     * @param end the position of the end of the tag.
+     * @return true if the filters were skipped, false if a problem was
+     * recorded.
+     * @throws IOException if there is an error reading the data.
+     */
+    private boolean skipFilters(final int end) throws IOException {
+        if (!require(1, end)) {
+            return false;
+        }
+        final int count = coder.readByte();
+        int start;
+        int size;
+
+        for (int i = 0; i < count; i++) {
+            start = coder.getPosition();
+            if (!require(3, end)) {
+                return false;
+            }
+            switch (coder.readByte()) {
+            case FilterTypes.DROP_SHADOW:
+                size = SHADOW_SIZE;
+                break;
+            case FilterTypes.BLUR:
+                size = BLUR_SIZE;
+                break;
+            case FilterTypes.GLOW:
+                size = GLOW_SIZE;
+                break;
+            case FilterTypes.BEVEL:
+                size = BEVEL_SIZE;
+                break;
+            case FilterTypes.GRADIENT_GLOW:
+            case FilterTypes.GRADIENT_BEVEL:
+                size = GRADIENT_SIZE + GRADIENT_ENTRY * coder.readByte();
+                break;
+            case FilterTypes.CONVOLUTION:
+                size = CONVOLUTION_SIZE + CONVOLUTION_ENTRY
+                        * coder.readByte() * coder.readByte();
+                break;
+            case FilterTypes.COLOR_MATRIX:
+                size = MATRIX_SIZE;
+                break;
+            default:
+                problem(start, "Unknown filter type.");
+                return false;
+            }
+            if (!require(start + size - coder.getPosition(), end)) {
+                return false;
+            }
+            coder.skip(start + size - coder.getPosition());
+        }
+        return true;
+    }
+
+    /**
+     * Validate a block of actions terminated by an End action.
+     *
+     * @param end the position of the end of the block.
+     * @throws IOException if there is an error reading the data.
+     */
+    @SuppressWarnings("PMD.ExcessiveMethodLength")
+    private void validateActions(final int end) throws IOException {
+        final int first = coder.getPosition();
+        int start;
+        int type;
+        int length;
+        int next;
+
+        while (true) {
+            start = coder.getPosition();
+
+            if (start >= end) {
+                problem("Actions are not terminated by an End action.");
+                return;
+            }
+
+            type = coder.readByte();
+
+            if (type == ActionTypes.END) {
+                if (coder.getPosition() != end) {
+                    problem("Data follows the End action.");
+                }
+                return;
+            }
+
+            if (type <= ActionTypes.HIGHEST_BYTE_CODE) {
+                continue;
+            }
+
+            if (!require(2, end)) {
+                return;
+            }
+            length = coder.readUnsignedShort();
+            next = coder.getPosition() + length;
+
+            if (next > end) {
+                problem(start, "Length of action " + type
+                        + " extends beyond end of actions.");
+                return;
+            }
+
+            switch (type) {
+            case ActionTypes.NEW_FUNCTION:
+            case ActionTypes.NEW_FUNCTION_2:
+                if (length < 2) {
+                    problem(start, "Invalid function definition.");
+                } else {
+                    coder.skip(length - 2);
+                    checkBlock(start, next, coder.readUnsignedShort(), end);
+                }
+                break;
+            case ActionTypes.WITH:
+                if (length == 2) {
+                    checkBlock(start, next, coder.readUnsignedShort(), end);
+                } else {
+                    problem(start, "Invalid With action.");
+                }
+                break;
+            case ActionTypes.EXCEPTION_HANDLER:
+                // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
+                if (length < 7) {
+                    problem(start, "Invalid exception handler.");
+                } else {
+                    coder.readByte();
+                    checkBlock(start, next, coder.readUnsignedShort()
+                            + coder.readUnsignedShort()
+                            + coder.readUnsignedShort(), end);
+                }
+                break;
+            case ActionTypes.JUMP:
+            case ActionTypes.IF:
+                if (length == 2) {
+                    final int target = next + coder.readSignedShort();
+                    if (target < first || target > end) {
+                        problem(start, "Branch target is outside actions.");
+                    }
+                } else {
+                    problem(start, "Invalid branch action.");
+                }
+                break;
+            default:
+                break;
+            }
+            coder.skip(next - coder.getPosition());
+        }
+    }
+
+    /**
+     * Check that a block of actions following an action lies within the
+     * enclosing actions.
+     *
+     * @param start the location of the action.
+     * @param next the position of the action that follows.
+     * @param size the size of the block in bytes.
+     * @param end the end of the enclosing actions.
+     */
+    private void checkBlock(final int start, final int next, final int size,
+            final int end) {
+        if (next + size > end) {
+            problem(start, "Block of actions extends beyond end of actions.");
+        }
+    }
+}
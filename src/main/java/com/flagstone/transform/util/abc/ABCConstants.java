@@ -0,0 +1,551 @@
+/*
+ * ABCConstants.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.abc;
+
+import java.util.Arrays;
+
+import com.flagstone.transform.coder.CoderException;
+
+/**
+ * ABCConstants contains the constant pool from an ABC file: the tables of
+ * integers, unsigned integers, doubles, strings, namespaces, namespace sets
+ * and multinames referenced by the rest of the file.
+ *
+ * <p>Each table is stored in primitive arrays indexed by the position of the
+ * entry in the pool. Entry zero in each table is not encoded and has a
+ * default value. Strings are located when the file is parsed but are only
+ * decoded when they are first requested so scanning large numbers of files
+ * is inexpensive.</p>
+ */
+public final class ABCConstants {
+
+    /** Kind for a private namespace. */
+    public static final int PRIVATE_NAMESPACE = 0x05;
+    /** Kind for a namespace. */
+    public static final int NAMESPACE = 0x08;
+    /** Kind for a package namespace. */
+    public static final int PACKAGE_NAMESPACE = 0x16;
+    /** Kind for a package internal namespace. */
+    public static final int PACKAGE_INTERNAL_NAMESPACE = 0x17;
+    /** Kind for a protected namespace. */
+    public static final int PROTECTED_NAMESPACE = 0x18;
+    /** Kind for an explicit namespace. */
+    public static final int EXPLICIT_NAMESPACE = 0x19;
+    /** Kind for a static protected namespace. */
+    public static final int STATIC_PROTECTED_NAMESPACE = 0x1A;
+
+    /** Kind for a name qualified by a namespace. */
+    public static final int QNAME = 0x07;
+    /** Kind for an attribute name qualified by a namespace. */
+    public static final int QNAME_A = 0x0D;
+    /** Kind for a name with the namespace defined at runtime. */
+    public static final int RTQNAME = 0x0F;
+    /** Kind for an attribute name with the namespace defined at runtime. */
+    public static final int RTQNAME_A = 0x10;
+    /** Kind for a name and namespace defined at runtime. */
+    public static final int RTQNAME_L = 0x11;
+    /** Kind for an attribute name and namespace defined at runtime. */
+    public static final int RTQNAME_LA = 0x12;
+    /** Kind for a name in one of a set of namespaces. */
+    public static final int MULTINAME = 0x09;
+    /** Kind for an attribute name in one of a set of namespaces. */
+    public static final int MULTINAME_A = 0x0E;
+    /** Kind for a runtime name in one of a set of namespaces. */
+    public static final int MULTINAME_L = 0x1B;
+    /** Kind for a runtime attribute name in one of a set of namespaces. */
+    public static final int MULTINAME_LA = 0x1C;
+    /** Kind for a parameterised type, for example Vector.&lt;int&gt;. */
+    public static final int TYPE_NAME = 0x1D;
+
+    /** The encoded data. */
+    private final transient byte[] data;
+    /** The position of the pool in the data. */
+    private final transient int start;
+    /** The position of the table of strings in the data. */
+    private final transient int stringStart;
+    /** The position of the table of namespaces in the data. */
+    private final transient int namespaceStart;
+    /** The position of the first byte after the pool. */
+    private final transient int end;
+
+    /** The table of signed integers. */
+    private final transient int[] ints;
+    /** The table of unsigned integers. */
+    private final transient long[] uints;
+    /** The table of doubles. */
+    private final transient double[] doubles;
+    /** The position of each encoded string. */
+    private final transient int[] stringOffsets;
+    /** The number of bytes in each encoded string. */
+    private final transient int[] stringLengths;
+    /** The strings that have been decoded or changed. */
+    private final transient String[] strings;
+    /** The kind of each namespace. */
+    private final transient byte[] namespaceKinds;
+    /** The index of the name of each namespace in the table of strings. */
+    private final transient int[] namespaceNames;
+    /** The position of each namespace set in the list of namespaces. */
+    private final transient int[] setOffsets;
+    /** The namespaces in all the namespace sets. */
+    private final transient int[] setItems;
+    /** The kind of each multiname. */
+    private final transient byte[] multinameKinds;
+    /** The name of each multiname or the base type for a TypeName. */
+    private final transient int[] multinameNames;
+    /**
+     * The namespace or namespace set for each multiname, or the position of
+     * the parameters for a TypeName.
+     */
+    private final transient int[] multinameScopes;
+    /** The number and types of the parameters for each TypeName. */
+    private final transient int[] parameters;
+
+    /** Set when a string is changed. */
+    private transient boolean modified;
+
+    /**
+     * Parse the constant pool.
+     *
+     * @param bytes the encoded ABC file.
+     * @param reader the reader positioned at the start of the pool.
+     * @throws CoderException if the pool is not encoded correctly.
+     */
+    // CHECKSTYLE IGNORE ExecutableStatementCountCheck FOR NEXT 2 LINES
+    @SuppressWarnings("PMD.ExcessiveMethodLength")
+    ABCConstants(final byte[] bytes, final ABCReader reader)
+            throws CoderException {
+        data = bytes;
+        start = reader.getPosition();
+
+        ints = new int[count(reader.readU30())];
+        for (int i = 1; i < ints.length; i++) {
+            ints[i] = reader.readS32();
+        }
+
+        uints = new long[count(reader.readU30())];
+        for (int i = 1; i < uints.length; i++) {
+            uints[i] = reader.readU32();
+        }
+
+        doubles = new double[count(reader.readU30())];
+        doubles[0] = Double.NaN;
+        for (int i = 1; i < doubles.length; i++) {
+            doubles[i] = reader.readD64();
+        }
+
+        stringStart = reader.getPosition();
+        final int stringCount = count(reader.readU30());
+        stringOffsets = new int[stringCount];
+        stringLengths = new int[stringCount];
+        strings = new String[stringCount];
+        for (int i = 1; i < stringCount; i++) {
+            stringLengths[i] = reader.readU30();
+            stringOffsets[i] = reader.getPosition();
+            reader.skip(stringLengths[i]);
+        }
+
+        namespaceStart = reader.getPosition();
+
+        final int namespaceCount = count(reader.readU30());
+        namespaceKinds = new byte[namespaceCount];
+        namespaceNames = new int[namespaceCount];
+        for (int i = 1; i < namespaceCount; i++) {
+            namespaceKinds[i] = (byte) reader.readU8();
+            namespaceNames[i] = reader.readU30();
+        }
+
+        final int setCount = count(reader.readU30());
+        setOffsets = new int[setCount + 1];
+        int[] items = new int[setCount];
+        int itemCount = 0;
+        for (int i = 1; i < setCount; i++) {
+            final int size = reader.readU30();
+            setOffsets[i] = itemCount;
+            if (itemCount + size > items.length) {
+                items = Arrays.copyOf(items,
+                        Math.max(items.length * 2, itemCount + size));
+            }
+            for (int j = 0; j < size; j++) {
+                items[itemCount++] = reader.readU30();
+            }
+        }
+        setOffsets[setCount] = itemCount;
+        setItems = Arrays.copyOf(items, itemCount);
+
+        final int multinameCount = count(reader.readU30());
+        multinameKinds = new byte[multinameCount];
+        multinameNames = new int[multinameCount];
+        multinameScopes = new int[multinameCount];
+        int[] params = new int[0];
+        int paramCount = 0;
+        for (int i = 1; i < multinameCount; i++) {
+            final int kind = reader.readU8();
+            multinameKinds[i] = (byte) kind;
+
+            switch (kind) {
+            case QNAME:
+            case QNAME_A:
+                multinameScopes[i] = reader.readU30();
+                multinameNames[i] = reader.readU30();
+                break;
+            case RTQNAME:
+            case RTQNAME_A:
+                multinameNames[i] = reader.readU30();
+                break;
+            case RTQNAME_L:
+            case RTQNAME_LA:
+                break;
+            case MULTINAME:
+            case MULTINAME_A:
+                multinameNames[i] = reader.readU30();
+                multinameScopes[i] = reader.readU30();
+                break;
+            case MULTINAME_L:
+            case MULTINAME_LA:
+                multinameScopes[i] = reader.readU30();
+                break;
+            case TYPE_NAME:
+                multinameNames[i] = reader.readU30();
+                final int size = reader.readU30();
+                if (paramCount + size + 1 > params.length) {
+                    params = Arrays.copyOf(params,
+                            Math.max(params.length * 2,
+                                    paramCount + size + 1));
+                }
+                multinameScopes[i] = paramCount;
+                params[paramCount++] = size;
+                for (int j = 0; j < size; j++) {
+                    params[paramCount++] = reader.readU30();
+                }
+                break;
+            default:
+                throw new CoderException(reader.getPosition(),
+                        "Unknown multiname kind: " + kind);
+            }
+        }
+        parameters = Arrays.copyOf(params, paramCount);
+        end = reader.getPosition();
+    }
+
+    /**
+     * Get the size of a table including the entry that is not encoded.
+     *
+     * @param count the number of entries encoded in the file.
+     * @return the number of entries in the table.
+     */
+    private static int count(final int count) {
+        return count == 0 ? 1 : count;
+    }
+
+    /**
+     * Get the number of entries in the table of signed integers.
+     *
+     * @return the number of integers, including the default entry.
+     */
+    public int getIntCount() {
+        return ints.length;
+    }
+
+    /**
+     * Get a signed integer.
+     *
+     * @param index the position in the table.
+     * @return the value of the integer.
+     */
+    public int getInt(final int index) {
+        return ints[index];
+    }
+
+    /**
+     * Get the number of entries in the table of unsigned integers.
+     *
+     * @return the number of integers, including the default entry.
+     */
+    public int getUintCount() {
+        return uints.length;
+    }
+
+    /**
+     * Get an unsigned integer.
+     *
+     * @param index the position in the table.
+     * @return the value of the integer.
+     */
+    public long getUint(final int index) {
+        return uints[index];
+    }
+
+    /**
+     * Get the number of entries in the table of doubles.
+     *
+     * @return the number of doubles, including the default entry.
+     */
+    public int getDoubleCount() {
+        return doubles.length;
+    }
+
+    /**
+     * Get a double.
+     *
+     * @param index the position in the table.
+     * @return the value of the double. The default entry is NaN.
+     */
+    public double getDouble(final int index) {
+        return doubles[index];
+    }
+
+    /**
+     * Get the number of entries in the table of strings.
+     *
+     * @return the number of strings, including the default entry.
+     */
+    public int getStringCount() {
+        return strings.length;
+    }
+
+    /**
+     * Get a string. The string is decoded the first time it is requested.
+     *
+     * @param index the position in the table.
+     * @return the string, or null for the default entry, which represents
+     * any name.
+     */
+    public String getString(final int index) {
+        String str = strings[index];
+        if (str == null && index > 0) {
+            str = new ABCReader(data, 0).getString(stringOffsets[index],
+                    stringLengths[index]);
+            strings[index] = str;
+        }
+        return str;
+    }
+
+    /**
+     * Change a string. The constant pool is encoded again when the file is
+     * encoded.
+     *
+     * @param index the position in the table. The default entry cannot be
+     * changed.
+     * @param value the new value for the string. Must not be null.
+     */
+    public void setString(final int index, final String value) {
+        if (index < 1 || index >= strings.length) {
+            throw new IllegalArgumentException("Cannot change string: "
+                    + index);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        strings[index] = value;
+        stringLengths[index] = -1;
+        modified = true;
+    }
+
+    /**
+     * Get the number of entries in the table of namespaces.
+     *
+     * @return the number of namespaces, including the default entry.
+     */
+    public int getNamespaceCount() {
+        return namespaceKinds.length;
+    }
+
+    /**
+     * Get the kind of namespace, for example PACKAGE_NAMESPACE.
+     *
+     * @param index the position in the table.
+     * @return the kind of namespace.
+     */
+    public int getNamespaceKind(final int index) {
+        return namespaceKinds[index];
+    }
+
+    /**
+     * Get the name of a namespace.
+     *
+     * @param index the position in the table.
+     * @return the position of the name in the table of strings.
+     */
+    public int getNamespaceName(final int index) {
+        return namespaceNames[index];
+    }
+
+    /**
+     * Get the number of entries in the table of namespace sets.
+     *
+     * @return the number of namespace sets, including the default entry.
+     */
+    public int getNamespaceSetCount() {
+        return setOffsets.length - 1;
+    }
+
+    /**
+     * Get the namespaces in a namespace set.
+     *
+     * @param index the position in the table.
+     * @return a new array containing the positions of the namespaces in the
+     * table of namespaces.
+     */
+    public int[] getNamespaceSet(final int index) {
+        final int from = index == 0 ? 0 : setOffsets[index];
+        final int upto = index == 0 ? 0 : setOffsets[index + 1];
+        return Arrays.copyOfRange(setItems, from, upto);
+    }
+
+    /**
+     * Get the number of entries in the table of multinames.
+     *
+     * @return the number of multinames, including the default entry.
+     */
+    public int getMultinameCount() {
+        return multinameKinds.length;
+    }
+
+    /**
+     * Get the kind of multiname, for example QNAME.
+     *
+     * @param index the position in the table.
+     * @return the kind of multiname.
+     */
+    public int getMultinameKind(final int index) {
+        return multinameKinds[index];
+    }
+
+    /**
+     * Get the name of a multiname. For a TypeName this is the multiname of
+     * the type that is parameterised.
+     *
+     * @param index the position in the table.
+     * @return the position of the name in the table of strings, the position
+     * of the base type in the table of multinames for a TypeName or zero if
+     * the name is defined at runtime.
+     */
+    public int getMultinameName(final int index) {
+        return multinameNames[index];
+    }
+
+    /**
+     * Get the namespace of a multiname.
+     *
+     * @param index the position in the table.
+     * @return the position in the table of namespaces for QNames, the
+     * position in the table of namespace sets for Multinames or zero if the
+     * namespace is defined at runtime or the multiname is a TypeName.
+     */
+    public int getMultinameNamespace(final int index) {
+        return multinameKinds[index] == TYPE_NAME ? 0
+                : multinameScopes[index];
+    }
+
+    /**
+     * Get the parameters of a TypeName.
+     *
+     * @param index the position in the table.
+     * @return a new array containing the positions of the parameter types in
+     * the table of multinames. The array is empty if the multiname is not a
+     * TypeName.
+     */
+    public int[] getTypeParameters(final int index) {
+        int[] types = new int[0];
+        if (multinameKinds[index] == TYPE_NAME) {
+            final int offset = multinameScopes[index];
+            types = Arrays.copyOfRange(parameters, offset + 1,
+                    offset + 1 + parameters[offset]);
+        }
+        return types;
+    }
+
+    /**
+     * Get the name for a multiname. QNames in a package namespace include the
+     * name of the package, for example flash.display.Sprite.
+     *
+     * @param index the position in the table.
+     * @return the name or null if the name is defined at runtime.
+     */
+    public String getName(final int index) {
+        final int kind = multinameKinds[index];
+        String name;
+
+        if (kind == TYPE_NAME) {
+            name = getName(multinameNames[index]);
+        } else {
+            name = getString(multinameNames[index]);
+        }
+
+        if (name != null && (kind == QNAME || kind == QNAME_A)) {
+            final int namespace = multinameScopes[index];
+            if (namespaceKinds[namespace] == PACKAGE_NAMESPACE) {
+                final String pkg = getString(namespaceNames[namespace]);
+                if (pkg != null && pkg.length() > 0) {
+                    name = pkg + "." + name;
+                }
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Has a string been changed.
+     *
+     * @return true if the constant pool must be encoded again.
+     */
+    boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Encode the constant pool. Only the table of strings is encoded again
+     * if a string was changed, the rest of the pool is copied from the
+     * original data.
+     *
+     * @param writer the writer used to encode the pool.
+     */
+    void encode(final ABCWriter writer) {
+        if (modified) {
+            writer.writeBytes(data, start, stringStart - start);
+            writer.writeU30(strings.length);
+            for (int i = 1; i < strings.length; i++) {
+                if (stringLengths[i] < 0) {
+                    writer.writeString(strings[i]);
+                } else {
+                    writer.writeU30(stringLengths[i]);
+                    writer.writeBytes(data, stringOffsets[i],
+                            stringLengths[i]);
+                }
+            }
+            writer.writeBytes(data, namespaceStart, end - namespaceStart);
+        } else {
+            writer.writeBytes(data, start, end - start);
+        }
+    }
+}
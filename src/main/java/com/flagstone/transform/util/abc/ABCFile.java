@@ -0,0 +1,422 @@
+/*
+ * ABCFile.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.abc;
+
+import java.util.Arrays;
+
+import com.flagstone.transform.DoABC;
+import com.flagstone.transform.coder.CoderException;
+
+/**
+ * ABCFile provides access to the compiled ActionScript 3.0 byte-codes (an ABC
+ * file) contained in a DoABC object.
+ *
+ * <p>The constant pool is parsed when the ABC file is created so the strings,
+ * names and numbers used by the scripts can be inspected. The methods,
+ * metadata, classes and scripts are checked and the names of the methods
+ * and classes recorded but no other objects are created. The method bodies
+ * are recorded as slices of the encoded data and only parsed when they are
+ * requested.</p>
+ *
+ * <p>When the file is encoded again, only the sections that were changed, the
+ * table of strings in the constant pool and the method bodies where the
+ * byte-codes were replaced, are encoded. Everything else is copied
+ * unchanged from the original data.</p>
+ *
+ * <pre>
+ * DoABC doABC = ...;
+ * ABCFile abc = new ABCFile(doABC);
+ * ABCConstants pool = abc.getConstants();
+ *
+ * for (int i = 1; i &lt; pool.getStringCount(); i++) {
+ *     if (pool.getString(i).startsWith("http://old.example.com")) {
+ *         pool.setString(i, ...);
+ *     }
+ * }
+ * doABC.setData(abc.encode());
+ * </pre>
+ */
+public final class ABCFile {
+
+    /** Flag set if a method has optional parameters. */
+    private static final int HAS_OPTIONAL = 0x08;
+    /** Flag set if a method contains the names of the parameters. */
+    private static final int HAS_PARAM_NAMES = 0x80;
+    /** Flag set if a class has a protected namespace. */
+    private static final int PROTECTED_NS = 0x08;
+    /** Attribute set if a trait has metadata. */
+    private static final int ATTR_METADATA = 0x40;
+    /** Bit mask for the kind of trait. */
+    private static final int KIND_MASK = 0x0F;
+    /** Trait for a variable. */
+    private static final int TRAIT_SLOT = 0;
+    /** Trait for a method. */
+    private static final int TRAIT_METHOD = 1;
+    /** Trait for a getter method. */
+    private static final int TRAIT_GETTER = 2;
+    /** Trait for a setter method. */
+    private static final int TRAIT_SETTER = 3;
+    /** Trait for a class. */
+    private static final int TRAIT_CLASS = 4;
+    /** Trait for a function. */
+    private static final int TRAIT_FUNCTION = 5;
+    /** Trait for a constant. */
+    private static final int TRAIT_CONST = 6;
+    /** The number of u30 values in an exception handler. */
+    private static final int EXCEPTION_FIELDS = 5;
+    /** The number of bytes in the version numbers. */
+    private static final int HEADER_LENGTH = 4;
+
+    /** The encoded ABC file. */
+    private final transient byte[] data;
+    /** The minor version number. */
+    private final transient int minorVersion;
+    /** The major version number. */
+    private final transient int majorVersion;
+    /** The constant pool. */
+    private final transient ABCConstants constants;
+    /** The position of the first byte after the constant pool. */
+    private final transient int poolEnd;
+    /** The name of each method in the table of strings. */
+    private final transient int[] methodNames;
+    /** The name of each class in the table of multinames. */
+    private final transient int[] classNames;
+    /** The name of the superclass of each class. */
+    private final transient int[] superNames;
+    /** The number of scripts. */
+    private final transient int scriptCount;
+    /** The position of each method body and the end of the data. */
+    private final transient int[] bodyOffsets;
+    /** The method that each body belongs to. */
+    private final transient int[] bodyMethods;
+    /** The method bodies that have been requested. */
+    private final transient MethodBody[] bodies;
+
+    /**
+     * Parse the ABC file contained in a DoABC object.
+     *
+     * @param tag the DoABC object.
+     * @throws CoderException if the file is not encoded correctly.
+     */
+    public ABCFile(final DoABC tag) throws CoderException {
+        this(tag.getData());
+    }
+
+    /**
+     * Parse an ABC file.
+     *
+     * @param bytes the encoded ABC file.
+     * @throws CoderException if the file is not encoded correctly.
+     */
+    public ABCFile(final byte[] bytes) throws CoderException {
+        data = Arrays.copyOf(bytes, bytes.length);
+
+        final ABCReader reader = new ABCReader(data, 0);
+        minorVersion = reader.readU16();
+        majorVersion = reader.readU16();
+        constants = new ABCConstants(data, reader);
+        poolEnd = reader.getPosition();
+
+        methodNames = new int[reader.readU30()];
+        for (int i = 0; i < methodNames.length; i++) {
+            methodNames[i] = readMethod(reader);
+        }
+
+        final int metadataCount = reader.readU30();
+        for (int i = 0; i < metadataCount; i++) {
+            reader.readU30();
+            reader.skipU30(2 * reader.readU30());
+        }
+
+        classNames = new int[reader.readU30()];
+        superNames = new int[classNames.length];
+        for (int i = 0; i < classNames.length; i++) {
+            classNames[i] = reader.readU30();
+            superNames[i] = reader.readU30();
+            readInstance(reader);
+        }
+        for (int i = 0; i < classNames.length; i++) {
+            reader.readU30();
+            skipTraits(reader);
+        }
+
+        scriptCount = reader.readU30();
+        for (int i = 0; i < scriptCount; i++) {
+            reader.readU30();
+            skipTraits(reader);
+        }
+
+        final int bodyCount = reader.readU30();
+        bodyOffsets = new int[bodyCount + 1];
+        bodyMethods = new int[bodyCount];
+        bodies = new MethodBody[bodyCount];
+        for (int i = 0; i < bodyCount; i++) {
+            bodyOffsets[i] = reader.getPosition();
+            bodyMethods[i] = reader.readU30();
+            reader.skipU30(HEADER_LENGTH);
+            reader.skip(reader.readU30());
+            reader.skipU30(EXCEPTION_FIELDS * reader.readU30());
+            skipTraits(reader);
+        }
+        bodyOffsets[bodyCount] = reader.getPosition();
+    }
+
+    /**
+     * Read the definition of a method.
+     *
+     * @param reader the reader positioned at the start of the method.
+     * @return the name of the method.
+     * @throws CoderException if the method is not encoded correctly.
+     */
+    private int readMethod(final ABCReader reader) throws CoderException {
+        final int paramCount = reader.readU30();
+        reader.skipU30(paramCount + 1);
+        final int name = reader.readU30();
+        final int flags = reader.readU8();
+
+        if ((flags & HAS_OPTIONAL) != 0) {
+            final int optionCount = reader.readU30();
+            for (int i = 0; i < optionCount; i++) {
+                reader.readU30();
+                reader.readU8();
+            }
+        }
+        if ((flags & HAS_PARAM_NAMES) != 0) {
+            reader.skipU30(paramCount);
+        }
+        return name;
+    }
+
+    /**
+     * Read the definition of a class instance, after the names of the class
+     * and its superclass.
+     *
+     * @param reader the reader positioned at the flags for the instance.
+     * @throws CoderException if the instance is not encoded correctly.
+     */
+    private void readInstance(final ABCReader reader)
+            throws CoderException {
+        final int flags = reader.readU8();
+        if ((flags & PROTECTED_NS) != 0) {
+            reader.readU30();
+        }
+        reader.skipU30(reader.readU30());
+        reader.readU30();
+        skipTraits(reader);
+    }
+
+    /**
+     * Skip over a list of traits.
+     *
+     * @param reader the reader positioned at the start of the list.
+     * @throws CoderException if the traits are not encoded correctly.
+     */
+    private void skipTraits(final ABCReader reader) throws CoderException {
+        final int count = reader.readU30();
+
+        for (int i = 0; i < count; i++) {
+            reader.readU30();
+            final int kind = reader.readU8();
+
+            switch (kind & KIND_MASK) {
+            case TRAIT_SLOT:
+            case TRAIT_CONST:
+                reader.skipU30(2);
+                if (reader.readU30() != 0) {
+                    reader.readU8();
+                }
+                break;
+            case TRAIT_METHOD:
+            case TRAIT_GETTER:
+            case TRAIT_SETTER:
+            case TRAIT_CLASS:
+            case TRAIT_FUNCTION:
+                reader.skipU30(2);
+                break;
+            default:
+                throw new CoderException(reader.getPosition(),
+                        "Unknown trait kind: " + kind);
+            }
+            if ((kind & ATTR_METADATA) != 0) {
+                reader.skipU30(reader.readU30());
+            }
+        }
+    }
+
+    /**
+     * Get the minor version number of the ABC file.
+     *
+     * @return the minor version.
+     */
+    public int getMinorVersion() {
+        return minorVersion;
+    }
+
+    /**
+     * Get the major version number of the ABC file.
+     *
+     * @return the major version.
+     */
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    /**
+     * Get the constant pool.
+     *
+     * @return the constant pool.
+     */
+    public ABCConstants getConstants() {
+        return constants;
+    }
+
+    /**
+     * Get the number of methods.
+     *
+     * @return the number of methods.
+     */
+    public int getMethodCount() {
+        return methodNames.length;
+    }
+
+    /**
+     * Get the name of a method.
+     *
+     * @param index the position of the method.
+     * @return the name of the method, or null if the method is anonymous.
+     */
+    public String getMethodName(final int index) {
+        return constants.getString(methodNames[index]);
+    }
+
+    /**
+     * Get the number of classes.
+     *
+     * @return the number of classes.
+     */
+    public int getClassCount() {
+        return classNames.length;
+    }
+
+    /**
+     * Get the name of a class, including the name of the package.
+     *
+     * @param index the position of the class.
+     * @return the name of the class.
+     */
+    public String getClassName(final int index) {
+        return constants.getName(classNames[index]);
+    }
+
+    /**
+     * Get the name of the superclass of a class, including the name of the
+     * package.
+     *
+     * @param index the position of the class.
+     * @return the name of the superclass or null if the class has no
+     * superclass.
+     */
+    public String getSuperclassName(final int index) {
+        return superNames[index] == 0 ? null
+                : constants.getName(superNames[index]);
+    }
+
+    /**
+     * Get the number of scripts.
+     *
+     * @return the number of scripts.
+     */
+    public int getScriptCount() {
+        return scriptCount;
+    }
+
+    /**
+     * Get the number of method bodies.
+     *
+     * @return the number of methods with byte-codes.
+     */
+    public int getMethodBodyCount() {
+        return bodies.length;
+    }
+
+    /**
+     * Get a method body. The body is created when it is first requested.
+     *
+     * @param index the position of the method body.
+     * @return the method body.
+     */
+    public MethodBody getMethodBody(final int index) {
+        if (bodies[index] == null) {
+            bodies[index] = new MethodBody(data, bodyOffsets[index],
+                    bodyOffsets[index + 1], bodyMethods[index]);
+        }
+        return bodies[index];
+    }
+
+    /**
+     * Encode the ABC file. Sections that were not changed are copied from the
+     * original data.
+     *
+     * @return the encoded ABC file.
+     */
+    public byte[] encode() {
+        boolean modified = constants.isModified();
+        for (int i = 0; !modified && i < bodies.length; i++) {
+            modified = bodies[i] != null && bodies[i].isModified();
+        }
+
+        final byte[] bytes;
+
+        if (modified) {
+            final ABCWriter writer = new ABCWriter(data.length);
+            writer.writeBytes(data, 0, HEADER_LENGTH);
+            constants.encode(writer);
+            writer.writeBytes(data, poolEnd, bodyOffsets[0] - poolEnd);
+
+            for (int i = 0; i < bodies.length; i++) {
+                if (bodies[i] == null) {
+                    writer.writeBytes(data, bodyOffsets[i],
+                            bodyOffsets[i + 1] - bodyOffsets[i]);
+                } else {
+                    bodies[i].encode(writer);
+                }
+            }
+            writer.writeBytes(data, bodyOffsets[bodies.length],
+                    data.length - bodyOffsets[bodies.length]);
+            bytes = writer.toByteArray();
+        } else {
+            bytes = Arrays.copyOf(data, data.length);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * ABCReader.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.abc;
+
+import java.io.UnsupportedEncodingException;
+
+import com.flagstone.transform.coder.CoderException;
+
+/**
+ * ABCReader reads the primitive types used in an ABC file from an array of
+ * bytes. Integers are variable length, using 7 bits from each byte, and
+ * fixed-length values are little-endian.
+ */
+final class ABCReader {
+
+    /** The number of bits of data in each byte of a variable length int. */
+    private static final int BITS_PER_GROUP = 7;
+    /** The maximum number of bytes in a variable length int. */
+    private static final int MAX_GROUPS = 5;
+    /** Bit mask for the data in each byte of a variable length int. */
+    private static final int GROUP_MASK = 0x7F;
+    /** Bit set if more bytes follow in a variable length int. */
+    private static final int MORE_BITS = 0x80;
+    /** Bit mask used to read bytes as unsigned values. */
+    private static final int BYTE_MASK = 0xFF;
+    /** Bit mask used to convert an int to an unsigned value. */
+    private static final long UNSIGNED_MASK = 0xFFFFFFFFL;
+    /** Bit mask for the 30 bits used in a U30 value. */
+    private static final int U30_MASK = 0x3FFFFFFF;
+    /** The number of bits in a byte. */
+    private static final int BITS_PER_BYTE = 8;
+    /** The number of bytes in a double. */
+    private static final int DOUBLE_SIZE = 8;
+
+    /** The encoded data. */
+    private final transient byte[] data;
+    /** The position of the next byte to read. */
+    private transient int position;
+
+    /**
+     * Create an ABCReader.
+     *
+     * @param bytes the encoded data.
+     * @param offset the position of the first byte to read.
+     */
+    ABCReader(final byte[] bytes, final int offset) {
+        data = bytes;
+        position = offset;
+    }
+
+    /**
+     * Get the position of the next byte to read.
+     *
+     * @return the offset from the start of the data.
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * Move to a position in the data.
+     *
+     * @param offset the offset from the start of the data.
+     */
+    void setPosition(final int offset) {
+        position = offset;
+    }
+
+    /**
+     * Skip over bytes.
+     *
+     * @param count the number of bytes to skip.
+     * @throws CoderException if the end of the data is reached.
+     */
+    void skip(final int count) throws CoderException {
+        if (count < 0 || count > data.length - position) {
+            throw new CoderException(position, "Unexpected end of data");
+        }
+        position += count;
+    }
+
+    /**
+     * Read an unsigned byte.
+     *
+     * @return the value of the byte.
+     * @throws CoderException if the end of the data is reached.
+     */
+    int readU8() throws CoderException {
+        if (position >= data.length) {
+            throw new CoderException(position, "Unexpected end of data");
+        }
+        return data[position++] & BYTE_MASK;
+    }
+
+    /**
+     * Read an unsigned 16-bit integer.
+     *
+     * @return the value of the integer.
+     * @throws CoderException if the end of the data is reached.
+     */
+    int readU16() throws CoderException {
+        return readU8() | (readU8() << BITS_PER_BYTE);
+    }
+
+    /**
+     * Read a variable length, unsigned 32-bit integer.
+     *
+     * @return the value of the integer.
+     * @throws CoderException if the end of the data is reached.
+     */
+    long readU32() throws CoderException {
+        long value = 0;
+        int shift = 0;
+        int current;
+        int count = 0;
+
+        do {
+            current = readU8();
+            value |= (long) (current & GROUP_MASK) << shift;
+            shift += BITS_PER_GROUP;
+        } while ((current & MORE_BITS) != 0 && ++count < MAX_GROUPS);
+
+        return value & UNSIGNED_MASK;
+    }
+
+    /**
+     * Read a variable length, signed 32-bit integer.
+     *
+     * @return the value of the integer.
+     * @throws CoderException if the end of the data is reached.
+     */
+    int readS32() throws CoderException {
+        return (int) readU32();
+    }
+
+    /**
+     * Read a variable length, unsigned 30-bit integer.
+     *
+     * @return the value of the integer.
+     * @throws CoderException if the end of the data is reached.
+     */
+    int readU30() throws CoderException {
+        return (int) readU32() & U30_MASK;
+    }
+
+    /**
+     * Skip over a number of variable length integers.
+     *
+     * @param count the number of integers.
+     * @throws CoderException if the end of the data is reached.
+     */
+    void skipU30(final int count) throws CoderException {
+        for (int i = 0; i < count; i++) {
+            readU32();
+        }
+    }
+
+    /**
+     * Read a little-endian, double-precision floating point number.
+     *
+     * @return the value of the number.
+     * @throws CoderException if the end of the data is reached.
+     */
+    double readD64() throws CoderException {
+        long bits = 0;
+        for (int i = 0; i < DOUBLE_SIZE; i++) {
+            bits |= (long) readU8() << (i * BITS_PER_BYTE);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Decode a UTF-8 encoded string.
+     *
+     * @param offset the position of the first byte of the string.
+     * @param length the number of bytes in the string.
+     * @return the string.
+     */
+    String getString(final int offset, final int length) {
+        try {
+            return new String(data, offset, length, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
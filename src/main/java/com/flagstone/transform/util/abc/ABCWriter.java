@@ -0,0 +1,169 @@
+/*
+ * ABCWriter.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.abc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * ABCWriter writes the primitive types used in an ABC file to an array of
+ * bytes.
+ */
+final class ABCWriter {
+
+    /** The number of bits of data in each byte of a variable length int. */
+    private static final int BITS_PER_GROUP = 7;
+    /** Bit mask for the data in each byte of a variable length int. */
+    private static final int GROUP_MASK = 0x7F;
+    /** Bit set if more bytes follow in a variable length int. */
+    private static final int MORE_BITS = 0x80;
+    /** Bit mask used to convert an int to an unsigned value. */
+    private static final long UNSIGNED_MASK = 0xFFFFFFFFL;
+    /** The number of bits in a byte. */
+    private static final int BITS_PER_BYTE = 8;
+    /** The number of bytes in a double. */
+    private static final int DOUBLE_SIZE = 8;
+
+    /** The encoded data. */
+    private final transient ByteArrayOutputStream stream;
+
+    /**
+     * Create an ABCWriter.
+     *
+     * @param size the initial size of the buffer.
+     */
+    ABCWriter(final int size) {
+        stream = new ByteArrayOutputStream(size);
+    }
+
+    /**
+     * Write a byte.
+     *
+     * @param value the value of the byte.
+     */
+    void writeU8(final int value) {
+        stream.write(value);
+    }
+
+    /**
+     * Write an unsigned 16-bit integer.
+     *
+     * @param value the value of the integer.
+     */
+    void writeU16(final int value) {
+        stream.write(value);
+        stream.write(value >>> BITS_PER_BYTE);
+    }
+
+    /**
+     * Write a variable length, unsigned 32-bit integer.
+     *
+     * @param value the value of the integer.
+     */
+    void writeU32(final long value) {
+        long current = value & UNSIGNED_MASK;
+        do {
+            int group = (int) (current & GROUP_MASK);
+            current >>>= BITS_PER_GROUP;
+            if (current != 0) {
+                group |= MORE_BITS;
+            }
+            stream.write(group);
+        } while (current != 0);
+    }
+
+    /**
+     * Write a variable length, signed 32-bit integer.
+     *
+     * @param value the value of the integer.
+     */
+    void writeS32(final int value) {
+        writeU32(value & UNSIGNED_MASK);
+    }
+
+    /**
+     * Write a variable length, unsigned 30-bit integer.
+     *
+     * @param value the value of the integer.
+     */
+    void writeU30(final int value) {
+        writeU32(value);
+    }
+
+    /**
+     * Write a little-endian, double-precision floating point number.
+     *
+     * @param value the value of the number.
+     */
+    void writeD64(final double value) {
+        final long bits = Double.doubleToRawLongBits(value);
+        for (int i = 0; i < DOUBLE_SIZE; i++) {
+            stream.write((int) (bits >>> (i * BITS_PER_BYTE)));
+        }
+    }
+
+    /**
+     * Write a string as its length followed by the UTF-8 encoded bytes.
+     *
+     * @param value the string.
+     */
+    void writeString(final String value) {
+        try {
+            final byte[] bytes = value.getBytes("UTF-8");
+            writeU30(bytes.length);
+            stream.write(bytes, 0, bytes.length);
+        } catch (final UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Write bytes copied from an array.
+     *
+     * @param bytes the array of bytes.
+     * @param offset the position of the first byte to write.
+     * @param length the number of bytes to write.
+     */
+    void writeBytes(final byte[] bytes, final int offset, final int length) {
+        stream.write(bytes, offset, length);
+    }
+
+    /**
+     * Get the encoded data.
+     *
+     * @return a new array containing the bytes written.
+     */
+    byte[] toByteArray() {
+        return stream.toByteArray();
+    }
+}
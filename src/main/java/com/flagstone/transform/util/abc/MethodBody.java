@@ -0,0 +1,263 @@
+/*
+ * MethodBody.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.abc;
+
+import java.util.Arrays;
+
+import com.flagstone.transform.coder.CoderException;
+
+/**
+ * MethodBody contains the byte-codes executed by a method in an ABC file.
+ *
+ * <p>The body is a slice of the encoded file. The fields are only decoded
+ * when they are first requested and the byte-codes are only copied when
+ * requested. If the byte-codes are not changed the body is copied from the
+ * original data when the file is encoded.</p>
+ */
+public final class MethodBody {
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "MethodBody: { method=%d;"
+            + " maxStack=%d; localCount=%d; initScopeDepth=%d;"
+            + " maxScopeDepth=%d; codeLength=%d; exceptionCount=%d}";
+
+    /** The encoded ABC file. */
+    private final transient byte[] data;
+    /** The position of the body in the data. */
+    private final transient int start;
+    /** The position of the first byte after the body. */
+    private final transient int end;
+    /** The method that the body belongs to. */
+    private final transient int method;
+
+    /** Set when the fields have been decoded. */
+    private transient boolean parsed;
+    /** The maximum number of values on the stack. */
+    private transient int maxStack;
+    /** The number of local registers. */
+    private transient int localCount;
+    /** The initial depth of the scope stack. */
+    private transient int initScopeDepth;
+    /** The maximum depth of the scope stack. */
+    private transient int maxScopeDepth;
+    /** The position of the byte-codes in the data. */
+    private transient int codeStart;
+    /** The number of bytes in the byte-codes. */
+    private transient int codeLength;
+    /** The position of the exception handlers in the data. */
+    private transient int exceptionStart;
+    /** The number of exception handlers. */
+    private transient int exceptionCount;
+    /** The byte-codes if they were changed, otherwise null. */
+    private transient byte[] code;
+
+    /**
+     * Create a MethodBody.
+     *
+     * @param bytes the encoded ABC file.
+     * @param from the position of the body in the data.
+     * @param upto the position of the first byte after the body.
+     * @param index the method that the body belongs to.
+     */
+    MethodBody(final byte[] bytes, final int from, final int upto,
+            final int index) {
+        data = bytes;
+        start = from;
+        end = upto;
+        method = index;
+    }
+
+    /**
+     * Decode the fields in the body. The body was checked when the file was
+     * parsed so no errors can occur.
+     */
+    private void parse() {
+        if (!parsed) {
+            try {
+                final ABCReader reader = new ABCReader(data, start);
+                reader.readU30();
+                maxStack = reader.readU30();
+                localCount = reader.readU30();
+                initScopeDepth = reader.readU30();
+                maxScopeDepth = reader.readU30();
+                codeLength = reader.readU30();
+                codeStart = reader.getPosition();
+                reader.skip(codeLength);
+                exceptionStart = reader.getPosition();
+                exceptionCount = reader.readU30();
+            } catch (final CoderException e) {
+                throw new AssertionError(e);
+            }
+            parsed = true;
+        }
+    }
+
+    /**
+     * Get the method that the body belongs to.
+     *
+     * @return the position of the method in the list of methods.
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * Get the maximum number of values on the stack.
+     *
+     * @return the maximum size of the stack.
+     */
+    public int getMaxStack() {
+        parse();
+        return maxStack;
+    }
+
+    /**
+     * Get the number of local registers, including the parameters.
+     *
+     * @return the number of registers.
+     */
+    public int getLocalCount() {
+        parse();
+        return localCount;
+    }
+
+    /**
+     * Get the depth of the scope stack when the method is called.
+     *
+     * @return the initial depth of the scope stack.
+     */
+    public int getInitScopeDepth() {
+        parse();
+        return initScopeDepth;
+    }
+
+    /**
+     * Get the maximum depth of the scope stack.
+     *
+     * @return the maximum depth of the scope stack.
+     */
+    public int getMaxScopeDepth() {
+        parse();
+        return maxScopeDepth;
+    }
+
+    /**
+     * Get the number of bytes in the byte-codes.
+     *
+     * @return the length of the byte-codes.
+     */
+    public int getCodeLength() {
+        parse();
+        return code == null ? codeLength : code.length;
+    }
+
+    /**
+     * Get the byte-codes executed by the method.
+     *
+     * @return a copy of the byte-codes.
+     */
+    public byte[] getCode() {
+        parse();
+        final byte[] bytes;
+        if (code == null) {
+            bytes = Arrays.copyOfRange(data, codeStart,
+                    codeStart + codeLength);
+        } else {
+            bytes = Arrays.copyOf(code, code.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Replace the byte-codes executed by the method. The exception handlers
+     * are not changed so the offsets they contain must still be valid.
+     *
+     * @param bytes the byte-codes. Must not be null.
+     */
+    public void setCode(final byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException();
+        }
+        parse();
+        code = Arrays.copyOf(bytes, bytes.length);
+    }
+
+    /**
+     * Get the number of exception handlers.
+     *
+     * @return the number of exception handlers.
+     */
+    public int getExceptionCount() {
+        parse();
+        return exceptionCount;
+    }
+
+    /**
+     * Have the byte-codes been changed.
+     *
+     * @return true if the body must be encoded again.
+     */
+    boolean isModified() {
+        return code != null;
+    }
+
+    /**
+     * Encode the body. If the byte-codes were not changed the encoded body
+     * is copied from the original data.
+     *
+     * @param writer the writer used to encode the body.
+     */
+    void encode(final ABCWriter writer) {
+        if (code == null) {
+            writer.writeBytes(data, start, end - start);
+        } else {
+            writer.writeU30(method);
+            writer.writeU30(maxStack);
+            writer.writeU30(localCount);
+            writer.writeU30(initScopeDepth);
+            writer.writeU30(maxScopeDepth);
+            writer.writeU30(code.length);
+            writer.writeBytes(code, 0, code.length);
+            writer.writeBytes(data, exceptionStart, end - exceptionStart);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        parse();
+        return String.format(FORMAT, method, maxStack, localCount,
+                initScopeDepth, maxScopeDepth, getCodeLength(),
+                exceptionCount);
+    }
+}
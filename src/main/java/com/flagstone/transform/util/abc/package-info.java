@@ -0,0 +1,5 @@
+/**
+ * The abc package contains classes used to inspect and modify the compiled
+ * ActionScript 3.0 byte-codes (ABC files) contained in DoABC objects.
+ */
+package com.flagstone.transform.util.abc;
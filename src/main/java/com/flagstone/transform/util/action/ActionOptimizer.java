@@ -0,0 +1,586 @@
+/*
+ * ActionOptimizer.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.flagstone.transform.CharacterEncoding;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.If;
+import com.flagstone.transform.action.Jump;
+import com.flagstone.transform.action.NewFunction2;
+import com.flagstone.transform.action.Push;
+import com.flagstone.transform.action.WaitForFrame;
+import com.flagstone.transform.action.WaitForFrame2;
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+
+/**
+ * ActionOptimizer reduces the size of the actions (ActionScript 1.0 and 2.0
+ * byte-codes) in a movie. The following optimisations are performed:
+ *
+ * <ul>
+ * <li>Adjacent Push actions are merged into a single action.</li>
+ * <li>Arithmetic, bitwise and string operations on values pushed onto the
+ * stack are evaluated and replaced by the result. A Push followed by a Pop is
+ * removed. Doubles that are whole numbers are pushed as Integers which take
+ * 4 fewer bytes to encode.</li>
+ * <li>Actions that can never be executed are removed.</li>
+ * <li>Branches to a Jump are replaced by a branch to where the Jump goes and
+ * branches to the following action are removed.</li>
+ * <li>Local variables in functions defined using NewFunction2 are stored in
+ * the Flash Player's internal registers when it is safe to do so.</li>
+ * </ul>
+ *
+ * <p>The offsets for If and Jump actions are recalculated after the actions
+ * are changed. If a list of actions cannot be analysed, for example because
+ * a branch does not end on an action or the list contains a WaitForFrame
+ * action that skips a fixed number of actions, then the list is not changed.
+ * </p>
+ *
+ * <p>Functions, With blocks and exception handlers are optimised separately
+ * from the list of actions that contains them.</p>
+ */
+public final class ActionOptimizer {
+
+    /** The maximum number of times the optimisations are repeated. */
+    private static final int MAX_PASSES = 16;
+    /** The maximum length of the values in a Push action. */
+    private static final int MAX_PUSH = 65535;
+    /** Mask used to convert an int to an unsigned value. */
+    private static final long UNSIGNED_MASK = 0xFFFFFFFFL;
+
+    /** The Context used to calculate the size of encoded actions. */
+    private final transient Context context;
+    /** The filter used to optimise the actions in a movie or a block. */
+    private final transient ActionFilter filter = new ActionFilter() {
+        public List<Action> filter(final List<Action> actions) {
+            return optimize(actions, null);
+        }
+    };
+
+    /**
+     * Create an ActionOptimizer. Strings are assumed to be encoded using
+     * UTF-8.
+     */
+    public ActionOptimizer() {
+        context = new Context();
+    }
+
+    /**
+     * Set the character encoding used for strings so the length of encoded
+     * actions can be calculated. The encoding should be the same as the one
+     * used for the movie.
+     *
+     * @param encoding the character encoding used for strings.
+     */
+    public void setEncoding(final CharacterEncoding encoding) {
+        context.setEncoding(encoding.getEncoding());
+    }
+
+    /**
+     * Optimise all the actions in a movie. The actions in DoAction,
+     * InitializeMovieClip, DefineButton and DefineButton2 objects, the event
+     * handlers for movie clips placed with Place2 and Place3 and the
+     * actions in movie clips are all replaced with optimised versions.
+     *
+     * @param movie the Movie containing the actions to optimise.
+     */
+    public void optimize(final Movie movie) {
+        Actions.filter(movie.getObjects(), filter);
+    }
+
+    /**
+     * Optimise a list of actions.
+     *
+     * @param actions the list of actions.
+     * @return a new list containing the optimised actions or the original list
+     * if the actions could not be optimised.
+     */
+    public List<Action> optimize(final List<Action> actions) {
+        return optimize(actions, null);
+    }
+
+    /**
+     * Optimise a list of actions.
+     *
+     * @param actions the list of actions.
+     * @param locals if the actions are the body of a NewFunction2 then this
+     * is used to move local variables into registers, otherwise null.
+     * @return a new list containing the optimised actions or the original list
+     * if the actions could not be optimised.
+     */
+    private List<Action> optimize(final List<Action> actions,
+            final LocalVariables locals) {
+
+        List<Action> list = actions;
+        final List<Node> nodes = Node.resolve(actions, context);
+
+        if (nodes != null) {
+            for (final Node node : nodes) {
+                if (!node.isEnd()) {
+                    node.setAction(optimizeBlock(node.getAction()));
+                }
+            }
+            if (!hasFixedCounts(actions)) {
+                simplify(nodes);
+                if (locals != null && locals.promote(nodes)) {
+                    simplify(nodes);
+                }
+            }
+            final List<Action> result = Node.generate(nodes, context);
+            if (result != null) {
+                list = result;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Optimise the actions in functions, With blocks and exception handlers.
+     *
+     * @param action an action.
+     * @return a new action containing the optimised actions or the original
+     * action if it does not contain any actions.
+     */
+    private Action optimizeBlock(final Action action) {
+        Action result;
+
+        if (action instanceof NewFunction2) {
+            result = optimizeFunction((NewFunction2) action);
+        } else {
+            result = Actions.filterBlock(action, filter);
+        }
+        return result;
+    }
+
+    /**
+     * Optimise the actions in a function and move local variables to
+     * registers where possible.
+     *
+     * @param function the function definition.
+     * @return the optimised function definition.
+     */
+    private NewFunction2 optimizeFunction(final NewFunction2 function) {
+        final LocalVariables locals = new LocalVariables(function);
+        final List<Action> actions = function.getActions();
+        final List<Action> list = optimize(actions, locals);
+
+        final int registers;
+
+        if (list == actions) {
+            registers = function.getRegisterCount();
+        } else {
+            registers = locals.getRegisterCount();
+        }
+        return Actions.function(function, list, registers);
+    }
+
+    /**
+     * Does the list of actions contain WaitForFrame or WaitForFrame2 actions
+     * which skip a fixed number of actions.
+     *
+     * @param actions the list of actions.
+     * @return true if the number of actions must not be changed.
+     */
+    private boolean hasFixedCounts(final List<Action> actions) {
+        boolean fixed = false;
+        for (final Action action : actions) {
+            if (action instanceof WaitForFrame
+                    || action instanceof WaitForFrame2) {
+                fixed = true;
+                break;
+            }
+        }
+        return fixed;
+    }
+
+    /**
+     * Repeatedly apply the optimisations until the list of actions no
+     * longer changes.
+     *
+     * @param nodes the list of nodes.
+     */
+    private void simplify(final List<Node> nodes) {
+        boolean changed = true;
+        for (int pass = 0; changed && pass < MAX_PASSES; pass++) {
+            changed = threadJumps(nodes);
+            changed |= removeUnreachable(nodes);
+            changed |= removeEmptyBranches(nodes);
+            changed |= mergePushes(nodes);
+            changed |= foldConstants(nodes);
+        }
+        compactNumbers(nodes);
+    }
+
+    /**
+     * Replace Doubles that are whole numbers with Integers.
+     *
+     * @param nodes the list of nodes.
+     */
+    private void compactNumbers(final List<Node> nodes) {
+        for (final Node node : nodes) {
+            if (node.isPush()) {
+                final List<Object> values = node.getValues();
+                final int count = values.size();
+                for (int i = 0; i < count; i++) {
+                    if (values.get(i) instanceof Double) {
+                        values.set(i, toNumber((Double) values.get(i)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the set of nodes that are the target of a branch.
+     *
+     * @param nodes the list of nodes.
+     * @return the nodes branched to by If or Jump actions.
+     */
+    private Set<Node> targets(final List<Node> nodes) {
+        final Set<Node> set = new HashSet<Node>();
+        for (final Node node : nodes) {
+            if (node.isBranch()) {
+                set.add(node.getTarget());
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Change branches to Jump actions so they branch directly to the place
+     * the Jump goes.
+     *
+     * @param nodes the list of nodes.
+     * @return true if any branches were changed.
+     */
+    private boolean threadJumps(final List<Node> nodes) {
+        boolean changed = false;
+        final Set<Node> visited = new HashSet<Node>();
+
+        for (final Node node : nodes) {
+            if (node.isBranch()) {
+                visited.clear();
+                visited.add(node);
+                Node target = node.getTarget();
+
+                while (target.isJump() && visited.add(target)) {
+                    target = target.getTarget();
+                }
+                if (target != node.getTarget() && !visited.contains(target)) {
+                    node.setTarget(target);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Remove actions that can never be executed. End actions are never
+     * removed.
+     *
+     * @param nodes the list of nodes.
+     * @return true if any actions were removed.
+     */
+    private boolean removeUnreachable(final List<Node> nodes) {
+        final Set<Node> reached = new HashSet<Node>();
+        final List<Node> pending = new ArrayList<Node>();
+
+        Node.number(nodes);
+        pending.add(nodes.get(0));
+
+        while (!pending.isEmpty()) {
+            final Node node = pending.remove(pending.size() - 1);
+            if (reached.add(node)) {
+                if (!node.isTerminal()) {
+                    pending.add(nodes.get(node.getIndex() + 1));
+                }
+                if (node.isBranch()) {
+                    pending.add(node.getTarget());
+                }
+            }
+        }
+
+        boolean changed = false;
+        for (int i = nodes.size() - 2; i >= 0; i--) {
+            final Node node = nodes.get(i);
+            if (!reached.contains(node)
+                    && node.getAction() != BasicAction.END) {
+                nodes.remove(i);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Remove Jump actions that branch to the following action. If actions
+     * that branch to the following action are replaced by a Pop so the
+     * value tested is still removed from the stack.
+     *
+     * @param nodes the list of nodes.
+     * @return true if any actions were changed.
+     */
+    private boolean removeEmptyBranches(final List<Node> nodes) {
+        boolean changed = false;
+        for (int i = 0; i < nodes.size() - 1; i++) {
+            final Node node = nodes.get(i);
+            if (node.isBranch() && node.getTarget() == nodes.get(i + 1)) {
+                if (node.isJump()) {
+                    Node.remove(nodes, i--);
+                } else {
+                    node.setAction(BasicAction.POP);
+                    node.setTarget(null);
+                }
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Merge adjacent Push actions.
+     *
+     * @param nodes the list of nodes.
+     * @return true if any actions were merged.
+     */
+    private boolean mergePushes(final List<Node> nodes) {
+        boolean changed = false;
+        final Set<Node> targets = targets(nodes);
+
+        for (int i = 0; i < nodes.size() - 2; i++) {
+            final Node node = nodes.get(i);
+            final Node next = nodes.get(i + 1);
+
+            if (node.isPush() && next.isPush() && !targets.contains(next)) {
+                final List<Object> values =
+                    new ArrayList<Object>(node.getValues());
+                values.addAll(next.getValues());
+
+                if (new Push(values).prepareToEncode(context)
+                        - Coder.ACTION_HEADER <= MAX_PUSH) {
+                    node.getValues().addAll(next.getValues());
+                    nodes.remove(i + 1);
+                    i--;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Evaluate operations on values that were just pushed onto the stack.
+     *
+     * @param nodes the list of nodes.
+     * @return true if any actions were changed.
+     */
+    private boolean foldConstants(final List<Node> nodes) {
+        boolean changed = false;
+        final Set<Node> targets = targets(nodes);
+
+        for (int i = 1; i < nodes.size() - 1; i++) {
+            final Node push = nodes.get(i - 1);
+            final Node node = nodes.get(i);
+
+            if (!push.isPush() || targets.contains(node)
+                    || !(node.getAction() instanceof BasicAction)) {
+                continue;
+            }
+
+            final List<Object> values = push.getValues();
+            final int size = values.size();
+            final BasicAction operation = (BasicAction) node.getAction();
+            boolean folded = false;
+
+            if (size > 0 && operation == BasicAction.POP) {
+                values.remove(size - 1);
+                folded = true;
+            } else if (size > 0 && operation == BasicAction.LOGICAL_NOT
+                    && values.get(size - 1) instanceof Boolean) {
+                values.set(size - 1, !((Boolean) values.get(size - 1)));
+                folded = true;
+            } else if (size > 1) {
+                final Object result = evaluate(operation,
+                        values.get(size - 2), values.get(size - 1));
+                if (result != null) {
+                    values.remove(size - 1);
+                    values.set(size - 2, result);
+                    folded = true;
+                }
+            }
+
+            if (folded) {
+                nodes.remove(i);
+                if (values.isEmpty() && !targets.contains(push)) {
+                    nodes.remove(i - 1);
+                }
+                i = Math.max(0, i - 2);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Evaluate a binary operation.
+     *
+     * @param operation the operation.
+     * @param left the value pushed first, the left hand operand.
+     * @param right the value pushed last, the right hand operand.
+     * @return the result of the operation or null if the operation could not
+     * be evaluated.
+     */
+    // CHECKSTYLE IGNORE CyclomaticComplexityCheck FOR NEXT 2 LINES
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private Object evaluate(final BasicAction operation, final Object left,
+            final Object right) {
+
+        Object result = null;
+
+        if (left instanceof String && right instanceof String) {
+            if (operation == BasicAction.STRING_ADD) {
+                result = (String) left + (String) right;
+            }
+        } else if (left instanceof Integer && right instanceof Integer) {
+            final int xint = (Integer) left;
+            final int yint = (Integer) right;
+
+            switch (operation) {
+            case BITWISE_AND:
+                result = xint & yint;
+                break;
+            case BITWISE_OR:
+                result = xint | yint;
+                break;
+            case BITWISE_XOR:
+                result = xint ^ yint;
+                break;
+            case SHIFT_LEFT:
+                result = xint << yint;
+                break;
+            case ARITH_SHIFT_RIGHT:
+                result = xint >> yint;
+                break;
+            case SHIFT_RIGHT:
+                result = toNumber((xint >>> yint) & UNSIGNED_MASK);
+                break;
+            default:
+                result = arithmetic(operation, xint, yint);
+                break;
+            }
+        } else if (isNumber(left) && isNumber(right)) {
+            result = arithmetic(operation, ((Number) left).doubleValue(),
+                    ((Number) right).doubleValue());
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate an arithmetic operation. Division or modulo by zero is not
+     * evaluated since the result depends on the version of Flash.
+     *
+     * @param operation the operation.
+     * @param xval the left hand operand.
+     * @param yval the right hand operand.
+     * @return the result of the operation or null if the operation could not
+     * be evaluated.
+     */
+    private Object arithmetic(final BasicAction operation, final double xval,
+            final double yval) {
+        Object result = null;
+
+        switch (operation) {
+        case ADD:
+        case INTEGER_ADD:
+            result = toNumber(xval + yval);
+            break;
+        case SUBTRACT:
+            result = toNumber(xval - yval);
+            break;
+        case MULTIPLY:
+            result = toNumber(xval * yval);
+            break;
+        case DIVIDE:
+            if (yval != 0) {
+                result = toNumber(xval / yval);
+            }
+            break;
+        case MODULO:
+            if (yval != 0) {
+                result = toNumber(xval % yval);
+            }
+            break;
+        default:
+            break;
+        }
+        return result;
+    }
+
+    /**
+     * Is the value pushed onto the stack a number.
+     *
+     * @param value a value from a Push action.
+     * @return true if the value is an Integer or Double.
+     */
+    private boolean isNumber(final Object value) {
+        return value instanceof Integer || value instanceof Double;
+    }
+
+    /**
+     * Convert a number to the most compact value that can be pushed onto the
+     * stack. Whole numbers are pushed as Integers unless they are outside the
+     * range of an int or are negative zero.
+     *
+     * @param value the number.
+     * @return an Integer or Double with the same value.
+     */
+    private Object toNumber(final double value) {
+        Object result;
+        if (value == Math.rint(value) && value >= Integer.MIN_VALUE
+                && value <= Integer.MAX_VALUE
+                && !(value == 0 && Double.doubleToRawLongBits(value) != 0)) {
+            result = Integer.valueOf((int) value);
+        } else {
+            result = Double.valueOf(value);
+        }
+        return result;
+    }
+}
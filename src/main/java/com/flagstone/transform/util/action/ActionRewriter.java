@@ -0,0 +1,296 @@
+/*
+ * ActionRewriter.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.flagstone.transform.CharacterEncoding;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.GetUrl;
+import com.flagstone.transform.action.Push;
+import com.flagstone.transform.action.Table;
+import com.flagstone.transform.coder.Context;
+
+/**
+ * ActionRewriter replaces the URLs and strings in lists of actions.
+ *
+ * <p>The URL mapping is applied to the URL in GetUrl actions. The string
+ * mapping is applied to the strings in Push actions and the entries in
+ * Tables. Since GetUrl2 takes the URL from the stack, URLs loaded using
+ * GetUrl2 are replaced by the string mapping. Functions, With blocks and
+ * exception handlers are rewritten along with the list that contains them.
+ * </p>
+ *
+ * <p>The offsets for If and Jump actions are recalculated when the size of
+ * an action changes. If the offsets cannot be calculated, because a branch
+ * does not end on an action or the new offset is out of range, then the list
+ * of actions is not changed.</p>
+ *
+ * <pre>
+ * ActionRewriter rewriter = new ActionRewriter();
+ *
+ * rewriter.setUrlMapping(new StringMapping() {
+ *     public String map(final String url) {
+ *         return url.replace("http://old.example.com", "https://example.com");
+ *     }
+ * });
+ * rewriter.rewrite(movie);
+ * </pre>
+ */
+public final class ActionRewriter {
+
+    /** The Context used to calculate the size of encoded actions. */
+    private final transient Context context;
+    /** The mapping for URLs, or null if they are not changed. */
+    private transient StringMapping urls;
+    /** The mapping for strings, or null if they are not changed. */
+    private transient StringMapping strings;
+    /** Set when a list of actions is changed. */
+    private transient boolean changed;
+    /** The filter used to rewrite the actions in a movie or a block. */
+    private final transient ActionFilter filter = new ActionFilter() {
+        public List<Action> filter(final List<Action> actions) {
+            return rewriteList(actions);
+        }
+    };
+
+    /**
+     * Create an ActionRewriter. Strings are assumed to be encoded using
+     * UTF-8.
+     */
+    public ActionRewriter() {
+        context = new Context();
+    }
+
+    /**
+     * Set the character encoding used for strings so the length of encoded
+     * actions can be calculated. The encoding should be the same as the one
+     * used for the movie.
+     *
+     * @param encoding the character encoding used for strings.
+     */
+    public void setEncoding(final CharacterEncoding encoding) {
+        context.setEncoding(encoding.getEncoding());
+    }
+
+    /**
+     * Set the mapping used to replace the URLs in GetUrl actions.
+     *
+     * @param mapping the mapping for URLs or null if URLs are not changed.
+     */
+    public void setUrlMapping(final StringMapping mapping) {
+        urls = mapping;
+    }
+
+    /**
+     * Set the mapping used to replace the strings in Push actions and Tables.
+     *
+     * @param mapping the mapping for strings or null if strings are not
+     * changed.
+     */
+    public void setStringMapping(final StringMapping mapping) {
+        strings = mapping;
+    }
+
+    /**
+     * Rewrite all the actions in a movie. The actions in DoAction,
+     * InitializeMovieClip, DefineButton and DefineButton2 objects, the event
+     * handlers for movie clips placed with Place2 and Place3 and the
+     * actions in movie clips are all replaced.
+     *
+     * @param movie the Movie containing the actions.
+     * @return true if any actions were changed, false otherwise.
+     */
+    public boolean rewrite(final Movie movie) {
+        changed = false;
+        Actions.filter(movie.getObjects(), filter);
+        return changed;
+    }
+
+    /**
+     * Rewrite the actions in an object from a movie. The object is only
+     * changed if it contains actions, either directly or in event handlers.
+     * The actions in all the objects in a movie clip are also rewritten.
+     *
+     * @param tag the object containing the actions.
+     * @return true if any actions were changed, false otherwise.
+     */
+    public boolean rewrite(final MovieTag tag) {
+        changed = false;
+        Actions.filter(Collections.singletonList(tag), filter);
+        return changed;
+    }
+
+    /**
+     * Rewrite a list of actions.
+     *
+     * @param actions the list of actions.
+     * @return a new list containing the rewritten actions or the original
+     * list if no actions were changed.
+     */
+    public List<Action> rewrite(final List<Action> actions) {
+        changed = false;
+        return rewriteList(actions);
+    }
+
+    /**
+     * Rewrite a list of actions and recalculate the offsets for branches.
+     *
+     * @param actions the list of actions.
+     * @return a new list containing the rewritten actions or the original
+     * list if no actions were changed.
+     */
+    private List<Action> rewriteList(final List<Action> actions) {
+        final List<Action> replaced = new ArrayList<Action>(actions.size());
+        boolean modified = false;
+
+        for (final Action action : actions) {
+            final Action result = rewriteAction(action);
+            modified |= result != action;
+            replaced.add(result);
+        }
+
+        List<Action> list = actions;
+
+        if (modified) {
+            final List<Node> nodes = Node.resolve(actions, context);
+
+            if (nodes != null) {
+                for (int i = 0; i < replaced.size(); i++) {
+                    nodes.get(i).setAction(replaced.get(i));
+                }
+                final List<Action> result = Node.generate(nodes, context);
+                if (result != null) {
+                    list = result;
+                    changed = true;
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Rewrite an action.
+     *
+     * @param action the action.
+     * @return a new action or the original action if it was not changed.
+     */
+    private Action rewriteAction(final Action action) {
+        Action result = action;
+
+        if (action instanceof Push) {
+            result = rewritePush((Push) action);
+        } else if (action instanceof GetUrl) {
+            final GetUrl getUrl = (GetUrl) action;
+            final String url = map(urls, getUrl.getUrl());
+            if (!url.equals(getUrl.getUrl())) {
+                result = new GetUrl(url, getUrl.getTarget());
+            }
+        } else if (action instanceof Table) {
+            final List<String> values = new ArrayList<String>();
+            boolean modified = false;
+            for (final String value : ((Table) action).getValues()) {
+                final String str = map(strings, value);
+                modified |= !str.equals(value);
+                values.add(str);
+            }
+            if (modified) {
+                result = new Table(values);
+            }
+        } else if (!Actions.blocks(action).isEmpty()) {
+            final boolean outer = changed;
+            changed = false;
+            final Action block = Actions.filterBlock(action, filter);
+            if (changed) {
+                result = block;
+            }
+            changed = outer;
+        }
+        return result;
+    }
+
+    /**
+     * Rewrite the strings in a Push action.
+     *
+     * @param push the Push action.
+     * @return a new Push action or the original action if no strings were
+     * changed.
+     */
+    private Push rewritePush(final Push push) {
+        Push result = push;
+
+        if (strings != null) {
+            List<Object> values = null;
+
+            for (int i = 0; i < push.size(); i++) {
+                if (push.getType(i) == Push.Type.STRING) {
+                    final String value = push.getString(i);
+                    final String str = map(strings, value);
+                    if (!str.equals(value)) {
+                        if (values == null) {
+                            values = push.getValues();
+                        }
+                        values.set(i, str);
+                    }
+                }
+            }
+            if (values != null) {
+                result = new Push(values);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Apply a mapping to a string.
+     *
+     * @param mapping the mapping, may be null.
+     * @param value the string.
+     * @return the replacement or the original string if the mapping is null
+     * or returns null.
+     */
+    private String map(final StringMapping mapping, final String value) {
+        String result = value;
+        if (mapping != null) {
+            result = mapping.map(value);
+            if (result == null) {
+                result = value;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Actions.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.flagstone.transform.DoAction;
+import com.flagstone.transform.EventHandler;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.Place3;
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.ExceptionHandler;
+import com.flagstone.transform.action.NewFunction;
+import com.flagstone.transform.action.NewFunction2;
+import com.flagstone.transform.action.With;
+import com.flagstone.transform.button.DefineButton;
+import com.flagstone.transform.button.DefineButton2;
+import com.flagstone.transform.movieclip.DefineMovieClip;
+import com.flagstone.transform.movieclip.InitializeMovieClip;
+
+/**
+ * Actions contains the methods used to find the lists of actions in a movie
+ * and to replace the actions contained in functions, With blocks and
+ * exception handlers.
+ */
+final class Actions {
+
+    /**
+     * Apply a filter to the actions contained in a list of objects from a
+     * movie or movie clip. The actions in DoAction, InitializeMovieClip,
+     * DefineButton and DefineButton2 objects, the event handlers for movie
+     * clips placed with Place2 and Place3 and the actions in movie clips are
+     * all replaced by the filtered versions.
+     *
+     * @param tags the list of objects.
+     * @param filter the filter applied to each list of actions.
+     */
+    static void filter(final List<MovieTag> tags, final ActionFilter filter) {
+        for (final MovieTag tag : tags) {
+            if (tag instanceof DoAction) {
+                final DoAction doAction = (DoAction) tag;
+                doAction.setActions(filter.filter(doAction.getActions()));
+            } else if (tag instanceof InitializeMovieClip) {
+                final InitializeMovieClip init = (InitializeMovieClip) tag;
+                init.setActions(filter.filter(init.getActions()));
+            } else if (tag instanceof DefineButton) {
+                final DefineButton button = (DefineButton) tag;
+                button.setActions(filter.filter(button.getActions()));
+            } else if (tag instanceof DefineButton2) {
+                filterEvents(((DefineButton2) tag).getEvents(), filter);
+            } else if (tag instanceof Place2) {
+                filterEvents(((Place2) tag).getEvents(), filter);
+            } else if (tag instanceof Place3) {
+                filterEvents(((Place3) tag).getEvents(), filter);
+            } else if (tag instanceof DefineMovieClip) {
+                filter(((DefineMovieClip) tag).getObjects(), filter);
+            }
+        }
+    }
+
+    /**
+     * Apply a filter to the actions in a list of event handlers.
+     *
+     * @param events the list of event handlers, may be null.
+     * @param filter the filter applied to each list of actions.
+     */
+    private static void filterEvents(final List<EventHandler> events,
+            final ActionFilter filter) {
+        if (events != null) {
+            for (final EventHandler event : events) {
+                event.setActions(filter.filter(event.getActions()));
+            }
+        }
+    }
+
+    /**
+     * Apply a filter to the actions in a function, With block or exception
+     * handler. The registers allocated for a function defined with
+     * NewFunction2 are not changed.
+     *
+     * @param action an action.
+     * @param filter the filter applied to each list of actions.
+     * @return a new action containing the filtered actions or the original
+     * action if it does not contain any actions.
+     */
+    static Action filterBlock(final Action action, final ActionFilter filter) {
+        Action result = action;
+
+        if (action instanceof NewFunction2) {
+            final NewFunction2 function = (NewFunction2) action;
+            result = function(function, filter.filter(function.getActions()),
+                    function.getRegisterCount());
+        } else if (action instanceof NewFunction) {
+            final NewFunction function = (NewFunction) action;
+            result = new NewFunction(function.getName(),
+                    function.getArguments(),
+                    filter.filter(function.getActions()));
+        } else if (action instanceof With) {
+            result = new With(filter.filter(((With) action).getActions()));
+        } else if (action instanceof ExceptionHandler) {
+            final ExceptionHandler handler = (ExceptionHandler) action;
+            final ExceptionHandler.Builder builder =
+                new ExceptionHandler.Builder();
+
+            if (handler.getRegister() == 0
+                    && handler.getVariable().length() > 0) {
+                builder.setVariable(handler.getVariable());
+            } else {
+                builder.setRegister(handler.getRegister());
+            }
+            for (final Action item : filter.filter(handler.getTryActions())) {
+                builder.addToTry(item);
+            }
+            for (final Action item
+                    : filter.filter(handler.getCatchActions())) {
+                builder.addToCatch(item);
+            }
+            for (final Action item
+                    : filter.filter(handler.getFinalActions())) {
+                builder.addToFinal(item);
+            }
+            result = builder.build();
+        }
+        return result;
+    }
+
+    /**
+     * Get the lists of actions contained in a function, With block or
+     * exception handler.
+     *
+     * @param action an action.
+     * @return the lists of actions contained in the action. The list is empty
+     * if the action does not contain any actions.
+     */
+    static List<List<Action>> blocks(final Action action) {
+        final List<List<Action>> list = new ArrayList<List<Action>>();
+
+        if (action instanceof NewFunction2) {
+            list.add(((NewFunction2) action).getActions());
+        } else if (action instanceof NewFunction) {
+            list.add(((NewFunction) action).getActions());
+        } else if (action instanceof With) {
+            list.add(((With) action).getActions());
+        } else if (action instanceof ExceptionHandler) {
+            final ExceptionHandler handler = (ExceptionHandler) action;
+            list.add(handler.getTryActions());
+            list.add(handler.getCatchActions());
+            list.add(handler.getFinalActions());
+        }
+        return list;
+    }
+
+    /**
+     * Create a copy of a function defined with NewFunction2 with a new list
+     * of actions.
+     *
+     * @param function the function definition.
+     * @param actions the actions executed by the function.
+     * @param registers the number of registers allocated for the function.
+     * @return the new function definition.
+     */
+    static NewFunction2 function(final NewFunction2 function,
+            final List<Action> actions, final int registers) {
+        final NewFunction2.Builder builder = new NewFunction2.Builder();
+
+        if (function.getName().length() > 0) {
+            builder.setName(function.getName());
+        }
+        builder.allocate(registers);
+
+        for (final NewFunction2.Optimization opt
+                : function.getOptimizations()) {
+            builder.optimize(opt);
+        }
+        for (final Map.Entry<String, Integer> arg
+                : function.getArguments().entrySet()) {
+            builder.addArgument(arg.getKey(), arg.getValue());
+        }
+        for (final Action action : actions) {
+            builder.addAction(action);
+        }
+        return builder.build();
+    }
+
+    /** Private constructor. */
+    private Actions() {
+        // Class only contains static methods
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * BasicBlock.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.flagstone.transform.action.Action;
+
+/**
+ * BasicBlock is a sequence of actions in a ControlFlowGraph that is always
+ * executed from the first action to the last. Only the first action can be
+ * the target of a branch and only the last action can branch or end the
+ * execution of the list of actions.
+ *
+ * <p>Each block has at most two successors: the block that follows it in
+ * the list, which is executed when the last action is not a Jump, Return,
+ * Throw or End, and the block that execution branches to when the last action
+ * is an If, Jump, WaitForFrame or WaitForFrame2. The successor is the exit
+ * block if execution leaves the list of actions.</p>
+ *
+ * @see ControlFlowGraph
+ */
+public final class BasicBlock {
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "BasicBlock: { index=%d; start=%d;"
+            + " end=%d; offset=%d; length=%d}";
+
+    /** The position of the block in the graph. */
+    private final transient int index;
+    /** The actions in the block. */
+    private final transient List<Action> actions;
+    /** The position of the first action in the list of actions. */
+    private final transient int start;
+    /** The position of the action following the block. */
+    private final transient int end;
+    /** The byte offset of the first action. */
+    private final transient int offset;
+    /** The number of bytes used to encode the actions in the block. */
+    private final transient int length;
+    /** The block executed when the last action does not branch. */
+    private transient BasicBlock next;
+    /** The block executed when the last action branches. */
+    private transient BasicBlock branch;
+    /** The blocks that are executed before this one. */
+    private final transient List<BasicBlock> predecessors;
+
+    /**
+     * Create a BasicBlock.
+     *
+     * @param position the position of the block in the graph.
+     * @param list the actions in the block.
+     * @param first the position of the first action in the list of actions.
+     * @param byteOffset the byte offset of the first action.
+     * @param size the number of bytes used to encode the actions.
+     */
+    BasicBlock(final int position, final List<Action> list, final int first,
+            final int byteOffset, final int size) {
+        index = position;
+        actions = Collections.unmodifiableList(list);
+        start = first;
+        end = first + list.size();
+        offset = byteOffset;
+        length = size;
+        predecessors = new ArrayList<BasicBlock>();
+    }
+
+    /**
+     * Get the position of the block in the graph.
+     *
+     * @return the index of the block in the list of blocks.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the position of the first action in the block.
+     *
+     * @return the index of the first action in the list of actions.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Get the position of the action following the last action in the block.
+     *
+     * @return the index of the action that follows the block.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Get the byte offset of the first action in the block, from the start
+     * of the list of actions.
+     *
+     * @return the offset in bytes of the first action.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the number of bytes used to encode the actions in the block.
+     *
+     * @return the length of the encoded actions.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the actions in the block.
+     *
+     * @return an unmodifiable list of the actions.
+     */
+    public List<Action> getActions() {
+        return actions;
+    }
+
+    /**
+     * Is this the block that represents execution leaving the list of
+     * actions. The exit block does not contain any actions.
+     *
+     * @return true if this is the exit block.
+     */
+    public boolean isExit() {
+        return actions.isEmpty();
+    }
+
+    /**
+     * Get the block that is executed next when the last action in the block
+     * does not branch.
+     *
+     * @return the following block or null if the last action is a Jump,
+     * Return, Throw or End, or this is the exit block.
+     */
+    public BasicBlock getNext() {
+        return next;
+    }
+
+    /**
+     * Get the block that is executed when the last action in the block
+     * branches: the target of an If or Jump or the block executed when a
+     * WaitForFrame or WaitForFrame2 skips actions.
+     *
+     * @return the target block or null if the last action does not branch.
+     */
+    public BasicBlock getBranch() {
+        return branch;
+    }
+
+    /**
+     * Get the blocks that can be executed after this one.
+     *
+     * @return the list of the following blocks, with the block that is
+     * executed when the last action does not branch first.
+     */
+    public List<BasicBlock> getSuccessors() {
+        final List<BasicBlock> list = new ArrayList<BasicBlock>(2);
+        if (next != null) {
+            list.add(next);
+        }
+        if (branch != null && branch != next) {
+            list.add(branch);
+        }
+        return list;
+    }
+
+    /**
+     * Get the blocks that can be executed immediately before this one.
+     *
+     * @return an unmodifiable list of the preceding blocks.
+     */
+    public List<BasicBlock> getPredecessors() {
+        return Collections.unmodifiableList(predecessors);
+    }
+
+    /**
+     * Set the successors of the block.
+     *
+     * @param following the block executed when the last action does not
+     * branch, may be null.
+     * @param target the block executed when the last action branches, may
+     * be null.
+     */
+    void link(final BasicBlock following, final BasicBlock target) {
+        next = following;
+        branch = target;
+
+        for (final BasicBlock block : getSuccessors()) {
+            block.predecessors.add(this);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return String.format(FORMAT, index, start, end, offset, length);
+    }
+}
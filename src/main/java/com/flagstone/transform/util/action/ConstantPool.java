@@ -0,0 +1,433 @@
+/*
+ * ConstantPool.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.flagstone.transform.CharacterEncoding;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.Push;
+import com.flagstone.transform.action.Table;
+import com.flagstone.transform.action.TableIndex;
+import com.flagstone.transform.coder.Context;
+
+/**
+ * ConstantPool builds the table of strings (Table) for a list of actions and
+ * replaces the strings in Push actions by references (TableIndex) to the
+ * entries in the table.
+ *
+ * <p>The strings pushed in the list of actions and in any functions, With
+ * blocks and exception handlers it contains are counted. Strings are added to
+ * the table in order of frequency, so the most frequently used strings are
+ * referenced using a single byte index, as long as replacing them by a
+ * reference reduces the size of the encoded actions. Only the first 256
+ * entries in the table can be referenced using a single byte, all other
+ * entries use a two-byte index. The offsets for If and Jump actions are
+ * recalculated after the actions are changed.</p>
+ *
+ * <p>Any existing table must be the first action in the list. It is replaced
+ * by the new table, or removed if inlining every string is smaller. The list
+ * of actions is not changed if it contains a table in any other position or
+ * references entries in a table that is not defined, or if a branch does not
+ * end on an action.</p>
+ *
+ * <p>Tables were added in Flash 5 so the actions in a movie should only be
+ * processed if they are played in Flash Player 5 or later.</p>
+ */
+public final class ConstantPool {
+
+    /** The highest table entry referenced using a single byte. */
+    private static final int LAST_BYTE_INDEX = 255;
+    /** The length of a Push value referencing a table entry with a byte. */
+    private static final int LENGTH_INDEX = 2;
+    /** The length of a Push value referencing a table entry with a short. */
+    private static final int LENGTH_LONG_INDEX = 3;
+    /** The length of the field containing the number of table entries. */
+    private static final int LENGTH_COUNT = 2;
+    /** The maximum length of the encoded entries in a table. */
+    private static final int MAX_LENGTH = 65535;
+
+    /** The Context used to calculate the size of encoded actions. */
+    private final transient Context context;
+    /** The filter used to replace the actions in a movie. */
+    private final transient ActionFilter filter = new ActionFilter() {
+        public List<Action> filter(final List<Action> actions) {
+            return optimize(actions);
+        }
+    };
+
+    /**
+     * Create a ConstantPool. Strings are assumed to be encoded using UTF-8.
+     */
+    public ConstantPool() {
+        context = new Context();
+    }
+
+    /**
+     * Set the character encoding used for strings so the length of encoded
+     * actions can be calculated. The encoding should be the same as the one
+     * used for the movie.
+     *
+     * @param encoding the character encoding used for strings.
+     */
+    public void setEncoding(final CharacterEncoding encoding) {
+        context.setEncoding(encoding.getEncoding());
+    }
+
+    /**
+     * Build the tables for all the actions in a movie. The actions in
+     * DoAction, InitializeMovieClip, DefineButton and DefineButton2 objects,
+     * the event handlers for movie clips placed with Place2 and Place3 and
+     * the actions in movie clips each get their own table.
+     *
+     * @param movie the Movie containing the actions.
+     */
+    public void optimize(final Movie movie) {
+        Actions.filter(movie.getObjects(), filter);
+    }
+
+    /**
+     * Build the table of strings for a list of actions.
+     *
+     * @param actions the list of actions.
+     * @return a new list, starting with the table of strings, where the
+     * strings pushed on the stack are replaced by references to the table, or
+     * the original list if it could not be changed or would not be smaller.
+     */
+    public List<Action> optimize(final List<Action> actions) {
+        List<String> table = null;
+        int first = 0;
+
+        if (!actions.isEmpty() && actions.get(0) instanceof Table) {
+            table = ((Table) actions.get(0)).getValues();
+            first = 1;
+        }
+
+        final Counter counter = new Counter(table);
+        counter.count(actions.subList(first, actions.size()));
+
+        List<Action> result = actions;
+
+        if (counter.isValid() && (table != null || counter.hasStrings())) {
+            final List<String> pool = select(counter.getCounts());
+            final Rewriter rewriter = new Rewriter(table, pool);
+            final List<Action> list = rewriter.rewrite(actions, pool);
+
+            if (list != null && length(list) < length(actions)) {
+                result = list;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Select the strings that will be added to the table. Strings are
+     * added in order of frequency, with strings that are used the same number
+     * of times added in the order they first appear.
+     *
+     * @param counts the table of strings and the number of times each appears.
+     * @return the entries in the table.
+     */
+    private List<String> select(final Map<String, Integer> counts) {
+        final List<Map.Entry<String, Integer>> entries =
+            new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+
+        Collections.sort(entries,
+                new Comparator<Map.Entry<String, Integer>>() {
+                    public int compare(final Map.Entry<String, Integer> first,
+                            final Map.Entry<String, Integer> second) {
+                        return second.getValue().compareTo(first.getValue());
+                    }
+                });
+
+        final List<String> pool = new ArrayList<String>();
+        int length = LENGTH_COUNT;
+
+        for (final Map.Entry<String, Integer> entry : entries) {
+            final int size = context.strlen(entry.getKey());
+            final int index;
+
+            if (pool.size() <= LAST_BYTE_INDEX) {
+                index = LENGTH_INDEX;
+            } else {
+                index = LENGTH_LONG_INDEX;
+            }
+            if (entry.getValue() * (1 + size - index) > size
+                    && length + size <= MAX_LENGTH) {
+                pool.add(entry.getKey());
+                length += size;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Calculate the length of a list of encoded actions.
+     *
+     * @param actions the list of actions.
+     * @return the number of bytes used to encode the actions.
+     */
+    private int length(final List<Action> actions) {
+        int length = 0;
+        for (final Action action : actions) {
+            length += action.prepareToEncode(context);
+        }
+        return length;
+    }
+
+    /**
+     * Counter counts the number of times each string is pushed onto the stack
+     * in a list of actions and the lists of actions it contains.
+     */
+    private final class Counter {
+        /** The existing table of strings, may be null. */
+        private final transient List<String> table;
+        /** The number of times each string is used, in order of appearance. */
+        private final transient Map<String, Integer> counts;
+        /** Set to false if the actions cannot be changed. */
+        private transient boolean valid;
+
+        /**
+         * Create a Counter.
+         *
+         * @param list the existing table of strings, or null if there is no
+         * table.
+         */
+        Counter(final List<String> list) {
+            table = list;
+            counts = new LinkedHashMap<String, Integer>();
+            valid = true;
+        }
+
+        /**
+         * Count the strings in a list of actions.
+         *
+         * @param actions the list of actions.
+         */
+        void count(final List<Action> actions) {
+            if (Node.resolve(actions, context) == null) {
+                valid = false;
+            }
+            for (final Action action : actions) {
+                if (!valid) {
+                    break;
+                }
+                if (action instanceof Push) {
+                    count((Push) action);
+                } else if (action instanceof Table) {
+                    valid = false;
+                } else {
+                    for (final List<Action> block : Actions.blocks(action)) {
+                        count(block);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Count the strings pushed onto the stack by a Push action.
+         *
+         * @param push the Push action.
+         */
+        private void count(final Push push) {
+            for (int i = 0; i < push.size(); i++) {
+                String str = null;
+
+                if (push.getType(i) == Push.Type.STRING) {
+                    str = push.getString(i);
+                } else if (push.getType(i) == Push.Type.TABLE_INDEX) {
+                    final int index = push.getTableIndex(i);
+                    if (table == null || index >= table.size()) {
+                        valid = false;
+                    } else {
+                        str = table.get(index);
+                    }
+                }
+                if (str != null) {
+                    final Integer count = counts.get(str);
+                    if (count == null) {
+                        counts.put(str, 1);
+                    } else {
+                        counts.put(str, count + 1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Can the actions be changed.
+         *
+         * @return true if all branches end on an action and all references
+         * to a table are defined.
+         */
+        boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * Are any strings pushed onto the stack.
+         *
+         * @return true if at least one string is used.
+         */
+        boolean hasStrings() {
+            return !counts.isEmpty();
+        }
+
+        /**
+         * Get the number of times each string is used.
+         *
+         * @return the table of strings, in order of appearance, and the
+         * number of times each one is used.
+         */
+        Map<String, Integer> getCounts() {
+            return counts;
+        }
+    }
+
+    /**
+     * Rewriter replaces the strings and references to the existing table in
+     * Push actions with references to the new table.
+     */
+    private final class Rewriter implements ActionFilter {
+        /** The existing table of strings, may be null. */
+        private final transient List<String> table;
+        /** The index of each string in the new table. */
+        private final transient Map<String, Integer> indices;
+        /** Set to true if the offset for a branch is out of range. */
+        private transient boolean failed;
+
+        /**
+         * Create a Rewriter.
+         *
+         * @param list the existing table of strings, or null if there is no
+         * table.
+         * @param pool the new table of strings.
+         */
+        Rewriter(final List<String> list, final List<String> pool) {
+            table = list;
+            indices = new HashMap<String, Integer>();
+            for (int i = 0; i < pool.size(); i++) {
+                indices.put(pool.get(i), i);
+            }
+        }
+
+        /**
+         * Replace the table and the strings in the top-level list of actions.
+         *
+         * @param actions the list of actions.
+         * @param pool the new table of strings.
+         * @return the new list of actions or null if the list could not be
+         * generated.
+         */
+        List<Action> rewrite(final List<Action> actions,
+                final List<String> pool) {
+            final List<Node> nodes = Node.resolve(actions, context);
+            final boolean hasTable = actions.get(0) instanceof Table;
+
+            if (pool.isEmpty()) {
+                if (hasTable) {
+                    Node.remove(nodes, 0);
+                }
+            } else if (hasTable) {
+                nodes.get(0).setAction(new Table(pool));
+            } else {
+                nodes.add(0, new Node(new Table(pool)));
+            }
+            final List<Action> list = rewrite(nodes);
+            return failed ? null : list;
+        }
+
+        /** {@inheritDoc} */
+        public List<Action> filter(final List<Action> actions) {
+            return rewrite(Node.resolve(actions, context));
+        }
+
+        /**
+         * Replace the strings in a list of nodes.
+         *
+         * @param nodes the list of nodes.
+         * @return the new list of actions.
+         */
+        private List<Action> rewrite(final List<Node> nodes) {
+            for (final Node node : nodes) {
+                if (node.isPush()) {
+                    final List<Object> values = node.getValues();
+                    for (int i = 0; i < values.size(); i++) {
+                        values.set(i, replace(values.get(i)));
+                    }
+                } else if (!node.isEnd() && !(node.getAction()
+                        instanceof Table)) {
+                    node.setAction(Actions.filterBlock(node.getAction(),
+                            this));
+                }
+            }
+            List<Action> list = Node.generate(nodes, context);
+            if (list == null) {
+                failed = true;
+                list = new ArrayList<Action>();
+            }
+            return list;
+        }
+
+        /**
+         * Replace a value pushed onto the stack.
+         *
+         * @param value the value.
+         * @return a reference to the new table if the value is a string in the
+         * table, the string if the value references a string that is not in
+         * the new table, otherwise the original value.
+         */
+        private Object replace(final Object value) {
+            Object result = value;
+            String str = null;
+
+            if (value instanceof String) {
+                str = (String) value;
+            } else if (value instanceof TableIndex) {
+                str = table.get(((TableIndex) value).getIndex());
+                result = str;
+            }
+            if (str != null && indices.containsKey(str)) {
+                result = new TableIndex(indices.get(str));
+            }
+            return result;
+        }
+    }
+}
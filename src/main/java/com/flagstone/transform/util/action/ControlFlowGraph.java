@@ -0,0 +1,376 @@
+/*
+ * ControlFlowGraph.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.flagstone.transform.CharacterEncoding;
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.ExceptionHandler;
+import com.flagstone.transform.action.If;
+import com.flagstone.transform.action.Jump;
+import com.flagstone.transform.action.NewFunction;
+import com.flagstone.transform.action.NewFunction2;
+import com.flagstone.transform.action.WaitForFrame;
+import com.flagstone.transform.action.WaitForFrame2;
+import com.flagstone.transform.action.With;
+import com.flagstone.transform.coder.Context;
+
+/**
+ * ControlFlowGraph divides a list of actions into basic blocks and links
+ * each block to the blocks that can be executed after it.
+ *
+ * <p>The byte offset of each action is calculated from the size of the
+ * encoded actions so the offsets in If and Jump actions can be resolved to
+ * the block that execution branches to. The number of actions skipped by
+ * WaitForFrame and WaitForFrame2 are resolved in the same way. Execution
+ * that leaves the list of actions, either by running past the last action or
+ * by branching to the end of the list, goes to an exit block which does not
+ * contain any actions.</p>
+ *
+ * <p>The actions contained in functions, With blocks and exception handlers
+ * are analysed as separate graphs and are available as a list of Regions.</p>
+ *
+ * <p>The graph is built in time proportional to the number of actions. Each
+ * action is sized once for every level of functions, With blocks or
+ * exception handlers that contain it.</p>
+ */
+public final class ControlFlowGraph {
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "ControlFlowGraph: { blocks=%s;"
+            + " regions=%s}";
+
+    /** The list of actions. */
+    private final transient List<Action> actions;
+    /** The byte offset of each action and the end of the list. */
+    private final transient int[] offsets;
+    /** The block that contains each action. */
+    private final transient BasicBlock[] owners;
+    /** The basic blocks in order of their first action. */
+    private final transient List<BasicBlock> blocks;
+    /** The block that represents execution leaving the list of actions. */
+    private final transient BasicBlock exit;
+    /** The lists of actions contained in the actions. */
+    private final transient List<Region> regions;
+
+    /**
+     * Create the graph for a list of actions. Strings are assumed to be
+     * encoded using UTF-8.
+     *
+     * @param list the list of actions.
+     */
+    public ControlFlowGraph(final List<Action> list) {
+        this(list, CharacterEncoding.UTF8);
+    }
+
+    /**
+     * Create the graph for a list of actions.
+     *
+     * @param list the list of actions.
+     * @param encoding the character encoding used for strings, so the size
+     * of the encoded actions can be calculated.
+     *
+     * @throws IllegalArgumentException if the offset in an If or Jump action
+     * does not branch to the start of an action or the end of the list.
+     */
+    public ControlFlowGraph(final List<Action> list,
+            final CharacterEncoding encoding) {
+        final Context context = new Context();
+        context.setEncoding(encoding.getEncoding());
+
+        actions = Collections.unmodifiableList(new ArrayList<Action>(list));
+        offsets = new int[actions.size() + 1];
+        owners = new BasicBlock[actions.size()];
+        blocks = new ArrayList<BasicBlock>();
+        regions = new ArrayList<Region>();
+
+        final int[] targets = new int[actions.size()];
+        final boolean[] leaders = findLeaders(context, targets);
+        exit = createBlocks(leaders);
+        linkBlocks(targets);
+        findRegions(encoding);
+    }
+
+    /**
+     * Calculate the offset of each action and find the actions that start
+     * a basic block.
+     *
+     * @param context the Context used to calculate the size of each action.
+     * @param targets the array used to return the position of the action that
+     * each branch goes to.
+     * @return an array which is true for each action that starts a block.
+     */
+    // CHECKSTYLE IGNORE CyclomaticComplexityCheck FOR NEXT 2 LINES
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private boolean[] findLeaders(final Context context, final int[] targets) {
+        final int count = actions.size();
+
+        for (int i = 0; i < count; i++) {
+            offsets[i + 1] = offsets[i] + actions.get(i)
+                    .prepareToEncode(context);
+        }
+
+        final int length = offsets[count];
+        final int[] lookup = new int[length + 1];
+        Arrays.fill(lookup, -1);
+        for (int i = 0; i <= count; i++) {
+            lookup[offsets[i]] = i;
+        }
+
+        final boolean[] leaders = new boolean[count + 1];
+        leaders[0] = true;
+        leaders[count] = true;
+
+        Arrays.fill(targets, -1);
+
+        for (int i = 0; i < count; i++) {
+            final Action action = actions.get(i);
+            int offset = -1;
+            int skip = -1;
+
+            if (action instanceof If) {
+                offset = offsets[i + 1] + ((If) action).getOffset();
+            } else if (action instanceof Jump) {
+                offset = offsets[i + 1] + ((Jump) action).getOffset();
+            } else if (action instanceof WaitForFrame) {
+                skip = ((WaitForFrame) action).getActionCount();
+            } else if (action instanceof WaitForFrame2) {
+                skip = ((WaitForFrame2) action).getActionCount();
+            } else if (action == BasicAction.RETURN
+                    || action == BasicAction.THROW
+                    || action == BasicAction.END) {
+                leaders[i + 1] = true;
+                continue;
+            } else {
+                continue;
+            }
+
+            if (skip >= 0) {
+                targets[i] = Math.min(i + 1 + skip, count);
+            } else if (offset >= 0 && offset <= length
+                    && lookup[offset] >= 0) {
+                targets[i] = lookup[offset];
+            } else {
+                throw new IllegalArgumentException(
+                        "Branch does not end on an action: " + offset);
+            }
+            leaders[targets[i]] = true;
+            leaders[i + 1] = true;
+        }
+        return leaders;
+    }
+
+    /**
+     * Create the basic blocks.
+     *
+     * @param leaders an array which is true for each action that starts a
+     * block.
+     * @return the exit block.
+     */
+    private BasicBlock createBlocks(final boolean[] leaders) {
+        final int count = actions.size();
+        int start = 0;
+
+        for (int i = 1; i <= count; i++) {
+            if (leaders[i]) {
+                final BasicBlock block = new BasicBlock(blocks.size(),
+                        actions.subList(start, i), start, offsets[start],
+                        offsets[i] - offsets[start]);
+                blocks.add(block);
+                Arrays.fill(owners, start, i, block);
+                start = i;
+            }
+        }
+        return new BasicBlock(blocks.size(), actions.subList(count, count),
+                count, offsets[count], 0);
+    }
+
+    /**
+     * Link each block to the blocks that can be executed after it.
+     *
+     * @param targets the position of the action that each branch goes to,
+     * or -1 if the action does not branch.
+     */
+    private void linkBlocks(final int[] targets) {
+        for (final BasicBlock block : blocks) {
+            final int last = block.getEnd() - 1;
+            final Action action = actions.get(last);
+            final BasicBlock following = getBlock(block.getEnd());
+            BasicBlock next = null;
+            BasicBlock branch = null;
+
+            if (targets[last] >= 0) {
+                branch = getBlock(targets[last]);
+            }
+            if (!(action instanceof Jump
+                    || action == BasicAction.RETURN
+                    || action == BasicAction.THROW
+                    || action == BasicAction.END)) {
+                next = following;
+            }
+            block.link(next, branch);
+        }
+    }
+
+    /**
+     * Create the graphs for the actions contained in functions, With blocks
+     * and exception handlers.
+     *
+     * @param encoding the character encoding used for strings.
+     */
+    private void findRegions(final CharacterEncoding encoding) {
+        for (int i = 0; i < actions.size(); i++) {
+            final Action action = actions.get(i);
+
+            if (action instanceof NewFunction2) {
+                addRegion(Region.Type.FUNCTION, i,
+                        ((NewFunction2) action).getActions(), encoding);
+            } else if (action instanceof NewFunction) {
+                addRegion(Region.Type.FUNCTION, i,
+                        ((NewFunction) action).getActions(), encoding);
+            } else if (action instanceof With) {
+                addRegion(Region.Type.WITH, i,
+                        ((With) action).getActions(), encoding);
+            } else if (action instanceof ExceptionHandler) {
+                final ExceptionHandler handler = (ExceptionHandler) action;
+                addRegion(Region.Type.TRY, i, handler.getTryActions(),
+                        encoding);
+                if (!handler.getCatchActions().isEmpty()) {
+                    addRegion(Region.Type.CATCH, i,
+                            handler.getCatchActions(), encoding);
+                }
+                if (!handler.getFinalActions().isEmpty()) {
+                    addRegion(Region.Type.FINALLY, i,
+                            handler.getFinalActions(), encoding);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a region.
+     *
+     * @param type the type of region.
+     * @param index the position of the action containing the region.
+     * @param list the actions in the region.
+     * @param encoding the character encoding used for strings.
+     */
+    private void addRegion(final Region.Type type, final int index,
+            final List<Action> list, final CharacterEncoding encoding) {
+        regions.add(new Region(type, index,
+                new ControlFlowGraph(list, encoding)));
+    }
+
+    /**
+     * Get the list of actions.
+     *
+     * @return an unmodifiable copy of the list of actions.
+     */
+    public List<Action> getActions() {
+        return actions;
+    }
+
+    /**
+     * Get the byte offset of an action from the start of the list.
+     *
+     * @param index the position of the action in the list. The size of the
+     * list may be used to get the number of bytes used to encode all the
+     * actions.
+     * @return the offset in bytes of the action.
+     */
+    public int getOffset(final int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Get the basic blocks, in the order of the actions they contain. The
+     * exit block is not included.
+     *
+     * @return an unmodifiable list of the blocks.
+     */
+    public List<BasicBlock> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * Get the block where execution starts.
+     *
+     * @return the first block or the exit block if the list of actions is
+     * empty.
+     */
+    public BasicBlock getEntry() {
+        return blocks.isEmpty() ? exit : blocks.get(0);
+    }
+
+    /**
+     * Get the block that represents execution leaving the list of actions.
+     *
+     * @return the exit block.
+     */
+    public BasicBlock getExit() {
+        return exit;
+    }
+
+    /**
+     * Get the block that contains an action.
+     *
+     * @param index the position of the action in the list. The size of the
+     * list returns the exit block.
+     * @return the block containing the action.
+     */
+    public BasicBlock getBlock(final int index) {
+        return index == owners.length ? exit : owners[index];
+    }
+
+    /**
+     * Get the regions for the actions contained in functions, With blocks
+     * and exception handlers.
+     *
+     * @return an unmodifiable list of the regions in the order of the actions
+     * that contain them.
+     */
+    public List<Region> getRegions() {
+        return Collections.unmodifiableList(regions);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return String.format(FORMAT, blocks, regions);
+    }
+}
@@ -0,0 +1,660 @@
+/*
+ * LocalVariables.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.Call;
+import com.flagstone.transform.action.GetUrl;
+import com.flagstone.transform.action.GetUrl2;
+import com.flagstone.transform.action.GotoFrame;
+import com.flagstone.transform.action.GotoFrame2;
+import com.flagstone.transform.action.GotoLabel;
+import com.flagstone.transform.action.If;
+import com.flagstone.transform.action.NewFunction2;
+import com.flagstone.transform.action.RegisterCopy;
+import com.flagstone.transform.action.RegisterIndex;
+import com.flagstone.transform.action.SetTarget;
+
+/**
+ * LocalVariables moves the local variables defined in a NewFunction2 into the
+ * Flash Player's internal registers. Reading and writing a register is much
+ * faster than looking up a variable by name and the function body is smaller
+ * since the name of the variable is no longer pushed onto the stack.
+ *
+ * <p>The values pushed onto the stack are traced through each basic block to
+ * find the names used by GetVariable, SetVariable and the actions that define
+ * local variables. A variable is only moved to a register when:</p>
+ *
+ * <ul>
+ * <li>the name of every variable accessed in the function is known, so it
+ * cannot be accessed using a name that is calculated when the function is
+ * executed;</li>
+ * <li>the function does not contain nested functions, With blocks or
+ * exception handlers which could also access the variable;</li>
+ * <li>the variable is declared before it is used and before the first
+ * branch in the function;</li>
+ * <li>the value of the variable is read immediately after its name is pushed
+ * onto the stack;</li>
+ * <li>the variable is not deleted or called as a function.</li>
+ * </ul>
+ */
+final class LocalVariables {
+
+    /** The highest register number. */
+    private static final int LAST_REGISTER = 255;
+
+    /** Access type for a variable read using GetVariable. */
+    private static final int READ = 0;
+    /** Access type for a variable set using SetVariable. */
+    private static final int WRITE = 1;
+    /** Access type for a local variable declared and set. */
+    private static final int DEFINE = 2;
+    /** Access type for a local variable that is only declared. */
+    private static final int DECLARE = 3;
+    /** Access type that prevents a variable being moved to a register. */
+    private static final int OTHER = 4;
+
+    /** Marker for values that are removed from a Push action. */
+    private static final Object REMOVED = new Object();
+
+    /** Names of predefined variables that are never moved. */
+    private static final Set<String> RESERVED = new HashSet<String>();
+
+    /** Number of values popped and pushed by actions with fixed arity. */
+    private static final Map<BasicAction, int[]> ARITY =
+        new EnumMap<BasicAction, int[]>(BasicAction.class);
+
+    static {
+        RESERVED.add("this");
+        RESERVED.add("arguments");
+        RESERVED.add("super");
+        RESERVED.add("_root");
+        RESERVED.add("_parent");
+        RESERVED.add("_global");
+
+        final BasicAction[] none = {
+            BasicAction.NEXT_FRAME, BasicAction.PREV_FRAME, BasicAction.PLAY,
+            BasicAction.STOP, BasicAction.TOGGLE_QUALITY,
+            BasicAction.STOP_SOUNDS, BasicAction.END_DRAG };
+        final BasicAction[] unary = {
+            BasicAction.LOGICAL_NOT, BasicAction.STRING_LENGTH,
+            BasicAction.MB_STRING_LENGTH, BasicAction.TO_INTEGER,
+            BasicAction.CHAR_TO_ASCII, BasicAction.ASCII_TO_CHAR,
+            BasicAction.MB_CHAR_TO_ASCII, BasicAction.MB_ASCII_TO_CHAR,
+            BasicAction.RANDOM_NUMBER, BasicAction.TO_NUMBER,
+            BasicAction.TO_STRING, BasicAction.GET_TYPE,
+            BasicAction.GET_TARGET, BasicAction.INCREMENT,
+            BasicAction.DECREMENT };
+        final BasicAction[] binary = {
+            BasicAction.INTEGER_ADD, BasicAction.SUBTRACT,
+            BasicAction.MULTIPLY, BasicAction.DIVIDE,
+            BasicAction.INTEGER_EQUALS, BasicAction.INTEGER_LESS,
+            BasicAction.LOGICAL_AND, BasicAction.LOGICAL_OR,
+            BasicAction.STRING_EQUALS, BasicAction.STRING_ADD,
+            BasicAction.STRING_LESS, BasicAction.STRING_GREATER,
+            BasicAction.ADD, BasicAction.LESS, BasicAction.EQUALS,
+            BasicAction.MODULO, BasicAction.BITWISE_AND,
+            BasicAction.BITWISE_OR, BasicAction.BITWISE_XOR,
+            BasicAction.SHIFT_LEFT, BasicAction.ARITH_SHIFT_RIGHT,
+            BasicAction.SHIFT_RIGHT, BasicAction.STRICT_EQUALS,
+            BasicAction.GREATER, BasicAction.INSTANCEOF, BasicAction.CAST,
+            BasicAction.GET_PROPERTY, BasicAction.GET_ATTRIBUTE,
+            BasicAction.DELETE_VARIABLE };
+
+        for (final BasicAction action : none) {
+            ARITY.put(action, new int[] {0, 0});
+        }
+        for (final BasicAction action : unary) {
+            ARITY.put(action, new int[] {1, 1});
+        }
+        for (final BasicAction action : binary) {
+            ARITY.put(action, new int[] {2, 1});
+        }
+        ARITY.put(BasicAction.GET_TIME, new int[] {0, 1});
+        ARITY.put(BasicAction.POP, new int[] {1, 0});
+        ARITY.put(BasicAction.SET_TARGET_2, new int[] {1, 0});
+        ARITY.put(BasicAction.REMOVE_SPRITE, new int[] {1, 0});
+        ARITY.put(BasicAction.TRACE, new int[] {1, 0});
+        ARITY.put(BasicAction.THROW, new int[] {1, 0});
+        ARITY.put(BasicAction.RETURN, new int[] {1, 0});
+        ARITY.put(BasicAction.EXTENDS, new int[] {2, 0});
+        ARITY.put(BasicAction.SET_PROPERTY, new int[] {3, 0});
+        ARITY.put(BasicAction.CLONE_SPRITE, new int[] {3, 0});
+        ARITY.put(BasicAction.SET_ATTRIBUTE, new int[] {3, 0});
+        ARITY.put(BasicAction.STRING_EXTRACT, new int[] {3, 1});
+        ARITY.put(BasicAction.MB_STRING_EXTRACT, new int[] {3, 1});
+    }
+
+    /**
+     * Slot represents a value on the stack that was pushed by a Push action.
+     */
+    private static final class Slot {
+        /** The Push action. */
+        private final transient Node push;
+        /** The position of the value in the Push action. */
+        private final transient int index;
+        /** Whether the value was copied, using Duplicate or StoreRegister. */
+        private transient boolean shared;
+
+        /**
+         * Create a Slot for a value pushed on the stack.
+         * @param node the Push action.
+         * @param position the position of the value in the Push action.
+         */
+        Slot(final Node node, final int position) {
+            push = node;
+            index = position;
+        }
+
+        /**
+         * Get the value pushed onto the stack.
+         * @return the value from the Push action.
+         */
+        Object getValue() {
+            return push.getValues().get(index);
+        }
+    }
+
+    /**
+     * Access records where a variable is used.
+     */
+    private static final class Access {
+        /** The type of access. */
+        private final transient int type;
+        /** The value on the stack that contains the name of the variable. */
+        private final transient Slot name;
+        /** The action that accesses the variable. */
+        private final transient Node node;
+
+        /**
+         * Create an Access.
+         * @param accessType the type of access.
+         * @param slot the value containing the variable name.
+         * @param action the node for the action that accesses the variable.
+         */
+        Access(final int accessType, final Slot slot, final Node action) {
+            type = accessType;
+            name = slot;
+            node = action;
+        }
+    }
+
+    /** The function being optimised. */
+    private final transient NewFunction2 function;
+    /** The number of registers allocated by the function. */
+    private transient int registerCount;
+    /** The accesses for each variable, in the order they appear. */
+    private final transient Map<String, List<Access>> accesses;
+    /** The values on the stack. Null entries are unknown values. */
+    private final transient List<Slot> stack;
+    /** The actions that store a value in a register. */
+    private final transient Set<Node> stores;
+
+    /**
+     * Create a LocalVariables object for a function.
+     *
+     * @param definition the function definition.
+     */
+    LocalVariables(final NewFunction2 definition) {
+        function = definition;
+        registerCount = definition.getRegisterCount();
+        accesses = new LinkedHashMap<String, List<Access>>();
+        stack = new ArrayList<Slot>();
+        stores = new HashSet<Node>();
+    }
+
+    /**
+     * Get the number of registers to allocate for the function, including
+     * any registers allocated to local variables.
+     *
+     * @return the number of registers used by the function.
+     */
+    int getRegisterCount() {
+        return registerCount;
+    }
+
+    /**
+     * Move local variables into registers.
+     *
+     * @param nodes the function body.
+     * @return true if any variables were moved.
+     */
+    boolean promote(final List<Node> nodes) {
+        boolean changed = false;
+
+        accesses.clear();
+        stores.clear();
+
+        if (analyse(nodes)) {
+            Node.number(nodes);
+            int register = firstFreeRegister(nodes);
+            final int firstBranch = firstBranch(nodes);
+            final Set<Node> targets = new HashSet<Node>();
+
+            for (final Node node : nodes) {
+                if (node.isBranch()) {
+                    targets.add(node.getTarget());
+                }
+            }
+
+            for (final Map.Entry<String, List<Access>> entry
+                    : accesses.entrySet()) {
+                if (register >= LAST_REGISTER) {
+                    break;
+                }
+                if (canPromote(entry.getKey(), entry.getValue(), targets,
+                        firstBranch)) {
+                    rewrite(entry.getValue(), register++);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                registerCount = Math.max(registerCount, register);
+                removeMarked(nodes, targets);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Trace the values on the stack to find where each variable is used.
+     *
+     * @param nodes the function body.
+     * @return false if a variable is accessed using a name that is not known
+     * or the function contains actions that prevent variables being moved.
+     */
+    // CHECKSTYLE IGNORE CyclomaticComplexityCheck FOR NEXT 2 LINES
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private boolean analyse(final List<Node> nodes) {
+        final Set<Node> targets = new HashSet<Node>();
+        for (final Node node : nodes) {
+            if (node.isBranch()) {
+                targets.add(node.getTarget());
+            }
+        }
+
+        boolean known = true;
+        boolean blockEnd = false;
+
+        for (final Node node : nodes) {
+            if (!known || node.isEnd()) {
+                break;
+            }
+            if (blockEnd || targets.contains(node)) {
+                stack.clear();
+            }
+            blockEnd = node.isTerminal() || node.isBranch();
+
+            final Action action = node.getAction();
+
+            if (node.isPush()) {
+                final int count = node.getValues().size();
+                for (int i = 0; i < count; i++) {
+                    stack.add(new Slot(node, i));
+                }
+            } else if (action instanceof If) {
+                pop();
+            } else if (node.isJump() || action instanceof GotoFrame
+                    || action instanceof GotoLabel || action instanceof GetUrl
+                    || action instanceof SetTarget) {
+                continue;
+            } else if (action instanceof GotoFrame2 || action instanceof Call) {
+                pop();
+            } else if (action instanceof GetUrl2) {
+                pop();
+                pop();
+            } else if (action instanceof RegisterCopy) {
+                share();
+            } else if (action instanceof BasicAction) {
+                known = execute((BasicAction) action, node);
+            } else {
+                known = false;
+            }
+        }
+        stack.clear();
+        return known;
+    }
+
+    /**
+     * Update the stack for a basic action and record any variable accesses.
+     *
+     * @param action the action.
+     * @param node the node containing the action.
+     * @return false if a variable is accessed using a name that is not known.
+     */
+    // CHECKSTYLE IGNORE CyclomaticComplexityCheck FOR NEXT 2 LINES
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private boolean execute(final BasicAction action, final Node node) {
+        boolean known = true;
+        Slot top;
+
+        switch (action) {
+        case GET_VARIABLE:
+            known = access(READ, pop(), node);
+            stack.add(null);
+            break;
+        case SET_VARIABLE:
+            pop();
+            known = access(WRITE, pop(), node);
+            break;
+        case INIT_VARIABLE:
+            pop();
+            known = access(DEFINE, pop(), node);
+            break;
+        case NEW_VARIABLE:
+            known = access(DECLARE, pop(), node);
+            break;
+        case DELETE:
+            known = access(OTHER, pop(), node);
+            stack.add(null);
+            break;
+        case EXECUTE_FUNCTION:
+        case NAMED_OBJECT:
+            known = access(OTHER, pop(), node);
+            call(pop(), 1);
+            break;
+        case EXECUTE_METHOD:
+        case NEW_METHOD:
+            pop();
+            pop();
+            call(pop(), 1);
+            break;
+        case NEW_ARRAY:
+            call(pop(), 1);
+            break;
+        case NEW_OBJECT:
+            call(pop(), 2);
+            break;
+        case DUPLICATE:
+            top = share();
+            stack.add(top);
+            break;
+        case SWAP:
+            top = pop();
+            final Slot next = pop();
+            stack.add(top);
+            stack.add(next);
+            break;
+        default:
+            final int[] arity = ARITY.get(action);
+            if (arity == null) {
+                stack.clear();
+            } else {
+                for (int i = 0; i < arity[0]; i++) {
+                    pop();
+                }
+                for (int i = 0; i < arity[1]; i++) {
+                    stack.add(null);
+                }
+            }
+            break;
+        }
+        return known;
+    }
+
+    /**
+     * Remove the arguments for a function or method call from the stack and
+     * push the result.
+     *
+     * @param count the value containing the number of arguments.
+     * @param size the number of values on the stack for each argument.
+     */
+    private void call(final Slot count, final int size) {
+        final Object value = count == null ? null : count.getValue();
+
+        if (value instanceof Integer && (Integer) value >= 0) {
+            for (int i = 0; i < (Integer) value * size; i++) {
+                pop();
+            }
+            stack.add(null);
+        } else {
+            stack.clear();
+        }
+    }
+
+    /**
+     * Pop a value off the stack.
+     *
+     * @return the value or null if the value is not known.
+     */
+    private Slot pop() {
+        Slot slot = null;
+        if (!stack.isEmpty()) {
+            slot = stack.remove(stack.size() - 1);
+        }
+        return slot;
+    }
+
+    /**
+     * Mark the value on the top of the stack as being copied.
+     *
+     * @return the value or null if the value is not known.
+     */
+    private Slot share() {
+        Slot slot = null;
+        if (!stack.isEmpty()) {
+            slot = stack.get(stack.size() - 1);
+        }
+        if (slot != null) {
+            slot.shared = true;
+        }
+        return slot;
+    }
+
+    /**
+     * Record an access to a variable.
+     *
+     * @param type the type of access.
+     * @param name the value containing the name of the variable.
+     * @param node the node containing the action that accesses the variable.
+     * @return false if the name of the variable is not known.
+     */
+    private boolean access(final int type, final Slot name, final Node node) {
+        boolean known = false;
+
+        if (name != null && name.getValue() instanceof String) {
+            final String key = (String) name.getValue();
+            List<Access> list = accesses.get(key);
+            if (list == null) {
+                list = new ArrayList<Access>();
+                accesses.put(key, list);
+            }
+            list.add(new Access(type, name, node));
+            known = true;
+        }
+        return known;
+    }
+
+    /**
+     * Find the first register that is not used by the function.
+     *
+     * @param nodes the function body.
+     * @return the number of the first free register.
+     */
+    private int firstFreeRegister(final List<Node> nodes) {
+        int next = Math.max(1, registerCount);
+
+        int preloaded = 1;
+        for (final NewFunction2.Optimization opt
+                : function.getOptimizations()) {
+            if (opt.name().startsWith("LOAD_")) {
+                preloaded++;
+            }
+        }
+        next = Math.max(next, preloaded);
+
+        for (final Integer index : function.getArguments().values()) {
+            next = Math.max(next, index + 1);
+        }
+
+        for (final Node node : nodes) {
+            if (node.isPush()) {
+                for (final Object value : node.getValues()) {
+                    if (value instanceof RegisterIndex) {
+                        next = Math.max(next,
+                                ((RegisterIndex) value).getNumber() + 1);
+                    }
+                }
+            } else if (node.getAction() instanceof RegisterCopy) {
+                next = Math.max(next,
+                        ((RegisterCopy) node.getAction()).getNumber() + 1);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Find the position of the first If or Jump action.
+     *
+     * @param nodes the function body.
+     * @return the position of the first branch or the size of the list if
+     * there are no branches.
+     */
+    private int firstBranch(final List<Node> nodes) {
+        int index = nodes.size();
+        for (final Node node : nodes) {
+            if (node.isBranch()) {
+                index = node.getIndex();
+                break;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Can a variable be moved to a register.
+     *
+     * @param name the name of the variable.
+     * @param list the accesses to the variable, in the order they appear.
+     * @param targets the set of nodes that are the target of a branch.
+     * @param firstBranch the position of the first branch in the function.
+     * @return true if the variable can be moved.
+     */
+    private boolean canPromote(final String name, final List<Access> list,
+            final Set<Node> targets, final int firstBranch) {
+
+        boolean valid = name.length() > 0 && !RESERVED.contains(name)
+                && name.indexOf(':') == -1 && name.indexOf('/') == -1
+                && name.indexOf('.') == -1
+                && !function.getArguments().containsKey(name);
+
+        final Access first = list.get(0);
+
+        if (valid) {
+            valid = (first.type == DEFINE || first.type == DECLARE)
+                && first.node.getIndex() < firstBranch;
+        }
+
+        for (int i = 0; valid && i < list.size(); i++) {
+            final Access access = list.get(i);
+
+            if (access.type == OTHER || access.name.shared
+                    || access.node.getIndex() < first.node.getIndex()) {
+                valid = false;
+            } else if (access.type == READ) {
+                final List<Object> values = access.name.push.getValues();
+                valid = !targets.contains(access.node)
+                    && access.name.push.getIndex()
+                        == access.node.getIndex() - 1
+                    && access.name.index == values.size() - 1;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Replace the accesses to a variable with accesses to a register.
+     *
+     * @param list the accesses to the variable.
+     * @param register the number of the register.
+     */
+    private void rewrite(final List<Access> list, final int register) {
+        for (final Access access : list) {
+            final List<Object> values = access.name.push.getValues();
+
+            switch (access.type) {
+            case READ:
+                values.set(access.name.index, new RegisterIndex(register));
+                access.node.setAction(null);
+                break;
+            case WRITE:
+            case DEFINE:
+                values.set(access.name.index, REMOVED);
+                access.node.setAction(new RegisterCopy(register));
+                stores.add(access.node);
+                break;
+            default:
+                values.set(access.name.index, REMOVED);
+                access.node.setAction(null);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Remove the values and actions marked by rewrite() and add the Pop
+     * actions that follow the actions which store a value in a register.
+     *
+     * @param nodes the function body.
+     * @param targets the set of nodes that are the target of a branch.
+     */
+    private void removeMarked(final List<Node> nodes,
+            final Set<Node> targets) {
+        for (int i = 0; i < nodes.size() - 1; i++) {
+            final Node node = nodes.get(i);
+
+            if (node.isPush()) {
+                final List<Object> values = node.getValues();
+                while (values.remove(REMOVED)) {
+                    continue;
+                }
+                if (values.isEmpty() && !targets.contains(node)) {
+                    nodes.remove(i--);
+                }
+            } else if (node.getAction() == null) {
+                Node.remove(nodes, i--);
+            } else if (stores.contains(node)) {
+                nodes.add(++i, new Node(BasicAction.POP));
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Node.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.If;
+import com.flagstone.transform.action.Jump;
+import com.flagstone.transform.action.Push;
+import com.flagstone.transform.coder.Context;
+
+/**
+ * Node holds an action while a list of actions is being analysed or
+ * transformed. Branches refer to the Node they jump to rather than a byte
+ * offset so actions can be added, removed or changed in size and the offsets
+ * are only calculated when the list of actions is generated again. The values
+ * in a Push action are held in a list that can be edited directly.
+ */
+final class Node {
+
+    /** The length of an encoded If or Jump action. */
+    private static final int BRANCH_LENGTH = 5;
+    /** The smallest offset for a branch. */
+    private static final int MIN_OFFSET = -32768;
+    /** The largest offset for a branch. */
+    private static final int MAX_OFFSET = 32767;
+
+    /** The action, or null if the Node marks the end of the list. */
+    private transient Action action;
+    /** The values for a Push action, null for all other actions. */
+    private transient List<Object> values;
+    /** The Node an If or Jump action branches to. */
+    private transient Node target;
+    /** The position of the node in the list. */
+    private transient int index;
+
+    /**
+     * Create a Node for an action.
+     *
+     * @param anAction the action. If null the Node marks the end of the list.
+     */
+    Node(final Action anAction) {
+        setAction(anAction);
+    }
+
+    /**
+     * Create the list of nodes for a list of actions, with the byte offsets
+     * in If and Jump actions replaced by references to the target node.
+     *
+     * @param actions the list of actions.
+     * @param context the Context used to calculate the size of each action.
+     * @return the list of nodes, ending with a node that marks the end of the
+     * list, or null if a branch does not end on an action.
+     */
+    static List<Node> resolve(final List<Action> actions,
+            final Context context) {
+        final List<Node> nodes = new ArrayList<Node>(actions.size() + 1);
+        final Map<Integer, Node> table = new HashMap<Integer, Node>();
+        final int[] ends = new int[actions.size()];
+
+        int offset = 0;
+        int index = 0;
+
+        for (final Action action : actions) {
+            final Node node = new Node(action);
+            table.put(offset, node);
+            nodes.add(node);
+            offset += action.prepareToEncode(context);
+            ends[index++] = offset;
+        }
+        final Node end = new Node(null);
+        table.put(offset, end);
+        nodes.add(end);
+
+        List<Node> result = nodes;
+
+        for (int i = 0; i < ends.length; i++) {
+            final Action action = actions.get(i);
+            Node target = null;
+
+            if (action instanceof If) {
+                target = table.get(ends[i] + ((If) action).getOffset());
+            } else if (action instanceof Jump) {
+                target = table.get(ends[i] + ((Jump) action).getOffset());
+            } else {
+                continue;
+            }
+            if (target == null) {
+                result = null;
+                break;
+            }
+            nodes.get(i).setTarget(target);
+        }
+        return result;
+    }
+
+    /**
+     * Generate the list of actions from a list of nodes, calculating the
+     * offsets for If and Jump actions.
+     *
+     * @param nodes the list of nodes.
+     * @param context the Context used to calculate the size of each action.
+     * @return the list of actions or null if the offset for a branch is out
+     * of range.
+     */
+    static List<Action> generate(final List<Node> nodes,
+            final Context context) {
+        final int count = nodes.size();
+        final Action[] actions = new Action[count];
+        final int[] offsets = new int[count];
+
+        Node.number(nodes);
+
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            final Node node = nodes.get(i);
+            offsets[i] = offset;
+            if (node.isBranch()) {
+                offset += BRANCH_LENGTH;
+            } else if (!node.isEnd()) {
+                actions[i] = node.toAction();
+                offset += actions[i].prepareToEncode(context);
+            }
+        }
+
+        List<Action> list = new ArrayList<Action>(count - 1);
+
+        for (int i = 0; i < count - 1; i++) {
+            final Node node = nodes.get(i);
+            if (node.isBranch()) {
+                final int jump = offsets[node.getTarget().getIndex()]
+                        - offsets[i] - BRANCH_LENGTH;
+                if (jump < MIN_OFFSET || jump > MAX_OFFSET) {
+                    list = null;
+                    break;
+                }
+                if (node.isJump()) {
+                    list.add(new Jump(jump));
+                } else {
+                    list.add(new If(jump));
+                }
+            } else {
+                list.add(actions[i]);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Remove a node from a list. Any branches to the node are moved to the
+     * node that follows it.
+     *
+     * @param nodes the list of nodes. The last node marks the end of the
+     * list and is never removed.
+     * @param position the position of the node to remove.
+     */
+    static void remove(final List<Node> nodes, final int position) {
+        final Node removed = nodes.remove(position);
+        final Node next = nodes.get(position);
+
+        for (final Node node : nodes) {
+            if (node.target == removed) {
+                node.target = next;
+            }
+        }
+    }
+
+    /**
+     * Number the nodes in a list so the position of a node can be found.
+     *
+     * @param nodes the list of nodes.
+     */
+    static void number(final List<Node> nodes) {
+        final int count = nodes.size();
+        for (int i = 0; i < count; i++) {
+            nodes.get(i).index = i;
+        }
+    }
+
+    /**
+     * Get the action. For If and Jump actions the offset is not updated as
+     * the list is transformed.
+     *
+     * @return the action or null if the Node marks the end of the list.
+     */
+    Action getAction() {
+        return action;
+    }
+
+    /**
+     * Set the action. Push actions are expanded into a list of values. The
+     * target of a branch is not changed.
+     *
+     * @param anAction the action.
+     */
+    void setAction(final Action anAction) {
+        action = anAction;
+
+        if (anAction instanceof Push) {
+            values = ((Push) anAction).getValues();
+        } else {
+            values = null;
+        }
+    }
+
+    /**
+     * Get the values pushed onto the stack by a Push action.
+     *
+     * @return the list of values or null if the action is not a Push.
+     */
+    List<Object> getValues() {
+        return values;
+    }
+
+    /**
+     * Get the node that an If or Jump action branches to.
+     *
+     * @return the target of the branch or null if the node is not a branch.
+     */
+    Node getTarget() {
+        return target;
+    }
+
+    /**
+     * Set the node that an If or Jump action branches to.
+     *
+     * @param node the target of the branch.
+     */
+    void setTarget(final Node node) {
+        target = node;
+    }
+
+    /**
+     * Get the position of the node in the list, set using number().
+     *
+     * @return the position of the node.
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Is the node a Push action.
+     *
+     * @return true if the action pushes values onto the stack.
+     */
+    boolean isPush() {
+        return values != null;
+    }
+
+    /**
+     * Is the node an If or Jump action.
+     *
+     * @return true if the action branches to another node.
+     */
+    boolean isBranch() {
+        return action instanceof If || action instanceof Jump;
+    }
+
+    /**
+     * Is the node a Jump action.
+     *
+     * @return true if the action always branches to another node.
+     */
+    boolean isJump() {
+        return action instanceof Jump;
+    }
+
+    /**
+     * Is the node the marker for the end of the list.
+     *
+     * @return true if the node follows the last action.
+     */
+    boolean isEnd() {
+        return action == null;
+    }
+
+    /**
+     * Does execution never continue with the following action.
+     *
+     * @return true if the action is a Jump, Return, Throw or End action or
+     * marks the end of the list.
+     */
+    boolean isTerminal() {
+        return action == null || action instanceof Jump
+                || action == BasicAction.RETURN
+                || action == BasicAction.THROW
+                || action == BasicAction.END;
+    }
+
+    /**
+     * Generate the action for the node. If and Jump actions are generated
+     * separately once the offsets are known.
+     *
+     * @return the action represented by the node.
+     */
+    Action toAction() {
+        Action result;
+        if (values == null) {
+            result = action;
+        } else {
+            result = new Push(values);
+        }
+        return result;
+    }
+}
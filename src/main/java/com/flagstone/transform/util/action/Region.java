@@ -0,0 +1,118 @@
+/*
+ * Region.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+/**
+ * Region describes a list of actions contained in another action: the body
+ * of a function, a With block or the try, catch and finally blocks of an
+ * exception handler. The actions in a region are analysed as a separate
+ * ControlFlowGraph since branches cannot leave the region.
+ *
+ * @see ControlFlowGraph
+ */
+public final class Region {
+
+    /** The types of region. */
+    public enum Type {
+        /** The actions executed by a NewFunction or NewFunction2. */
+        FUNCTION,
+        /** The actions executed by a With action. */
+        WITH,
+        /** The actions in the try block of an exception handler. */
+        TRY,
+        /** The actions in the catch block of an exception handler. */
+        CATCH,
+        /** The actions in the finally block of an exception handler. */
+        FINALLY;
+    }
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "Region: { type=%s; index=%d;"
+            + " graph=%s}";
+
+    /** The type of region. */
+    private final transient Type type;
+    /** The position of the action that contains the region. */
+    private final transient int index;
+    /** The graph for the actions in the region. */
+    private final transient ControlFlowGraph graph;
+
+    /**
+     * Create a Region.
+     *
+     * @param regionType the type of region.
+     * @param position the position of the action containing the region in
+     * the list of actions.
+     * @param regionGraph the graph for the actions in the region.
+     */
+    Region(final Type regionType, final int position,
+            final ControlFlowGraph regionGraph) {
+        type = regionType;
+        index = position;
+        graph = regionGraph;
+    }
+
+    /**
+     * Get the type of region.
+     *
+     * @return the type of the region.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the position of the action that contains the region.
+     *
+     * @return the index of the NewFunction, NewFunction2, With or
+     * ExceptionHandler action in the list of actions.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the graph for the actions in the region.
+     *
+     * @return the control flow graph for the actions.
+     */
+    public ControlFlowGraph getGraph() {
+        return graph;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return String.format(FORMAT, type, index, graph);
+    }
+}
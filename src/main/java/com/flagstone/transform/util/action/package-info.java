@@ -0,0 +1,5 @@
+/**
+ * The action package contains classes that analyse and transform the lists of
+ * actions executed by the Flash Player.
+ */
+package com.flagstone.transform.util.action;
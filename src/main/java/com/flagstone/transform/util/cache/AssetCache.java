@@ -0,0 +1,301 @@
+/*
+ * AssetCache.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>
+ * AssetCache stores decoded fonts, images and sounds in a directory so they
+ * can be loaded quickly when a program starts rather than being decoded from
+ * the original files again. The FontFactory, ImageFactory and SoundFactory
+ * use the cache when one is set and the asset is read from a file.
+ * </p>
+ *
+ * <p>
+ * Each asset is stored in its own file, named using the SHA-1 digest of the
+ * contents of the original file and the type of asset, so an entry is used
+ * for any copy of the same file and a file that changes is decoded again.
+ * Entries start with a short header containing the version number of the
+ * format. Entries written by a different version are ignored and replaced
+ * when the asset is decoded again. Entries are memory-mapped when they are
+ * read and are written to a temporary file which is then renamed so several
+ * processes may share the same directory.
+ * </p>
+ */
+public final class AssetCache {
+
+    /** The version number of the format used to store the assets. */
+    public static final int FORMAT_VERSION = 2;
+
+    /** The signature identifying files written by the cache: "TFAC". */
+    private static final int MAGIC = 0x43414654;
+    /** The number of bytes in the header of each entry. */
+    private static final int HEADER_LENGTH = 12;
+    /** The algorithm used to identify the contents of files. */
+    private static final String DIGEST = "SHA-1";
+    /** The characters used to format a digest. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /** The number of bits in a nibble. */
+    private static final int NIBBLE = 4;
+    /** Mask for the lower nibble of a byte. */
+    private static final int NIBBLE_MASK = 0x0F;
+    /** The size of the buffer used to read files. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "AssetCache: { directory=%s}";
+
+    /**
+     * BufferStream is used to read the contents of a memory-mapped entry.
+     */
+    private static final class BufferStream extends InputStream {
+        /** The contents of the entry. */
+        private final transient ByteBuffer buffer;
+
+        /**
+         * Create a BufferStream.
+         * @param bytes the buffer containing the contents of the entry.
+         */
+        BufferStream(final ByteBuffer bytes) {
+            super();
+            buffer = bytes;
+        }
+
+        @Override
+        public int read() {
+            int value;
+            if (buffer.hasRemaining()) {
+                value = buffer.get() & 0xFF;
+            } else {
+                value = -1;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset,
+                final int length) {
+            int count;
+            if (buffer.hasRemaining()) {
+                count = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, count);
+            } else {
+                count = -1;
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /** The directory containing the entries. */
+    private final transient File directory;
+
+    /**
+     * Create an AssetCache that stores the entries in a directory. The
+     * directory is created if it does not exist.
+     *
+     * @param dir the directory used to store the cached assets.
+     * @throws IOException if the directory cannot be created.
+     */
+    public AssetCache(final File dir) throws IOException {
+        if (dir == null) {
+            throw new IllegalArgumentException();
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory: " + dir);
+        }
+        directory = dir;
+    }
+
+    /**
+     * Get the directory containing the entries.
+     *
+     * @return the directory used to store the cached assets.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Generate the key identifying the contents of a file.
+     *
+     * @param file the file containing the asset.
+     * @return the SHA-1 digest of the contents of the file as a string of
+     * hexadecimal digits.
+     * @throws IOException if there is an error reading the file.
+     */
+    @SuppressWarnings("PMD.AssignmentInOperand")
+    public static String key(final File file) throws IOException {
+        final MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance(DIGEST);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            stream.close();
+        }
+
+        final byte[] bytes = digest.digest();
+        final char[] chars = new char[bytes.length * 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> NIBBLE) & NIBBLE_MASK];
+            chars[i * 2 + 1] = HEX[bytes[i] & NIBBLE_MASK];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Read an entry from the cache.
+     *
+     * @param key the key identifying the contents of the original file.
+     * @param type the type of asset, e.g. "font".
+     * @return a stream used to read the stored asset or null if the asset is
+     * not in the cache or was stored using a different format.
+     * @throws IOException if there is an error reading the entry.
+     */
+    public InputStream get(final String key, final String type)
+            throws IOException {
+        final File file = entry(key, type);
+        InputStream stream = null;
+
+        if (file.length() >= HEADER_LENGTH) {
+            final MappedByteBuffer buffer;
+            final RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = input.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            } finally {
+                input.close();
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() == MAGIC
+                    && buffer.getInt() == FORMAT_VERSION
+                    && buffer.getInt() == buffer.remaining()) {
+                stream = new BufferStream(buffer.slice());
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * Add an entry to the cache, replacing any existing entry.
+     *
+     * @param key the key identifying the contents of the original file.
+     * @param type the type of asset, e.g. "font".
+     * @param data the encoded asset.
+     * @throws IOException if there is an error writing the entry.
+     */
+    public void put(final String key, final String type, final byte[] data)
+            throws IOException {
+        final File file = entry(key, type);
+        final File temp = File.createTempFile(key, ".tmp", directory);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(data.length);
+
+        final FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            stream.write(header.array());
+            stream.write(data);
+        } finally {
+            stream.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Cannot write entry: " + file);
+            }
+        }
+    }
+
+    /**
+     * Remove an entry from the cache.
+     *
+     * @param key the key identifying the contents of the original file.
+     * @param type the type of asset, e.g. "font".
+     * @return true if the entry was removed, false if it was not found.
+     */
+    public boolean remove(final String key, final String type) {
+        return entry(key, type).delete();
+    }
+
+    /**
+     * Get the file used to store an entry.
+     *
+     * @param key the key identifying the contents of the original file.
+     * @param type the type of asset.
+     * @return the file containing the entry.
+     */
+    private File entry(final String key, final String type) {
+        return new File(directory, key + "." + type);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT, directory);
+    }
+}
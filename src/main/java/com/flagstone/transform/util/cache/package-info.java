@@ -0,0 +1,5 @@
+/**
+ * The cache package contains classes for storing decoded fonts, images and
+ * sounds so they do not have to be decoded each time a program starts.
+ */
+package com.flagstone.transform.util.cache;
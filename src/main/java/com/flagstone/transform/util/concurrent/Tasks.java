@@ -0,0 +1,115 @@
+/*
+ * Tasks.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.concurrent;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Tasks runs a list of tasks on an ExecutorService and collects the results.
+ * It is used by the classes that divide work, such as decoding glyphs or
+ * drawing the tiles of an image, into tasks that run in parallel so they all
+ * handle failures in the same way:
+ *
+ * <ul>
+ * <li>If any task fails or the calling thread is interrupted then the tasks
+ * that have not completed are cancelled.</li>
+ * <li>RuntimeExceptions, Errors and IOExceptions thrown by a task are
+ * rethrown unchanged. Other checked exceptions are wrapped in an IOException
+ * which contains the original exception as the cause.</li>
+ * <li>If the calling thread is interrupted then the interrupted status is
+ * restored and an InterruptedIOException is thrown.</li>
+ * </ul>
+ *
+ * The executor is not shut down.
+ */
+public final class Tasks {
+
+    /**
+     * Run a list of tasks and wait for them all to complete.
+     *
+     * @param <T> the type of result returned by each task.
+     * @param executor the ExecutorService used to run the tasks.
+     * @param tasks the tasks to run.
+     * @return the results, in the same order as the tasks.
+     * @throws IOException if a task throws an IOException or another checked
+     * exception, or the thread is interrupted while waiting for the tasks to
+     * complete.
+     */
+    public static <T> List<T> run(final ExecutorService executor,
+            final List<? extends Callable<T>> tasks) throws IOException {
+        final List<Future<T>> futures = new ArrayList<Future<T>>(
+                tasks.size());
+        final List<T> results = new ArrayList<T>(tasks.size());
+
+        try {
+            for (final Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (final Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            for (final Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Private constructor.
+     */
+    private Tasks() {
+        // Class only contains static methods
+    }
+}
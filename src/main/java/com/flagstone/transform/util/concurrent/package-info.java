@@ -0,0 +1,5 @@
+/**
+ * The concurrent package contains classes used to divide work into tasks
+ * that run in parallel.
+ */
+package com.flagstone.transform.util.concurrent;
@@ -38,17 +38,31 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.DataFormatException;
 
 import com.flagstone.transform.coder.Coder;
 import com.flagstone.transform.datatype.Bounds;
 import com.flagstone.transform.font.CharacterFormat;
 import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.util.concurrent.Tasks;
 import com.flagstone.transform.util.shape.Canvas;
-
+import com.flagstone.transform.util.text.CharacterSet;
+
 /**
  * AWTDecoder decodes Java AWT Fonts so they can be used in a Flash file.
+ *
+ * <p>By default the outline of every glyph in the font is extracted. Tracing
+ * the outlines is slow for large fonts so the set of characters can be
+ * limited using setCharacters(). The outlines can also be extracted in
+ * parallel by setting an ExecutorService. The characters are divided into
+ * batches which are traced by separate tasks, each with its own
+ * FontRenderContext and Canvas, and the glyphs are added to the font in the
+ * order of their character codes so the decoded font is the same whether
+ * the glyphs were extracted sequentially or in parallel.</p>
  */
 public final class AWTDecoder {
     /** Number of edge points from a PathIterator segment. */
@@ -79,10 +93,130 @@ public final class AWTDecoder {
     private static final int CUBE_ANCHORY = 5;
     /** Size of the EM-Square in twips. */
     private static final float EM_SQUARE_SIZE = 1024.0f;
+    /** The number of characters traced by each task. */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Extractor traces the outlines for a batch of characters.
+     */
+    private static final class Extractor implements Callable<Extractor> {
+        /** The font scaled to the EM square. */
+        private final transient java.awt.Font awtFont;
+        /** The character codes. */
+        private final transient int[] codes;
+        /** The index of the first character in the batch. */
+        private final transient int start;
+        /** The index of the character after the last one in the batch. */
+        private final transient int end;
+
+        /** The outlines of the glyphs. */
+        private final transient Shape[] outlines;
+        /** The advances of the glyphs. */
+        private final transient int[] advances;
+        /** The maximum ascent of the characters. */
+        private transient float ascent;
+        /** The maximum descent of the characters. */
+        private transient float descent;
+        /** The maximum leading of the characters. */
+        private transient float leading;
+
+        /**
+         * Create an Extractor.
+         * @param font the AWT font scaled to the EM square.
+         * @param list the character codes.
+         * @param first the index of the first character in the batch.
+         * @param last the index of the character after the last one.
+         */
+        Extractor(final java.awt.Font font, final int[] list,
+                final int first, final int last) {
+            awtFont = font;
+            codes = list;
+            start = first;
+            end = last;
+            outlines = new Shape[last - first];
+            advances = new int[last - first];
+        }
+
+        /** {@inheritDoc} */
+        public Extractor call() {
+            final FontRenderContext fontContext = new FontRenderContext(
+                    new AffineTransform(), true, true);
+            final Canvas path = new Canvas();
+            final char[] character = new char[1];
+
+            GlyphVector glyphVector;
+
+            for (int i = start; i < end; i++) {
+                character[0] = (char) codes[i];
+
+                glyphVector = awtFont.createGlyphVector(fontContext,
+                        character);
+
+                outlines[i - start] = convertShape(path,
+                        glyphVector.getGlyphOutline(0));
+                advances[i - start] = (int) (glyphVector.getGlyphMetrics(0)
+                        .getAdvance());
+
+                if (!awtFont.hasUniformLineMetrics()) {
+                    final LineMetrics lineMetrics = awtFont.getLineMetrics(
+                            character, 0, 1, fontContext);
+
+                    ascent = Math.max(lineMetrics.getAscent(), ascent);
+                    descent = Math.max(lineMetrics.getDescent(), descent);
+                    leading = Math.max(lineMetrics.getLeading(), leading);
+                }
+            }
+            return this;
+        }
+    }
 
     /** The list of fonts decoded. */
     private final transient List<Font>fonts = new ArrayList<Font>();
 
+    /** The characters to decode, null for all the characters in a font. */
+    private transient CharacterSet characters;
+    /** The executor used to extract glyphs in parallel. */
+    private transient ExecutorService executor;
+
+    /**
+     * Get the set of characters that will be decoded.
+     * @return the set of characters or null if all the glyphs in a font are
+     * decoded.
+     */
+    public CharacterSet getCharacters() {
+        return characters;
+    }
+
+    /**
+     * Set the characters that will be decoded. The glyph for characters that
+     * are not in the set is not extracted and the font will display the
+     * missing glyph instead.
+     * @param set the set of characters. May be null in which case all the
+     * characters that the font can display are decoded.
+     */
+    public void setCharacters(final CharacterSet set) {
+        characters = set;
+    }
+
+    /**
+     * Get the executor used to extract glyphs in parallel.
+     * @return the executor or null if glyphs are extracted sequentially.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the executor used to extract the outlines of glyphs in parallel.
+     * The executor is not shut down by the decoder so it can be shared when
+     * decoding several fonts.
+     * @param service the executor. May be null in which case the glyphs are
+     * extracted sequentially by the thread that calls read().
+     */
+    public void setExecutor(final ExecutorService service) {
+        executor = service;
+    }
+
     /**
      * Decode an AWT Font.
      * @param font an AWT Font object.
@@ -94,7 +228,7 @@ public final class AWTDecoder {
             throws IOException, DataFormatException {
         decode(font);
     }
-
+
     /**
      * Get the list of fonts decoded.
      * @return a list of fonts.
@@ -106,8 +240,10 @@ public final class AWTDecoder {
     /**
      * Decode the AWT font.
      * @param aFont an AWT Font.
+     * @throws IOException if the thread is interrupted while glyphs are
+     * being extracted in parallel.
      */
-    private void decode(final java.awt.Font aFont) {
+    private void decode(final java.awt.Font aFont) throws IOException {
 
         final FontRenderContext fontContext = new FontRenderContext(
                 new AffineTransform(), true, true);
@@ -131,83 +267,138 @@ public final class AWTDecoder {
         awtFont = awtFont.deriveFont(EM_SQUARE_SIZE);
 
         final int missingGlyph = awtFont.getMissingGlyphCode();
-        final int count = awtFont.getNumGlyphs();
+        final int[] codes = displayable(awtFont);
 
+        if (characters == null) {
+            font.setNumberOfGlyphs(awtFont.getNumGlyphs());
+        } else {
+            font.setNumberOfGlyphs(codes.length + 1);
+        }
         font.setMissingGlyph(missingGlyph);
-        font.setNumberOfGlyphs(count);
         font.setHighestChar((char) Coder.USHORT_MAX);
 
-        int index = 0;
-        int code = 0;
-        char character;
-
         // create the glyph for the characters that cannot be displayed
 
-        GlyphVector glyphVector = awtFont.createGlyphVector(fontContext,
+        final GlyphVector glyphVector = awtFont.createGlyphVector(fontContext,
                 new int[] {missingGlyph});
-        java.awt.Shape outline = glyphVector.getGlyphOutline(0);
-        int advance = (int) (glyphVector.getGlyphMetrics(0).getAdvance());
+        final java.awt.Shape outline = glyphVector.getGlyphOutline(0);
+        final int advance = (int) (glyphVector.getGlyphMetrics(0)
+                .getAdvance());
 
-        font.addGlyph((char) missingGlyph, new Glyph(convertShape(outline),
+        font.addGlyph((char) missingGlyph, new Glyph(
+                convertShape(new Canvas(), outline),
                 new Bounds(0, 0, 0, 0), advance));
 
-        index = 1;
-
         float ascent = 0.0f;
         float descent = 0.0f;
         float leading = 0.0f;
 
-        /*
-         * Run through all the unicode character codes looking for a
-         * corresponding glyph.
-         */
-        while ((index < count) && (code < Coder.USHORT_MAX)) {
-            if (awtFont.canDisplay(code)) {
-                character = (char) code;
-
-                glyphVector = awtFont.createGlyphVector(fontContext,
-                        new char[] {character});
+        for (final Extractor batch : extract(awtFont, codes)) {
+            for (int i = batch.start; i < batch.end; i++) {
+                font.addGlyph((char) codes[i], new Glyph(
+                        batch.outlines[i - batch.start],
+                        new Bounds(0, 0, 0, 0),
+                        batch.advances[i - batch.start]));
+            }
+            ascent = Math.max(batch.ascent, ascent);
+            descent = Math.max(batch.descent, descent);
+            leading = Math.max(batch.leading, leading);
+        }
 
-                outline = glyphVector.getGlyphOutline(0);
-                advance = (int) (glyphVector.getGlyphMetrics(0).getAdvance());
+        font.setAscent((int) ascent);
+        font.setDescent((int) descent);
+        font.setLeading((int) leading);
 
-                font.addGlyph(character,  new Glyph(convertShape(outline),
-                        new Bounds(0, 0, 0, 0), advance));
+        fonts.add(font);
+    }
 
-                if (!awtFont.hasUniformLineMetrics()) {
-                    final LineMetrics lineMetrics = awtFont.getLineMetrics(
-                            new char[] {character}, 0, 1, fontContext);
+    /**
+     * Find the characters, either all the characters or the ones in the set
+     * to be decoded, that have a corresponding glyph in the font. Characters
+     * that cannot be displayed use the missing glyph, which is always the
+     * first glyph added to the font.
+     *
+     * @param awtFont the AWT font.
+     * @return the character codes, in ascending order, that have a glyph.
+     */
+    private int[] displayable(final java.awt.Font awtFont) {
+        final int count = awtFont.getNumGlyphs();
+        int[] codes = new int[count];
+        int index = 0;
+        int code;
 
-                    ascent = Math.max(lineMetrics.getAscent(), ascent);
-                    descent = Math.max(lineMetrics.getDescent(), descent);
-                    leading = Math.max(lineMetrics.getLeading(), leading);
+        if (characters == null) {
+            code = 0;
+            /*
+             * Run through all the unicode character codes looking for a
+             * corresponding glyph.
+             */
+            while ((index < count - 1) && (code < Coder.USHORT_MAX)) {
+                if (awtFont.canDisplay(code)) {
+                    codes[index++] = code;
                 }
-                index++;
+                code++;
+            }
+        } else {
+            code = characters.nextCharacter(0);
 
-            } else {
-                character = (char) missingGlyph;
-                font.addMissingGlyph((char) code);
+            while (code >= 0 && code < Coder.USHORT_MAX) {
+                if (awtFont.canDisplay(code)) {
+                    if (index == codes.length) {
+                        final int[] list = new int[codes.length * 2 + 1];
+                        System.arraycopy(codes, 0, list, 0, index);
+                        codes = list;
+                    }
+                    codes[index++] = code;
+                }
+                code = characters.nextCharacter(code + 1);
             }
-            code++;
         }
-        font.setAscent((int) ascent);
-        font.setDescent((int) descent);
-        font.setLeading((int) leading);
+        return Arrays.copyOf(codes, index);
+    }
 
-        fonts.add(font);
+    /**
+     * Trace the outlines for a list of characters, either sequentially or
+     * in batches using the executor.
+     *
+     * @param awtFont the AWT font scaled to the EM square.
+     * @param codes the character codes.
+     * @return the batches of glyphs, in the same order as the characters.
+     * @throws IOException if the thread is interrupted while waiting for the
+     * glyphs to be extracted. If extracting a batch fails then the batches
+     * that have not completed are cancelled.
+     */
+    private List<Extractor> extract(final java.awt.Font awtFont,
+            final int[] codes) throws IOException {
+        final List<Extractor> batches = new ArrayList<Extractor>();
+
+        if (executor == null || codes.length <= BATCH_SIZE) {
+            batches.add(new Extractor(awtFont, codes, 0, codes.length).call());
+        } else {
+            final List<Extractor> tasks = new ArrayList<Extractor>();
+
+            for (int i = 0; i < codes.length; i += BATCH_SIZE) {
+                tasks.add(new Extractor(awtFont, codes, i,
+                        Math.min(i + BATCH_SIZE, codes.length)));
+            }
+            batches.addAll(Tasks.run(executor, tasks));
+        }
+        return batches;
     }
 
     /**
      * Trace the outline of the glyph.
+     * @param path the Canvas used to draw the outline.
      * @param glyph an AWT Shape.
      * @return a Flash Shape.
      */
-    private Shape convertShape(final java.awt.Shape glyph) {
+    private static Shape convertShape(final Canvas path,
+            final java.awt.Shape glyph) {
         final PathIterator pathIter = glyph.getPathIterator(null);
-        final Canvas path = new Canvas();
-
         final double[] coords = new double[SEGMENT_COUNT];
 
+        path.clear();
+
         while (!pathIter.isDone()) {
             switch (pathIter.currentSegment(coords)) {
             case PathIterator.SEG_MOVETO:
@@ -0,0 +1,439 @@
+/*
+ * AlignmentAnalyser.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.font;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.flagstone.transform.font.AlignmentZone;
+import com.flagstone.transform.font.DefineFont3;
+import com.flagstone.transform.font.FontAlignment;
+import com.flagstone.transform.font.GlyphAlignment;
+import com.flagstone.transform.shape.Curve;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeData;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.util.concurrent.Tasks;
+
+/**
+ * <p>
+ * AlignmentAnalyser generates the FontAlignment object containing the
+ * alignment zones used by the advanced anti-aliasing engine in the Flash
+ * Player to snap the glyphs of a DefineFont3 font to pixel boundaries.
+ * </p>
+ *
+ * <p>
+ * For each glyph the outline is traced to find the horizontal and vertical
+ * extent of the glyph, including the extremes of any curves. The horizontal
+ * zone contains the left edge and width of the glyph and the vertical zone
+ * contains the bottom edge and height, measured upwards from the baseline.
+ * Glyphs with no outline, for example the space character, have no zones.
+ * </p>
+ *
+ * <p>
+ * The alignments are cached using the encoded outline of each glyph so
+ * glyphs that are shared between fonts, or fonts that are analysed
+ * repeatedly, are only traced once. If an ExecutorService is set the glyphs
+ * are analysed in parallel. The alignments are added to the FontAlignment in
+ * the same order as the glyphs in the font so the result does not depend on
+ * whether the analysis was performed sequentially or in parallel. The
+ * methods may be called from different threads. The GlyphAlignment objects
+ * returned are shared and must be treated as read-only.
+ * </p>
+ */
+public final class AlignmentAnalyser {
+
+    /** The default maximum number of glyph alignments held in the cache. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** The number of glyphs analysed by each task. */
+    private static final int BATCH_SIZE = 64;
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "AlignmentAnalyser: { capacity=%d;"
+            + " size=%d; strokeWidth=%s}";
+
+    /**
+     * Key identifies a glyph by the contents of its encoded outline.
+     */
+    private static final class Key {
+        /** The hash code of the encoded outline. */
+        private final transient int hash;
+        /** The encoded outline. */
+        private final transient byte[] bytes;
+
+        /**
+         * Create a Key.
+         * @param encoded the bytes of the encoded outline.
+         */
+        Key(final byte[] encoded) {
+            hash = Arrays.hashCode(encoded);
+            bytes = encoded;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            boolean result;
+
+            if (object == null) {
+                result = false;
+            } else if (object == this) {
+                result = true;
+            } else if (object instanceof Key) {
+                result = hash == ((Key) object).hash
+                        && Arrays.equals(bytes, ((Key) object).bytes);
+            } else {
+                result = false;
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Batch analyses the glyphs in part of a font.
+     */
+    private final class Batch implements Callable<GlyphAlignment[]> {
+        /** The glyphs in the font. */
+        private final transient List<Shape> shapes;
+        /** The index of the first glyph in the batch. */
+        private final transient int start;
+        /** The index of the glyph after the last one in the batch. */
+        private final transient int end;
+
+        /**
+         * Create a Batch.
+         * @param list the glyphs in the font.
+         * @param first the index of the first glyph in the batch.
+         * @param last the index of the glyph after the last one.
+         */
+        Batch(final List<Shape> list, final int first, final int last) {
+            shapes = list;
+            start = first;
+            end = last;
+        }
+
+        /** {@inheritDoc} */
+        public GlyphAlignment[] call() throws IOException {
+            final GlyphAlignment[] alignments = new GlyphAlignment[end - start];
+
+            for (int i = start; i < end; i++) {
+                alignments[i - start] = alignGlyph(shapes.get(i));
+            }
+            return alignments;
+        }
+    }
+
+    /** The maximum number of alignments held in the cache. */
+    private final transient int capacity;
+    /** The table of alignments, in access order. */
+    private final transient Map<Key, GlyphAlignment> table;
+    /** The typical width of the strokes used to draw the glyphs. */
+    private transient FontAlignment.StrokeWidth strokeWidth;
+    /** The executor used to analyse glyphs in parallel. */
+    private transient ExecutorService executor;
+
+    /**
+     * Create an AlignmentAnalyser with the default capacity.
+     */
+    public AlignmentAnalyser() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an AlignmentAnalyser with the specified capacity.
+     *
+     * @param limit the maximum number of glyph alignments held in the cache.
+     * Must be greater than zero.
+     */
+    public AlignmentAnalyser(final int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        capacity = limit;
+        strokeWidth = FontAlignment.StrokeWidth.MEDIUM;
+        table = new LinkedHashMap<Key, GlyphAlignment>(
+                Math.min(limit, DEFAULT_CAPACITY), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Key, GlyphAlignment> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the maximum number of glyph alignments held in the cache.
+     *
+     * @return the capacity of the cache.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of glyph alignments currently held in the cache.
+     *
+     * @return the number of cached alignments.
+     */
+    public int size() {
+        synchronized (table) {
+            return table.size();
+        }
+    }
+
+    /**
+     * Discard all the glyph alignments held in the cache.
+     */
+    public void clear() {
+        synchronized (table) {
+            table.clear();
+        }
+    }
+
+    /**
+     * Get the stroke width recorded in the FontAlignment objects generated.
+     *
+     * @return the typical width of the strokes used to draw the glyphs.
+     */
+    public FontAlignment.StrokeWidth getStrokeWidth() {
+        return strokeWidth;
+    }
+
+    /**
+     * Set the stroke width recorded in the FontAlignment objects generated.
+     *
+     * @param stroke the typical width of the strokes used to draw the glyphs.
+     */
+    public void setStrokeWidth(final FontAlignment.StrokeWidth stroke) {
+        if (stroke == null) {
+            throw new IllegalArgumentException();
+        }
+        strokeWidth = stroke;
+    }
+
+    /**
+     * Get the executor used to analyse glyphs in parallel.
+     * @return the executor or null if glyphs are analysed sequentially.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the executor used to analyse the glyphs of a font in parallel. The
+     * executor is not shut down by the analyser.
+     * @param service the executor. May be null in which case the glyphs are
+     * analysed sequentially by the calling thread.
+     */
+    public void setExecutor(final ExecutorService service) {
+        executor = service;
+    }
+
+    /**
+     * Generate the alignment zones for all the glyphs in a font.
+     *
+     * @param font the font definition.
+     * @return a FontAlignment object containing the zones for each glyph,
+     * in the same order as the glyphs in the font.
+     * @throws IOException if an error occurs encoding or decoding the outline
+     * of a glyph.
+     */
+    public FontAlignment align(final DefineFont3 font) throws IOException {
+        final List<Shape> shapes = font.getShapes();
+        final List<GlyphAlignment> zones =
+            new ArrayList<GlyphAlignment>(shapes.size());
+
+        if (executor == null || shapes.size() <= BATCH_SIZE) {
+            zones.addAll(Arrays.asList(
+                    new Batch(shapes, 0, shapes.size()).call()));
+        } else {
+            final List<Batch> tasks = new ArrayList<Batch>();
+
+            for (int i = 0; i < shapes.size(); i += BATCH_SIZE) {
+                tasks.add(new Batch(shapes, i,
+                        Math.min(i + BATCH_SIZE, shapes.size())));
+            }
+            for (final GlyphAlignment[] batch : Tasks.run(executor, tasks)) {
+                zones.addAll(Arrays.asList(batch));
+            }
+        }
+        return new FontAlignment(font.getIdentifier(), strokeWidth, zones);
+    }
+
+    /**
+     * Generate the alignment zones for a glyph.
+     *
+     * @param glyph the outline of the glyph, either as a list of records or
+     * encoded in a single ShapeData object.
+     * @return the horizontal and vertical alignment zones for the glyph.
+     * @throws IOException if an error occurs encoding or decoding the outline.
+     */
+    public GlyphAlignment alignGlyph(final Shape glyph) throws IOException {
+        final Shape encoded = FontSubset.encode(glyph);
+        final Key key = new Key(((ShapeData) encoded.getObjects().get(0))
+                .getData());
+        GlyphAlignment alignment;
+
+        synchronized (table) {
+            alignment = table.get(key);
+        }
+        if (alignment == null) {
+            alignment = analyse(FontSubset.records(encoded));
+
+            synchronized (table) {
+                final GlyphAlignment cached = table.get(key);
+                if (cached == null) {
+                    table.put(key, alignment);
+                } else {
+                    alignment = cached;
+                }
+            }
+        }
+        return alignment;
+    }
+
+    /**
+     * Trace the outline of a glyph to find the alignment zones.
+     *
+     * @param records the records that describe the outline.
+     * @return the alignment for the glyph.
+     */
+    private static GlyphAlignment analyse(final List<ShapeRecord> records) {
+        int xCoord = 0;
+        int yCoord = 0;
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        boolean empty = true;
+
+        for (final ShapeRecord record : records) {
+            if (record instanceof ShapeStyle
+                    && ((ShapeStyle) record).getMoveX() != null) {
+                xCoord = ((ShapeStyle) record).getMoveX();
+                yCoord = ((ShapeStyle) record).getMoveY();
+            } else if (record instanceof Line) {
+                final int endX = xCoord + ((Line) record).getX();
+                final int endY = yCoord + ((Line) record).getY();
+
+                minX = Math.min(minX, Math.min(xCoord, endX));
+                maxX = Math.max(maxX, Math.max(xCoord, endX));
+                minY = Math.min(minY, Math.min(yCoord, endY));
+                maxY = Math.max(maxY, Math.max(yCoord, endY));
+                empty = false;
+
+                xCoord = endX;
+                yCoord = endY;
+            } else if (record instanceof Curve) {
+                final Curve curve = (Curve) record;
+                final int ctrlX = xCoord + curve.getControlX();
+                final int ctrlY = yCoord + curve.getControlY();
+                final int anchorX = ctrlX + curve.getAnchorX();
+                final int anchorY = ctrlY + curve.getAnchorY();
+
+                final float extremeX = extreme(xCoord, ctrlX, anchorX);
+                final float extremeY = extreme(yCoord, ctrlY, anchorY);
+
+                minX = Math.min(minX, Math.min(xCoord,
+                        Math.min(anchorX, extremeX)));
+                maxX = Math.max(maxX, Math.max(xCoord,
+                        Math.max(anchorX, extremeX)));
+                minY = Math.min(minY, Math.min(yCoord,
+                        Math.min(anchorY, extremeY)));
+                maxY = Math.max(maxY, Math.max(yCoord,
+                        Math.max(anchorY, extremeY)));
+                empty = false;
+
+                xCoord = anchorX;
+                yCoord = anchorY;
+            }
+        }
+
+        final List<AlignmentZone> zones = new ArrayList<AlignmentZone>(2);
+
+        if (empty) {
+            zones.add(new AlignmentZone(0, 0));
+            zones.add(new AlignmentZone(0, 0));
+        } else {
+            zones.add(new AlignmentZone(minX, maxX - minX));
+            zones.add(new AlignmentZone(0 - maxY, maxY - minY));
+        }
+        return new GlyphAlignment(zones, !empty, !empty);
+    }
+
+    /**
+     * Find the turning point of a quadratic Bezier curve along one axis.
+     *
+     * @param start the coordinate of the start of the curve.
+     * @param control the coordinate of the control point.
+     * @param end the coordinate of the end of the curve.
+     * @return the coordinate of the turning point, or the start of the curve
+     * if the turning point does not lie between the start and end.
+     */
+    private static float extreme(final int start, final int control,
+            final int end) {
+        final int denominator = start - 2 * control + end;
+        float value = start;
+
+        if (denominator != 0) {
+            final float param = (float) (start - control) / denominator;
+
+            if (param > 0 && param < 1) {
+                final float inverse = 1 - param;
+                value = inverse * inverse * start
+                        + 2 * inverse * param * control
+                        + param * param * end;
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT, capacity, size(), strokeWidth);
+    }
+}
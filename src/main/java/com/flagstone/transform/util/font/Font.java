@@ -31,6 +31,7 @@
 
 package com.flagstone.transform.util.font;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -88,9 +89,30 @@ import com.flagstone.transform.shape.Shape;
  * AWT or TrueType font is significant (sometimes several seconds) so creating
  * libraries of "pre-parsed" flash fonts is the preferred way of use fonts.
  * </p>
+ *
+ * <p>
+ * Fonts decoded from TrueType files in lazy mode only convert the outline of
+ * a glyph when it is first used, for example when defineFont() is called for
+ * a set of characters. If the outline cannot be decoded an
+ * IllegalStateException is thrown, wrapping the original IOException.
+ * </p>
  */
 public final class Font {
 
+    /** The size of the EM square used for glyphs in DefineFont2 objects. */
+    public static final int EM_SQUARE = 1024;
+    /** The size of the EM square used for glyphs in DefineFont3 objects. */
+    public static final int FONT3_EM_SQUARE = 20480;
+
+    /** Estimated size in bytes of a Font object and its fixed fields. */
+    private static final int FONT_SIZE = 128;
+    /** Estimated size in bytes of a Glyph and its Shape. */
+    static final int GLYPH_SIZE = 64;
+    /** Estimated size in bytes of each record in the outline of a glyph. */
+    static final int RECORD_SIZE = 40;
+    /** Size in bytes of each entry in the character and glyph tables. */
+    private static final int ENTRY_SIZE = 4;
+
     /** The face describing the font. */
     private FontFace face;
     /** The encoding used for character codes. */
@@ -101,6 +123,8 @@ public final class Font {
     private int descent;
     /** The spacing between lines. */
     private int leading;
+    /** The size of the EM square used for the glyph coordinates. */
+    private int emSquare = EM_SQUARE;
 
     /** Table mapping character codes to glyphs. */
     private transient int[] charToGlyph;
@@ -119,6 +143,8 @@ public final class Font {
     private transient char highestChar;
     /** List of kernings for selected pairs of characters. */
     private final transient List<Kerning> kernings = new ArrayList<Kerning>();
+    /** The object used to decode glyphs on demand. */
+    private transient GlyphLoader loader;
 
     /**
      * Get the FontFace that contains the font name and style.
@@ -228,6 +254,32 @@ public final class Font {
         leading = dist;
     }
 
+    /**
+     * Get the size of the EM square used for the coordinates of the glyphs
+     * and the font metrics.
+     *
+     * @return either EM_SQUARE (1024) or FONT3_EM_SQUARE (20480) for fonts
+     * decoded from DefineFont3 objects.
+     */
+    public int getEmSquare() {
+        return emSquare;
+    }
+
+    /**
+     * Set the size of the EM square used for the coordinates of the glyphs
+     * and the font metrics.
+     *
+     * @param size the size of the EM square, either EM_SQUARE or
+     * FONT3_EM_SQUARE.
+     */
+    public void setEmSquare(final int size) {
+        if (size != EM_SQUARE && size != FONT3_EM_SQUARE) {
+            throw new IllegalArgumentException(
+                    "EM square must be 1024 or 20480.");
+        }
+        emSquare = size;
+    }
+
     /**
      * Get the number of glyphs defined in the font.
      *
@@ -245,6 +297,7 @@ public final class Font {
     public void setNumberOfGlyphs(final int count) {
 //        glyphTable = new Glyph[Coder.USHORT_MAX + 1];
 //        glyphToChar = new int[Coder.USHORT_MAX + 1];
+        glyphCount = count;
         glyphTable = new Glyph[count];
         glyphToChar = new int[count];
         glyphIndex = 0;
@@ -295,7 +348,74 @@ public final class Font {
      * @return the corresponding glyph.
      */
     public Glyph getGlyph(final int index) {
-        return glyphTable[index];
+        return glyph(index);
+    }
+
+    /**
+     * Get the kernings for selected pairs of characters.
+     * @return the list of kernings.
+     */
+    List<Kerning> getKernings() {
+        return kernings;
+    }
+
+    /**
+     * Set the glyph at a given position in the glyph table without changing
+     * the mapping from character codes to glyphs.
+     * @param index the position of the glyph in the table.
+     * @param code the character code for the glyph.
+     * @param glyph the glyph.
+     */
+    void setGlyph(final int index, final char code, final Glyph glyph) {
+        glyphTable[index] = glyph;
+        glyphToChar[index] = code;
+        glyphIndex = Math.max(glyphIndex, index + 1);
+    }
+
+    /**
+     * Set the glyph displayed for a character.
+     * @param code the character code.
+     * @param index the position of the glyph in the table.
+     */
+    void mapCharacter(final char code, final int index) {
+        charToGlyph[code] = index;
+    }
+
+    /**
+     * Set the object used to decode glyphs that were added without an
+     * outline.
+     * @param glyphLoader the GlyphLoader used to decode glyphs on demand.
+     */
+    void setGlyphLoader(final GlyphLoader glyphLoader) {
+        loader = glyphLoader;
+    }
+
+    /**
+     * Get the glyph at the specified position in the table, decoding it if
+     * the font was created with a GlyphLoader and the glyph has not been used
+     * before.
+     * @param index the index of the glyph.
+     * @return the corresponding glyph.
+     */
+    private Glyph glyph(final int index) {
+        Glyph glyph;
+
+        if (loader == null) {
+            glyph = glyphTable[index];
+        } else {
+            synchronized (loader) {
+                glyph = glyphTable[index];
+                if (glyph == null) {
+                    try {
+                        glyph = loader.loadGlyph(index);
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    glyphTable[index] = glyph;
+                }
+            }
+        }
+        return glyph;
     }
 
     /**
@@ -346,7 +466,7 @@ public final class Font {
         final ArrayList<Bounds> boundsArray = new ArrayList<Bounds>(count);
 
         for (final Character character : characters) {
-            final Glyph glyph = glyphTable[charToGlyph[character]];
+            final Glyph glyph = glyph(charToGlyph[character]);
 
             glyphsArray.add(glyph.getShape());
             codesArray.add((int) character);
@@ -369,11 +489,44 @@ public final class Font {
         fontDefinition.setCodes(codesArray);
         fontDefinition.setAdvances(advancesArray);
         fontDefinition.setBounds(boundsArray);
-        fontDefinition.setKernings(kernings);
+        fontDefinition.setKernings(new ArrayList<Kerning>(kernings));
 
         return fontDefinition;
     }
 
+    /**
+     * Estimate the memory used by the font. For a font that decodes glyphs on
+     * demand the estimate is taken from the GlyphLoader and includes all the
+     * glyphs, whether they have been decoded yet or not, so the estimate does
+     * not change as the font is used.
+     *
+     * @return an estimate of the number of bytes used by the font.
+     */
+    long estimateSize() {
+        long size = FONT_SIZE;
+
+        if (charToGlyph != null) {
+            size += ENTRY_SIZE * charToGlyph.length;
+        }
+        if (glyphTable != null) {
+            size += 2 * ENTRY_SIZE * glyphTable.length;
+        }
+        if (loader != null) {
+            size += loader.estimateSize();
+        } else if (glyphTable != null) {
+            for (final Glyph glyph : glyphTable) {
+                if (glyph != null) {
+                    size += GLYPH_SIZE;
+                    if (glyph.getShape() != null) {
+                        size += RECORD_SIZE
+                                * glyph.getShape().getObjects().size();
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
     /**
      * Tests whether the font can display all the characters in a string.
      *
@@ -450,13 +603,22 @@ public final class Font {
      * Returns the default advance for the font as defined in the EM Square -
      * conceptually a font with a point size of 1024. The number returned needs
      * to be scaled to the correct size in order to calculate the advance to the
-     * next character.
+     * next character. If the font has a GlyphLoader the advance is taken from
+     * the loader so the outline of the glyph is not decoded.
      *
      * @param character
      *            the character code.
      * @return the advance in twips to the next character.
      */
     public int advanceForCharacter(final char character) {
-        return glyphTable[charToGlyph[character]].getAdvance();
+        final int index = charToGlyph[character];
+        final int advance;
+
+        if (loader == null) {
+            advance = glyphTable[index].getAdvance();
+        } else {
+            advance = loader.loadAdvance(index);
+        }
+        return advance;
     }
 }
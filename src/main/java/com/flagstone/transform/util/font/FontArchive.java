@@ -0,0 +1,245 @@
+/*
+ * FontArchive.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.font;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.font.CharacterFormat;
+import com.flagstone.transform.font.Kerning;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeData;
+
+/**
+ * FontArchive encodes and decodes the fonts stored in an AssetCache. The
+ * font metrics, the size of the EM square, the tables mapping characters to
+ * glyphs, the kernings and the advance, bounds and outline of each glyph are
+ * stored. The outlines are stored in the encoded form used in font
+ * definitions and decoded when the font is loaded so the glyphs contain the
+ * same records as a font decoded from the original file.
+ */
+final class FontArchive {
+
+    /** The type used to identify fonts in an AssetCache. */
+    static final String TYPE = "font";
+
+    /** Flag indicating the font is bold. */
+    private static final int BOLD = 1;
+    /** Flag indicating the font is italic. */
+    private static final int ITALIC = 2;
+
+    /**
+     * Encode a list of fonts.
+     *
+     * @param fonts the fonts.
+     * @return the encoded fonts.
+     * @throws IOException if there is an error encoding the outline of a
+     * glyph.
+     */
+    static byte[] encode(final List<Font> fonts) throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder coder = new SWFEncoder(stream);
+
+        coder.writeInt(fonts.size());
+        for (final Font font : fonts) {
+            encode(font, coder);
+        }
+        coder.flush();
+        return stream.toByteArray();
+    }
+
+    /**
+     * Decode a list of fonts.
+     *
+     * @param stream the stream containing the encoded fonts.
+     * @return the fonts.
+     * @throws IOException if there is an error reading the fonts.
+     */
+    static List<Font> decode(final InputStream stream) throws IOException {
+        final SWFDecoder coder = new SWFDecoder(stream);
+        final int count = coder.readInt();
+        final List<Font> fonts = new ArrayList<Font>(count);
+
+        for (int i = 0; i < count; i++) {
+            fonts.add(decode(coder));
+        }
+        return fonts;
+    }
+
+    /**
+     * Encode a font.
+     *
+     * @param font the font.
+     * @param coder the encoder used to write the data.
+     * @throws IOException if there is an error encoding the font.
+     */
+    private static void encode(final Font font, final SWFEncoder coder)
+            throws IOException {
+        final FontFace face = font.getFace();
+        final int count = font.getNumberOfGlyphs();
+        final int highest = font.getHighestChar();
+
+        coder.writeString(face.getName());
+        coder.writeByte((face.isBold() ? BOLD : 0)
+                | (face.isItalic() ? ITALIC : 0));
+        coder.writeByte(font.getEncoding().ordinal());
+        coder.writeInt(font.getAscent());
+        coder.writeInt(font.getDescent());
+        coder.writeInt(font.getLeading());
+        coder.writeInt(font.getEmSquare());
+        coder.writeInt(font.getMissingGlyph());
+        coder.writeShort(highest);
+        coder.writeInt(count);
+
+        for (int i = 0; i < count; i++) {
+            final Glyph glyph = font.getGlyph(i);
+
+            if (glyph == null) {
+                coder.writeByte(0);
+            } else {
+                coder.writeByte(1);
+                coder.writeShort(font.characterForGlyph(i));
+                coder.writeInt(glyph.getAdvance());
+
+                final Bounds bounds = glyph.getBounds();
+                if (bounds == null) {
+                    coder.writeByte(0);
+                } else {
+                    coder.writeByte(1);
+                    coder.writeInt(bounds.getMinX());
+                    coder.writeInt(bounds.getMinY());
+                    coder.writeInt(bounds.getMaxX());
+                    coder.writeInt(bounds.getMaxY());
+                }
+
+                final byte[] outline = ((ShapeData) FontSubset.encode(
+                        glyph.getShape()).getObjects().get(0)).getData();
+                coder.writeInt(outline.length);
+                coder.writeBytes(outline);
+            }
+        }
+
+        int mapped = 0;
+        for (int code = 0; code <= highest; code++) {
+            if (font.glyphForCharacter((char) code) != 0) {
+                mapped++;
+            }
+        }
+        coder.writeInt(mapped);
+        for (int code = 0; code <= highest; code++) {
+            final int index = font.glyphForCharacter((char) code);
+            if (index != 0) {
+                coder.writeShort(code);
+                coder.writeInt(index);
+            }
+        }
+
+        coder.writeInt(font.getKernings().size());
+        for (final Kerning kerning : font.getKernings()) {
+            coder.writeInt(kerning.getLeftGlyph());
+            coder.writeInt(kerning.getRightGlyph());
+            coder.writeInt(kerning.getAdjustment());
+        }
+    }
+
+    /**
+     * Decode a font.
+     *
+     * @param coder the decoder used to read the data.
+     * @return the font.
+     * @throws IOException if there is an error reading the font.
+     */
+    private static Font decode(final SWFDecoder coder) throws IOException {
+        final Font font = new Font();
+
+        final String name = coder.readString();
+        final int style = coder.readByte();
+        font.setFace(new FontFace(name, (style & BOLD) != 0,
+                (style & ITALIC) != 0));
+        font.setEncoding(CharacterFormat.values()[coder.readByte()]);
+        font.setAscent(coder.readInt());
+        font.setDescent(coder.readInt());
+        font.setLeading(coder.readInt());
+        font.setEmSquare(coder.readInt());
+        font.setMissingGlyph(coder.readInt());
+        font.setHighestChar((char) coder.readUnsignedShort());
+
+        final int count = coder.readInt();
+        font.setNumberOfGlyphs(count);
+
+        for (int i = 0; i < count; i++) {
+            if (coder.readByte() != 0) {
+                final char code = (char) coder.readUnsignedShort();
+                final int advance = coder.readInt();
+                Bounds bounds = null;
+
+                if (coder.readByte() != 0) {
+                    bounds = new Bounds(coder.readInt(), coder.readInt(),
+                            coder.readInt(), coder.readInt());
+                }
+
+                final Shape encoded = new Shape();
+                encoded.add(new ShapeData(coder.readInt(), coder));
+                final Shape shape = new Shape(FontSubset.records(encoded));
+
+                font.setGlyph(i, code, new Glyph(shape, bounds, advance));
+            }
+        }
+
+        final int mapped = coder.readInt();
+        for (int i = 0; i < mapped; i++) {
+            font.mapCharacter((char) coder.readUnsignedShort(),
+                    coder.readInt());
+        }
+
+        final int kernings = coder.readInt();
+        for (int i = 0; i < kernings; i++) {
+            font.getKernings().add(new Kerning(coder.readInt(),
+                    coder.readInt(), coder.readInt()));
+        }
+        return font;
+    }
+
+    /**
+     * Private constructor.
+     */
+    private FontArchive() {
+        // Class only contains static methods
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * FontCache.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.font;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.flagstone.transform.Constants;
+
+/**
+ * FontCache holds the fonts decoded by a FontFactory so the same font file or
+ * AWT font is only decoded once. Decoding a font is expensive - a TrueType
+ * file may take hundreds of milliseconds to parse - so when the same small
+ * set of fonts is embedded in many movies the cache removes font parsing
+ * from the time taken to generate each movie.
+ *
+ * <p>Fonts read from files are identified by the absolute path of the file,
+ * its size and the time it was last modified so a file that changes is decoded
+ * again. AWT fonts are identified by their name and style.</p>
+ *
+ * <p>The cache is bounded by an estimate of the memory used by the fonts it
+ * holds. When the limit is reached the fonts that were used least recently are
+ * discarded. The methods are synchronized so a cache may be shared between
+ * threads, see {@link #getShared()}. The fonts returned are shared between
+ * all the users of the cache and must be treated as read-only: fonts and
+ * the glyphs they contain must not be modified.</p>
+ */
+public final class FontCache {
+
+    /** The default limit, in bytes, on the memory used by cached fonts. */
+    public static final long DEFAULT_CAPACITY = 32L * 1024 * 1024;
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "FontCache: { capacity=%d; size=%d;"
+            + " fonts=%d}";
+
+    /** The cache that can be shared between factories. */
+    private static final FontCache SHARED = new FontCache(DEFAULT_CAPACITY);
+
+    /**
+     * Get the cache that can be shared between different FontFactory objects
+     * in the same process.
+     *
+     * @return the shared FontCache.
+     */
+    public static FontCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Key identifies the source of a set of fonts.
+     */
+    private static final class Key {
+        /** The path to the file or the name of an AWT font. */
+        private final transient String name;
+        /** The time the file was last modified or the style of an AWT font. */
+        private final transient long modified;
+        /** The size of the file or -1 for AWT fonts. */
+        private final transient long length;
+
+        /**
+         * Create a Key.
+         * @param source the path to the file or the name of an AWT font.
+         * @param time the time a file was last modified or the AWT font style.
+         * @param size the size of a file or -1 for AWT fonts.
+         */
+        Key(final String source, final long time, final long size) {
+            name = source;
+            modified = time;
+            length = size;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            boolean result;
+            Key key;
+
+            if (object == null) {
+                result = false;
+            } else if (object == this) {
+                result = true;
+            } else if (object instanceof Key) {
+                key = (Key) object;
+                result = name.equals(key.name) && modified == key.modified
+                        && length == key.length;
+            } else {
+                result = false;
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return (name.hashCode() * Constants.PRIME
+                    + (int) (modified ^ (modified >>> 32))) * Constants.PRIME
+                    + (int) (length ^ (length >>> 32));
+        }
+    }
+
+    /**
+     * Entry holds a list of fonts and the estimate of the memory they use.
+     */
+    private static final class Entry {
+        /** The fonts decoded from the source. */
+        private final transient List<Font> fonts;
+        /** The estimated size of the fonts in bytes. */
+        private final transient long size;
+
+        /**
+         * Create an Entry.
+         * @param list the fonts.
+         * @param bytes the estimated size of the fonts.
+         */
+        Entry(final List<Font> list, final long bytes) {
+            fonts = list;
+            size = bytes;
+        }
+    }
+
+    /** The maximum estimated memory used by the cached fonts. */
+    private final transient long capacity;
+    /** The table of fonts, in access order. */
+    private final transient Map<Key, Entry> table;
+    /** The estimated memory used by the fonts currently held. */
+    private transient long size;
+
+    /**
+     * Create a FontCache with the default capacity.
+     */
+    public FontCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a FontCache with the specified capacity.
+     *
+     * @param limit the maximum estimated memory, in bytes, used by the fonts
+     * held in the cache. Must be greater than zero.
+     */
+    public FontCache(final long limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        capacity = limit;
+        table = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    }
+
+    /**
+     * Get the maximum estimated memory used by the fonts in the cache.
+     *
+     * @return the capacity of the cache in bytes.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the estimated memory used by the fonts currently held.
+     *
+     * @return the estimated size of the cached fonts in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of font files and AWT fonts currently held.
+     *
+     * @return the number of entries in the cache.
+     */
+    public synchronized int size() {
+        return table.size();
+    }
+
+    /**
+     * Discard all the fonts held in the cache.
+     */
+    public synchronized void clear() {
+        table.clear();
+        size = 0;
+    }
+
+    /**
+     * Get the fonts decoded from a file.
+     *
+     * @param file the file containing the fonts.
+     * @return the list of fonts or null if the file has not been decoded or
+     * it has changed since the fonts were added.
+     */
+    public List<Font> get(final File file) {
+        return get(key(file));
+    }
+
+    /**
+     * Add the fonts decoded from a file to the cache.
+     *
+     * @param file the file containing the fonts.
+     * @param fonts the fonts decoded from the file.
+     * @return an unmodifiable list containing the fonts, which is also
+     * returned by subsequent calls to get().
+     */
+    public List<Font> put(final File file, final List<Font> fonts) {
+        return put(key(file), fonts);
+    }
+
+    /**
+     * Get the font decoded from an AWT font.
+     *
+     * @param font the AWT font.
+     * @return the list containing the decoded font or null if the font has not
+     * been decoded.
+     */
+    public List<Font> get(final java.awt.Font font) {
+        return get(key(font));
+    }
+
+    /**
+     * Add the font decoded from an AWT font to the cache.
+     *
+     * @param font the AWT font.
+     * @param fonts the list containing the decoded font.
+     * @return an unmodifiable list containing the fonts, which is also
+     * returned by subsequent calls to get().
+     */
+    public List<Font> put(final java.awt.Font font, final List<Font> fonts) {
+        return put(key(font), fonts);
+    }
+
+    /**
+     * Get the fonts for a key.
+     * @param key the key identifying the source of the fonts.
+     * @return the list of fonts or null if the key is not in the cache.
+     */
+    private synchronized List<Font> get(final Key key) {
+        final Entry entry = table.get(key);
+        return entry == null ? null : entry.fonts;
+    }
+
+    /**
+     * Add a list of fonts to the cache, discarding the least recently used
+     * fonts if the capacity is exceeded. Fonts that are larger than the
+     * capacity of the cache are not added. If another thread has already added
+     * fonts for the same key then those fonts are returned instead.
+     *
+     * @param key the key identifying the source of the fonts.
+     * @param fonts the list of fonts.
+     * @return the list of fonts held in the cache.
+     */
+    private List<Font> put(final Key key, final List<Font> fonts) {
+        final List<Font> list = Collections.unmodifiableList(
+                new ArrayList<Font>(fonts));
+        long bytes = 0;
+
+        for (final Font font : list) {
+            bytes += font.estimateSize();
+        }
+
+        synchronized (this) {
+            final Entry existing = table.get(key);
+            List<Font> result = list;
+
+            if (existing != null) {
+                result = existing.fonts;
+            } else if (bytes <= capacity) {
+                table.put(key, new Entry(list, bytes));
+                size += bytes;
+
+                final Iterator<Entry> iter = table.values().iterator();
+
+                while (size > capacity) {
+                    size -= iter.next().size;
+                    iter.remove();
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Create the key for a font file.
+     * @param file the file.
+     * @return the key identifying the current contents of the file.
+     */
+    private static Key key(final File file) {
+        return new Key(file.getAbsolutePath(), file.lastModified(),
+                file.length());
+    }
+
+    /**
+     * Create the key for an AWT font.
+     * @param font the font.
+     * @return the key identifying the font name and style.
+     */
+    private static Key key(final java.awt.Font font) {
+        return new Key(font.getName(), font.getStyle(), -1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(FORMAT, capacity, size, table.size());
+    }
+}
@@ -34,21 +34,73 @@ package com.flagstone.transform.util.font;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.List;
 import java.util.zip.DataFormatException;
 
+import com.flagstone.transform.util.cache.AssetCache;
+
 /**
  * ImageFactory is used to generate an image definition object from an image
  * stored in a file, references by a URL or read from an stream. An plug-in
  * architecture allows decoders to be registered to handle different image
  * formats. The ImageFactory provides a standard interface for using the
  * decoders.
+ *
+ * <p>A FontCache may be set so fonts read from files or created from AWT fonts
+ * are only decoded once. The fonts returned by getFonts() are then shared
+ * with every other FontFactory using the same cache and must not be
+ * modified.</p>
+ *
+ * <p>An AssetCache may also be set so the fonts read from files are stored
+ * on disk and loaded from the cache, rather than decoded again, the next
+ * time the program runs.</p>
  */
 public final class FontFactory {
-    /** The object used to decode the font. */
-    private transient FontDecoder decoder;
+    /** The fonts decoded. */
+    private transient List<Font> fonts;
+    /** The cache of previously decoded fonts. */
+    private transient FontCache cache;
+    /** The persistent cache of decoded fonts. */
+    private transient AssetCache assets;
+
+    /**
+     * Get the cache used to share decoded fonts.
+     * @return the FontCache or null if fonts are decoded each time they are
+     * read.
+     */
+    public FontCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Set the cache used to share decoded fonts, for example
+     * FontCache.getShared().
+     * @param fontCache the FontCache used to store decoded fonts. May be null
+     * if fonts are decoded each time they are read.
+     */
+    public void setCache(final FontCache fontCache) {
+        cache = fontCache;
+    }
+
+    /**
+     * Get the persistent cache used to store decoded fonts.
+     * @return the AssetCache or null if fonts are not stored.
+     */
+    public AssetCache getAssetCache() {
+        return assets;
+    }
+
+    /**
+     * Set the persistent cache used to store the fonts decoded from files.
+     * @param assetCache the AssetCache used to store decoded fonts. May be
+     * null if fonts are not stored.
+     */
+    public void setAssetCache(final AssetCache assetCache) {
+        assets = assetCache;
+    }
 
     /**
      * Read a font stored in the specified file.
@@ -76,8 +128,43 @@ public final class FontFactory {
             throw new DataFormatException("Unsupported format");
         }
 
-        decoder = FontRegistry.getFontProvider(fontType);
+        fonts = cache == null ? null : cache.get(file);
+
+        if (fonts == null) {
+            if (assets == null) {
+                fonts = decode(fontType, file);
+            } else {
+                final String key = AssetCache.key(file);
+                final InputStream stream = assets.get(key, FontArchive.TYPE);
+
+                if (stream == null) {
+                    fonts = decode(fontType, file);
+                    assets.put(key, FontArchive.TYPE,
+                            FontArchive.encode(fonts));
+                } else {
+                    fonts = FontArchive.decode(stream);
+                }
+            }
+
+            if (cache != null) {
+                fonts = cache.put(file, fonts);
+            }
+        }
+    }
+
+    /**
+     * Decode the fonts in a file.
+     * @param fontType the type of file.
+     * @param file the file containing the fonts.
+     * @return the list of fonts decoded.
+     * @throws IOException if there is an error reading the file.
+     * @throws DataFormatException if there is a problem decoding the font.
+     */
+    private static List<Font> decode(final String fontType, final File file)
+            throws IOException, DataFormatException {
+        final FontDecoder decoder = FontRegistry.getFontProvider(fontType);
         decoder.read(file);
+        return decoder.getFonts();
     }
 
     /**
@@ -104,13 +191,42 @@ public final class FontFactory {
         }
 
         final String mimeType = connection.getContentType();
-        decoder = FontRegistry.getFontProvider(mimeType);
+        final FontDecoder decoder = FontRegistry.getFontProvider(mimeType);
 
         if (decoder == null) {
             throw new DataFormatException("Unsupported format");
         }
 
         decoder.read(url);
+        fonts = decoder.getFonts();
+    }
+
+    /**
+     * Create a font from an AWT Font.
+     *
+     * @param font
+     *            the AWT font.
+     *
+     * @throws IOException
+     *             if there is an error decoding the font.
+     *
+     * @throws DataFormatException
+     *             if there is a problem decoding the font.
+     */
+    public void read(final java.awt.Font font)
+            throws IOException, DataFormatException {
+
+        fonts = cache == null ? null : cache.get(font);
+
+        if (fonts == null) {
+            final AWTDecoder decoder = new AWTDecoder();
+            decoder.read(font);
+            fonts = decoder.getFonts();
+
+            if (cache != null) {
+                fonts = cache.put(font, fonts);
+            }
+        }
     }
 
     /**
@@ -118,6 +234,6 @@ public final class FontFactory {
      * @return a list containing a Font object for each font decoded.
      */
     public List<Font> getFonts() {
-        return decoder.getFonts();
+        return fonts;
     }
 }
@@ -0,0 +1,451 @@
+/*
+ * FontSubset.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.font;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.flagstone.transform.MovieTypes;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.font.DefineFont2;
+import com.flagstone.transform.font.DefineFont3;
+import com.flagstone.transform.font.GlyphCache;
+import com.flagstone.transform.font.Kerning;
+import com.flagstone.transform.shape.Curve;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeData;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.util.text.CharacterSet;
+
+/**
+ * <p>
+ * FontSubset builds font definitions containing the glyphs for a subset of the
+ * characters in a Font. Characters are added incrementally, either
+ * individually, from strings or by merging CharacterSets collected from the
+ * text displayed in a movie.
+ * </p>
+ *
+ * <p>
+ * Each glyph is encoded the first time it is used in a definition and the
+ * encoded shape, together with the boxed advance and scaled bounds, is reused
+ * in every definition created afterwards, so encoding a DefineFont2 or
+ * DefineFont3 object only copies the encoded glyphs. The builder can be
+ * cleared and reused for each movie to keep the encoded glyphs. If a
+ * GlyphCache is set then the encoded glyphs are also shared with other
+ * builders and with the fonts decoded from movies. A FontSubset
+ * is not thread-safe: each thread should use its own builder.
+ * </p>
+ *
+ * <p>
+ * Glyphs in DefineFont3 definitions use an EM square of 20480 units rather
+ * than 1024 so the outlines, advances, bounds and font metrics are scaled
+ * accordingly. Fonts decoded from DefineFont3 objects already use the larger
+ * EM square and are not scaled.
+ * </p>
+ */
+public final class FontSubset {
+
+    /** The scale between the EM square for DefineFont3 and DefineFont2. */
+    private static final int FONT3_SCALE = 20;
+
+    /** The font containing the glyphs. */
+    private final transient Font font;
+    /** The characters in the subset. */
+    private final transient CharacterSet characters;
+    /** The cache used to share encoded glyphs. */
+    private transient GlyphCache cache;
+
+    /** The glyphs encoded for DefineFont2, indexed by glyph. */
+    private final transient Shape[] shapes;
+    /** The glyphs scaled and encoded for DefineFont3, indexed by glyph. */
+    private final transient Shape[] scaledShapes;
+    /** The boxed advances, indexed by glyph. */
+    private final transient Integer[] advances;
+    /** The boxed, scaled advances for DefineFont3, indexed by glyph. */
+    private final transient Integer[] scaledAdvances;
+    /** The scaled bounds for DefineFont3, indexed by glyph. */
+    private final transient Bounds[] scaledBounds;
+
+    /**
+     * Create a FontSubset for a font.
+     * @param aFont the font containing the glyphs.
+     */
+    public FontSubset(final Font aFont) {
+        font = aFont;
+        characters = new CharacterSet();
+
+        final int count = font.getNumberOfGlyphs();
+        shapes = new Shape[count];
+        scaledShapes = new Shape[count];
+        advances = new Integer[count];
+        scaledAdvances = new Integer[count];
+        scaledBounds = new Bounds[count];
+    }
+
+    /**
+     * Get the font containing the glyphs.
+     * @return the font.
+     */
+    public Font getFont() {
+        return font;
+    }
+
+    /**
+     * Get the cache used to share encoded glyphs between builders.
+     * @return the GlyphCache or null if glyphs are not shared.
+     */
+    public GlyphCache getGlyphCache() {
+        return cache;
+    }
+
+    /**
+     * Set the cache used to share encoded glyphs between builders and the
+     * fonts decoded from movies.
+     * @param glyphCache the GlyphCache. May be null in which case the encoded
+     * glyphs are only reused by this builder.
+     * @return this object.
+     */
+    public FontSubset setGlyphCache(final GlyphCache glyphCache) {
+        cache = glyphCache;
+        return this;
+    }
+
+    /**
+     * Add a character to the subset.
+     * @param character the character.
+     * @return this object.
+     */
+    public FontSubset add(final char character) {
+        characters.add(character);
+        return this;
+    }
+
+    /**
+     * Add all the characters in a string to the subset.
+     * @param text the string.
+     * @return this object.
+     */
+    public FontSubset add(final String text) {
+        characters.add(text);
+        return this;
+    }
+
+    /**
+     * Add all the characters in a set to the subset.
+     * @param set the set of characters.
+     * @return this object.
+     */
+    public FontSubset add(final CharacterSet set) {
+        characters.add(set);
+        return this;
+    }
+
+    /**
+     * Get the number of characters in the subset.
+     * @return the number of characters.
+     */
+    public int size() {
+        return characters.size();
+    }
+
+    /**
+     * Remove all the characters from the subset. The encoded glyphs are
+     * retained so they can be used in the next definition.
+     */
+    public void clear() {
+        characters.clear();
+    }
+
+    /**
+     * Create a DefineFont2 object containing the glyphs for the characters in
+     * the subset.
+     *
+     * @param identifier the unique identifier for the font definition.
+     * @return the font definition.
+     * @throws IOException if there is an error encoding a glyph.
+     */
+    public DefineFont2 defineFont(final int identifier) throws IOException {
+        final int count = characters.size();
+        final List<Shape> glyphList = new ArrayList<Shape>(count);
+        final List<Integer> codeList = new ArrayList<Integer>(count);
+        final List<Integer> advanceList = new ArrayList<Integer>(count);
+        final List<Bounds> boundsList = new ArrayList<Bounds>(count);
+
+        for (int code = characters.nextCharacter(0); code >= 0;
+                code = characters.nextCharacter(code + 1)) {
+            final int index = glyphIndex(code);
+            final Glyph glyph = font.getGlyph(index);
+
+            if (shapes[index] == null) {
+                shapes[index] = share(encode(glyph.getShape()));
+                advances[index] = glyph.getAdvance();
+            }
+            glyphList.add(shapes[index]);
+            codeList.add(code);
+            advanceList.add(advances[index]);
+
+            if (glyph.getBounds() != null) {
+                boundsList.add(glyph.getBounds());
+            }
+        }
+
+        final DefineFont2 definition = new DefineFont2(identifier,
+                font.getFace().getName());
+
+        definition.setEncoding(font.getEncoding());
+        definition.setItalic(font.getFace().isItalic());
+        definition.setBold(font.getFace().isBold());
+        definition.setAscent(font.getAscent());
+        definition.setDescent(font.getDescent());
+        definition.setLeading(font.getLeading());
+        definition.setShapes(glyphList);
+        definition.setCodes(codeList);
+        definition.setAdvances(advanceList);
+        definition.setBounds(boundsList);
+        definition.setKernings(new ArrayList<Kerning>(font.getKernings()));
+
+        return definition;
+    }
+
+    /**
+     * Create a DefineFont3 object containing the glyphs for the characters in
+     * the subset.
+     *
+     * @param identifier the unique identifier for the font definition.
+     * @return the font definition.
+     * @throws IOException if there is an error encoding a glyph.
+     */
+    public DefineFont3 defineFont3(final int identifier) throws IOException {
+        final int factor = font.getEmSquare() == Font.EM_SQUARE
+                ? FONT3_SCALE : 1;
+        final int count = characters.size();
+        final List<Shape> glyphList = new ArrayList<Shape>(count);
+        final List<Integer> codeList = new ArrayList<Integer>(count);
+        final List<Integer> advanceList = new ArrayList<Integer>(count);
+        final List<Bounds> boundsList = new ArrayList<Bounds>(count);
+
+        for (int code = characters.nextCharacter(0); code >= 0;
+                code = characters.nextCharacter(code + 1)) {
+            final int index = glyphIndex(code);
+
+            if (scaledShapes[index] == null) {
+                final Glyph glyph = font.getGlyph(index);
+                final Bounds bounds = glyph.getBounds();
+
+                scaledShapes[index] = share(encode(
+                        scale(glyph.getShape(), factor)));
+                scaledAdvances[index] = glyph.getAdvance() * factor;
+
+                if (bounds != null) {
+                    scaledBounds[index] = new Bounds(
+                            bounds.getMinX() * factor,
+                            bounds.getMinY() * factor,
+                            bounds.getMaxX() * factor,
+                            bounds.getMaxY() * factor);
+                }
+            }
+            glyphList.add(scaledShapes[index]);
+            codeList.add(code);
+            advanceList.add(scaledAdvances[index]);
+
+            if (scaledBounds[index] != null) {
+                boundsList.add(scaledBounds[index]);
+            }
+        }
+
+        final List<Kerning> kernings = new ArrayList<Kerning>();
+        for (final Kerning kerning : font.getKernings()) {
+            kernings.add(new Kerning(kerning.getLeftGlyph(),
+                    kerning.getRightGlyph(),
+                    kerning.getAdjustment() * factor));
+        }
+
+        final DefineFont3 definition = new DefineFont3(identifier,
+                font.getFace().getName());
+
+        definition.setEncoding(font.getEncoding());
+        definition.setItalic(font.getFace().isItalic());
+        definition.setBold(font.getFace().isBold());
+        definition.setAscent(font.getAscent() * factor);
+        definition.setDescent(font.getDescent() * factor);
+        definition.setLeading(font.getLeading() * factor);
+        definition.setShapes(glyphList);
+        definition.setCodes(codeList);
+        definition.setAdvances(advanceList);
+        definition.setBounds(boundsList);
+        definition.setKernings(kernings);
+
+        return definition;
+    }
+
+    /**
+     * Get the glyph displayed for a character, using the missing glyph for
+     * characters that are outside the range supported by the font.
+     *
+     * @param code the character code.
+     * @return the index of the glyph in the font.
+     */
+    private int glyphIndex(final int code) {
+        int index;
+        if (code > font.getHighestChar()) {
+            index = font.getMissingGlyph();
+        } else {
+            index = font.glyphForCharacter((char) code);
+        }
+        return index;
+    }
+
+    /**
+     * Return the shared instance of an encoded glyph, if a GlyphCache is set.
+     * @param shape the encoded outline of a glyph.
+     * @return a glyph with the same encoded outline.
+     */
+    private Shape share(final Shape shape) {
+        Shape result;
+        if (cache == null) {
+            result = shape;
+        } else {
+            result = cache.intern(shape);
+        }
+        return result;
+    }
+
+    /**
+     * Encode the outline of a glyph so it can be copied directly when a font
+     * definition is encoded. Outlines that are already encoded, for example
+     * from fonts decoded from Flash files, are used unchanged.
+     *
+     * @param shape the outline of the glyph.
+     * @return a Shape containing the encoded outline.
+     * @throws IOException if there is an error encoding the shape.
+     */
+    static Shape encode(final Shape shape) throws IOException {
+        Shape encoded;
+
+        if (shape == null) {
+            encoded = encode(new Shape());
+        } else if (shape.getObjects().size() == 1
+                && shape.getObjects().get(0) instanceof ShapeData) {
+            encoded = shape;
+        } else {
+            final Context context = new Context();
+            context.put(Context.FILL_SIZE, 1);
+            context.put(Context.LINE_SIZE, 0);
+
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            final SWFEncoder coder = new SWFEncoder(stream);
+
+            shape.prepareToEncode(context);
+            shape.encode(coder, context);
+            coder.flush();
+
+            encoded = new Shape();
+            encoded.add(new ShapeData(stream.toByteArray()));
+        }
+        return encoded;
+    }
+
+    /**
+     * Scale the outline of a glyph from the EM square used in DefineFont2
+     * to the one used in DefineFont3.
+     *
+     * @param shape the outline of the glyph.
+     * @param factor the scaling factor, either FONT3_SCALE or 1 if the
+     * outline already uses the EM square for DefineFont3.
+     * @return a Shape with the coordinates scaled or the original shape if
+     * the factor is 1.
+     * @throws IOException if there is an error decoding an encoded outline.
+     */
+    private static Shape scale(final Shape shape, final int factor)
+            throws IOException {
+        Shape scaled = shape;
+
+        if (shape != null && factor != 1) {
+            scaled = new Shape();
+            for (final ShapeRecord record : records(shape)) {
+                if (record instanceof Line) {
+                    final Line line = (Line) record;
+                    scaled.add(new Line(line.getX() * factor,
+                            line.getY() * factor));
+                } else if (record instanceof Curve) {
+                    final Curve curve = (Curve) record;
+                    scaled.add(new Curve(curve.getControlX() * factor,
+                            curve.getControlY() * factor,
+                            curve.getAnchorX() * factor,
+                            curve.getAnchorY() * factor));
+                } else if (record instanceof ShapeStyle
+                        && ((ShapeStyle) record).getMoveX() != null) {
+                    final ShapeStyle style = ((ShapeStyle) record).copy();
+                    style.setMove(style.getMoveX() * factor,
+                            style.getMoveY() * factor);
+                    scaled.add(style);
+                } else {
+                    scaled.add(record);
+                }
+            }
+        }
+        return scaled;
+    }
+
+    /**
+     * Get the records for a shape, decoding them if the shape contains the
+     * encoded outline of a glyph.
+     *
+     * @param shape the outline of a glyph.
+     * @return the list of records.
+     * @throws IOException if there is an error decoding the outline.
+     */
+    static List<ShapeRecord> records(final Shape shape)
+            throws IOException {
+        List<ShapeRecord> records = shape.getObjects();
+
+        if (records.size() == 1 && records.get(0) instanceof ShapeData) {
+            final Context context = new Context();
+            context.setRegistry(DecoderRegistry.getDefault());
+            context.put(Context.TYPE, MovieTypes.DEFINE_FONT_3);
+            final SWFDecoder coder = new SWFDecoder(new ByteArrayInputStream(
+                    ((ShapeData) records.get(0)).getData()));
+            records = new Shape(coder, context).getObjects();
+        }
+        return records;
+    }
+}
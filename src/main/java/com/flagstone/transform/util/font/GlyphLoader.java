@@ -0,0 +1,69 @@
+/*
+ * GlyphLoader.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.font;
+
+import java.io.IOException;
+
+/**
+ * GlyphLoader is implemented by font decoders that convert glyph outlines on
+ * demand rather than when the font is read. A Font that has a GlyphLoader
+ * only decodes the glyphs that are actually used, for example when a font
+ * definition is created for a small set of characters.
+ */
+interface GlyphLoader {
+    /**
+     * Decode the glyph at the specified position in the font.
+     *
+     * @param index the index of the glyph in the font.
+     * @return the Glyph containing the outline, bounding box and advance.
+     * @throws IOException if there is an error decoding the glyph.
+     */
+    Glyph loadGlyph(int index) throws IOException;
+
+    /**
+     * Get the advance for the glyph at the specified position in the font
+     * without decoding the outline.
+     *
+     * @param index the index of the glyph in the font.
+     * @return the advance to the next glyph.
+     */
+    int loadAdvance(int index);
+
+    /**
+     * Estimate the memory used by the loader and by all the glyphs in the
+     * font once they have been decoded.
+     *
+     * @return an estimate of the number of bytes used.
+     */
+    long estimateSize();
+}
@@ -109,6 +109,8 @@ public final class SWFFontDecoder implements FontProvider, FontDecoder {
                 decode((DefineFont) obj);
             } else if (obj instanceof DefineFont2) {
                 decode((DefineFont2) obj);
+            } else if (obj instanceof DefineFont3) {
+                decode((DefineFont3) obj);
             } else if (obj instanceof FontInfo) {
                 decode((FontInfo) obj);
             } else if (obj instanceof FontInfo2) {
@@ -257,6 +259,7 @@ public final class SWFFontDecoder implements FontProvider, FontDecoder {
     public void decode(final DefineFont3 object) {
 
         final Font font = new Font();
+        font.setEmSquare(Font.FONT3_EM_SQUARE);
 
         font.setFace(new FontFace(object.getName(),
                 object.isBold(), object.isItalic()));
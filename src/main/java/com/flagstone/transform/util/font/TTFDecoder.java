@@ -40,6 +40,9 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -50,12 +53,8 @@ import java.util.zip.DataFormatException;
 import com.flagstone.transform.Constants;
 import com.flagstone.transform.coder.BigDecoder;
 import com.flagstone.transform.coder.Coder;
-import com.flagstone.transform.datatype.Bounds;
-import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.coder.CoderException;
 import com.flagstone.transform.font.CharacterFormat;
-import com.flagstone.transform.shape.Shape;
-import com.flagstone.transform.shape.ShapeRecord;
-import com.flagstone.transform.util.shape.Canvas;
 
 /**
  * TTFDecoder decodes TrueType or OpenType Fonts so they can be used in a
@@ -162,11 +161,6 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
         }
     }
 
-    /** Number of bits to shift to convert bytes to bits. */
-    private static final int BYTES_TO_BITS = 3;
-    /** The number of bits to shift a byte to sign extend to 32-bits. */
-    private static final int SIGN_EXTEND = 24;
-
     /** The name of the OS/2 table. */
     private static final int OS_2 = 0x4F532F32;
     /** The name of the head table. */
@@ -200,58 +194,6 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
     private static final int WEIGHT_BOLD = 700;
 //    private static final int WEIGHT_EXTRABOLD = 800;
 //    private static final int WEIGHT_BLACK = 900;
-    /**
-     * Mask for the field that identifies whether a point is located on the
-     * outline of a glyph.
-     */
-    private static final int ON_CURVE = 0x01;
-    /**
-     * Mask for the field that identifies whether the x-coordinate of a point
-     * encoded in 16-bits.
-     */
-    private static final int X_SHORT = 0x02;
-    /**
-     * Mask for the field that identifies whether the y-coordinate of a point
-     * encoded in 16-bits.
-     */
-    private static final int Y_SHORT = 0x04;
-    /**
-     * Mask for the field that identifies whether the coordinate of a point
-     * is repeated.
-     */
-    private static final int REPEAT_FLAG = 0x08;
-    /**
-     * Mask for the field that identifies whether the x-coordinate of a point
-     * is unchanged.
-     */
-    private static final int X_SAME = 0x10;
-    /**
-     * Mask for the field that identifies whether the y-coordinate of a point
-     * is unchanged.
-     */
-    private static final int Y_SAME = 0x20;
-    /**
-     * Mask for the field that identifies whether the value for the relative
-     * change in the x-coordinate of a point is added to the previous value.
-     */
-    private static final int X_POSITIVE = 0x10;
-    /**
-     * Mask for the field that identifies whether the value for the relative
-     * change in the y-coordinate of a point is added to the previous value.
-     */
-    private static final int Y_POSITIVE = 0x20;
-    /** The coordinates for the encoded glyph is 32-bits. */
-    private static final int ARGS_ARE_WORDS = 0x01;
-    /** X and Y coordinates are encoded. */
-    private static final int ARGS_ARE_XY = 0x02;
-    /** The font contains scaling information. */
-    private static final int HAVE_SCALE = 0x08;
-    /** Scaling for both the x and y axes are included. */
-    private static final int HAVE_XYSCALE = 0x40;
-    /** Scaling for both the x and y axes includes an offset. */
-    private static final int HAVE_2X2 = 0x80;
-    /** The outline of the glyph has more points to be decoded. */
-    private static final int HAS_MORE = 0x10;
 
     /** The name of the font. */
     private transient String name;
@@ -271,8 +213,6 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
     private transient int[] charToGlyph;
     /** Table mapping glyph to character codes. */
     private transient int[] glyphToChar;
-    /** Glyphs. */
-    private transient TrueTypeGlyph[] glyphTable;
     /** The number of glyphs defined in the font. */
     private transient int glyphCount;
     /** The index of the glyph that represents unsupported characters. */
@@ -287,6 +227,12 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
     private transient int glyphOffset;
     /** The offsets in bytes to each glyph in the GLYF table. */
     private transient int[] offsets;
+    /** The advance for each glyph. */
+    private transient int[] advances;
+    /** The encoded glyph outlines. */
+    private transient ByteBuffer outlines;
+    /** Indicates whether glyph outlines are decoded on demand. */
+    private transient boolean lazy;
 
     /** Directory of tables encoded in the font. */
     private final transient Map<Integer, TableEntry> table
@@ -299,21 +245,57 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
     @Override
 	public FontDecoder newDecoder() {
         return new TTFDecoder();
-    }
-
+    }
+
+    /**
+     * Indicates whether glyph outlines are decoded only when they are used.
+     *
+     * @return true if the outlines are decoded on demand, false if all the
+     * glyphs are decoded when the font is read.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Select whether the glyph outlines are decoded when the font is read or
+     * only when they are used. In lazy mode the table directory and the
+     * tables containing the font metrics, character map, advances and glyph
+     * locations are decoded when the font is read but a glyph is only
+     * converted into a shape when it is first referenced, for example when
+     * Font.defineFont() is called for a set of characters. Fonts read from
+     * a file are memory-mapped rather than loaded so only the glyphs used
+     * are read from disk. This greatly reduces the time and memory needed to
+     * embed a subset of a large font, such as those for CJK scripts, which
+     * may contain tens of thousands of glyphs.
+     *
+     * @param enable true if glyphs are decoded on demand, false (the default)
+     * if all the glyphs are decoded when the font is read.
+     */
+    public void setLazy(final boolean enable) {
+        lazy = enable;
+    }
+
     /** {@inheritDoc} */
     @Override
 	public void read(final File file) throws IOException, DataFormatException {
         final FileInputStream stream = new FileInputStream(file);
         try {
-            read(stream);
+            if (lazy) {
+                final FileChannel channel = stream.getChannel();
+                loadTables(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size()));
+                addFont();
+            } else {
+                read(stream);
+            }
         } finally {
             if (stream != null) {
                 stream.close();
             }
         }
-    }
-
+    }
+
     /** {@inheritDoc} */
     @Override
 	public void read(final URL url) throws IOException, DataFormatException {
@@ -333,8 +315,8 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
                 stream.close();
             }
         }
-    }
-
+    }
+
     /** {@inheritDoc} */
     @Override
 	public List<Font> getFonts() {
@@ -348,8 +330,18 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
      */
     public void read(final InputStream stream) throws IOException {
         loadTables(stream);
+        addFont();
+    }
+
+    /**
+     * Decode the loaded tables and add the font to the list of decoded fonts.
+     * @throws IOException if there is an error decoding the font data.
+     */
+    private void addFont() throws IOException {
         decodeTables();
 
+        final TTFGlyphLoader loader = new TTFGlyphLoader(outlines, offsets,
+                advances, scale);
         final Font font = new Font();
 
         font.setFace(new FontFace(name, bold, italic));
@@ -361,10 +353,16 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
         font.setMissingGlyph(missingGlyph);
         font.setHighestChar(maxChar);
 
-        for (int i = 0; i < glyphCount; i++) {
-            font.addGlyph((char) glyphToChar[i], glyphTable[i]);
+        if (lazy) {
+            for (int i = 0; i < glyphCount; i++) {
+                font.addGlyph((char) glyphToChar[i], null);
+            }
+            font.setGlyphLoader(loader);
+        } else {
+            for (int i = 0; i < glyphCount; i++) {
+                font.addGlyph((char) glyphToChar[i], loader.loadGlyph(i));
+            }
         }
-
         fonts.add(font);
     }
 
@@ -399,6 +397,50 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
             entry.setData(coder.readBytes(new byte[entry.length]));
             table.put(entry.type, entry);
         }
+        outlines = ByteBuffer.wrap(table.get(GLYF).getData());
+    }
+
+    /**
+     * Load the tables from the TrueType table directory in a buffer. The data
+     * for the glyf table is not copied so glyphs are only read from the
+     * buffer when they are decoded.
+     * @param buffer the buffer containing the font data.
+     * @throws IOException if there is an error loading the table data.
+     */
+    private void loadTables(final ByteBuffer buffer)  throws IOException {
+        final ByteBuffer data = buffer.duplicate();
+
+        try {
+            /* float version = */data.getInt();
+            final int tableCount = data.getShort() & Coder.USHORT_MAX;
+            /* int searchRange = */data.getShort();
+            /* int entrySelector = */data.getShort();
+            /* int rangeShift = */data.getShort();
+
+            for (int i = 0; i < tableCount; i++) {
+                final TableEntry entry = new TableEntry();
+                entry.type = data.getInt();
+                /* checksum */ data.getInt();
+                entry.offset = data.getInt();
+                entry.length = data.getInt();
+
+                final ByteBuffer slice = buffer.duplicate();
+                slice.position(entry.offset);
+                slice.limit(entry.offset + entry.length);
+
+                if (entry.type == GLYF) {
+                    outlines = slice.slice();
+                } else {
+                    entry.setData(new byte[entry.length]);
+                    slice.get(entry.data);
+                    table.put(entry.type, entry);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new CoderException(data.position(), "Truncated font");
+        } catch (IllegalArgumentException e) {
+            throw new CoderException(data.position(), "Invalid table offset");
+        }
     }
 
     /**
@@ -414,7 +456,6 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
         decodeHHEA(table.get(HHEA));
         decodeNAME(table.get(NAME));
         decodeLOCA(table.get(LOCA));
-        decodeGlyphs(table.get(GLYF));
         decodeHMTX(table.get(HMTX));
         decodeCMAP(table.get(CMAP));
     }
@@ -664,7 +705,6 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
         final float version = coder.readInt() / Coder.SCALE_16;
 
         glyphCount = coder.readUnsignedShort();
-        glyphTable = new TrueTypeGlyph[glyphCount];
         glyphToChar = new int[glyphCount];
 
         if (version == 1.0f) {
@@ -696,20 +736,17 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
         final BigDecoder coder = new BigDecoder(stream, data.length);
         int index = 0;
 
+        advances = new int[glyphCount];
+
         for (index = 0; index < metrics; index++) {
-            glyphTable[index].setAdvance((coder.readUnsignedShort() / scale));
+            advances[index] = coder.readUnsignedShort() / scale;
             coder.readShort(); // left side bearing
         }
 
-        final int advance = glyphTable[index - 1].getAdvance();
-
-        while (index < glyphCount) {
-            glyphTable[index++].setAdvance(advance);
-        }
+        final int advance = advances[index - 1];
 
         while (index < glyphCount) {
-            coder.readShort();
-            index++;
+            advances[index++] = advance;
         }
     }
 
@@ -872,420 +909,21 @@ public final class TTFDecoder implements FontProvider, FontDecoder {
         final byte[] data = entry.getData();
         final ByteArrayInputStream stream = new ByteArrayInputStream(data);
         final BigDecoder coder = new BigDecoder(stream, data.length);
-        offsets = new int[glyphCount];
+        final int size = glyphOffset == ITLF_SHORT ? 2 : 4;
+        final int count = Math.min(glyphCount + 1, data.length / size);
 
-        if (glyphOffset == ITLF_SHORT) {
-            offsets[0] = (coder.readUnsignedShort() * 2
-                    << BYTES_TO_BITS);
-        } else {
-            offsets[0] = (coder.readInt()
-                    << BYTES_TO_BITS);
-        }
+        offsets = new int[glyphCount + 1];
 
-        for (int i = 1; i < glyphCount; i++) {
+        for (int i = 0; i < count; i++) {
             if (glyphOffset == ITLF_SHORT) {
-                offsets[i] = (coder.readUnsignedShort() * 2
-                        << BYTES_TO_BITS);
-            } else {
-                offsets[i] = (coder.readInt()
-                        << BYTES_TO_BITS);
-            }
-
-            if (offsets[i] == offsets[i - 1]) {
-                offsets[i - 1] = 0;
-            }
-        }
-    }
-
-    /**
-     * Decode the GLYF table.
-     *
-     * @param entry the bleEntry containing the encoded GLYF table data.
-     * @throws IOException if an error occurs while decoding the table data.
-     */
-    private void decodeGlyphs(final TableEntry entry) throws IOException {
-        final byte[] data = entry.getData();
-        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
-        final BigDecoder coder = new BigDecoder(stream, data.length);
-        int numberOfContours = 0;
-
-        for (int i = 0; i < glyphCount; i++) {
-            coder.skip(offsets[i] >> 3);
-
-            numberOfContours = coder.readShort();
-
-            if (numberOfContours >= 0) {
-                decodeSimpleGlyph(coder, i, numberOfContours);
-            }
-            coder.reset();
-        }
-
-        for (int i = 0; i < glyphCount; i++) {
-            if (offsets[i] != 0) {
-                coder.skip(offsets[i] >> 3);
-
-                if (coder.readShort() == -1) {
-                    decodeCompositeGlyph(coder, i);
-                }
-                coder.reset();
-            }
-        }
-    }
-
-    /**
-     * Decode a simple glyph.
-     *
-     * @param coder the decoder containing the encoded glyph data.
-     * @param glyphIndex the position of the Glyph table to store the glyph.
-     * @param numberOfContours the number of segments in the glyph outline.
-     * @throws IOException if an error occurs reading the glyph data.
-     */
-    private void decodeSimpleGlyph(final BigDecoder coder,
-            final int glyphIndex, final int numberOfContours)
-            throws IOException {
-
-        final int xMin = coder.readShort() / scale;
-        final int yMin = coder.readShort() / scale;
-        final int xMax = coder.readShort() / scale;
-        final int yMax = coder.readShort() / scale;
-
-        final int[] endPtsOfContours = new int[numberOfContours];
-
-        for (int i = 0; i < numberOfContours; i++) {
-            endPtsOfContours[i] = coder.readUnsignedShort();
-        }
-
-        final int instructionCount = coder.readUnsignedShort();
-        final int[] instructions = new int[instructionCount];
-
-        for (int i = 0; i < instructionCount; i++) {
-            instructions[i] = coder.readByte();
-        }
-
-        final int numberOfPoints = (numberOfContours == 0) ? 0
-                : endPtsOfContours[endPtsOfContours.length - 1] + 1;
-
-        final int[] flags = new int[numberOfPoints];
-        final int[] xCoordinates = new int[numberOfPoints];
-        final int[] yCoordinates = new int[numberOfPoints];
-        final boolean[] onCurve = new boolean[numberOfPoints];
-
-        int repeatCount = 0;
-        int repeatFlag = 0;
-
-        for (int i = 0; i < numberOfPoints; i++) {
-            if (repeatCount > 0) {
-                flags[i] = repeatFlag;
-                repeatCount--;
-            } else {
-                flags[i] = coder.readByte();
-
-                if ((flags[i] & REPEAT_FLAG) > 0) {
-                    repeatCount = coder.readByte();
-                    repeatFlag = flags[i];
-                }
-            }
-            onCurve[i] = (flags[i] & ON_CURVE) > 0;
-        }
-
-        int last = 0;
-
-        for (int i = 0; i < numberOfPoints; i++) {
-            if ((flags[i] & X_SHORT) > 0) {
-                if ((flags[i] & X_POSITIVE) > 0) {
-                    xCoordinates[i] = last + coder.readByte();
-                    last = xCoordinates[i];
-                } else {
-                    xCoordinates[i] = last - coder.readByte();
-                    last = xCoordinates[i];
-                }
+                offsets[i] = coder.readUnsignedShort() * 2;
             } else {
-                if ((flags[i] & X_SAME) > 0) {
-                    xCoordinates[i] = last;
-                } else {
-                    xCoordinates[i] = last + coder.readShort();
-                    last = xCoordinates[i];
-                }
+                offsets[i] = coder.readInt();
             }
         }
-
-        last = 0;
-
-        for (int i = 0; i < numberOfPoints; i++) {
-            if ((flags[i] & Y_SHORT) > 0) {
-                if ((flags[i] & Y_POSITIVE) > 0) {
-                    yCoordinates[i] = last + coder.readByte();
-                    last = yCoordinates[i];
-                } else {
-                    yCoordinates[i] = last - coder.readByte();
-                    last = yCoordinates[i];
-                }
-            } else {
-                if ((flags[i] & Y_SAME) > 0) {
-                    yCoordinates[i] = last;
-                } else {
-                    yCoordinates[i] = last + coder.readShort();
-                    last = yCoordinates[i];
-                }
-            }
-        }
-
-        /*
-         * Convert the coordinates into a shape
-         */
-        final Canvas path = new Canvas();
-
-        boolean contourStart = true;
-        boolean offPoint = false;
-
-        int contour = 0;
-
-        int xCoord = 0;
-        int yCoord = 0;
-
-        int prevX = 0;
-        int prevY = 0;
-
-        int initX = 0;
-        int initY = 0;
-
-        for (int i = 0; i < numberOfPoints; i++) {
-            xCoord = xCoordinates[i] / scale;
-            yCoord = yCoordinates[i] / scale;
-
-            if (onCurve[i]) {
-                if (contourStart) {
-                    path.moveForFont(xCoord, -yCoord);
-                    contourStart = false;
-                    initX = xCoord;
-                    initY = yCoord;
-                } else if (offPoint) {
-                    path.curve(prevX, -prevY, xCoord, -yCoord);
-                    offPoint = false;
-                } else {
-                    path.line(xCoord, -yCoord);
-                }
-            } else {
-                if (offPoint) {
-                    path.curve(prevX, -prevY, (xCoord + prevX) / 2,
-                            -(yCoord + prevY) / 2);
-                }
-
-                prevX = xCoord;
-                prevY = yCoord;
-                offPoint = true;
-            }
-
-            if (i == endPtsOfContours[contour]) {
-                if (offPoint) {
-                    path.curve(xCoord, -yCoord, initX, -initY);
-                } else {
-                    path.close();
-                }
-                contourStart = true;
-                offPoint = false;
-                prevX = 0;
-                prevY = 0;
-                contour++;
-            }
+        // If the end of the last glyph is missing use the end of the table.
+        for (int i = count; i <= glyphCount; i++) {
+            offsets[i] = outlines.limit();
         }
-
-        glyphTable[glyphIndex] = new TrueTypeGlyph(path.getShape(),
-                new Bounds(xMin, -yMax, xMax, -yMin), 0);
-        glyphTable[glyphIndex].setCoordinates(xCoordinates, yCoordinates);
-        glyphTable[glyphIndex].setOnCurve(onCurve);
-        glyphTable[glyphIndex].setEnds(endPtsOfContours);
-    }
-
-    /**
-     * Decode a glyph that contains a series of simple glyphs.
-     *
-     * @param coder the decoder containing the encoded glyph data.
-     * @param glyphIndex the position of the Glyph table to store the glyph.
-     * @throws IOException if an error occurs reading the glyph data.
-     */
-    private void decodeCompositeGlyph(final BigDecoder coder,
-            final int glyphIndex) throws IOException {
-
-        final Shape shape = new Shape(new ArrayList<ShapeRecord>());
-        CoordTransform transform = null;
-
-        final int xMin = coder.readShort();
-        final int yMin = coder.readShort();
-        final int xMax = coder.readShort();
-        final int yMax = coder.readShort();
-
-        TrueTypeGlyph points = null;
-
-        int numberOfPoints = 0;
-
-        int[] endPtsOfContours = null;
-        int[] xCoordinates = null;
-        int[] yCoordinates = null;
-        boolean[] onCurve = null;
-
-        int flags = 0;
-        int sourceGlyph = 0;
-
-        int xOffset = 0;
-        int yOffset = 0;
-
-//        int sourceIndex = 0;
-//        int destIndex = 0;
-
-        do {
-            flags = coder.readUnsignedShort();
-            sourceGlyph = coder.readUnsignedShort();
-
-            if ((sourceGlyph >= glyphTable.length)
-                    || (glyphTable[sourceGlyph] == null)) {
-                glyphTable[glyphIndex] = new TrueTypeGlyph(null,
-                        new Bounds(xMin, yMin, xMax, yMax), 0);
-                return;
-            }
-
-            points = glyphTable[sourceGlyph];
-            numberOfPoints = points.numberOfPoints();
-
-            endPtsOfContours = new int[points.numberOfContours()];
-            points.getEnd(endPtsOfContours);
-
-            xCoordinates = new int[numberOfPoints];
-            points.getXCoordinates(xCoordinates);
-
-            yCoordinates = new int[numberOfPoints];
-            points.getYCoordinates(yCoordinates);
-
-            onCurve = new boolean[numberOfPoints];
-            points.getCurve(onCurve);
-
-            if (((flags & ARGS_ARE_WORDS) == 0)
-                    && ((flags & ARGS_ARE_XY) == 0)) {
-                /* destIndex = */ coder.readByte();
-                /* sourceIndex = */ coder.readByte();
-
-                //xCoordinates[destIndex] =
-                //glyphTable[sourceGlyph].xCoordinates[sourceIndex];
-                //yCoordinates[destIndex] =
-                //glyphTable[sourceGlyph].yCoordinates[sourceIndex];
-                transform = CoordTransform.translate(0, 0);
-            } else if (((flags & ARGS_ARE_WORDS) == 0)
-                    && ((flags & ARGS_ARE_XY) > 0)) {
-                xOffset = (coder.readByte() << SIGN_EXTEND) >> SIGN_EXTEND;
-                yOffset = (coder.readByte() << SIGN_EXTEND) >> SIGN_EXTEND;
-                transform = CoordTransform.translate(xOffset, yOffset);
-            } else if (((flags & ARGS_ARE_WORDS) > 0)
-                    && ((flags & ARGS_ARE_XY) == 0)) {
-                /* destIndex = */ coder.readUnsignedShort();
-                /* sourceIndex = */ coder.readUnsignedShort();
-
-                //xCoordinates[destIndex] =
-                //glyphTable[sourceGlyph].xCoordinates[sourceIndex];
-                //yCoordinates[destIndex] =
-                //glyphTable[sourceGlyph].yCoordinates[sourceIndex];
-                transform = CoordTransform.translate(0, 0);
-            } else {
-                xOffset = coder.readShort();
-                yOffset = coder.readShort();
-                transform = CoordTransform.translate(xOffset, yOffset);
-            }
-
-            if ((flags & HAVE_SCALE) > 0) {
-                final float scaleXY = coder.readShort() / Coder.SCALE_14;
-                transform = new CoordTransform(scaleXY, scaleXY, 0, 0, xOffset,
-                        yOffset);
-            } else if ((flags & HAVE_XYSCALE) > 0) {
-                final float scaleX = coder.readShort() / Coder.SCALE_14;
-                final float scaleY = coder.readShort() / Coder.SCALE_14;
-                transform = new CoordTransform(scaleX, scaleY, 0, 0, xOffset,
-                        yOffset);
-            } else if ((flags & HAVE_2X2) > 0) {
-                final float scaleX = coder.readShort() / Coder.SCALE_14;
-                final float scale01 = coder.readShort() / Coder.SCALE_14;
-                final float scale10 = coder.readShort() / Coder.SCALE_14;
-                final float scaleY = coder.readShort() / Coder.SCALE_14;
-
-                transform = new CoordTransform(scaleX, scaleY, scale01,
-                        scale10, xOffset, yOffset);
-            }
-
-            final float[][] matrix = transform.getMatrix();
-            float[][] result;
-
-            for (int i = 0; i < numberOfPoints; i++) {
-                result = CoordTransform.product(matrix, CoordTransform
-                        .translate(xCoordinates[i], yCoordinates[i])
-                        .getMatrix());
-
-                xCoordinates[i] = (int) result[0][2];
-                yCoordinates[i] = (int) result[1][2];
-            }
-
-            final Canvas path = new Canvas();
-
-            boolean contourStart = true;
-            boolean offPoint = false;
-
-            int contour = 0;
-
-            int xCoord = 0;
-            int yCoord = 0;
-
-            int prevX = 0;
-            int prevY = 0;
-
-            int initX = 0;
-            int initY = 0;
-
-            for (int i = 0; i < numberOfPoints; i++) {
-                xCoord = xCoordinates[i] / scale;
-                yCoord = yCoordinates[i] / scale;
-
-                if (onCurve[i]) {
-                    if (contourStart) {
-                        path.moveForFont(xCoord, -yCoord);
-                        contourStart = false;
-                        initX = xCoord;
-                        initY = yCoord;
-                    } else if (offPoint) {
-                        path.curve(prevX, -prevY, xCoord, -yCoord);
-                        offPoint = false;
-                    } else {
-                        path.line(xCoord, -yCoord);
-                    }
-                } else {
-                    if (offPoint) {
-                        path.curve(prevX, -prevY, (xCoord + prevX) / 2,
-                                -(yCoord + prevY) / 2);
-                    }
-
-                    prevX = xCoord;
-                    prevY = yCoord;
-                    offPoint = true;
-                }
-
-                if (i == endPtsOfContours[contour]) {
-                    if (offPoint) {
-                        path.curve(xCoord, -yCoord, initX, -initY);
-                    } else {
-                        path.close();
-                    }
-                    contourStart = true;
-                    offPoint = false;
-                    prevX = 0;
-                    prevY = 0;
-                    contour++;
-                }
-            }
-            shape.getObjects().addAll(path.getShape().getObjects());
-
-        } while ((flags & HAS_MORE) > 0);
-
-        glyphTable[glyphIndex] = new TrueTypeGlyph(shape,
-                new Bounds(xMin, yMin, xMax, yMax), 0);
-
-        glyphTable[glyphIndex].setCoordinates(xCoordinates, yCoordinates);
-        glyphTable[glyphIndex].setOnCurve(onCurve);
-        glyphTable[glyphIndex].setEnds(endPtsOfContours);
     }
 }
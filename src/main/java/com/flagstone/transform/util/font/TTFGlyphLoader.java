@@ -0,0 +1,555 @@
+/*
+ * TTFGlyphLoader.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.font;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import com.flagstone.transform.coder.BigDecoder;
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.CoderException;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.util.shape.Canvas;
+
+/**
+ * TTFGlyphLoader converts the outlines in the glyf table of a TrueType font
+ * into glyphs. Glyphs are decoded individually, using the offsets from the loca
+ * table, and cached so composite glyphs and repeated requests for the same
+ * glyph only decode the outline once. The table data is not copied so it can
+ * be a slice of a memory-mapped file.
+ */
+@SuppressWarnings({"PMD.CyclomaticComplexity",
+    "PMD.NPathComplexity",
+    "PMD.ExcessiveMethodLength",
+    "PMD.NcssMethodCount" })
+final class TTFGlyphLoader implements GlyphLoader {
+
+    /** The number of bits to shift a byte to sign extend to 32-bits. */
+    private static final int SIGN_EXTEND = 24;
+
+    /**
+     * Mask for the field that identifies whether a point is located on the
+     * outline of a glyph.
+     */
+    private static final int ON_CURVE = 0x01;
+    /**
+     * Mask for the field that identifies whether the x-coordinate of a point
+     * encoded in 16-bits.
+     */
+    private static final int X_SHORT = 0x02;
+    /**
+     * Mask for the field that identifies whether the y-coordinate of a point
+     * encoded in 16-bits.
+     */
+    private static final int Y_SHORT = 0x04;
+    /**
+     * Mask for the field that identifies whether the coordinate of a point
+     * is repeated.
+     */
+    private static final int REPEAT_FLAG = 0x08;
+    /**
+     * Mask for the field that identifies whether the x-coordinate of a point
+     * is unchanged.
+     */
+    private static final int X_SAME = 0x10;
+    /**
+     * Mask for the field that identifies whether the y-coordinate of a point
+     * is unchanged.
+     */
+    private static final int Y_SAME = 0x20;
+    /**
+     * Mask for the field that identifies whether the value for the relative
+     * change in the x-coordinate of a point is added to the previous value.
+     */
+    private static final int X_POSITIVE = 0x10;
+    /**
+     * Mask for the field that identifies whether the value for the relative
+     * change in the y-coordinate of a point is added to the previous value.
+     */
+    private static final int Y_POSITIVE = 0x20;
+    /** The coordinates for the encoded glyph is 32-bits. */
+    private static final int ARGS_ARE_WORDS = 0x01;
+    /** X and Y coordinates are encoded. */
+    private static final int ARGS_ARE_XY = 0x02;
+    /** The font contains scaling information. */
+    private static final int HAVE_SCALE = 0x08;
+    /** Scaling for both the x and y axes are included. */
+    private static final int HAVE_XYSCALE = 0x40;
+    /** Scaling for both the x and y axes includes an offset. */
+    private static final int HAVE_2X2 = 0x80;
+    /** The outline of the glyph has more points to be decoded. */
+    private static final int HAS_MORE = 0x10;
+    /**
+     * The average number of bytes in the glyf table for each record in the
+     * decoded outline of a glyph.
+     */
+    private static final int BYTES_PER_RECORD = 3;
+    /** Size in bytes of each entry in the offset and advance tables. */
+    private static final int ENTRY_SIZE = 4;
+
+    /** The encoded glyf table. */
+    private final transient ByteBuffer data;
+    /** The offsets, in bytes, to each glyph plus the end of the last one. */
+    private final transient int[] offsets;
+    /** The advance for each glyph. */
+    private final transient int[] advances;
+    /** The factor used to scale coordinates to the EM square of the font. */
+    private final transient int scale;
+    /** The glyphs decoded so far. */
+    private final transient TrueTypeGlyph[] glyphs;
+    /**
+     * Flags marking the glyphs being decoded, used to catch composite glyphs
+     * that refer to themselves.
+     */
+    private final transient boolean[] decoding;
+
+    /**
+     * Create a TTFGlyphLoader for a glyf table.
+     *
+     * @param glyf the encoded glyf table.
+     * @param locations the offset in bytes to each glyph in the table. The
+     * array contains one more entry than there are glyphs so the length of
+     * the last glyph is known.
+     * @param widths the advance for each glyph.
+     * @param factor the factor used to scale the glyph coordinates.
+     */
+    TTFGlyphLoader(final ByteBuffer glyf, final int[] locations,
+            final int[] widths, final int factor) {
+        data = glyf;
+        offsets = locations;
+        advances = widths;
+        scale = factor;
+        glyphs = new TrueTypeGlyph[widths.length];
+        decoding = new boolean[widths.length];
+    }
+
+    /**
+     * Get the number of glyphs in the font.
+     * @return the number of glyphs.
+     */
+    int getGlyphCount() {
+        return glyphs.length;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Glyph loadGlyph(final int index) throws IOException {
+        return glyph(index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int loadAdvance(final int index) {
+        int advance = 0;
+
+        if (index >= 0 && index < advances.length) {
+            advance = advances[index];
+        }
+        return advance;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long estimateSize() {
+        final long length = data.limit();
+        return length + ENTRY_SIZE * (offsets.length + advances.length)
+                + (long) Font.GLYPH_SIZE * glyphs.length
+                + Font.RECORD_SIZE * (length / BYTES_PER_RECORD);
+    }
+
+    /**
+     * Get a glyph, decoding it if it has not already been loaded.
+     *
+     * @param index the index of the glyph.
+     * @return the glyph or null if the index is out of range or the glyph
+     * refers, directly or indirectly, to itself.
+     * @throws IOException if there is an error decoding the glyph.
+     */
+    private TrueTypeGlyph glyph(final int index) throws IOException {
+        TrueTypeGlyph glyph = null;
+
+        if (index >= 0 && index < glyphs.length) {
+            glyph = glyphs[index];
+
+            if (glyph == null && !decoding[index]) {
+                decoding[index] = true;
+                try {
+                    glyph = decode(index);
+                } finally {
+                    decoding[index] = false;
+                }
+                glyph.setAdvance(advances[index]);
+                glyphs[index] = glyph;
+            }
+        }
+        return glyph;
+    }
+
+    /**
+     * Decode the outline of a glyph.
+     *
+     * @param index the index of the glyph.
+     * @return the decoded glyph.
+     * @throws IOException if there is an error decoding the glyph.
+     */
+    private TrueTypeGlyph decode(final int index) throws IOException {
+        final int start = offsets[index];
+        final int length = offsets[index + 1] - start;
+
+        TrueTypeGlyph glyph;
+
+        if (length <= 0) {
+            glyph = new TrueTypeGlyph(new Shape(new ArrayList<ShapeRecord>()),
+                    new Bounds(0, 0, 0, 0), 0);
+        } else {
+            if (start < 0 || start + length > data.limit()) {
+                throw new CoderException(start, "Glyph outside glyf table");
+            }
+            final byte[] bytes = new byte[length];
+            final ByteBuffer buffer = data.duplicate();
+            buffer.position(start);
+            buffer.get(bytes);
+
+            final BigDecoder coder = new BigDecoder(
+                    new ByteArrayInputStream(bytes), length);
+            final int numberOfContours = coder.readShort();
+
+            if (numberOfContours >= 0) {
+                glyph = decodeSimpleGlyph(coder, numberOfContours);
+            } else {
+                glyph = decodeCompositeGlyph(coder);
+            }
+        }
+        return glyph;
+    }
+
+    /**
+     * Decode a simple glyph.
+     *
+     * @param coder the decoder containing the encoded glyph data.
+     * @param numberOfContours the number of segments in the glyph outline.
+     * @return the decoded glyph.
+     * @throws IOException if an error occurs reading the glyph data.
+     */
+    private TrueTypeGlyph decodeSimpleGlyph(final BigDecoder coder,
+            final int numberOfContours) throws IOException {
+
+        final int xMin = coder.readShort() / scale;
+        final int yMin = coder.readShort() / scale;
+        final int xMax = coder.readShort() / scale;
+        final int yMax = coder.readShort() / scale;
+
+        final int[] endPtsOfContours = new int[numberOfContours];
+
+        for (int i = 0; i < numberOfContours; i++) {
+            endPtsOfContours[i] = coder.readUnsignedShort();
+        }
+
+        final int instructionCount = coder.readUnsignedShort();
+        coder.skip(instructionCount);
+
+        final int numberOfPoints = (numberOfContours == 0) ? 0
+                : endPtsOfContours[endPtsOfContours.length - 1] + 1;
+
+        final int[] flags = new int[numberOfPoints];
+        final int[] xCoordinates = new int[numberOfPoints];
+        final int[] yCoordinates = new int[numberOfPoints];
+        final boolean[] onCurve = new boolean[numberOfPoints];
+
+        int repeatCount = 0;
+        int repeatFlag = 0;
+
+        for (int i = 0; i < numberOfPoints; i++) {
+            if (repeatCount > 0) {
+                flags[i] = repeatFlag;
+                repeatCount--;
+            } else {
+                flags[i] = coder.readByte();
+
+                if ((flags[i] & REPEAT_FLAG) > 0) {
+                    repeatCount = coder.readByte();
+                    repeatFlag = flags[i];
+                }
+            }
+            onCurve[i] = (flags[i] & ON_CURVE) > 0;
+        }
+
+        int last = 0;
+
+        for (int i = 0; i < numberOfPoints; i++) {
+            if ((flags[i] & X_SHORT) > 0) {
+                if ((flags[i] & X_POSITIVE) > 0) {
+                    xCoordinates[i] = last + coder.readByte();
+                } else {
+                    xCoordinates[i] = last - coder.readByte();
+                }
+                last = xCoordinates[i];
+            } else {
+                if ((flags[i] & X_SAME) > 0) {
+                    xCoordinates[i] = last;
+                } else {
+                    xCoordinates[i] = last + coder.readShort();
+                    last = xCoordinates[i];
+                }
+            }
+        }
+
+        last = 0;
+
+        for (int i = 0; i < numberOfPoints; i++) {
+            if ((flags[i] & Y_SHORT) > 0) {
+                if ((flags[i] & Y_POSITIVE) > 0) {
+                    yCoordinates[i] = last + coder.readByte();
+                } else {
+                    yCoordinates[i] = last - coder.readByte();
+                }
+                last = yCoordinates[i];
+            } else {
+                if ((flags[i] & Y_SAME) > 0) {
+                    yCoordinates[i] = last;
+                } else {
+                    yCoordinates[i] = last + coder.readShort();
+                    last = yCoordinates[i];
+                }
+            }
+        }
+
+        final TrueTypeGlyph glyph = new TrueTypeGlyph(
+                outline(xCoordinates, yCoordinates, onCurve, endPtsOfContours),
+                new Bounds(xMin, -yMax, xMax, -yMin), 0);
+        glyph.setCoordinates(xCoordinates, yCoordinates);
+        glyph.setOnCurve(onCurve);
+        glyph.setEnds(endPtsOfContours);
+        return glyph;
+    }
+
+    /**
+     * Decode a glyph that contains a series of simple glyphs.
+     *
+     * @param coder the decoder containing the encoded glyph data.
+     * @return the decoded glyph.
+     * @throws IOException if an error occurs reading the glyph data.
+     */
+    private TrueTypeGlyph decodeCompositeGlyph(final BigDecoder coder)
+            throws IOException {
+
+        final Shape shape = new Shape(new ArrayList<ShapeRecord>());
+        CoordTransform transform = null;
+
+        final int xMin = coder.readShort();
+        final int yMin = coder.readShort();
+        final int xMax = coder.readShort();
+        final int yMax = coder.readShort();
+
+        TrueTypeGlyph points = null;
+
+        int numberOfPoints = 0;
+
+        int[] endPtsOfContours = null;
+        int[] xCoordinates = null;
+        int[] yCoordinates = null;
+        boolean[] onCurve = null;
+
+        int flags = 0;
+        int sourceGlyph = 0;
+
+        int xOffset = 0;
+        int yOffset = 0;
+
+        do {
+            flags = coder.readUnsignedShort();
+            sourceGlyph = coder.readUnsignedShort();
+            points = glyph(sourceGlyph);
+
+            if (points == null) {
+                return new TrueTypeGlyph(null,
+                        new Bounds(xMin, yMin, xMax, yMax), 0);
+            }
+
+            numberOfPoints = points.numberOfPoints();
+
+            endPtsOfContours = new int[points.numberOfContours()];
+            points.getEnd(endPtsOfContours);
+
+            xCoordinates = new int[numberOfPoints];
+            points.getXCoordinates(xCoordinates);
+
+            yCoordinates = new int[numberOfPoints];
+            points.getYCoordinates(yCoordinates);
+
+            onCurve = new boolean[numberOfPoints];
+            points.getCurve(onCurve);
+
+            if ((flags & ARGS_ARE_XY) == 0) {
+                // Points are matched rather than offset.
+                if ((flags & ARGS_ARE_WORDS) == 0) {
+                    coder.readByte();
+                    coder.readByte();
+                } else {
+                    coder.readUnsignedShort();
+                    coder.readUnsignedShort();
+                }
+                xOffset = 0;
+                yOffset = 0;
+            } else if ((flags & ARGS_ARE_WORDS) == 0) {
+                xOffset = (coder.readByte() << SIGN_EXTEND) >> SIGN_EXTEND;
+                yOffset = (coder.readByte() << SIGN_EXTEND) >> SIGN_EXTEND;
+            } else {
+                xOffset = coder.readShort();
+                yOffset = coder.readShort();
+            }
+            transform = CoordTransform.translate(xOffset, yOffset);
+
+            if ((flags & HAVE_SCALE) > 0) {
+                final float scaleXY = coder.readShort() / Coder.SCALE_14;
+                transform = new CoordTransform(scaleXY, scaleXY, 0, 0, xOffset,
+                        yOffset);
+            } else if ((flags & HAVE_XYSCALE) > 0) {
+                final float scaleX = coder.readShort() / Coder.SCALE_14;
+                final float scaleY = coder.readShort() / Coder.SCALE_14;
+                transform = new CoordTransform(scaleX, scaleY, 0, 0, xOffset,
+                        yOffset);
+            } else if ((flags & HAVE_2X2) > 0) {
+                final float scaleX = coder.readShort() / Coder.SCALE_14;
+                final float scale01 = coder.readShort() / Coder.SCALE_14;
+                final float scale10 = coder.readShort() / Coder.SCALE_14;
+                final float scaleY = coder.readShort() / Coder.SCALE_14;
+
+                transform = new CoordTransform(scaleX, scaleY, scale01,
+                        scale10, xOffset, yOffset);
+            }
+
+            final float[][] matrix = transform.getMatrix();
+            float[][] result;
+
+            for (int i = 0; i < numberOfPoints; i++) {
+                result = CoordTransform.product(matrix, CoordTransform
+                        .translate(xCoordinates[i], yCoordinates[i])
+                        .getMatrix());
+
+                xCoordinates[i] = (int) result[0][2];
+                yCoordinates[i] = (int) result[1][2];
+            }
+
+            shape.getObjects().addAll(outline(xCoordinates, yCoordinates,
+                    onCurve, endPtsOfContours).getObjects());
+
+        } while ((flags & HAS_MORE) > 0);
+
+        final TrueTypeGlyph glyph = new TrueTypeGlyph(shape,
+                new Bounds(xMin, yMin, xMax, yMax), 0);
+
+        glyph.setCoordinates(xCoordinates, yCoordinates);
+        glyph.setOnCurve(onCurve);
+        glyph.setEnds(endPtsOfContours);
+        return glyph;
+    }
+
+    /**
+     * Convert the points of a glyph into a shape. Points that are off the
+     * curve are the control points of quadratic curves and pairs of
+     * consecutive off-curve points imply an on-curve point midway between them.
+     *
+     * @param xCoordinates the x-coordinates of the points.
+     * @param yCoordinates the y-coordinates of the points.
+     * @param onCurve flags indicating whether each point is on the curve.
+     * @param endPtsOfContours the index of the last point in each contour.
+     * @return the outline of the glyph.
+     */
+    private Shape outline(final int[] xCoordinates, final int[] yCoordinates,
+            final boolean[] onCurve, final int[] endPtsOfContours) {
+
+        final Canvas path = new Canvas();
+
+        boolean contourStart = true;
+        boolean offPoint = false;
+
+        int contour = 0;
+
+        int xCoord = 0;
+        int yCoord = 0;
+
+        int prevX = 0;
+        int prevY = 0;
+
+        int initX = 0;
+        int initY = 0;
+
+        for (int i = 0; i < xCoordinates.length; i++) {
+            xCoord = xCoordinates[i] / scale;
+            yCoord = yCoordinates[i] / scale;
+
+            if (onCurve[i]) {
+                if (contourStart) {
+                    path.moveForFont(xCoord, -yCoord);
+                    contourStart = false;
+                    initX = xCoord;
+                    initY = yCoord;
+                } else if (offPoint) {
+                    path.curve(prevX, -prevY, xCoord, -yCoord);
+                    offPoint = false;
+                } else {
+                    path.line(xCoord, -yCoord);
+                }
+            } else {
+                if (offPoint) {
+                    path.curve(prevX, -prevY, (xCoord + prevX) / 2,
+                            -(yCoord + prevY) / 2);
+                }
+
+                prevX = xCoord;
+                prevY = yCoord;
+                offPoint = true;
+            }
+
+            if (i == endPtsOfContours[contour]) {
+                if (offPoint) {
+                    path.curve(xCoord, -yCoord, initX, -initY);
+                } else {
+                    path.close();
+                }
+                contourStart = true;
+                offPoint = false;
+                prevX = 0;
+                prevY = 0;
+                contour++;
+            }
+        }
+        return path.getShape();
+    }
+}
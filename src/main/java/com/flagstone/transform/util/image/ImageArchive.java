@@ -0,0 +1,195 @@
+/*
+ * ImageArchive.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.image.ImageTag;
+
+/**
+ * ImageArchive encodes and decodes the images stored in an AssetCache. The
+ * width and height, the array of bytes returned by ImageDecoder.getImage()
+ * and the image definition are stored. When an image is loaded from the
+ * cache the ImageArchive is used as the ImageDecoder by the ImageFactory. If
+ * the ImageArchive is used to read another image then a decoder for the
+ * format of the original image is used and the stored image is replaced.
+ */
+final class ImageArchive implements ImageDecoder {
+
+    /** The type used to identify images in an AssetCache. */
+    static final String TYPE = "image";
+
+    /**
+     * Encode the image decoded by an ImageDecoder.
+     *
+     * @param decoder the decoder containing the image.
+     * @return the encoded image.
+     * @throws IOException if there is an error encoding the image.
+     */
+    static byte[] encode(final ImageDecoder decoder) throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder coder = new SWFEncoder(stream);
+        final Context context = new Context();
+        final byte[] image = decoder.getImage();
+        final ImageTag definition = decoder.defineImage(1);
+
+        coder.writeInt(decoder.getWidth());
+        coder.writeInt(decoder.getHeight());
+
+        if (image == null) {
+            coder.writeInt(-1);
+        } else {
+            coder.writeInt(image.length);
+            coder.writeBytes(image);
+        }
+
+        definition.prepareToEncode(context);
+        definition.encode(coder, context);
+        coder.flush();
+        return stream.toByteArray();
+    }
+
+    /** The width of the image in pixels. */
+    private final transient int width;
+    /** The height of the image in pixels. */
+    private final transient int height;
+    /** The array of bytes that make up the image. */
+    private final transient byte[] image;
+    /** The definition of the image. */
+    private final transient ImageTag definition;
+    /** The MIME type of the original image. */
+    private final transient String mimeType;
+    /** The decoder used to read another image, null until one is read. */
+    private transient ImageDecoder decoder;
+
+    /**
+     * Create an ImageArchive containing an image loaded from an AssetCache.
+     *
+     * @param stream the stream containing the encoded image.
+     * @param type the MIME type of the original image.
+     * @throws IOException if there is an error reading the image.
+     */
+    ImageArchive(final InputStream stream, final String type)
+            throws IOException {
+        final SWFDecoder coder = new SWFDecoder(stream);
+        final Context context = new Context();
+        context.setRegistry(DecoderRegistry.getDefault());
+
+        width = coder.readInt();
+        height = coder.readInt();
+
+        final int length = coder.readInt();
+        if (length < 0) {
+            image = null;
+        } else {
+            image = coder.readBytes(new byte[length]);
+        }
+
+        final List<MovieTag> list = new ArrayList<MovieTag>(1);
+        context.getRegistry().getMovieDecoder().getObject(list, coder,
+                context);
+        definition = (ImageTag) list.get(0);
+        mimeType = type;
+    }
+
+    /** {@inheritDoc} */
+    public void read(final File file)
+            throws IOException, DataFormatException {
+        final ImageDecoder source = ImageRegistry.getImageProvider(mimeType);
+        source.read(file);
+        decoder = source;
+    }
+
+    /** {@inheritDoc} */
+    public void read(final URL url) throws IOException, DataFormatException {
+        final ImageDecoder source = ImageRegistry.getImageProvider(mimeType);
+        source.read(url);
+        decoder = source;
+    }
+
+    /** {@inheritDoc} */
+    public void read(final InputStream stream)
+            throws IOException, DataFormatException {
+        final ImageDecoder source = ImageRegistry.getImageProvider(mimeType);
+        source.read(stream);
+        decoder = source;
+    }
+
+    /** {@inheritDoc} */
+    public int getWidth() {
+        return decoder == null ? width : decoder.getWidth();
+    }
+
+    /** {@inheritDoc} */
+    public int getHeight() {
+        return decoder == null ? height : decoder.getHeight();
+    }
+
+    /** {@inheritDoc} */
+    public byte[] getImage() {
+        byte[] bytes;
+        if (decoder != null) {
+            bytes = decoder.getImage();
+        } else if (image == null) {
+            bytes = null;
+        } else {
+            bytes = Arrays.copyOf(image, image.length);
+        }
+        return bytes;
+    }
+
+    /** {@inheritDoc} */
+    public ImageTag defineImage(final int identifier) {
+        ImageTag object;
+        if (decoder == null) {
+            object = (ImageTag) definition.copy();
+            object.setIdentifier(identifier);
+        } else {
+            object = decoder.defineImage(identifier);
+        }
+        return object;
+    }
+}
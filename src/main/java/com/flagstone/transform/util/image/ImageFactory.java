@@ -31,6 +31,7 @@
 
 package com.flagstone.transform.util.image;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -42,6 +43,7 @@ import java.net.URLConnection;
 import java.util.zip.DataFormatException;
 
 import com.flagstone.transform.image.ImageTag;
+import com.flagstone.transform.util.cache.AssetCache;
 
 /**
  * <p>
@@ -120,11 +122,39 @@ import com.flagstone.transform.image.ImageTag;
  * centre of the shape. Other points may be defined to suit the alignment of the
  * shape when it is placed on the display list.
  * </P>
+ *
+ * <P>
+ * An AssetCache may be set so the images read from files are stored on disk
+ * and loaded from the cache, rather than decoded again, the next time the
+ * program runs.
+ * </P>
  */
 public final class ImageFactory {
 
     /** The object used to decode the image. */
     private transient ImageDecoder decoder;
+    /** The persistent cache of decoded images. */
+    private transient AssetCache assets;
+
+    /**
+     * Get the persistent cache used to store decoded images.
+     * @return the AssetCache or null if images are not stored.
+     */
+    public AssetCache getAssetCache() {
+        return assets;
+    }
+
+    /**
+     * Set the persistent cache used to store the images decoded from files.
+     * When an image is loaded from the cache getDecoder() returns an object
+     * that contains the stored image. Reading another image with it uses a
+     * decoder for the format of the original image.
+     * @param assetCache the AssetCache used to store decoded images. May be
+     * null if images are not stored.
+     */
+    public void setAssetCache(final AssetCache assetCache) {
+        assets = assetCache;
+    }
 
     /**
      * Create an image definition for the image located in the specified file.
@@ -142,6 +172,38 @@ public final class ImageFactory {
      */
     public void read(final File file) throws IOException, DataFormatException {
 
+        final String mimeType = mimeType(file);
+
+        if (assets == null) {
+            decoder = ImageRegistry.getImageProvider(mimeType);
+            decoder.read(new FileInputStream(file));
+        } else {
+            final String key = AssetCache.key(file);
+            InputStream stream = assets.get(key, ImageArchive.TYPE);
+
+            if (stream == null) {
+                final ImageDecoder source =
+                    ImageRegistry.getImageProvider(mimeType);
+                source.read(new FileInputStream(file));
+                final byte[] data = ImageArchive.encode(source);
+                assets.put(key, ImageArchive.TYPE, data);
+                stream = new ByteArrayInputStream(data);
+            }
+            decoder = new ImageArchive(stream, mimeType);
+        }
+    }
+
+    /**
+     * Identify the format of the image in a file.
+     *
+     * @param file the file containing the image.
+     * @return the MIME type of the image.
+     * @throws IOException if there is an error reading the file.
+     * @throws DataFormatException if the image is in an unsupported format.
+     */
+    private static String mimeType(final File file)
+            throws IOException, DataFormatException {
+
         final ImageInfo info = new ImageInfo();
         info.setInput(new RandomAccessFile(file, "r"));
 //        info.setDetermineImageNumber(true);
@@ -149,10 +211,7 @@ public final class ImageFactory {
         if (!info.check()) {
             throw new DataFormatException("Unsupported format");
         }
-
-        decoder = ImageRegistry.getImageProvider(
-                info.getImageFormat().getMimeType());
-        decoder.read(new FileInputStream(file));
+        return info.getImageFormat().getMimeType();
     }
 
     /**
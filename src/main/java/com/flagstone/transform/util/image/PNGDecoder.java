@@ -31,7 +31,7 @@
 
 package com.flagstone.transform.util.image;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -69,6 +69,18 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
     /** Size of each colour table entry or pixel in a true colour image. */
     private static final int RGB_CHANNELS = 3;
 
+    /** Size of the blocks used to inflate and deflate the image data. */
+    private static final int BUFFER_SIZE = 4096;
+
+    /** Mask for the five most significant bits in a colour channel. */
+    private static final int RGB5_MSB_MASK = 0x00F8;
+    /** Shift used to align the red channel in a RGB555 pixel. */
+    private static final int R5_SHIFT = 7;
+    /** Shift used to align the green channel in a RGB555 pixel. */
+    private static final int G5_SHIFT = 2;
+    /** Shift used to align the blue channel in a RGB555 pixel. */
+    private static final int B5_SHIFT = 3;
+
     /** Size of a pixel in a RGB555 true colour image. */
     private static final int RGB5_SIZE = 16;
     /** Size of a pixel in a RGB8 true colour image. */
@@ -188,8 +200,49 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
     /** Default value for transparent blue pixels. */
 //    private int transparentBlue;
 
-    /** Binary data taken directly from encoded image. */
-    private transient byte[] chunkData = new byte[0];
+    /**
+     * Inflater used to decompress the image data as it is read. It is only
+     * allocated while an image is read so the native memory it uses is
+     * released as soon as the image has been decoded.
+     */
+    private transient Inflater inflater;
+    /** Deflater used to compress the image while it is defined. */
+    private transient Deflater deflater;
+    /** Block of compressed data read from an IDAT chunk. */
+    private final transient byte[] input = new byte[BUFFER_SIZE];
+    /** Block of compressed data written by the deflater. */
+    private final transient byte[] output = new byte[BUFFER_SIZE];
+    /** Holds the filter type read at the start of each row. */
+    private final transient byte[] filterType = new byte[1];
+
+    /** The number of bits in each pixel. */
+    private transient int bitsPerPixel;
+    /** The number of bytes in each pixel, used when reversing filters. */
+    private transient int bytesPerPixel;
+    /** The number of passes used to encode the image: 7 when interlaced. */
+    private transient int passes;
+    /** The current pass when decoding the image. */
+    private transient int pass;
+    /** The row in the image that the current row will be decoded into. */
+    private transient int row;
+    /** The column of the first pixel in each row for the current pass. */
+    private transient int firstColumn;
+    /** The number of rows between rows in the current pass. */
+    private transient int rowStep;
+    /** The number of columns between pixels in the current pass. */
+    private transient int columnStep;
+    /** The number of bytes in each row for the current pass. */
+    private transient int scanLength;
+    /** The number of bytes in the current row inflated so far. */
+    private transient int scanIndex;
+    /** The filter for the current row or -1 if not read yet. */
+    private transient int filter;
+    /** The offset in bits to the next pixel in the current row. */
+    private transient int bitIndex;
+    /** The row being inflated. */
+    private transient byte[] current;
+    /** The row previously decoded, used when reversing filters. */
+    private transient byte[] previous;
 
     /** The format of the decoded image. */
     private transient ImageFormat format;
@@ -238,34 +291,46 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
     /** {@inheritDoc} */
     @Override
 	public ImageTag defineImage(final int identifier) {
+        ImageTag object;
+
+        deflater = new Deflater();
+        try {
+            object = define(identifier);
+        } finally {
+            deflater.end();
+            deflater = null;
+        }
+        return object;
+    }
+
+    /**
+     * Create the definition for the image, compressing the image data.
+     * @param identifier the unique identifier for the image.
+     * @return the image definition.
+     */
+    private ImageTag define(final int identifier) {
         ImageTag object = null;
-        final ImageFilter filter = new ImageFilter();
 
         switch (format) {
         case IDX8:
             object = new DefineImage(identifier, width, height,
-                    table.length / RGBA_CHANNELS,
-                    zip(filter.merge(
-                            filter.adjustScan(width, height, image), table)));
+                    table.length / RGBA_CHANNELS, zipIndexed(false));
             break;
         case IDXA:
             object = new DefineImage2(identifier, width, height,
-                    table.length / RGBA_CHANNELS,
-                    zip(filter.mergeAlpha(
-                            filter.adjustScan(width, height, image), table)));
+                    table.length / RGBA_CHANNELS, zipIndexed(true));
             break;
         case RGB5:
             object = new DefineImage(identifier, width, height,
-                    zip(filter.packColors(width, height, image)), RGB5_SIZE);
+                    zipPacked(), RGB5_SIZE);
             break;
         case RGB8:
-            filter.orderAlpha(image);
-            object = new DefineImage(identifier, width, height, zip(image),
-                    RGB8_SIZE);
+            object = new DefineImage(identifier, width, height,
+                    zipColours(false), RGB8_SIZE);
             break;
         case RGBA:
-            applyAlpha(image);
-            object = new DefineImage2(identifier, width, height, zip(image));
+            object = new DefineImage2(identifier, width, height,
+                    zipColours(true));
             break;
         default:
             throw new AssertionError(BAD_FORMAT);
@@ -273,27 +338,6 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
         return object;
     }
 
-    /**
-     * Apply the level for the alpha channel to the red, green and blue colour
-     * channels for encoding the image so it can be added to a Flash movie.
-     * @param img the image data.
-     */
-    private void applyAlpha(final byte[] img) {
-        int alpha;
-
-        for (int i = 0; i < img.length; i += RGBA_CHANNELS) {
-            alpha = img[i + ALPHA] & UNSIGNED_BYTE;
-
-            img[i + ALPHA] = (byte) (((img[i + BLUE] & UNSIGNED_BYTE) * alpha)
-                    / OPAQUE);
-            img[i + BLUE] = (byte) (((img[i + GREEN] & UNSIGNED_BYTE) * alpha)
-                    / OPAQUE);
-            img[i + GREEN] = (byte) (((img[i + RED] & UNSIGNED_BYTE) * alpha)
-                    / OPAQUE);
-            img[i + RED] = (byte) alpha;
-       }
-    }
-
     /** {@inheritDoc} */
     @Override
 	public void read(final InputStream stream)
@@ -301,11 +345,7 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
         final BigDecoder coder = new BigDecoder(stream);
 
-        int length = 0;
-        int chunkType = 0;
-        boolean moreChunks = true;
-
-        chunkData = new byte[0];
+        image = null;
         transparentGrey = -1;
         transparentRed = -1;
 
@@ -315,6 +355,30 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
             }
         }
 
+        inflater = new Inflater();
+        try {
+            readChunks(coder);
+        } finally {
+            inflater.end();
+            inflater = null;
+        }
+        decodeImage();
+    }
+
+    /**
+     * Decode the chunks that make up a PNG image, up to and including the
+     * IEND chunk.
+     * @param coder the decoder containing the image data.
+     * @throws IOException if there is an error decoding the data.
+     * @throws DataFormatException is the image contains an unsupported format.
+     */
+    private void readChunks(final BigDecoder coder)
+            throws IOException, DataFormatException {
+
+        int length = 0;
+        int chunkType = 0;
+        boolean moreChunks = true;
+
         while (moreChunks) {
             length = coder.readInt();
             chunkType = coder.readInt();
@@ -341,7 +405,6 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
                 break;
             }
         }
-        decodeImage();
     }
 
     /**
@@ -464,145 +527,161 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
     }
 
     /**
-     * Decode the image data, IDAT, block from a PNG image.
+     * Decode the image data, IDAT, block from a PNG image. The data is
+     * inflated as it is read and each row is decoded as soon as it is
+     * complete so the compressed image is never held in memory.
      * @param coder the decoder containing the image data.
      * @param length the length of the block in bytes.
      * @throws IOException if there is an error decoding the data.
+     * @throws DataFormatException if the image cannot be decoded.
      */
     private void decodeIDAT(final BigDecoder coder, final int length)
-            throws IOException {
-        final int currentLength = chunkData.length;
-        final int newLength = currentLength + length;
+            throws IOException, DataFormatException {
+        if (image == null) {
+            startImage();
+        }
 
-        final byte[] data = new byte[newLength];
+        int remaining = length;
+        int count;
 
-        System.arraycopy(chunkData, 0, data, 0, currentLength);
+        while (remaining > 0) {
+            count = Math.min(remaining, input.length);
+            for (int i = 0; i < count; i++) {
+                input[i] = (byte) coder.readByte();
+            }
+            remaining -= count;
 
-        for (int i = currentLength; i < newLength; i++) {
-            data[i] = (byte) coder.readByte();
+            inflater.setInput(input, 0, count);
+            inflateRows();
         }
 
-        chunkData = data;
-
         coder.readInt(); // crc
     }
 
     /**
-     * Decode a PNG encoded image.
-     * @throws IOException if there is an error decoding the data.
+     * Decode any partially inflated row once all the image data has been
+     * read. Missing bytes are taken from the previous row.
      * @throws DataFormatException if the image cannot be decoded.
      */
-    private void decodeImage() throws IOException, DataFormatException {
+    private void decodeImage() throws DataFormatException {
+        if (image == null) {
+            startImage();
+        }
+
+        if (filter >= 0 && pass < passes) {
+            System.arraycopy(previous, scanIndex, current, scanIndex,
+                    scanLength - scanIndex);
+            decodeRow();
+        }
+    }
 
+    /**
+     * Allocate the image and the buffers for the rows when the first block
+     * of image data is read.
+     */
+    private void startImage() {
         if ((format == ImageFormat.IDX8) || (format == ImageFormat.IDXA)) {
             image = new byte[height * width];
         } else {
             image = new byte[height * width * RGBA_CHANNELS];
         }
 
-        if (interlaceMethod == 1) {
-            decodeInterlaced();
-        } else {
-            decodeProgressive();
-        }
-    }
+        bitsPerPixel = bitDepth * colorComponents;
+        bytesPerPixel = (bitsPerPixel < 8) ? 1 : bitsPerPixel / 8;
 
-    /**
-     * Decode an interlaced image.
-     * @throws IOException if there is an error reading the image data.
-     * @throws DataFormatException if the image is in an unsupported format.
-     */
-    private void decodeInterlaced() throws IOException, DataFormatException {
+        final int rowWidth = (width * bitsPerPixel + 7) >> 3;
 
-        final byte[] encodedImage = unzip(chunkData);
-        final int bitsPerPixel = bitDepth * colorComponents;
-        final int bitsPerRow = width * bitsPerPixel;
-        final int rowWidth = (bitsPerRow + 7) >> 3;
-        final int bytesPerPixel = (bitsPerPixel < 8) ? 1 : bitsPerPixel / 8;
+        current = new byte[rowWidth];
+        previous = new byte[rowWidth];
 
-        final byte[] current = new byte[rowWidth];
-        final byte[] previous = new byte[rowWidth];
+        passes = (interlaceMethod == 1) ? START_ROW.length : 1;
+        pass = 0;
+        startPass();
+    }
 
-        for (int i = 0; i < rowWidth; i++) {
-            previous[i] = (byte) 0;
+    /**
+     * Set up the rows and columns for the next pass that contains pixels.
+     * Passes with no rows or columns are skipped since the encoded image
+     * does not contain data for them.
+     */
+    private void startPass() {
+        while (pass < passes) {
+            if (passes == 1) {
+                row = 0;
+                firstColumn = 0;
+                rowStep = 1;
+                columnStep = 1;
+            } else {
+                row = START_ROW[pass];
+                firstColumn = START_COLUMN[pass];
+                rowStep = ROW_STEP[pass];
+                columnStep = COLUMN_STEP[pass];
+            }
+            if (row < height && firstColumn < width) {
+                break;
+            }
+            pass++;
         }
 
-        int imageIndex = 0;
-
-        int row = 0;
-        int col = 0;
-        int filter = 0;
+        final int columns = (width - firstColumn + columnStep - 1)
+                / columnStep;
 
-        int scanBits = 0;
-        int scanLength = 0;
+        scanLength = (columns * bitsPerPixel + 7) >> 3;
+        scanIndex = 0;
+        filter = -1;
+        Arrays.fill(previous, (byte) 0);
+    }
 
-        for (int pass = 0; pass < 7; pass++) {
-            for (row = START_ROW[pass]; (row < height)
-                    && (imageIndex < encodedImage.length);
-                    row += ROW_STEP[pass]) {
-                for (col = START_COLUMN[pass], scanBits = 0; col < width;
-                        col += COLUMN_STEP[pass]) {
-                    scanBits += bitsPerPixel;
+    /**
+     * Inflate the data passed to the inflater, decoding each row as it is
+     * completed.
+     * @throws DataFormatException if the image cannot be decoded.
+     */
+    private void inflateRows() throws DataFormatException {
+        int count;
+
+        while (pass < passes) {
+            if (filter < 0) {
+                count = inflater.inflate(filterType);
+                if (count == 0) {
+                    break;
                 }
-
-                scanLength = (scanBits + 7) >> 3;
-                filter = encodedImage[imageIndex++];
-
-                for (int i = 0; i < scanLength; i++, imageIndex++) {
-                    current[i] = (imageIndex < encodedImage.length)
-                            ? encodedImage[imageIndex] : previous[i];
+                filter = filterType[0] & UNSIGNED_BYTE;
+            } else {
+                count = inflater.inflate(current, scanIndex,
+                        scanLength - scanIndex);
+                if (count == 0) {
+                    break;
                 }
+                scanIndex += count;
+            }
 
-                defilter(filter, bytesPerPixel, scanLength, current, previous);
-                deblock(row, current, START_COLUMN[pass], COLUMN_STEP[pass]);
-                System.arraycopy(current, 0, previous, 0, scanLength);
+            if (scanIndex == scanLength) {
+                decodeRow();
             }
         }
     }
 
     /**
-     * Decode a progressive-scan image.
-     * @throws IOException if there is an error reading the image data.
-     * @throws DataFormatException if the image is in an unsupported format.
+     * Reverse the filter on the current row, decode the pixels into the
+     * image then move to the next row.
+     * @throws DataFormatException if the image cannot be decoded.
      */
-    private void decodeProgressive() throws IOException, DataFormatException {
+    private void decodeRow() throws DataFormatException {
+        defilter(filter, bytesPerPixel, scanLength, current, previous);
+        deblock(row, current, firstColumn, columnStep);
 
-        final byte[] data = unzip(chunkData);
-        final int bitsPerPixel = bitDepth * colorComponents;
-        final int bitsPerRow = width * bitsPerPixel;
-        final int rowWidth = (bitsPerRow + 7) >> 3;
-        final int bytesPerPixel = (bitsPerPixel < 8) ? 1 : bitsPerPixel / 8;
+        final byte[] swap = previous;
+        previous = current;
+        current = swap;
 
-        final byte[] current = new byte[rowWidth];
-        final byte[] previous = new byte[rowWidth];
+        scanIndex = 0;
+        filter = -1;
+        row += rowStep;
 
-        for (int i = 0; i < rowWidth; i++) {
-            previous[i] = (byte) 0;
-        }
-
-        int index = 0;
-        int row = 0;
-        int col = 0;
-        int filter = 0;
-        int scanBits = 0;
-        int scanLength = 0;
-
-        for (row = 0; (row < height) && (index < data.length); row++) {
-            for (col = 0, scanBits = 0; col < width; col++) {
-                 scanBits += bitsPerPixel;
-            }
-
-            scanLength = (scanBits + 7) >> 3;
-            filter = data[index++];
-
-            for (int i = 0; i < scanLength; i++, index++) {
-                current[i] = (index < data.length)
-                        ? data[index] : previous[i];
-            }
-
-            defilter(filter, bytesPerPixel, scanLength, current, previous);
-            deblock(row, current, 0, 1);
-            System.arraycopy(current, 0, previous, 0, scanLength);
+        if (row >= height) {
+            pass++;
+            startPass();
         }
     }
 
@@ -757,33 +836,30 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
      * @param current the encoded block data.
      * @param start the offset in the image row.
      * @param inc the size of each pixel.
-     * @throws IOException if there is an error reading the data.
      * @throws DataFormatException if the image is encoded in an unsupported
      * format.
      */
     private void deblock(final int row, final byte[] current,
-            final int start, final int inc)
-            throws IOException, DataFormatException {
+            final int start, final int inc) throws DataFormatException {
 
-        final ByteArrayInputStream stream = new ByteArrayInputStream(current);
-        final BigDecoder coder = new BigDecoder(stream);
+        bitIndex = 0;
 
         for (int col = start; col < width; col += inc) {
             switch (colorType) {
             case GREYSCALE:
-                decodeGreyscale(coder, row, col);
+                decodeGreyscale(current, row, col);
                 break;
             case TRUE_COLOUR:
-                decodeTrueColour(coder, row, col);
+                decodeTrueColour(current, row, col);
                 break;
             case INDEXED_COLOUR:
-                decodeIndexedColour(coder, row, col);
+                decodeIndexedColour(current, row, col);
                 break;
             case ALPHA_GREYSCALE:
-                decodeAlphaGreyscale(coder, row, col);
+                decodeAlphaGreyscale(current, row, col);
                 break;
             case ALPHA_TRUECOLOUR:
-                decodeAlphaTrueColour(coder, row, col);
+                decodeAlphaTrueColour(current, row, col);
                 break;
             default:
                 throw new DataFormatException(BAD_FORMAT);
@@ -793,36 +869,35 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
     /**
      * Decode a grey-scale pixel with no transparency.
-     * @param coder the decode containing the image data.
+     * @param data the row of image data.
      * @param row the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeGreyscale(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
+    private void decodeGreyscale(final byte[] data, final int row,
+            final int col) throws DataFormatException {
         int pixel = 0;
         byte colour = 0;
 
         switch (bitDepth) {
         case DEPTH_1:
-            pixel = coder.readBits(bitDepth, false);
+            pixel = readBits(data, bitDepth);
             colour = (byte) MONOCHROME[pixel];
             break;
         case DEPTH_2:
-            pixel = coder.readBits(bitDepth, false);
+            pixel = readBits(data, bitDepth);
             colour = (byte) GREYCSALE2[pixel];
             break;
         case DEPTH_4:
-            pixel = coder.readBits(bitDepth, false);
+            pixel = readBits(data, bitDepth);
             colour = (byte) GREYCSALE4[pixel];
             break;
         case DEPTH_8:
-            pixel = coder.readByte();
+            pixel = readBits(data, DEPTH_8);
             colour = (byte) pixel;
             break;
         case DEPTH_16:
-            pixel = coder.readUnsignedShort();
+            pixel = readBits(data, DEPTH_16);
             colour = (byte) (pixel >> Coder.TO_LOWER_BYTE);
             break;
         default:
@@ -839,14 +914,13 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
     /**
      * Decode a true colour pixel with no transparency.
-     * @param coder the decode containing the image data.
+     * @param data the row of image data.
      * @param row the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeTrueColour(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
+    private void decodeTrueColour(final byte[] data, final int row,
+            final int col) throws DataFormatException {
         int pixel = 0;
         byte colour = 0;
 
@@ -854,10 +928,10 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
         for (int i = 0; i < colorComponents; i++) {
             if (bitDepth == DEPTH_8) {
-                pixel = coder.readByte();
+                pixel = readBits(data, DEPTH_8);
                 colour = (byte) pixel;
             } else if (bitDepth == DEPTH_16) {
-                pixel = coder.readUnsignedShort();
+                pixel = readBits(data, DEPTH_16);
                 colour = (byte) (pixel >> Coder.TO_LOWER_BYTE);
             } else {
                 throw new DataFormatException(BAD_FORMAT);
@@ -870,31 +944,30 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
     /**
      * Decode an index colour pixel.
-     * @param coder the decode containing the image data.
+     * @param data the row of image data.
      * @param row the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeIndexedColour(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
+    private void decodeIndexedColour(final byte[] data, final int row,
+            final int col) throws DataFormatException {
         int index = 0;
 
         switch (bitDepth) {
         case DEPTH_1:
-            index = coder.readBits(bitDepth, false);
+            index = readBits(data, bitDepth);
             break;
         case DEPTH_2:
-            index = coder.readBits(bitDepth, false);
+            index = readBits(data, bitDepth);
             break;
         case DEPTH_4:
-            index = coder.readBits(bitDepth, false);
+            index = readBits(data, bitDepth);
             break;
         case DEPTH_8:
-            index = coder.readByte();
+            index = readBits(data, DEPTH_8);
             break;
         case DEPTH_16:
-            index = coder.readUnsignedShort();
+            index = readBits(data, DEPTH_16);
             break;
         default:
             throw new DataFormatException(BAD_FORMAT);
@@ -904,43 +977,42 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
     /**
      * Decode a grey-scale pixel with transparency.
-     * @param coder the decode containing the image data.
+     * @param data the row of image data.
      * @param row the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeAlphaGreyscale(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
+    private void decodeAlphaGreyscale(final byte[] data, final int row,
+            final int col) throws DataFormatException {
         int pixel = 0;
         byte colour = 0;
         int alpha = 0;
 
         switch (bitDepth) {
         case DEPTH_1:
-            pixel = coder.readBits(bitDepth, false);
+            pixel = readBits(data, bitDepth);
             colour = (byte) MONOCHROME[pixel];
-            alpha = coder.readBits(bitDepth, false);
+            alpha = readBits(data, bitDepth);
             break;
         case DEPTH_2:
-            pixel = coder.readBits(bitDepth, false);
+            pixel = readBits(data, bitDepth);
             colour = (byte) GREYCSALE2[pixel];
-            alpha = coder.readBits(bitDepth, false);
+            alpha = readBits(data, bitDepth);
             break;
         case DEPTH_4:
-            pixel = coder.readBits(bitDepth, false);
+            pixel = readBits(data, bitDepth);
             colour = (byte) GREYCSALE4[pixel];
-            alpha = coder.readBits(bitDepth, false);
+            alpha = readBits(data, bitDepth);
             break;
         case DEPTH_8:
-            pixel = coder.readByte();
+            pixel = readBits(data, DEPTH_8);
             colour = (byte) pixel;
-            alpha = coder.readByte();
+            alpha = readBits(data, DEPTH_8);
             break;
         case DEPTH_16:
-            pixel = coder.readUnsignedShort();
+            pixel = readBits(data, DEPTH_16);
             colour = (byte) (pixel >> Coder.TO_LOWER_BYTE);
-            alpha = coder.readUnsignedShort() >> Coder.TO_LOWER_BYTE;
+            alpha = readBits(data, DEPTH_16) >> Coder.TO_LOWER_BYTE;
             break;
         default:
             throw new DataFormatException(BAD_FORMAT);
@@ -956,14 +1028,13 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
     /**
      * Decode a true colour pixel with transparency.
-     * @param coder the decode containing the image data.
+     * @param data the row of image data.
      * @param row the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeAlphaTrueColour(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
+    private void decodeAlphaTrueColour(final byte[] data, final int row,
+            final int col) throws DataFormatException {
         int pixel = 0;
         byte colour = 0;
 
@@ -971,10 +1042,10 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
         for (int i = 0; i < colorComponents; i++) {
             if (bitDepth == DEPTH_8) {
-                pixel = coder.readByte();
+                pixel = readBits(data, DEPTH_8);
                 colour = (byte) pixel;
             } else if (bitDepth == DEPTH_16) {
-                pixel = coder.readUnsignedShort();
+                pixel = readBits(data, DEPTH_16);
                 colour = (byte) (pixel >> Coder.TO_LOWER_BYTE);
             } else {
                 throw new DataFormatException(BAD_FORMAT);
@@ -985,42 +1056,169 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
     }
 
     /**
-     * Uncompress the image using the ZIP format.
-     * @param bytes the compressed image data.
-     * @return the uncompressed image.
-     * @throws DataFormatException if the compressed image is not in the ZIP
-     * format or cannot be uncompressed.
+     * Read the next value from a row of image data. Values are either 1, 2
+     * or 4 bits packed into a byte, starting at the most significant bit, or
+     * unsigned 8 or 16-bit values.
+     * @param data the row of image data.
+     * @param numberOfBits the number of bits to read.
+     * @return the value read.
      */
-    private byte[] unzip(final byte[] bytes) throws DataFormatException {
-        final byte[] data = new byte[width * height * 8];
-        int count = 0;
+    private int readBits(final byte[] data, final int numberOfBits) {
+        final int index = bitIndex >>> 3;
+        int value;
 
-        final Inflater inflater = new Inflater();
-        inflater.setInput(bytes);
-        count = inflater.inflate(data);
+        if (numberOfBits == DEPTH_16) {
+            value = ((data[index] & UNSIGNED_BYTE) << Coder.TO_LOWER_BYTE)
+                    | (data[index + 1] & UNSIGNED_BYTE);
+        } else if (numberOfBits == DEPTH_8) {
+            value = data[index] & UNSIGNED_BYTE;
+        } else {
+            value = ((data[index] & UNSIGNED_BYTE)
+                    >>> (8 - numberOfBits - (bitIndex & 7)))
+                    & ((1 << numberOfBits) - 1);
+        }
+        bitIndex += numberOfBits;
+        return value;
+    }
 
-        final byte[] uncompressedData = new byte[count];
+    /**
+     * Compress an indexed image using the ZIP format. The colour table is
+     * followed by each row, padded to a 32-bit boundary.
+     * @param alpha true if the colour table contains transparency.
+     * @return the compressed image.
+     */
+    private byte[] zipIndexed(final boolean alpha) {
+        final ByteArrayOutputStream out = startZip();
+        final byte[] padding = new byte[((width + 3) & ~3) - width];
 
-        System.arraycopy(data, 0, uncompressedData, 0, count);
+        if (alpha) {
+            zip(table, table.length, out);
+        } else {
+            final byte[] colours = new byte[table.length / RGBA_CHANNELS
+                                            * RGB_CHANNELS];
 
-        return uncompressedData;
+            for (int i = 0, j = 0; i < table.length; i += RGBA_CHANNELS) {
+                colours[j++] = table[i + BLUE];
+                colours[j++] = table[i + GREEN];
+                colours[j++] = table[i + RED];
+            }
+            zip(colours, colours.length, out);
+        }
+
+        for (int i = 0; i < height; i++) {
+            deflater.setInput(image, i * width, width);
+            deflate(out);
+            zip(padding, padding.length, out);
+        }
+        return finishZip(out);
     }
 
     /**
-     * Compress the image using the ZIP format.
-     * @param img the image data.
+     * Compress a true colour image using the ZIP format, packing the red,
+     * green and blue channels into 16-bit words with each row padded to a
+     * 32-bit boundary.
      * @return the compressed image.
      */
-    private byte[] zip(final byte[] img) {
-        final Deflater deflater = new Deflater();
-        deflater.setInput(img);
-        deflater.finish();
+    private byte[] zipPacked() {
+        final ByteArrayOutputStream out = startZip();
+        final byte[] scan = new byte[(width + (width & 1)) << 1];
+
+        int src = 0;
+        int colour;
+
+        for (int i = 0; i < height; i++) {
+            for (int col = 0, dst = 0; col < width; col++) {
+                colour = ((image[src++] & RGB5_MSB_MASK) << R5_SHIFT)
+                        | ((image[src++] & RGB5_MSB_MASK) << G5_SHIFT)
+                        | ((image[src++] & RGB5_MSB_MASK) >> B5_SHIFT);
+                src++;
+                scan[dst++] = (byte) (colour >> Coder.TO_LOWER_BYTE);
+                scan[dst++] = (byte) colour;
+            }
+            zip(scan, scan.length, out);
+        }
+        return finishZip(out);
+    }
+
+    /**
+     * Compress a true colour image using the ZIP format. Each pixel is
+     * converted from RGBA to ARGB, with the alpha channel applied to the
+     * colour channels if the image is transparent.
+     * @param alpha true if the image contains transparency.
+     * @return the compressed image.
+     */
+    private byte[] zipColours(final boolean alpha) {
+        final ByteArrayOutputStream out = startZip();
+        final byte[] scan = new byte[width * RGBA_CHANNELS];
+
+        int src = 0;
+        int level;
+
+        for (int i = 0; i < height; i++) {
+            for (int dst = 0; dst < scan.length;
+                    dst += RGBA_CHANNELS, src += RGBA_CHANNELS) {
+                if (alpha) {
+                    level = image[src + ALPHA] & UNSIGNED_BYTE;
+                    scan[dst] = (byte) level;
+                    scan[dst + 1] = (byte) (((image[src + RED]
+                            & UNSIGNED_BYTE) * level) / OPAQUE);
+                    scan[dst + 2] = (byte) (((image[src + GREEN]
+                            & UNSIGNED_BYTE) * level) / OPAQUE);
+                    scan[dst + 3] = (byte) (((image[src + BLUE]
+                            & UNSIGNED_BYTE) * level) / OPAQUE);
+                } else {
+                    scan[dst] = image[src + ALPHA];
+                    scan[dst + 1] = image[src + RED];
+                    scan[dst + 2] = image[src + GREEN];
+                    scan[dst + 3] = image[src + BLUE];
+                }
+            }
+            zip(scan, scan.length, out);
+        }
+        return finishZip(out);
+    }
+
+    /**
+     * Start compressing an image.
+     * @return the stream used to collect the compressed data.
+     */
+    private ByteArrayOutputStream startZip() {
+        return new ByteArrayOutputStream(BUFFER_SIZE);
+    }
+
+    /**
+     * Compress a block of image data using the ZIP format.
+     * @param data the image data.
+     * @param length the number of bytes to compress.
+     * @param out the stream used to collect the compressed data.
+     */
+    private void zip(final byte[] data, final int length,
+            final ByteArrayOutputStream out) {
+        deflater.setInput(data, 0, length);
+        deflate(out);
+    }
 
-        final byte[] compressedData = new byte[img.length * 2];
-        final int bytesCompressed = deflater.deflate(compressedData);
-        final byte[] newData = Arrays.copyOf(compressedData, bytesCompressed);
+    /**
+     * Compress all the data passed to the deflater.
+     * @param out the stream used to collect the compressed data.
+     */
+    private void deflate(final ByteArrayOutputStream out) {
+        while (!deflater.needsInput()) {
+            out.write(output, 0, deflater.deflate(output));
+        }
+    }
 
-        return newData;
+    /**
+     * Flush the remaining data from the deflater.
+     * @param out the stream used to collect the compressed data.
+     * @return the compressed image.
+     */
+    private byte[] finishZip(final ByteArrayOutputStream out) {
+        deflater.finish();
+        while (!deflater.finished()) {
+            out.write(output, 0, deflater.deflate(output));
+        }
+        return out.toByteArray();
     }
 
     /** {@inheritDoc} */
@@ -1049,7 +1247,7 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
         	int tableIndex;
 
         	for (int i = 0, index = 0; i < image.length; i++) {
-        		tableIndex = image[i] * RGBA_CHANNELS;
+        		tableIndex = (image[i] & UNSIGNED_BYTE) * RGBA_CHANNELS;
         		copy[index++] = table[tableIndex + RED];
         		copy[index++] = table[tableIndex + GREEN];
         		copy[index++] = table[tableIndex + BLUE];
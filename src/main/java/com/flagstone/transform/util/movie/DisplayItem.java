@@ -0,0 +1,210 @@
+/*
+ * DisplayItem.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.movie;
+
+import java.util.List;
+
+import com.flagstone.transform.datatype.Blend;
+import com.flagstone.transform.datatype.ColorTransform;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.filter.Filter;
+
+/**
+ * DisplayItem describes an object on a given layer of the Flash Player's
+ * display list - the result of applying all the Place, Place2 and Place3
+ * commands for the layer since the object was placed on it.
+ *
+ * <p>
+ * DisplayItems are immutable so they can be shared between the display lists
+ * recorded for different frames. Each change made to a layer creates a new
+ * DisplayItem.
+ * </p>
+ */
+public final class DisplayItem {
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "DisplayItem: { layer=%d;"
+            + " identifier=%d; transform=%s; colorTransform=%s; ratio=%s;"
+            + " depth=%s; name=%s; className=%s; blend=%s}";
+
+    /** The layer number. */
+    private final transient int layer;
+    /** The identifier of the object displayed. */
+    private final transient int identifier;
+    /** The position and orientation of the object. */
+    private final transient CoordTransform transform;
+    /** The colour transform applied to the object. */
+    private final transient ColorTransform colorTransform;
+    /** The progress for morphing shapes. */
+    private final transient Integer ratio;
+    /** The number of layers clipped by this object. */
+    private final transient Integer depth;
+    /** The name of the object. */
+    private final transient String name;
+    /** The name of the class for the object. */
+    private final transient String className;
+    /** The blend mode. */
+    private final transient Blend blend;
+    /** The filters applied to the object. */
+    private final transient List<Filter> filters;
+
+    /**
+     * Creates a DisplayItem.
+     *
+     * @param level the layer number.
+     * @param uid the identifier of the object displayed.
+     * @param coord the coordinate transform, may be null.
+     * @param color the colour transform, may be null.
+     * @param morph the morphing ratio, may be null.
+     * @param clip the number of layers clipped, may be null.
+     * @param label the name of the object, may be null.
+     * @param type the class name of the object, may be null.
+     * @param mode the blend mode, may be null.
+     * @param list the filters applied to the object, may be null.
+     */
+    @SuppressWarnings("PMD.ExcessiveParameterList")
+    DisplayItem(final int level, final int uid, final CoordTransform coord,
+            final ColorTransform color, final Integer morph,
+            final Integer clip, final String label, final String type,
+            final Blend mode, final List<Filter> list) {
+        layer = level;
+        identifier = uid;
+        transform = coord;
+        colorTransform = color;
+        ratio = morph;
+        depth = clip;
+        name = label;
+        className = type;
+        blend = mode;
+        filters = list;
+    }
+
+    /**
+     * Get the layer on which the object is displayed.
+     *
+     * @return the layer number.
+     */
+    public int getLayer() {
+        return layer;
+    }
+
+    /**
+     * Get the identifier of the object displayed. The identifier is zero for
+     * objects placed using only a class name.
+     *
+     * @return the unique identifier of the definition displayed.
+     */
+    public int getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Get the coordinate transform applied to the object.
+     *
+     * @return the coordinate transform or null if none was defined.
+     */
+    public CoordTransform getTransform() {
+        return transform;
+    }
+
+    /**
+     * Get the colour transform applied to the object.
+     *
+     * @return the colour transform or null if none was defined.
+     */
+    public ColorTransform getColorTransform() {
+        return colorTransform;
+    }
+
+    /**
+     * Get the morphing ratio, in the range 0..65535.
+     *
+     * @return the morphing ratio or null if none was defined.
+     */
+    public Integer getRatio() {
+        return ratio;
+    }
+
+    /**
+     * Get the number of layers clipped by the object.
+     *
+     * @return the clipping depth or null if the object is not a clipping
+     * path.
+     */
+    public Integer getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the name assigned to the object.
+     *
+     * @return the name or null if no name was assigned.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the name of the class used to create the object (Place3 only).
+     *
+     * @return the class name or null if none was defined.
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Get the blend mode used to display the object (Place3 only).
+     *
+     * @return the blend mode or null if none was defined.
+     */
+    public Blend getBlend() {
+        return blend;
+    }
+
+    /**
+     * Get the filters applied to the object (Place3 only). The list is shared
+     * with the Place3 object that defined it.
+     *
+     * @return the list of filters or null if none were defined.
+     */
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT, layer, identifier, transform,
+                colorTransform, ratio, depth, name, className, blend);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * DisplayList.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.movie;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.Place;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.Place3;
+import com.flagstone.transform.PlaceType;
+import com.flagstone.transform.Remove;
+import com.flagstone.transform.Remove2;
+import com.flagstone.transform.coder.Copyable;
+import com.flagstone.transform.datatype.Blend;
+import com.flagstone.transform.datatype.ColorTransform;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.filter.Filter;
+
+/**
+ * DisplayList models the Flash Player's display list, the set of objects
+ * shown on each layer, so the effect of the Place, Place2, Place3, Remove
+ * and Remove2 commands in a movie or movie clip can be determined.
+ *
+ * <pre>
+ * DisplayList list = new DisplayList();
+ *
+ * for (MovieTag tag : movie.getObjects()) {
+ *     list.apply(tag);
+ * }
+ * </pre>
+ *
+ * <p>
+ * The objects on each layer are represented by immutable DisplayItems so
+ * copying a DisplayList only copies the table that maps layers to items.
+ * </p>
+ */
+public final class DisplayList implements Copyable<DisplayList> {
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "DisplayList: { items=%s}";
+
+    /** The objects displayed, ordered by layer. */
+    private final transient SortedMap<Integer, DisplayItem> items;
+
+    /**
+     * Creates an empty DisplayList.
+     */
+    public DisplayList() {
+        items = new TreeMap<Integer, DisplayItem>();
+    }
+
+    /**
+     * Creates a DisplayList containing the same objects as another.
+     *
+     * @param list the DisplayList to copy.
+     */
+    public DisplayList(final DisplayList list) {
+        items = new TreeMap<Integer, DisplayItem>(list.items);
+    }
+
+    /** {@inheritDoc} */
+    public DisplayList copy() {
+        return new DisplayList(this);
+    }
+
+    /**
+     * Get the object displayed on a given layer.
+     *
+     * @param layer the layer number.
+     * @return the DisplayItem on the layer or null if the layer is empty.
+     */
+    public DisplayItem get(final int layer) {
+        return items.get(layer);
+    }
+
+    /**
+     * Get the objects displayed, in increasing order of layer number.
+     *
+     * @return an unmodifiable view of the objects on the display list.
+     */
+    public Collection<DisplayItem> getItems() {
+        return Collections.unmodifiableCollection(items.values());
+    }
+
+    /**
+     * Get the number of layers that contain an object.
+     *
+     * @return the number of objects on the display list.
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Remove all the objects from the display list.
+     */
+    public void clear() {
+        items.clear();
+    }
+
+    /**
+     * Update the display list with a movie object. Objects that do not change
+     * the display list are ignored.
+     *
+     * @param tag a MovieTag.
+     * @return true if the object changed the display list, false otherwise.
+     */
+    public boolean apply(final MovieTag tag) {
+        boolean changed = true;
+
+        if (tag instanceof Place2) {
+            place((Place2) tag);
+        } else if (tag instanceof Place3) {
+            place((Place3) tag);
+        } else if (tag instanceof Place) {
+            final Place place = (Place) tag;
+            items.put(place.getLayer(), new DisplayItem(place.getLayer(),
+                    place.getIdentifier(), place.getTransform(),
+                    place.getColorTransform(), null, null, null, null,
+                    null, null));
+        } else if (tag instanceof Remove2) {
+            items.remove(((Remove2) tag).getLayer());
+        } else if (tag instanceof Remove) {
+            items.remove(((Remove) tag).getLayer());
+        } else {
+            changed = false;
+        }
+        return changed;
+    }
+
+    /**
+     * Update the display list with a Place2 object.
+     *
+     * @param place the Place2 object.
+     */
+    private void place(final Place2 place) {
+        update(place.getType(), place.getLayer(), place.getIdentifier(),
+                place.getTransform(), place.getColorTransform(),
+                place.getRatio(), place.getDepth(), place.getName(), null,
+                null, null);
+    }
+
+    /**
+     * Update the display list with a Place3 object.
+     *
+     * @param place the Place3 object.
+     */
+    private void place(final Place3 place) {
+        List<Filter> filters = place.getFilters();
+        if (filters != null && filters.isEmpty()) {
+            filters = null;
+        }
+        Blend blend = place.getBlend();
+        if (blend == Blend.NULL) {
+            blend = null;
+        }
+        update(place.getType(), place.getLayer(), place.getIdentifier(),
+                place.getTransform(), place.getColorTransform(),
+                place.getRatio(), place.getDepth(), place.getName(),
+                place.getClassName(), blend, filters);
+    }
+
+    /**
+     * Add, replace or modify the object on a layer. When an object is
+     * modified or replaced only the attributes that are not null replace the
+     * existing values.
+     *
+     * @param type how the object is placed on the layer.
+     * @param layer the layer number.
+     * @param uid the identifier of the object.
+     * @param coord the coordinate transform.
+     * @param color the colour transform.
+     * @param ratio the morphing ratio.
+     * @param depth the number of layers clipped.
+     * @param name the name of the object.
+     * @param className the class name for the object.
+     * @param blend the blend mode.
+     * @param filters the filters applied to the object.
+     */
+    @SuppressWarnings("PMD.ExcessiveParameterList")
+    private void update(final PlaceType type, final int layer, final int uid,
+            final CoordTransform coord, final ColorTransform color,
+            final Integer ratio, final Integer depth, final String name,
+            final String className, final Blend blend,
+            final List<Filter> filters) {
+
+        final DisplayItem current = items.get(layer);
+
+        if (type == PlaceType.NEW || current == null) {
+            items.put(layer, new DisplayItem(layer, uid, coord, color, ratio,
+                    depth, name, className, blend, filters));
+        } else {
+            items.put(layer, new DisplayItem(layer,
+                    type == PlaceType.REPLACE ? uid : current.getIdentifier(),
+                    coord == null ? current.getTransform() : coord,
+                    color == null ? current.getColorTransform() : color,
+                    ratio == null ? current.getRatio() : ratio,
+                    depth == null ? current.getDepth() : depth,
+                    name == null ? current.getName() : name,
+                    className == null ? current.getClassName() : className,
+                    blend == null ? current.getBlend() : blend,
+                    filters == null ? current.getFilters() : filters));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT, items.values());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Placement.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.movie;
+
+import java.util.Arrays;
+
+import com.flagstone.transform.datatype.Bounds;
+
+/**
+ * Placement records the area of the stage covered by an object shown on the
+ * display list. Objects inside movie clips are identified by the path of
+ * layer numbers from the main timeline, so an object on layer 3 of a movie
+ * clip which is displayed on layer 10 of the main timeline has the layers
+ * [10, 3].
+ *
+ * <p>
+ * Placements are immutable. They are generated by a StageIndex but can also
+ * be created directly and added to a SpatialIndex. Placements are compared
+ * by identity so an object can be removed from a SpatialIndex after it was
+ * added.
+ * </p>
+ */
+public final class Placement {
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "Placement: { layers=%s;"
+            + " identifier=%d; bounds=%s}";
+
+    /** The layer numbers from the main timeline to the object. */
+    private final transient int[] layers;
+    /** The identifier of the object displayed. */
+    private final transient int identifier;
+    /** The area of the stage covered by the object, in twips. */
+    private final transient Bounds bounds;
+
+    /**
+     * Creates a Placement.
+     *
+     * @param path the layer numbers from the main timeline to the object.
+     * @param uid the identifier of the object displayed.
+     * @param rect the area of the stage covered by the object.
+     */
+    public Placement(final int[] path, final int uid, final Bounds rect) {
+        if (path == null || path.length == 0 || rect == null) {
+            throw new IllegalArgumentException();
+        }
+        layers = Arrays.copyOf(path, path.length);
+        identifier = uid;
+        bounds = rect;
+    }
+
+    /**
+     * Get the layer numbers from the main timeline to the object.
+     *
+     * @return a copy of the layer numbers, starting with the layer on the
+     * main timeline.
+     */
+    public int[] getLayers() {
+        return Arrays.copyOf(layers, layers.length);
+    }
+
+    /**
+     * Get the layer on the main timeline that contains the object.
+     *
+     * @return the layer number on the main timeline.
+     */
+    public int getLayer() {
+        return layers[0];
+    }
+
+    /**
+     * Get the identifier of the object displayed.
+     *
+     * @return the unique identifier of the object's definition.
+     */
+    public int getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Get the area of the stage covered by the object.
+     *
+     * @return the bounding box, in twips, after all the coordinate
+     * transforms have been applied.
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Compare the stacking order of two Placements.
+     *
+     * @param other another Placement.
+     * @return a negative number if this object is drawn before the other,
+     * zero if both are on the same layers and a positive number if this
+     * object is drawn after the other.
+     */
+    int compareLayers(final Placement other) {
+        final int length = Math.min(layers.length, other.layers.length);
+        int result = 0;
+
+        for (int i = 0; i < length && result == 0; i++) {
+            result = layers[i] < other.layers[i] ? -1
+                    : (layers[i] == other.layers[i] ? 0 : 1);
+        }
+        if (result == 0) {
+            result = layers.length - other.layers.length;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT, Arrays.toString(layers), identifier,
+                bounds);
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * SpatialIndex.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.movie;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+
+/**
+ * SpatialIndex is a uniform grid over the stage that is used to find the
+ * objects, described by Placements, that cover a given point or area.
+ *
+ * <p>
+ * Each Placement is added to every cell that its bounding box overlaps.
+ * Queries only examine the cells that overlap the area being searched so the
+ * cost depends on the number of objects nearby rather than the number of
+ * objects on the stage. Objects that cover a large number of cells, for
+ * example backgrounds, are stored separately and checked on every query.
+ * </p>
+ *
+ * <pre>
+ * List&lt;Placement&gt; hits = index.query(xCoord, yCoord);
+ * Placement topmost = hits.get(hits.size() - 1);
+ * </pre>
+ *
+ * <p>
+ * The results of a query are returned in stacking order, so the object
+ * drawn last (nearest the viewer) is at the end of the list.
+ * </p>
+ */
+public final class SpatialIndex {
+
+    /** The default size of a grid cell, in twips. */
+    public static final int CELL_SIZE = 2000;
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "SpatialIndex: { cellSize=%d;"
+            + " size=%d}";
+    /** The maximum number of cells an object is added to. */
+    private static final int MAX_CELLS = 256;
+    /** The number of bits to shift the column number in a cell key. */
+    private static final int KEY_SHIFT = 32;
+    /** Mask for the row number in a cell key. */
+    private static final long KEY_MASK = 0xFFFFFFFFL;
+    /** The largest cell size. */
+    private static final int MAX_CELL_SIZE = 65535;
+
+    /** Orders Placements by layer. */
+    private static final Comparator<Placement> STACKING =
+        new Comparator<Placement>() {
+            public int compare(final Placement first, final Placement second) {
+                return first.compareLayers(second);
+            }
+        };
+
+    /** The size of each cell, in twips. */
+    private final transient int cellSize;
+    /** The objects in each cell. */
+    private final transient Map<Long, List<Placement>> cells;
+    /** The objects that cover too many cells to be added to each. */
+    private final transient List<Placement> large;
+    /** All the objects in the index. */
+    private final transient Map<Placement, Placement> placements;
+
+    /**
+     * Creates an empty SpatialIndex with the default cell size.
+     */
+    public SpatialIndex() {
+        this(CELL_SIZE);
+    }
+
+    /**
+     * Creates an empty SpatialIndex.
+     *
+     * @param size the width and height of each cell in twips, in the range
+     * 1..65535.
+     */
+    public SpatialIndex(final int size) {
+        if (size < 1 || size > MAX_CELL_SIZE) {
+            throw new IllegalArgumentRangeException(1, MAX_CELL_SIZE, size);
+        }
+        cellSize = size;
+        cells = new HashMap<Long, List<Placement>>();
+        large = new ArrayList<Placement>();
+        placements = new IdentityHashMap<Placement, Placement>();
+    }
+
+    /**
+     * Get the size of the grid cells.
+     *
+     * @return the width and height of each cell in twips.
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Get the number of objects in the index.
+     *
+     * @return the number of Placements.
+     */
+    public int size() {
+        return placements.size();
+    }
+
+    /**
+     * Get all the objects in the index.
+     *
+     * @return the Placements in stacking order.
+     */
+    public List<Placement> getPlacements() {
+        return sort(placements.keySet());
+    }
+
+    /**
+     * Remove all the objects from the index.
+     */
+    public void clear() {
+        cells.clear();
+        large.clear();
+        placements.clear();
+    }
+
+    /**
+     * Add an object to the index.
+     *
+     * @param placement the Placement describing the area covered by the
+     * object.
+     */
+    public void add(final Placement placement) {
+        if (placements.containsKey(placement)) {
+            return;
+        }
+        placements.put(placement, placement);
+
+        final Bounds bounds = placement.getBounds();
+
+        if (cellCount(bounds) > MAX_CELLS) {
+            large.add(placement);
+        } else {
+            final int maxCol = cell(bounds.getMaxX());
+            final int maxRow = cell(bounds.getMaxY());
+
+            for (int col = cell(bounds.getMinX()); col <= maxCol; col++) {
+                for (int row = cell(bounds.getMinY()); row <= maxRow; row++) {
+                    final Long key = key(col, row);
+                    List<Placement> list = cells.get(key);
+                    if (list == null) {
+                        list = new ArrayList<Placement>();
+                        cells.put(key, list);
+                    }
+                    list.add(placement);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove an object from the index.
+     *
+     * @param placement the Placement added previously.
+     * @return true if the object was in the index, false otherwise.
+     */
+    public boolean remove(final Placement placement) {
+        if (placements.remove(placement) == null) {
+            return false;
+        }
+
+        final Bounds bounds = placement.getBounds();
+
+        if (cellCount(bounds) > MAX_CELLS) {
+            removeFrom(large, placement);
+        } else {
+            final int maxCol = cell(bounds.getMaxX());
+            final int maxRow = cell(bounds.getMaxY());
+
+            for (int col = cell(bounds.getMinX()); col <= maxCol; col++) {
+                for (int row = cell(bounds.getMinY()); row <= maxRow; row++) {
+                    final Long key = key(col, row);
+                    final List<Placement> list = cells.get(key);
+                    if (list != null) {
+                        removeFrom(list, placement);
+                        if (list.isEmpty()) {
+                            cells.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the objects whose bounding boxes contain a point.
+     *
+     * @param xCoord the x-coordinate of the point, in twips.
+     * @param yCoord the y-coordinate of the point, in twips.
+     * @return the Placements in stacking order.
+     */
+    public List<Placement> query(final int xCoord, final int yCoord) {
+        return query(new Bounds(xCoord, yCoord, xCoord, yCoord));
+    }
+
+    /**
+     * Find the objects whose bounding boxes overlap an area.
+     *
+     * @param area the area of the stage to search, in twips.
+     * @return the Placements in stacking order.
+     */
+    public List<Placement> query(final Bounds area) {
+        final Map<Placement, Placement> found =
+            new IdentityHashMap<Placement, Placement>();
+
+        for (final Placement placement : large) {
+            if (intersects(placement.getBounds(), area)) {
+                found.put(placement, placement);
+            }
+        }
+
+        if (cellCount(area) > cells.size()) {
+            for (final List<Placement> list : cells.values()) {
+                collect(list, area, found);
+            }
+        } else {
+            final int maxCol = cell(area.getMaxX());
+            final int maxRow = cell(area.getMaxY());
+
+            for (int col = cell(area.getMinX()); col <= maxCol; col++) {
+                for (int row = cell(area.getMinY()); row <= maxRow; row++) {
+                    final List<Placement> list = cells.get(key(col, row));
+                    if (list != null) {
+                        collect(list, area, found);
+                    }
+                }
+            }
+        }
+        return sort(found.keySet());
+    }
+
+    /**
+     * Add the objects in a cell that overlap an area to the results.
+     *
+     * @param list the objects in a cell.
+     * @param area the area being searched.
+     * @param found the objects found so far.
+     */
+    private void collect(final List<Placement> list, final Bounds area,
+            final Map<Placement, Placement> found) {
+        for (final Placement placement : list) {
+            if (intersects(placement.getBounds(), area)) {
+                found.put(placement, placement);
+            }
+        }
+    }
+
+    /**
+     * Sort a set of Placements in stacking order.
+     *
+     * @param set the Placements.
+     * @return a new list with the Placements in stacking order.
+     */
+    private List<Placement> sort(final Collection<Placement> set) {
+        final List<Placement> list = new ArrayList<Placement>(set);
+        Collections.sort(list, STACKING);
+        return list;
+    }
+
+    /**
+     * Remove an object from a list, comparing by identity.
+     *
+     * @param list the list.
+     * @param placement the object to remove.
+     */
+    private void removeFrom(final List<Placement> list,
+            final Placement placement) {
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i) == placement) {
+                list.remove(i);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the number of cells covered by a bounding box.
+     *
+     * @param bounds the bounding box.
+     * @return the number of cells.
+     */
+    private long cellCount(final Bounds bounds) {
+        return ((long) cell(bounds.getMaxX()) - cell(bounds.getMinX()) + 1)
+                * ((long) cell(bounds.getMaxY()) - cell(bounds.getMinY())
+                        + 1);
+    }
+
+    /**
+     * Get the column or row containing a coordinate.
+     *
+     * @param coord the x or y coordinate.
+     * @return the column or row number.
+     */
+    private int cell(final int coord) {
+        return (int) Math.floor((double) coord / cellSize);
+    }
+
+    /**
+     * Create the key used to look up a cell.
+     *
+     * @param col the column number.
+     * @param row the row number.
+     * @return the key.
+     */
+    private Long key(final int col, final int row) {
+        return ((long) col << KEY_SHIFT) | (row & KEY_MASK);
+    }
+
+    /**
+     * Do two bounding boxes overlap. Boxes that touch along an edge are
+     * considered to overlap.
+     *
+     * @param first a bounding box.
+     * @param second another bounding box.
+     * @return true if the boxes overlap.
+     */
+    private static boolean intersects(final Bounds first,
+            final Bounds second) {
+        return first.getMinX() <= second.getMaxX()
+                && second.getMinX() <= first.getMaxX()
+                && first.getMinY() <= second.getMaxY()
+                && second.getMinY() <= first.getMaxY();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT, cellSize, placements.size());
+    }
+}
@@ -0,0 +1,501 @@
+/*
+ * StageIndex.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.movie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.shape.DefineMorphShape;
+import com.flagstone.transform.shape.DefineMorphShape2;
+import com.flagstone.transform.shape.ShapeTag;
+import com.flagstone.transform.text.DefineTextField;
+import com.flagstone.transform.text.StaticTextTag;
+
+/**
+ * StageIndex replays the display list of a movie, frame by frame, and
+ * maintains a SpatialIndex of the area of the stage covered by each object
+ * so it can be used for hit-testing, culling or finding objects that overlap
+ * or lie outside the stage.
+ *
+ * <pre>
+ * StageIndex stage = new StageIndex(movie);
+ *
+ * while (stage.nextFrame()) {
+ *     List&lt;Placement&gt; hits = stage.getIndex().query(area);
+ *     ...
+ * }
+ * </pre>
+ *
+ * <p>
+ * The bounding box of each shape, morphing shape, block of text and text
+ * field is transformed by the coordinate transforms of the object and any
+ * movie clips that contain it. Movie clips are added to the index with a
+ * bounding box that encloses all their contents. The index is updated
+ * incrementally: only the layers changed by the commands in a frame, and
+ * layers containing animated movie clips, are updated.
+ * </p>
+ *
+ * <p>
+ * Movie clips are assumed to play continuously from the frame in which they
+ * were placed on the display list - the effect of actions that stop or move
+ * the play head is not taken into account. Buttons are not added to the
+ * index.
+ * </p>
+ */
+public final class StageIndex {
+
+    /** The deepest level of nested movie clips that are indexed. */
+    private static final int MAX_DEPTH = 32;
+
+    /** The index of the frames in the main timeline. */
+    private final transient Timeline timeline;
+    /** The bounding boxes of shapes and text, indexed by identifier. */
+    private final transient Map<Integer, Bounds> definitions;
+    /** The start and end bounds of morphing shapes. */
+    private final transient Map<Integer, Bounds[]> morphs;
+    /** Whether each movie clip contains animation. */
+    private final transient Map<Integer, Boolean> animated;
+    /** The frame when each object in a movie clip was placed, by frame. */
+    private final transient Map<Integer, List<Map<Integer, Integer>>> starts;
+    /** The current display list for the main timeline. */
+    private final transient DisplayList display;
+    /** The objects, by layer, currently in the index. */
+    private final transient Map<Integer, DisplayItem> shown;
+    /** The Placements, by layer, currently in the index. */
+    private final transient Map<Integer, List<Placement>> placed;
+    /** The frame when the object on each layer was placed. */
+    private final transient Map<Integer, Integer> started;
+    /** The index of the objects on the stage. */
+    private final transient SpatialIndex index;
+    /** The current frame. */
+    private transient int frame;
+
+    /**
+     * Creates a StageIndex for a movie using the default grid size.
+     *
+     * @param movie the Movie to index.
+     */
+    public StageIndex(final Movie movie) {
+        this(movie, SpatialIndex.CELL_SIZE);
+    }
+
+    /**
+     * Creates a StageIndex for a movie.
+     *
+     * @param movie the Movie to index.
+     * @param cellSize the size, in twips, of the cells in the SpatialIndex.
+     */
+    public StageIndex(final Movie movie, final int cellSize) {
+        timeline = new Timeline(movie);
+        definitions = new HashMap<Integer, Bounds>();
+        morphs = new HashMap<Integer, Bounds[]>();
+        animated = new HashMap<Integer, Boolean>();
+        starts = new HashMap<Integer, List<Map<Integer, Integer>>>();
+        display = new DisplayList();
+        shown = new HashMap<Integer, DisplayItem>();
+        placed = new HashMap<Integer, List<Placement>>();
+        started = new HashMap<Integer, Integer>();
+        index = new SpatialIndex(cellSize);
+
+        for (final MovieTag tag : movie.getObjects()) {
+            if (tag instanceof DefineMorphShape) {
+                final DefineMorphShape shape = (DefineMorphShape) tag;
+                morphs.put(shape.getIdentifier(), new Bounds[] {
+                        shape.getBounds(), shape.getEndBounds()});
+            } else if (tag instanceof DefineMorphShape2) {
+                final DefineMorphShape2 shape = (DefineMorphShape2) tag;
+                morphs.put(shape.getIdentifier(), new Bounds[] {
+                        shape.getBounds(), shape.getEndBounds()});
+            } else if (tag instanceof ShapeTag) {
+                final ShapeTag shape = (ShapeTag) tag;
+                definitions.put(shape.getIdentifier(), shape.getBounds());
+            } else if (tag instanceof StaticTextTag) {
+                final StaticTextTag text = (StaticTextTag) tag;
+                definitions.put(text.getIdentifier(), text.getBounds());
+            } else if (tag instanceof DefineTextField) {
+                final DefineTextField field = (DefineTextField) tag;
+                definitions.put(field.getIdentifier(), field.getBounds());
+            }
+        }
+    }
+
+    /**
+     * Get the number of frames in the main timeline.
+     *
+     * @return the number of frames.
+     */
+    public int getFrameCount() {
+        return timeline.getFrameCount();
+    }
+
+    /**
+     * Get the frame currently shown.
+     *
+     * @return the frame number, starting from 1, or zero if nextFrame() has
+     * not been called.
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Get the index of the objects shown in the current frame. The same
+     * SpatialIndex is updated as each frame is displayed.
+     *
+     * @return the SpatialIndex.
+     */
+    public SpatialIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Return to the start of the movie, before the first frame is shown.
+     */
+    public void reset() {
+        frame = 0;
+        display.clear();
+        shown.clear();
+        placed.clear();
+        started.clear();
+        index.clear();
+    }
+
+    /**
+     * Show the next frame, updating the index with the changes made to the
+     * display list.
+     *
+     * @return true if the frame was shown or false if the last frame has
+     * already been shown.
+     */
+    public boolean nextFrame() {
+        if (frame == timeline.getFrameCount()) {
+            return false;
+        }
+        frame++;
+
+        for (final MovieTag tag : timeline.getObjects(frame)) {
+            display.apply(tag);
+        }
+
+        final SortedSet<Integer> layers = new TreeSet<Integer>(
+                shown.keySet());
+        for (final DisplayItem item : display.getItems()) {
+            layers.add(item.getLayer());
+        }
+
+        for (final Integer layer : layers) {
+            final DisplayItem item = display.get(layer);
+            final DisplayItem previous = shown.get(layer);
+
+            if (item == previous && (item == null
+                    || !isAnimated(item.getIdentifier(), 0))) {
+                continue;
+            }
+
+            final List<Placement> old = placed.remove(layer);
+            if (old != null) {
+                for (final Placement placement : old) {
+                    index.remove(placement);
+                }
+            }
+
+            if (item == null) {
+                shown.remove(layer);
+                started.remove(layer);
+            } else {
+                if (previous == null
+                        || previous.getIdentifier() != item.getIdentifier()) {
+                    started.put(layer, frame);
+                }
+                shown.put(layer, item);
+
+                final List<Placement> list = new ArrayList<Placement>();
+                place(new int[] {layer}, item,
+                        CoordTransform.IDENTITY.getMatrix(),
+                        frame - started.get(layer), 0, list);
+                for (final Placement placement : list) {
+                    index.add(placement);
+                }
+                placed.put(layer, list);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generate the Placements for an object and, for movie clips, all the
+     * objects it contains.
+     *
+     * @param path the layers from the main timeline to the object.
+     * @param item the object on the display list.
+     * @param parent the transform from the object's parent to the stage.
+     * @param elapsed the number of frames since the object was placed.
+     * @param depth the number of movie clips that contain the object.
+     * @param list the list the Placements are added to.
+     * @return the bounding box of the object on the stage or null if the
+     * object does not cover any part of the stage.
+     */
+    private Bounds place(final int[] path, final DisplayItem item,
+            final float[][] parent, final int elapsed, final int depth,
+            final List<Placement> list) {
+
+        final float[][] matrix = item.getTransform() == null ? parent
+                : CoordTransform.product(parent,
+                        item.getTransform().getMatrix());
+        final int uid = item.getIdentifier();
+
+        Bounds bounds = bounds(uid, item.getRatio());
+
+        if (bounds == null) {
+            final Timeline clip = timeline.getTimeline(uid);
+
+            if (clip != null && clip.getFrameCount() > 0
+                    && depth < MAX_DEPTH) {
+                final int position = list.size();
+                final int shown = elapsed % clip.getFrameCount() + 1;
+                final DisplayList contents = clip.getDisplayList(shown);
+                final Map<Integer, Integer> start = startFrames(uid, clip)
+                        .get(shown - 1);
+
+                for (final DisplayItem child : contents.getItems()) {
+                    final int[] childPath = Arrays.copyOf(path,
+                            path.length + 1);
+                    childPath[path.length] = child.getLayer();
+                    final Bounds area = place(childPath, child, matrix,
+                            shown - start.get(child.getLayer()), depth + 1,
+                            list);
+                    if (area != null) {
+                        bounds = bounds == null ? area : union(bounds, area);
+                    }
+                }
+                if (bounds != null) {
+                    list.add(position, new Placement(path, uid, bounds));
+                }
+            }
+        } else {
+            bounds = transform(bounds, matrix);
+            list.add(new Placement(path, uid, bounds));
+        }
+        return bounds;
+    }
+
+    /**
+     * Get the frame when each object in a movie clip was placed on the
+     * display list, for every frame in the clip. The table is generated the
+     * first time it is needed by replaying the clip's timeline.
+     *
+     * @param uid the identifier of the movie clip.
+     * @param clip the timeline of the movie clip.
+     * @return a list, indexed by frame number - 1, of the frame when the
+     * object on each layer was placed.
+     */
+    private List<Map<Integer, Integer>> startFrames(final int uid,
+            final Timeline clip) {
+        List<Map<Integer, Integer>> table = starts.get(uid);
+
+        if (table == null) {
+            final int count = clip.getFrameCount();
+            final DisplayList contents = new DisplayList();
+            final Map<Integer, Integer> identifiers =
+                new HashMap<Integer, Integer>();
+            Map<Integer, Integer> previous = new HashMap<Integer, Integer>();
+            table = new ArrayList<Map<Integer, Integer>>(count);
+
+            for (int i = 1; i <= count; i++) {
+                for (final MovieTag tag : clip.getObjects(i)) {
+                    contents.apply(tag);
+                }
+                final Map<Integer, Integer> current =
+                    new HashMap<Integer, Integer>();
+                identifiers.keySet().retainAll(layers(contents));
+
+                for (final DisplayItem item : contents.getItems()) {
+                    final Integer layer = item.getLayer();
+                    final Integer last = identifiers.put(layer,
+                            item.getIdentifier());
+                    if (last == null || last != item.getIdentifier()) {
+                        current.put(layer, i);
+                    } else {
+                        current.put(layer, previous.get(layer));
+                    }
+                }
+                table.add(current);
+                previous = current;
+            }
+            starts.put(uid, table);
+        }
+        return table;
+    }
+
+    /**
+     * Get the layers occupied on a display list.
+     *
+     * @param list the display list.
+     * @return the set of layer numbers.
+     */
+    private static SortedSet<Integer> layers(final DisplayList list) {
+        final SortedSet<Integer> layers = new TreeSet<Integer>();
+        for (final DisplayItem item : list.getItems()) {
+            layers.add(item.getLayer());
+        }
+        return layers;
+    }
+
+    /**
+     * Get the bounding box of a shape or text definition.
+     *
+     * @param uid the identifier of the definition.
+     * @param ratio the morphing ratio, may be null.
+     * @return the bounding box or null if the object is not a shape or text.
+     */
+    private Bounds bounds(final int uid, final Integer ratio) {
+        Bounds bounds = definitions.get(uid);
+
+        if (bounds == null && morphs.containsKey(uid)) {
+            final Bounds[] range = morphs.get(uid);
+            final float fraction = ratio == null ? 0.0f
+                    : ratio / (float) Coder.USHORT_MAX;
+            bounds = new Bounds(
+                    lerp(range[0].getMinX(), range[1].getMinX(), fraction),
+                    lerp(range[0].getMinY(), range[1].getMinY(), fraction),
+                    lerp(range[0].getMaxX(), range[1].getMaxX(), fraction),
+                    lerp(range[0].getMaxY(), range[1].getMaxY(), fraction));
+        }
+        return bounds;
+    }
+
+    /**
+     * Does a movie clip, or any of the movie clips it contains, have more
+     * than one frame.
+     *
+     * @param uid the identifier of the object.
+     * @param depth the number of movie clips that contain the object.
+     * @return true if the object is an animated movie clip.
+     */
+    private boolean isAnimated(final int uid, final int depth) {
+        Boolean result = animated.get(uid);
+
+        if (result == null) {
+            final Timeline clip = timeline.getTimeline(uid);
+            result = Boolean.FALSE;
+            animated.put(uid, result);
+
+            if (clip != null && clip.getFrameCount() > 1) {
+                result = Boolean.TRUE;
+            } else if (clip != null && clip.getFrameCount() == 1
+                    && depth < MAX_DEPTH) {
+                for (final DisplayItem child : clip.getDisplayList(1)
+                        .getItems()) {
+                    if (isAnimated(child.getIdentifier(), depth + 1)) {
+                        result = Boolean.TRUE;
+                        break;
+                    }
+                }
+            }
+            animated.put(uid, result);
+        }
+        return result;
+    }
+
+    /**
+     * Interpolate a coordinate.
+     *
+     * @param from the start value.
+     * @param to the end value.
+     * @param fraction the progress from start to end.
+     * @return the interpolated value.
+     */
+    private static int lerp(final int from, final int to,
+            final float fraction) {
+        return from + Math.round((to - from) * fraction);
+    }
+
+    /**
+     * Calculate the bounding box that encloses two others.
+     *
+     * @param first a bounding box.
+     * @param second another bounding box.
+     * @return the bounding box enclosing both.
+     */
+    private static Bounds union(final Bounds first, final Bounds second) {
+        return new Bounds(Math.min(first.getMinX(), second.getMinX()),
+                Math.min(first.getMinY(), second.getMinY()),
+                Math.max(first.getMaxX(), second.getMaxX()),
+                Math.max(first.getMaxY(), second.getMaxY()));
+    }
+
+    /**
+     * Calculate the bounding box of a transformed rectangle.
+     *
+     * @param bounds the rectangle.
+     * @param matrix the transform.
+     * @return the bounding box enclosing the transformed corners.
+     */
+    private static Bounds transform(final Bounds bounds,
+            final float[][] matrix) {
+        final int[] xCoords = {bounds.getMinX(), bounds.getMaxX(),
+                bounds.getMinX(), bounds.getMaxX()};
+        final int[] yCoords = {bounds.getMinY(), bounds.getMinY(),
+                bounds.getMaxY(), bounds.getMaxY()};
+
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        float xCoord;
+        float yCoord;
+
+        for (int i = 0; i < xCoords.length; i++) {
+            xCoord = matrix[0][0] * xCoords[i] + matrix[0][1] * yCoords[i]
+                    + matrix[0][2];
+            yCoord = matrix[1][0] * xCoords[i] + matrix[1][1] * yCoords[i]
+                    + matrix[1][2];
+            minX = Math.min(minX, xCoord);
+            minY = Math.min(minY, yCoord);
+            maxX = Math.max(maxX, xCoord);
+            maxY = Math.max(maxY, yCoord);
+        }
+        return new Bounds((int) Math.floor(minX), (int) Math.floor(minY),
+                (int) Math.ceil(maxX), (int) Math.ceil(maxY));
+    }
+}
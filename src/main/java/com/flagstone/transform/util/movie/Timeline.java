@@ -0,0 +1,276 @@
+/*
+ * Timeline.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.movie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.ShowFrame;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.movieclip.DefineMovieClip;
+
+/**
+ * Timeline is an index of the frames in a movie or movie clip that allows the
+ * contents of the display list to be generated for any frame without
+ * replaying all the commands from the start.
+ *
+ * <p>
+ * When the index is created the position of each ShowFrame object is
+ * recorded and a copy of the display list is saved at regular intervals. The
+ * display list for a given frame is generated by starting from the nearest
+ * saved copy and applying only the commands that follow it. The timelines
+ * of any movie clips defined are also indexed so the contents of their
+ * display lists can be generated in the same way.
+ * </p>
+ *
+ * <pre>
+ * Timeline timeline = new Timeline(movie);
+ * DisplayList list = timeline.getDisplayList(1500);
+ * </pre>
+ *
+ * <p>
+ * The index refers to the objects in the list it was created from. If the
+ * list is changed then a new Timeline must be created.
+ * </p>
+ */
+public final class Timeline {
+
+    /** The default number of frames between saved display lists. */
+    public static final int INTERVAL = 64;
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "Timeline: { frameCount=%d;"
+            + " interval=%d; clips=%s}";
+
+    /** The objects in the movie or movie clip. */
+    private final transient List<MovieTag> objects;
+    /** The number of frames between saved display lists. */
+    private final transient int interval;
+    /** The index in the list of objects of each ShowFrame. */
+    private final transient int[] frames;
+    /** The number of frames in the timeline. */
+    private final transient int frameCount;
+    /** The display lists saved every interval frames. */
+    private final transient List<DisplayList> checkpoints;
+    /** The timelines for the movie clips, indexed by identifier. */
+    private final transient Map<Integer, Timeline> clips;
+
+    /**
+     * Creates an index for the main timeline of a movie using the default
+     * interval between saved display lists.
+     *
+     * @param movie the Movie to index.
+     */
+    public Timeline(final Movie movie) {
+        this(movie.getObjects(), INTERVAL);
+    }
+
+    /**
+     * Creates an index for the main timeline of a movie.
+     *
+     * @param movie the Movie to index.
+     * @param frameInterval the number of frames between saved display lists.
+     */
+    public Timeline(final Movie movie, final int frameInterval) {
+        this(movie.getObjects(), frameInterval);
+    }
+
+    /**
+     * Creates an index for the timeline of a movie clip using the default
+     * interval between saved display lists.
+     *
+     * @param clip the DefineMovieClip to index.
+     */
+    public Timeline(final DefineMovieClip clip) {
+        this(clip.getObjects(), INTERVAL);
+    }
+
+    /**
+     * Creates an index for a list of objects from a movie or movie clip.
+     *
+     * @param list the list of MovieTags.
+     * @param frameInterval the number of frames between saved display lists.
+     * Must be greater than zero.
+     */
+    public Timeline(final List<MovieTag> list, final int frameInterval) {
+        if (frameInterval < 1) {
+            throw new IllegalArgumentRangeException(1, Integer.MAX_VALUE,
+                    frameInterval);
+        }
+        objects = list;
+        interval = frameInterval;
+        checkpoints = new ArrayList<DisplayList>();
+        clips = new LinkedHashMap<Integer, Timeline>();
+
+        int[] positions = new int[INTERVAL];
+        int count = 0;
+
+        final DisplayList display = new DisplayList();
+        checkpoints.add(display.copy());
+
+        final int size = list.size();
+        MovieTag tag;
+
+        for (int i = 0; i < size; i++) {
+            tag = list.get(i);
+
+            if (tag instanceof ShowFrame) {
+                if (count == positions.length) {
+                    final int[] array = new int[count << 1];
+                    System.arraycopy(positions, 0, array, 0, count);
+                    positions = array;
+                }
+                positions[count++] = i;
+                if (count % interval == 0) {
+                    checkpoints.add(display.copy());
+                }
+            } else if (!display.apply(tag) && tag instanceof DefineMovieClip) {
+                final DefineMovieClip clip = (DefineMovieClip) tag;
+                clips.put(clip.getIdentifier(),
+                        new Timeline(clip.getObjects(), interval));
+            }
+        }
+        frames = new int[count];
+        System.arraycopy(positions, 0, frames, 0, count);
+        frameCount = count;
+    }
+
+    /**
+     * Get the number of frames in the timeline.
+     *
+     * @return the number of ShowFrame objects in the movie or movie clip.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Get the number of frames between the saved display lists.
+     *
+     * @return the interval in frames.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Get the position in the list of objects of the ShowFrame that displays
+     * a given frame.
+     *
+     * @param frame the frame number, starting from 1.
+     * @return the index of the ShowFrame object for the frame.
+     */
+    public int getPosition(final int frame) {
+        checkFrame(frame);
+        return frames[frame - 1];
+    }
+
+    /**
+     * Get the objects that are displayed in a given frame - those that appear
+     * after the ShowFrame for the previous frame, up to but not including the
+     * ShowFrame for the frame.
+     *
+     * @param frame the frame number, starting from 1.
+     * @return an unmodifiable view of the objects for the frame.
+     */
+    public List<MovieTag> getObjects(final int frame) {
+        checkFrame(frame);
+        final int start = frame == 1 ? 0 : frames[frame - 2] + 1;
+        return Collections.unmodifiableList(
+                objects.subList(start, frames[frame - 1]));
+    }
+
+    /**
+     * Generate the display list as it is when a given frame is displayed.
+     *
+     * @param frame the frame number, starting from 1.
+     * @return a new DisplayList containing the objects shown in the frame.
+     */
+    public DisplayList getDisplayList(final int frame) {
+        checkFrame(frame);
+
+        final int checkpoint = frame / interval;
+        final DisplayList display = checkpoints.get(checkpoint).copy();
+
+        final int start = checkpoint == 0 ? 0
+                : frames[checkpoint * interval - 1] + 1;
+        final int end = frames[frame - 1];
+
+        for (int i = start; i < end; i++) {
+            display.apply(objects.get(i));
+        }
+        return display;
+    }
+
+    /**
+     * Get the index for the timeline of a movie clip.
+     *
+     * @param identifier the unique identifier of the DefineMovieClip.
+     * @return the Timeline for the movie clip or null if no movie clip was
+     * defined with the identifier.
+     */
+    public Timeline getTimeline(final int identifier) {
+        return clips.get(identifier);
+    }
+
+    /**
+     * Get the indices for the timelines of all the movie clips defined.
+     *
+     * @return an unmodifiable table of Timelines indexed by the identifier of
+     * each DefineMovieClip.
+     */
+    public Map<Integer, Timeline> getTimelines() {
+        return Collections.unmodifiableMap(clips);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT, frameCount, interval, clips.keySet());
+    }
+
+    /**
+     * Check that a frame number is within the timeline.
+     *
+     * @param frame the frame number.
+     */
+    private void checkFrame(final int frame) {
+        if (frame < 1 || frame > frameCount) {
+            throw new IllegalArgumentRangeException(1, frameCount, frame);
+        }
+    }
+}
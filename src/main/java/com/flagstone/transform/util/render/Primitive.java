@@ -0,0 +1,183 @@
+/*
+ * Primitive.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.render;
+
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.TexturePaint;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+
+/**
+ * Primitive is a Java2D shape together with the paint used to fill it or the
+ * stroke used to draw its outline. Primitives are immutable so they can be
+ * drawn by several threads at once.
+ */
+final class Primitive {
+
+    /** The outline, in twips. */
+    private final transient Shape outline;
+    /** The paint used to fill or draw the outline. */
+    private final transient Paint paint;
+    /** The stroke used to draw the outline or null if it is filled. */
+    private final transient Stroke stroke;
+    /** The image used for a bitmap fill or null. */
+    private final transient BufferedImage image;
+    /** The transform that maps the image on to the outline. */
+    private final transient AffineTransform transform;
+    /** Whether the image is repeated to fill the outline. */
+    private final transient boolean tiled;
+    /** Whether the image is smoothed when it is scaled. */
+    private final transient boolean smoothed;
+
+    /**
+     * Create a Primitive that fills an area.
+     *
+     * @param shape the outline of the area.
+     * @param fill the paint used to fill the area.
+     */
+    Primitive(final Shape shape, final Paint fill) {
+        this(shape, fill, null);
+    }
+
+    /**
+     * Create a Primitive that draws a line.
+     *
+     * @param shape the path of the line.
+     * @param color the paint used to draw the line.
+     * @param line the stroke used to draw the line.
+     */
+    Primitive(final Shape shape, final Paint color, final Stroke line) {
+        outline = shape;
+        paint = color;
+        stroke = line;
+        image = null;
+        transform = null;
+        tiled = false;
+        smoothed = false;
+    }
+
+    /**
+     * Create a Primitive that fills an area with an image.
+     *
+     * @param shape the outline of the area.
+     * @param bitmap the image.
+     * @param matrix the transform mapping the image on to the area.
+     * @param repeat true if the image is repeated, false if it is clipped.
+     * @param smooth true if the image is smoothed when it is scaled.
+     */
+    Primitive(final Shape shape, final BufferedImage bitmap,
+            final AffineTransform matrix, final boolean repeat,
+            final boolean smooth) {
+        outline = shape;
+        paint = null;
+        stroke = null;
+        image = bitmap;
+        transform = matrix;
+        tiled = repeat;
+        smoothed = smooth;
+    }
+
+    /**
+     * Get the outline of the area filled or the path drawn.
+     *
+     * @return the outline, in twips.
+     */
+    Shape getOutline() {
+        return outline;
+    }
+
+    /**
+     * Draw the Primitive.
+     *
+     * @param graphics the Graphics2D object used for drawing.
+     */
+    void draw(final Graphics2D graphics) {
+        if (image != null) {
+            drawImage(graphics);
+        } else if (stroke == null) {
+            graphics.setPaint(paint);
+            graphics.fill(outline);
+        } else {
+            graphics.setPaint(paint);
+            graphics.setStroke(stroke);
+            graphics.draw(outline);
+        }
+    }
+
+    /**
+     * Fill the outline with the image.
+     *
+     * @param graphics the Graphics2D object used for drawing.
+     */
+    private void drawImage(final Graphics2D graphics) {
+        final Shape area;
+
+        try {
+            area = transform.createInverse().createTransformedShape(outline);
+        } catch (final NoninvertibleTransformException e) {
+            return;
+        }
+
+        final Graphics2D g2d = (Graphics2D) graphics.create();
+        final Object interpolation;
+
+        if (smoothed) {
+            interpolation = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+        } else {
+            interpolation = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+        }
+
+        try {
+            g2d.transform(transform);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    interpolation);
+
+            if (tiled) {
+                g2d.setPaint(new TexturePaint(image, new Rectangle(0, 0,
+                        image.getWidth(), image.getHeight())));
+                g2d.fill(area);
+            } else {
+                g2d.clip(area);
+                g2d.drawImage(image, 0, 0, null);
+            }
+        } finally {
+            g2d.dispose();
+        }
+    }
+}
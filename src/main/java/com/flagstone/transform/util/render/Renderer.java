@@ -0,0 +1,805 @@
+/*
+ * Renderer.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.render;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import com.flagstone.transform.DefineTag;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.MovieTypes;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.Color;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.fillstyle.SolidFill;
+import com.flagstone.transform.font.DefineFont;
+import com.flagstone.transform.font.DefineFont2;
+import com.flagstone.transform.font.DefineFont3;
+import com.flagstone.transform.image.DefineImage;
+import com.flagstone.transform.image.DefineImage2;
+import com.flagstone.transform.image.DefineJPEGImage;
+import com.flagstone.transform.image.DefineJPEGImage2;
+import com.flagstone.transform.image.DefineJPEGImage3;
+import com.flagstone.transform.image.DefineJPEGImage4;
+import com.flagstone.transform.image.JPEGEncodingTable;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.shape.DefineShape;
+import com.flagstone.transform.shape.DefineShape2;
+import com.flagstone.transform.shape.DefineShape3;
+import com.flagstone.transform.shape.DefineShape4;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeData;
+import com.flagstone.transform.shape.ShapePath;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeTag;
+import com.flagstone.transform.text.GlyphIndex;
+import com.flagstone.transform.text.StaticTextTag;
+import com.flagstone.transform.text.TextSpan;
+import com.flagstone.transform.util.concurrent.Tasks;
+import com.flagstone.transform.util.image.BufferedImageEncoder;
+
+/**
+ * Renderer draws shapes and static text using Java2D so they can be
+ * converted into images, for example to generate thumbnails.
+ *
+ * <p>The definitions for shapes, fonts and images are added to the Renderer
+ * which can then draw any shape (DefineShape, DefineShape2, DefineShape3 or
+ * DefineShape4) or block of static text (DefineText or DefineText2). The
+ * image is the size of the bounding box of the object. The scale sets how
+ * many pixels are drawn for each pixel in the Flash Player, so 1.0 draws
+ * the object at its normal size and a scale of 0.25 generates a thumbnail
+ * one quarter of the size:</p>
+ *
+ * <pre>
+ * Renderer renderer = new Renderer();
+ * renderer.addAll(movie.getObjects());
+ * renderer.setScale(0.25f);
+ * BufferedImage image = renderer.render(identifier);
+ * </pre>
+ *
+ * <p>Large images can be divided into tiles that are drawn in parallel using
+ * an ExecutorService. Each tile is drawn into its own image so the results
+ * are identical to drawing the whole image at once.</p>
+ *
+ * <p>Fill styles with solid colours, linear, radial and focal gradients and
+ * bitmaps are supported along with the caps and joins defined in LineStyle2.
+ * Filters and blend modes are not rendered. Morphing shapes are drawn by
+ * adding the shape generated for a given ratio by a MorphInterpolator. The
+ * Renderer is not thread-safe, however rendering using an ExecutorService is
+ * safe since each tile is drawn independently.</p>
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+public final class Renderer {
+
+    /** The number of twips in a pixel. */
+    private static final float TWIPS_PER_PIXEL = 20.0f;
+    /** The default size of a tile, in pixels. */
+    private static final int DEFAULT_TILE = 256;
+    /** The largest tile size. */
+    private static final int MAX_TILE = 65535;
+    /** The number of glyph units in the EM square for DefineFont3. */
+    private static final float EM_SQUARE_3 = 20480.0f;
+    /** The number of glyph units in the EM square for other fonts. */
+    private static final float EM_SQUARE = 1024.0f;
+    /** The identifier used in bitmap fills when no image is used. */
+    private static final int NO_IMAGE = 65535;
+    /** The number of bytes used for a JPEG marker. */
+    private static final int MARKER_LENGTH = 2;
+    /** The number of bits to shift the alpha channel in a pixel. */
+    private static final int ALPHA_SHIFT = 24;
+    /** Mask for the colour channels in a pixel. */
+    private static final int RGB_MASK = 0x00FFFFFF;
+    /** Mask for a byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** The definitions for shapes, text, fonts and images. */
+    private final transient Map<Integer, DefineTag> definitions;
+    /** The images decoded for bitmap fills. */
+    private final transient Map<Integer, BufferedImage> images;
+    /** The outlines of glyphs, indexed by font identifier. */
+    private final transient Map<Integer, List<java.awt.Shape>> glyphs;
+    /** The encoding table shared by JPEG images. */
+    private transient byte[] jpegTable;
+
+    /** The number of pixels drawn for each pixel in the Flash Player. */
+    private float scale;
+    /** The width and height of the tiles used for parallel rendering. */
+    private int tileSize;
+    /** The colour used to fill the image before the object is drawn. */
+    private Color background;
+
+    /**
+     * Create a Renderer that draws objects at their normal size on a
+     * transparent background.
+     */
+    public Renderer() {
+        definitions = new HashMap<Integer, DefineTag>();
+        images = new HashMap<Integer, BufferedImage>();
+        glyphs = new HashMap<Integer, List<java.awt.Shape>>();
+        scale = 1.0f;
+        tileSize = DEFAULT_TILE;
+        background = new Color(0, 0, 0, 0);
+    }
+
+    /**
+     * Add an object from a movie. Definitions are indexed by their unique
+     * identifier. The encoding table used by DefineJPEGImage objects is also
+     * stored. All other objects are ignored.
+     *
+     * @param tag an object from a movie.
+     * @return this object.
+     */
+    public Renderer add(final MovieTag tag) {
+        if (tag instanceof DefineTag) {
+            final DefineTag definition = (DefineTag) tag;
+            definitions.put(definition.getIdentifier(), definition);
+            images.remove(definition.getIdentifier());
+            glyphs.remove(definition.getIdentifier());
+        } else if (tag instanceof JPEGEncodingTable) {
+            jpegTable = ((JPEGEncodingTable) tag).getTable();
+        }
+        return this;
+    }
+
+    /**
+     * Add all the objects from a movie.
+     *
+     * @param list a list of objects from a movie.
+     * @return this object.
+     */
+    public Renderer addAll(final List<MovieTag> list) {
+        for (final MovieTag tag : list) {
+            add(tag);
+        }
+        return this;
+    }
+
+    /**
+     * Get the number of pixels drawn for each pixel in the Flash Player.
+     *
+     * @return the scale used when drawing objects.
+     */
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Set the number of pixels drawn for each pixel in the Flash Player.
+     *
+     * @param value the scale used when drawing objects. Must be greater
+     * than zero.
+     * @return this object.
+     */
+    public Renderer setScale(final float value) {
+        if (value <= 0.0f || Float.isInfinite(value) || Float.isNaN(value)) {
+            throw new IllegalArgumentException(
+                    "Scale must be greater than zero.");
+        }
+        scale = value;
+        return this;
+    }
+
+    /**
+     * Get the width and height of the tiles drawn when rendering in
+     * parallel.
+     *
+     * @return the size of a tile in pixels.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Set the width and height of the tiles drawn when rendering in
+     * parallel.
+     *
+     * @param size the size of a tile in pixels, in the range 1..65535.
+     * @return this object.
+     */
+    public Renderer setTileSize(final int size) {
+        if (size < 1 || size > MAX_TILE) {
+            throw new IllegalArgumentRangeException(1, MAX_TILE, size);
+        }
+        tileSize = size;
+        return this;
+    }
+
+    /**
+     * Get the colour used to fill the image before an object is drawn.
+     *
+     * @return the background colour.
+     */
+    public Color getBackground() {
+        return background;
+    }
+
+    /**
+     * Set the colour used to fill the image before an object is drawn.
+     *
+     * @param color the background colour. Must not be null.
+     * @return this object.
+     */
+    public Renderer setBackground(final Color color) {
+        if (color == null) {
+            throw new IllegalArgumentException();
+        }
+        background = color;
+        return this;
+    }
+
+    /**
+     * Draw a shape or block of static text.
+     *
+     * @param identifier the unique identifier of the object to draw.
+     * @return an image the size of the object's bounding box.
+     * @throws IOException if the object or the images it uses cannot be
+     * read.
+     * @throws DataFormatException if an image cannot be decoded.
+     */
+    public BufferedImage render(final int identifier)
+            throws IOException, DataFormatException {
+        final List<Primitive> list = primitives(identifier);
+        final Bounds bounds = bounds(identifier);
+        final BufferedImage image = createImage(bounds);
+
+        drawTile(image, list, bounds, 0, 0);
+        return image;
+    }
+
+    /**
+     * Draw a shape or block of static text, dividing the image into tiles
+     * that are drawn in parallel.
+     *
+     * @param identifier the unique identifier of the object to draw.
+     * @param executor the ExecutorService used to draw the tiles.
+     * @return an image the size of the object's bounding box.
+     * @throws IOException if the object or the images it uses cannot be
+     * read or the thread is interrupted while waiting for the tiles.
+     * @throws DataFormatException if an image cannot be decoded.
+     */
+    public BufferedImage render(final int identifier,
+            final ExecutorService executor)
+            throws IOException, DataFormatException {
+        final List<Primitive> list = primitives(identifier);
+        final Bounds bounds = bounds(identifier);
+        final BufferedImage image = createImage(bounds);
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        final List<Callable<BufferedImage>> tasks =
+            new ArrayList<Callable<BufferedImage>>();
+
+        for (int row = 0; row < height; row += tileSize) {
+            for (int col = 0; col < width; col += tileSize) {
+                final int xOrigin = col;
+                final int yOrigin = row;
+                final int tileWidth = Math.min(tileSize, width - col);
+                final int tileHeight = Math.min(tileSize, height - row);
+
+                tasks.add(new Callable<BufferedImage>() {
+                    public BufferedImage call() {
+                        final BufferedImage tile = new BufferedImage(
+                                tileWidth, tileHeight,
+                                BufferedImage.TYPE_INT_ARGB);
+                        drawTile(tile, list, bounds, xOrigin, yOrigin);
+                        return tile;
+                    }
+                });
+            }
+        }
+
+        final List<BufferedImage> tiles = Tasks.run(executor, tasks);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+
+        try {
+            int index = 0;
+            for (int row = 0; row < height; row += tileSize) {
+                for (int col = 0; col < width; col += tileSize) {
+                    graphics.drawImage(tiles.get(index++), col, row, null);
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Draw a shape or block of static text. The object is drawn using the
+     * current transform of the Graphics2D object with coordinates in twips.
+     *
+     * @param graphics the Graphics2D object used for drawing.
+     * @param identifier the unique identifier of the object to draw.
+     * @throws IOException if the object or the images it uses cannot be
+     * read.
+     * @throws DataFormatException if an image cannot be decoded.
+     */
+    public void draw(final Graphics2D graphics, final int identifier)
+            throws IOException, DataFormatException {
+        for (final Primitive primitive : primitives(identifier)) {
+            primitive.draw(graphics);
+        }
+    }
+
+    /**
+     * Create an image large enough to contain an object.
+     *
+     * @param bounds the bounding box of the object.
+     * @return the image.
+     */
+    private BufferedImage createImage(final Bounds bounds) {
+        final int width = Math.max(1, (int) Math.ceil(
+                bounds.getWidth() * scale / TWIPS_PER_PIXEL));
+        final int height = Math.max(1, (int) Math.ceil(
+                bounds.getHeight() * scale / TWIPS_PER_PIXEL));
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Draw a rectangular section of an object.
+     *
+     * @param image the image to draw into.
+     * @param list the Primitives used to draw the object.
+     * @param bounds the bounding box of the object.
+     * @param xOrigin the x-coordinate, in pixels, of the tile in the image
+     * for the complete object.
+     * @param yOrigin the y-coordinate, in pixels, of the tile in the image
+     * for the complete object.
+     */
+    private void drawTile(final BufferedImage image,
+            final List<Primitive> list, final Bounds bounds,
+            final int xOrigin, final int yOrigin) {
+        final Graphics2D graphics = image.createGraphics();
+        final float pixels = scale / TWIPS_PER_PIXEL;
+
+        try {
+            graphics.setComposite(AlphaComposite.Src);
+            graphics.setColor(ShapeConverter.color(background));
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setComposite(AlphaComposite.SrcOver);
+
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+                    RenderingHints.VALUE_STROKE_PURE);
+
+            graphics.translate(-xOrigin, -yOrigin);
+            graphics.scale(pixels, pixels);
+            graphics.translate(-bounds.getMinX(), -bounds.getMinY());
+
+            for (final Primitive primitive : list) {
+                primitive.draw(graphics);
+            }
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * Get the definition of an object.
+     *
+     * @param identifier the unique identifier of the object.
+     * @return the definition.
+     */
+    private DefineTag definition(final int identifier) {
+        final DefineTag definition = definitions.get(identifier);
+        if (definition == null) {
+            throw new IllegalArgumentException(
+                    "No definition for object " + identifier);
+        }
+        return definition;
+    }
+
+    /**
+     * Get the bounding box of a shape or block of static text.
+     *
+     * @param identifier the unique identifier of the object.
+     * @return the bounding box.
+     */
+    private Bounds bounds(final int identifier) {
+        final DefineTag definition = definition(identifier);
+        final Bounds bounds;
+
+        if (definition instanceof ShapeTag) {
+            bounds = ((ShapeTag) definition).getBounds();
+        } else {
+            bounds = ((StaticTextTag) definition).getBounds();
+        }
+        return bounds;
+    }
+
+    /**
+     * Generate the Primitives used to draw a shape or block of static text.
+     *
+     * @param identifier the unique identifier of the object.
+     * @return the list of Primitives.
+     * @throws IOException if the object or the images it uses cannot be
+     * read.
+     * @throws DataFormatException if an image cannot be decoded.
+     */
+    private List<Primitive> primitives(final int identifier)
+            throws IOException, DataFormatException {
+        final DefineTag definition = definition(identifier);
+        final List<Primitive> list;
+
+        if (definition instanceof DefineShape
+                || definition instanceof DefineShape2
+                || definition instanceof DefineShape3
+                || definition instanceof DefineShape4) {
+            final ShapeTag shape = (ShapeTag) definition;
+            list = new ShapeConverter(this, scale / TWIPS_PER_PIXEL).convert(
+                    records(shape.getShape(), shapeType(definition)),
+                    shape.getFillStyles(), shape.getLineStyles());
+        } else if (definition instanceof StaticTextTag) {
+            list = text((StaticTextTag) definition);
+        } else {
+            throw new IllegalArgumentException("Cannot render object "
+                    + identifier);
+        }
+        return list;
+    }
+
+    /**
+     * Get the type of a shape definition, used to decode encoded shapes.
+     *
+     * @param definition the shape definition.
+     * @return the type of the definition.
+     */
+    private int shapeType(final DefineTag definition) {
+        final int type;
+        if (definition instanceof DefineShape4) {
+            type = MovieTypes.DEFINE_SHAPE_4;
+        } else if (definition instanceof DefineShape3) {
+            type = MovieTypes.DEFINE_SHAPE_3;
+        } else if (definition instanceof DefineShape2) {
+            type = MovieTypes.DEFINE_SHAPE_2;
+        } else {
+            type = MovieTypes.DEFINE_SHAPE;
+        }
+        return type;
+    }
+
+    /**
+     * Get the records that define a shape, decoding any records that were
+     * left encoded when the shape was decoded.
+     *
+     * @param shape the shape.
+     * @param type the type of definition that contains the shape.
+     * @return the list of records.
+     * @throws IOException if the encoded records cannot be decoded.
+     */
+    private List<ShapeRecord> records(final Shape shape, final int type)
+            throws IOException {
+        final List<ShapeRecord> list = new ArrayList<ShapeRecord>();
+
+        for (final ShapeRecord record : shape.getObjects()) {
+            if (record instanceof ShapeData) {
+                list.addAll(records(decode((ShapeData) record, type), type));
+            } else if (record instanceof ShapePath) {
+                list.addAll(((ShapePath) record).getObjects());
+            } else {
+                list.add(record);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Decode the records in an encoded shape.
+     *
+     * @param data the encoded shape.
+     * @param type the type of definition that contains the shape.
+     * @return the decoded shape.
+     * @throws IOException if the records cannot be decoded.
+     */
+    private Shape decode(final ShapeData data, final int type)
+            throws IOException {
+        final SWFDecoder coder = new SWFDecoder(
+                new ByteArrayInputStream(data.getData()));
+        final Context context = new Context();
+        context.setRegistry(DecoderRegistry.getDefault());
+        context.put(Context.TYPE, type);
+        if (type != MovieTypes.DEFINE_SHAPE) {
+            context.put(Context.ARRAY_EXTENDED, 1);
+        }
+        if (type == MovieTypes.DEFINE_SHAPE_3
+                || type == MovieTypes.DEFINE_SHAPE_4) {
+            context.put(Context.TRANSPARENT, 1);
+        }
+        return new Shape(coder, context);
+    }
+
+    /**
+     * Generate the Primitives used to draw a block of static text.
+     *
+     * @param text the definition of the text.
+     * @return the list of Primitives.
+     * @throws IOException if the glyphs in a font cannot be decoded.
+     * @throws DataFormatException if a font used by the text is not a
+     * supported type.
+     */
+    private List<Primitive> text(final StaticTextTag text)
+            throws IOException, DataFormatException {
+        final List<Primitive> list = new ArrayList<Primitive>();
+        final AffineTransform matrix = ShapeConverter.transform(
+                text.getTransform());
+
+        int fontId = 0;
+        java.awt.Color color = java.awt.Color.BLACK;
+        int height = 0;
+        int xCoord = 0;
+        int yCoord = 0;
+
+        for (final TextSpan span : text.getSpans()) {
+            if (span.getIdentifier() != null) {
+                fontId = span.getIdentifier();
+            }
+            if (span.getColor() != null) {
+                color = ShapeConverter.color(span.getColor());
+            }
+            if (span.getHeight() != null) {
+                height = span.getHeight();
+            }
+            if (span.getOffsetX() != null) {
+                xCoord = span.getOffsetX();
+            }
+            if (span.getOffsetY() != null) {
+                yCoord = span.getOffsetY();
+            }
+
+            final List<java.awt.Shape> outlines = glyphs(fontId);
+            final float size = height / (definitions.get(fontId)
+                    instanceof DefineFont3 ? EM_SQUARE_3 : EM_SQUARE);
+
+            for (final GlyphIndex glyph : span.getCharacters()) {
+                final int index = glyph.getGlyphIndex();
+                if (index >= 0 && index < outlines.size()) {
+                    final AffineTransform transform =
+                        new AffineTransform(matrix);
+                    transform.translate(xCoord, yCoord);
+                    transform.scale(size, size);
+                    list.add(new Primitive(transform.createTransformedShape(
+                            outlines.get(index)), color));
+                }
+                xCoord += glyph.getAdvance();
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the outlines of the glyphs in a font.
+     *
+     * @param identifier the unique identifier of the font.
+     * @return the outlines of the glyphs.
+     * @throws IOException if the glyphs cannot be decoded.
+     * @throws DataFormatException if the font is not a supported type.
+     */
+    private List<java.awt.Shape> glyphs(final int identifier)
+            throws IOException, DataFormatException {
+        List<java.awt.Shape> outlines = glyphs.get(identifier);
+
+        if (outlines == null) {
+            final DefineTag font = definitions.get(identifier);
+            final List<Shape> shapes;
+
+            if (font instanceof DefineFont) {
+                shapes = ((DefineFont) font).getShapes();
+            } else if (font instanceof DefineFont2) {
+                shapes = ((DefineFont2) font).getShapes();
+            } else if (font instanceof DefineFont3) {
+                shapes = ((DefineFont3) font).getShapes();
+            } else {
+                shapes = Collections.emptyList();
+            }
+
+            final ShapeConverter converter = new ShapeConverter(this,
+                    scale / TWIPS_PER_PIXEL);
+            final List<FillStyle> fills = new ArrayList<FillStyle>();
+            fills.add(new SolidFill(new Color(0, 0, 0)));
+            final List<LineStyle> lines = Collections.emptyList();
+
+            outlines = new ArrayList<java.awt.Shape>(shapes.size());
+
+            for (final Shape shape : shapes) {
+                final Path2D path = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+                for (final Primitive primitive : converter.convert(
+                        records(shape, MovieTypes.DEFINE_SHAPE), fills,
+                        lines)) {
+                    path.append(primitive.getOutline(), false);
+                }
+                outlines.add(path);
+            }
+            glyphs.put(identifier, outlines);
+        }
+        return outlines;
+    }
+
+    /**
+     * Get the image used in a bitmap fill.
+     *
+     * @param identifier the unique identifier of the image.
+     * @return the image or null if the image is not defined.
+     * @throws IOException if the image cannot be read.
+     * @throws DataFormatException if the image cannot be decoded.
+     */
+    BufferedImage getImage(final int identifier)
+            throws IOException, DataFormatException {
+        if (identifier == NO_IMAGE) {
+            return null;
+        }
+
+        BufferedImage image = images.get(identifier);
+
+        if (image == null) {
+            final DefineTag definition = definitions.get(identifier);
+
+            if (definition instanceof DefineImage) {
+                final BufferedImageEncoder encoder =
+                    new BufferedImageEncoder();
+                encoder.setImage((DefineImage) definition);
+                image = encoder.getBufferedImage();
+            } else if (definition instanceof DefineImage2) {
+                final BufferedImageEncoder encoder =
+                    new BufferedImageEncoder();
+                encoder.setImage((DefineImage2) definition);
+                image = encoder.getBufferedImage();
+            } else if (definition instanceof DefineJPEGImage) {
+                image = readJPEG(tableImage(
+                        ((DefineJPEGImage) definition).getImage()));
+            } else if (definition instanceof DefineJPEGImage2) {
+                image = readJPEG(((DefineJPEGImage2) definition).getImage());
+            } else if (definition instanceof DefineJPEGImage3) {
+                final DefineJPEGImage3 jpeg = (DefineJPEGImage3) definition;
+                image = applyAlpha(readJPEG(jpeg.getImage()),
+                        jpeg.getAlpha());
+            } else if (definition instanceof DefineJPEGImage4) {
+                final DefineJPEGImage4 jpeg = (DefineJPEGImage4) definition;
+                image = applyAlpha(readJPEG(jpeg.getImage()),
+                        jpeg.getAlpha());
+            }
+            if (image != null) {
+                images.put(identifier, image);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Combine the shared encoding table with the image from a
+     * DefineJPEGImage object.
+     *
+     * @param data the encoded image.
+     * @return the complete JPEG image.
+     */
+    private byte[] tableImage(final byte[] data) {
+        if (jpegTable == null || jpegTable.length < MARKER_LENGTH
+                || data.length < MARKER_LENGTH) {
+            return data;
+        }
+        final int tableLength = jpegTable.length - MARKER_LENGTH;
+        final int imageLength = data.length - MARKER_LENGTH;
+        final byte[] jpeg = new byte[tableLength + imageLength];
+        System.arraycopy(jpegTable, 0, jpeg, 0, tableLength);
+        System.arraycopy(data, MARKER_LENGTH, jpeg, tableLength, imageLength);
+        return jpeg;
+    }
+
+    /**
+     * Decode a JPEG image. Images in Flash files often start with an extra
+     * end-of-image marker followed by a start-of-image marker which is
+     * skipped.
+     *
+     * @param data the encoded image.
+     * @return the decoded image.
+     * @throws IOException if the image cannot be decoded.
+     */
+    // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 14 LINES
+    private BufferedImage readJPEG(final byte[] data) throws IOException {
+        int offset = 0;
+        if (data.length > 4 && (data[0] & BYTE_MASK) == 0xFF
+                && (data[1] & BYTE_MASK) == 0xD9
+                && (data[2] & BYTE_MASK) == 0xFF
+                && (data[3] & BYTE_MASK) == 0xD8) {
+            offset = 4;
+        }
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+                data, offset, data.length - offset));
+        if (image == null) {
+            throw new IOException("Cannot decode JPEG image");
+        }
+        return image;
+    }
+
+    /**
+     * Add the alpha channel to an image.
+     *
+     * @param image the decoded JPEG image.
+     * @param alpha the zlib compressed alpha channel.
+     * @return an image with the alpha channel applied.
+     * @throws DataFormatException if the alpha channel cannot be
+     * uncompressed.
+     */
+    private BufferedImage applyAlpha(final BufferedImage image,
+            final byte[] alpha) throws DataFormatException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        if (alpha.length == 0) {
+            return image;
+        }
+
+        final byte[] levels = new byte[width * height];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(alpha);
+            inflater.inflate(levels);
+        } finally {
+            inflater.end();
+        }
+
+        final BufferedImage result = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        int index = 0;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                result.setRGB(col, row, ((levels[index++] & BYTE_MASK)
+                        << ALPHA_SHIFT)
+                        | (image.getRGB(col, row) & RGB_MASK));
+            }
+        }
+        return result;
+    }
+}
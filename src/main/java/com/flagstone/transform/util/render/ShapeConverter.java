@@ -0,0 +1,638 @@
+/*
+ * ShapeConverter.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.render;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint;
+import java.awt.Paint;
+import java.awt.RadialGradientPaint;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.fillstyle.BitmapFill;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.fillstyle.FocalGradientFill;
+import com.flagstone.transform.fillstyle.Gradient;
+import com.flagstone.transform.fillstyle.GradientFill;
+import com.flagstone.transform.fillstyle.GradientType;
+import com.flagstone.transform.fillstyle.Interpolation;
+import com.flagstone.transform.fillstyle.SolidFill;
+import com.flagstone.transform.fillstyle.Spread;
+import com.flagstone.transform.linestyle.CapStyle;
+import com.flagstone.transform.linestyle.JoinStyle;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.linestyle.LineStyle1;
+import com.flagstone.transform.linestyle.LineStyle2;
+import com.flagstone.transform.shape.Curve;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.shape.ShapeStyle2;
+
+/**
+ * ShapeConverter converts the records and styles that define a shape into a
+ * list of Primitives that can be drawn using Java2D.
+ *
+ * <p>The edges in a shape are grouped by the fill style on either side of
+ * them. The edges for each fill style are joined together to form closed
+ * paths: edges where the fill is on the left (fill style 0) are reversed so
+ * all the paths for a given style are drawn in the same direction. Each set
+ * of styles is drawn in turn, with the fills drawn before the lines.</p>
+ */
+final class ShapeConverter {
+
+    /** The half-width, in twips, of the square that defines gradients. */
+    private static final float GRADIENT_SIZE = 16384.0f;
+    /** The maximum ratio for a colour in a gradient. */
+    private static final float MAX_RATIO = 255.0f;
+    /** The minimum separation between ratios in a gradient. */
+    private static final float MIN_STEP = 1.0f / 65536.0f;
+    /** The default miter limit when a line style does not define one. */
+    private static final float MITER_LIMIT = 3.0f;
+    /** The number of bits to shift the x-coordinate in a point key. */
+    private static final int KEY_SHIFT = 32;
+    /** Mask for the y-coordinate in a point key. */
+    private static final long KEY_MASK = 0xFFFFFFFFL;
+
+    /** The renderer used to obtain the images for bitmap fills. */
+    private final transient Renderer renderer;
+    /** The number of pixels per twip, used to set the width of lines. */
+    private final transient float scale;
+
+    /** The list of Primitives generated. */
+    private transient List<Primitive> primitives;
+    /** The current fill styles. */
+    private transient List<FillStyle> fillStyles;
+    /** The current line styles. */
+    private transient List<? extends LineStyle> lineStyles;
+    /** The edges drawn with each fill style. */
+    private transient Map<Integer, List<int[]>> fills;
+    /** The path drawn with each line style. */
+    private transient Map<Integer, Path2D> lines;
+
+    /**
+     * Create a ShapeConverter.
+     *
+     * @param owner the Renderer used to obtain the images for bitmap fills.
+     * @param pixelsPerTwip the size of a twip in pixels.
+     */
+    ShapeConverter(final Renderer owner, final float pixelsPerTwip) {
+        renderer = owner;
+        scale = pixelsPerTwip;
+    }
+
+    /**
+     * Convert a shape into a list of Primitives.
+     *
+     * @param records the records that define the outline of the shape.
+     * @param fillList the fill styles used by the shape.
+     * @param lineList the line styles used by the shape.
+     * @return the list of Primitives used to draw the shape.
+     * @throws IOException if an image used in a bitmap fill cannot be read.
+     * @throws DataFormatException if an image used in a bitmap fill cannot
+     * be decoded.
+     */
+    // CHECKSTYLE IGNORE CyclomaticComplexityCheck FOR NEXT 2 LINES
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    List<Primitive> convert(final List<ShapeRecord> records,
+            final List<FillStyle> fillList,
+            final List<? extends LineStyle> lineList)
+            throws IOException, DataFormatException {
+
+        primitives = new ArrayList<Primitive>();
+        fillStyles = fillList;
+        lineStyles = lineList;
+        fills = new LinkedHashMap<Integer, List<int[]>>();
+        lines = new LinkedHashMap<Integer, Path2D>();
+
+        int xCoord = 0;
+        int yCoord = 0;
+        int fill0 = 0;
+        int fill1 = 0;
+        int line = 0;
+
+        for (final ShapeRecord record : records) {
+            if (record instanceof Line) {
+                final Line edge = (Line) record;
+                final int[] points = {xCoord, yCoord,
+                        xCoord + edge.getX(), yCoord + edge.getY()};
+                addEdge(points, fill0, fill1, line);
+                xCoord = points[2];
+                yCoord = points[3];
+            } else if (record instanceof Curve) {
+                final Curve edge = (Curve) record;
+                final int ctrlX = xCoord + edge.getControlX();
+                final int ctrlY = yCoord + edge.getControlY();
+                final int[] points = {xCoord, yCoord, ctrlX, ctrlY,
+                        ctrlX + edge.getAnchorX(), ctrlY + edge.getAnchorY()};
+                addEdge(points, fill0, fill1, line);
+                xCoord = points[4];
+                yCoord = points[5];
+            } else {
+                Integer moveX = null;
+                Integer moveY = null;
+                Integer fill = null;
+                Integer alt = null;
+                Integer stroke = null;
+
+                if (record instanceof ShapeStyle) {
+                    final ShapeStyle style = (ShapeStyle) record;
+                    if (!style.getFillStyles().isEmpty()
+                            || !style.getLineStyles().isEmpty()) {
+                        flush();
+                        fillStyles = style.getFillStyles();
+                        lineStyles = style.getLineStyles();
+                    }
+                    moveX = style.getMoveX();
+                    moveY = style.getMoveY();
+                    fill = style.getFillStyle();
+                    alt = style.getAltFillStyle();
+                    stroke = style.getLineStyle();
+                } else if (record instanceof ShapeStyle2) {
+                    final ShapeStyle2 style = (ShapeStyle2) record;
+                    if (!style.getFillStyles().isEmpty()
+                            || !style.getLineStyles().isEmpty()) {
+                        flush();
+                        fillStyles = style.getFillStyles();
+                        lineStyles = style.getLineStyles();
+                    }
+                    moveX = style.getMoveX();
+                    moveY = style.getMoveY();
+                    fill = style.getFillStyle();
+                    alt = style.getAltFillStyle();
+                    stroke = style.getLineStyle();
+                }
+                if (moveX != null && moveY != null) {
+                    xCoord = moveX;
+                    yCoord = moveY;
+                }
+                if (fill != null) {
+                    fill0 = fill;
+                }
+                if (alt != null) {
+                    fill1 = alt;
+                }
+                if (stroke != null) {
+                    line = stroke;
+                }
+            }
+        }
+        flush();
+        return primitives;
+    }
+
+    /**
+     * Add an edge to the fill and line styles used to draw it.
+     *
+     * @param points the coordinates of the start, optional control point
+     * and end of the edge.
+     * @param fill0 the index of the fill style on the left of the edge.
+     * @param fill1 the index of the fill style on the right of the edge.
+     * @param line the index of the line style.
+     */
+    private void addEdge(final int[] points, final int fill0,
+            final int fill1, final int line) {
+        if (fill0 > 0) {
+            edges(fill0).add(reverse(points));
+        }
+        if (fill1 > 0) {
+            edges(fill1).add(points);
+        }
+        if (line > 0) {
+            Path2D path = lines.get(line);
+            if (path == null) {
+                path = new Path2D.Float();
+                lines.put(line, path);
+            }
+            final Point2D current = path.getCurrentPoint();
+            if (current == null || current.getX() != points[0]
+                    || current.getY() != points[1]) {
+                path.moveTo(points[0], points[1]);
+            }
+            append(path, points);
+        }
+    }
+
+    /**
+     * Get the list of edges for a fill style.
+     *
+     * @param index the index of the fill style.
+     * @return the list of edges.
+     */
+    private List<int[]> edges(final int index) {
+        List<int[]> list = fills.get(index);
+        if (list == null) {
+            list = new ArrayList<int[]>();
+            fills.put(index, list);
+        }
+        return list;
+    }
+
+    /**
+     * Reverse the direction of an edge.
+     *
+     * @param points the coordinates of the edge.
+     * @return the coordinates of the edge in reverse order.
+     */
+    private int[] reverse(final int[] points) {
+        final int[] reversed = new int[points.length];
+        for (int i = 0; i < points.length; i += 2) {
+            reversed[points.length - i - 2] = points[i];
+            reversed[points.length - i - 1] = points[i + 1];
+        }
+        return reversed;
+    }
+
+    /**
+     * Add an edge to a path. The edge is assumed to start at the current
+     * point.
+     *
+     * @param path the path.
+     * @param points the coordinates of the edge.
+     */
+    private void append(final Path2D path, final int[] points) {
+        if (points.length == 4) {
+            path.lineTo(points[2], points[3]);
+        } else {
+            // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
+            path.quadTo(points[2], points[3], points[4], points[5]);
+        }
+    }
+
+    /**
+     * Generate the Primitives for the current set of styles and clear the
+     * edges.
+     *
+     * @throws IOException if an image used in a bitmap fill cannot be read.
+     * @throws DataFormatException if an image used in a bitmap fill cannot
+     * be decoded.
+     */
+    private void flush() throws IOException, DataFormatException {
+        for (int index = 1; index <= fillStyles.size(); index++) {
+            final List<int[]> list = fills.get(index);
+            if (list != null) {
+                addFill(join(list), fillStyles.get(index - 1));
+            }
+        }
+        for (int index = 1; index <= lineStyles.size(); index++) {
+            final Path2D path = lines.get(index);
+            if (path != null) {
+                addLine(path, lineStyles.get(index - 1));
+            }
+        }
+        fills.clear();
+        lines.clear();
+    }
+
+    /**
+     * Join edges together to form closed paths.
+     *
+     * @param edges the list of edges drawn with a fill style.
+     * @return the path containing the edges.
+     */
+    private Path2D join(final List<int[]> edges) {
+        final Map<Long, List<Integer>> starts =
+            new HashMap<Long, List<Integer>>();
+
+        for (int i = 0; i < edges.size(); i++) {
+            final int[] edge = edges.get(i);
+            final Long key = key(edge[0], edge[1]);
+            List<Integer> list = starts.get(key);
+            if (list == null) {
+                list = new ArrayList<Integer>();
+                starts.put(key, list);
+            }
+            list.add(i);
+        }
+
+        final boolean[] used = new boolean[edges.size()];
+        final Path2D path = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+
+        for (int i = 0; i < edges.size(); i++) {
+            if (used[i]) {
+                continue;
+            }
+            int[] edge = edges.get(i);
+            final int startX = edge[0];
+            final int startY = edge[1];
+            int next = i;
+
+            path.moveTo(startX, startY);
+
+            while (next >= 0) {
+                used[next] = true;
+                edge = edges.get(next);
+                append(path, edge);
+
+                final int endX = edge[edge.length - 2];
+                final int endY = edge[edge.length - 1];
+                next = -1;
+
+                if (endX != startX || endY != startY) {
+                    final List<Integer> list = starts.get(key(endX, endY));
+                    if (list != null) {
+                        for (final Integer candidate : list) {
+                            if (!used[candidate]) {
+                                next = candidate;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            path.closePath();
+        }
+        return path;
+    }
+
+    /**
+     * Create the key used to look up the edges starting at a point.
+     *
+     * @param xCoord the x-coordinate of the point.
+     * @param yCoord the y-coordinate of the point.
+     * @return the key.
+     */
+    private Long key(final int xCoord, final int yCoord) {
+        return ((long) xCoord << KEY_SHIFT) | (yCoord & KEY_MASK);
+    }
+
+    /**
+     * Add a Primitive that fills an area.
+     *
+     * @param path the outline of the area.
+     * @param style the fill style.
+     * @throws IOException if an image used in a bitmap fill cannot be read.
+     * @throws DataFormatException if an image used in a bitmap fill cannot
+     * be decoded.
+     */
+    private void addFill(final Path2D path, final FillStyle style)
+            throws IOException, DataFormatException {
+        if (style instanceof BitmapFill) {
+            final BitmapFill fill = (BitmapFill) style;
+            final BufferedImage image = renderer.getImage(
+                    fill.getIdentifier());
+            if (image != null) {
+                primitives.add(new Primitive(path, image,
+                        transform(fill.getTransform()), fill.isTiled(),
+                        fill.isSmoothed()));
+            }
+        } else {
+            final Paint paint = paint(style);
+            if (paint != null) {
+                primitives.add(new Primitive(path, paint));
+            }
+        }
+    }
+
+    /**
+     * Add a Primitive that draws a line.
+     *
+     * @param path the path of the line.
+     * @param style the line style.
+     */
+    private void addLine(final Path2D path, final LineStyle style) {
+        Paint paint = null;
+        int width = 0;
+        int cap = BasicStroke.CAP_ROUND;
+        int join = BasicStroke.JOIN_ROUND;
+        float limit = MITER_LIMIT;
+
+        if (style instanceof LineStyle1) {
+            final LineStyle1 line = (LineStyle1) style;
+            paint = color(line.getColor());
+            width = line.getWidth();
+        } else if (style instanceof LineStyle2) {
+            final LineStyle2 line = (LineStyle2) style;
+            if (line.getFillStyle() == null) {
+                paint = color(line.getColor());
+            } else {
+                paint = paint(line.getFillStyle());
+            }
+            width = line.getWidth();
+            cap = cap(line.getStartCap());
+            join = join(line.getJoinStyle());
+            if (line.getMiterLimit() > 0) {
+                limit = Math.max(1.0f, line.getMiterLimit());
+            }
+        }
+
+        if (paint != null) {
+            float thickness = width;
+            if (width * scale < 1.0f) {
+                thickness = 0.0f;
+            }
+            final Stroke stroke = new BasicStroke(thickness, cap, join,
+                    limit);
+            primitives.add(new Primitive(path, paint, stroke));
+        }
+    }
+
+    /**
+     * Convert a cap style.
+     *
+     * @param style the style used to draw the ends of lines.
+     * @return the equivalent BasicStroke cap.
+     */
+    private int cap(final CapStyle style) {
+        final int cap;
+        if (style == CapStyle.NONE) {
+            cap = BasicStroke.CAP_BUTT;
+        } else if (style == CapStyle.SQUARE) {
+            cap = BasicStroke.CAP_SQUARE;
+        } else {
+            cap = BasicStroke.CAP_ROUND;
+        }
+        return cap;
+    }
+
+    /**
+     * Convert a join style.
+     *
+     * @param style the style used to join line segments.
+     * @return the equivalent BasicStroke join.
+     */
+    private int join(final JoinStyle style) {
+        final int join;
+        if (style == JoinStyle.BEVEL) {
+            join = BasicStroke.JOIN_BEVEL;
+        } else if (style == JoinStyle.MITER) {
+            join = BasicStroke.JOIN_MITER;
+        } else {
+            join = BasicStroke.JOIN_ROUND;
+        }
+        return join;
+    }
+
+    /**
+     * Create the Paint for a solid or gradient fill style.
+     *
+     * @param style the fill style.
+     * @return the Paint or null if the fill style is not supported.
+     */
+    private Paint paint(final FillStyle style) {
+        Paint paint = null;
+
+        if (style instanceof SolidFill) {
+            paint = color(((SolidFill) style).getColor());
+        } else if (style instanceof GradientFill) {
+            final GradientFill fill = (GradientFill) style;
+            paint = gradient(fill.getType() == GradientType.LINEAR, 0.0f,
+                    fill.getGradients(), fill.getSpread(),
+                    fill.getInterpolation(), fill.getTransform());
+        } else if (style instanceof FocalGradientFill) {
+            final FocalGradientFill fill = (FocalGradientFill) style;
+            paint = gradient(false, fill.getFocalPoint(),
+                    fill.getGradients(), fill.getSpread(),
+                    fill.getInterpolation(), fill.getTransform());
+        }
+        return paint;
+    }
+
+    /**
+     * Create the Paint for a gradient.
+     *
+     * @param linear true for a linear gradient, false for a radial gradient.
+     * @param focus the position of the focal point for radial gradients,
+     * in the range -1.0..1.0.
+     * @param gradients the colours in the gradient.
+     * @param spread how the area outside the gradient square is filled.
+     * @param interpolation how colours are interpolated.
+     * @param matrix the transform for the gradient square.
+     * @return the Paint for the gradient.
+     */
+    private Paint gradient(final boolean linear, final float focus,
+            final List<Gradient> gradients, final Spread spread,
+            final Interpolation interpolation, final CoordTransform matrix) {
+
+        if (gradients.isEmpty()) {
+            return null;
+        }
+
+        final AffineTransform transform = transform(matrix);
+
+        if (gradients.size() == 1 || transform.getDeterminant() == 0.0) {
+            return color(gradients.get(gradients.size() - 1).getColor());
+        }
+
+        final int count = gradients.size();
+        final float[] fractions = new float[count];
+        final Color[] colors = new Color[count];
+
+        for (int i = 0; i < count; i++) {
+            fractions[i] = gradients.get(i).getRatio() / MAX_RATIO;
+            colors[i] = color(gradients.get(i).getColor());
+            if (i > 0 && fractions[i] < fractions[i - 1] + MIN_STEP) {
+                fractions[i] = fractions[i - 1] + MIN_STEP;
+            }
+        }
+        for (int i = count - 1; i >= 0 && fractions[i] > 1.0f; i--) {
+            fractions[i] = 1.0f - (count - 1 - i) * MIN_STEP;
+        }
+
+        final MultipleGradientPaint.CycleMethod cycle;
+
+        if (spread == Spread.REFLECT) {
+            cycle = MultipleGradientPaint.CycleMethod.REFLECT;
+        } else if (spread == Spread.REPEAT) {
+            cycle = MultipleGradientPaint.CycleMethod.REPEAT;
+        } else {
+            cycle = MultipleGradientPaint.CycleMethod.NO_CYCLE;
+        }
+
+        final MultipleGradientPaint.ColorSpaceType space;
+
+        if (interpolation == Interpolation.LINEAR) {
+            space = MultipleGradientPaint.ColorSpaceType.LINEAR_RGB;
+        } else {
+            space = MultipleGradientPaint.ColorSpaceType.SRGB;
+        }
+
+        final Paint paint;
+
+        if (linear) {
+            paint = new LinearGradientPaint(
+                    new Point2D.Float(-GRADIENT_SIZE, 0.0f),
+                    new Point2D.Float(GRADIENT_SIZE, 0.0f),
+                    fractions, colors, cycle, space, transform);
+        } else {
+            paint = new RadialGradientPaint(new Point2D.Float(0.0f, 0.0f),
+                    GRADIENT_SIZE,
+                    new Point2D.Float(focus * GRADIENT_SIZE, 0.0f),
+                    fractions, colors, cycle, space, transform);
+        }
+        return paint;
+    }
+
+    /**
+     * Convert a colour.
+     *
+     * @param color the colour.
+     * @return the equivalent AWT colour.
+     */
+    static Color color(final com.flagstone.transform.datatype.Color color) {
+        return new Color(color.getRed(), color.getGreen(), color.getBlue(),
+                color.getAlpha());
+    }
+
+    /**
+     * Convert a coordinate transform.
+     *
+     * @param matrix the transform, may be null.
+     * @return the equivalent AffineTransform.
+     */
+    static AffineTransform transform(final CoordTransform matrix) {
+        final AffineTransform transform;
+
+        if (matrix == null) {
+            transform = new AffineTransform();
+        } else {
+            final float[][] values = matrix.getMatrix();
+            transform = new AffineTransform(values[0][0], values[1][0],
+                    values[0][1], values[1][1], values[0][2], values[1][2]);
+        }
+        return transform;
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * The render package contains classes for drawing shapes and static text
+ * using Java2D so they can be converted to images.
+ */
+package com.flagstone.transform.util.render;
@@ -31,10 +31,13 @@
 
 package com.flagstone.transform.util.shape;
 
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
 import com.flagstone.transform.fillstyle.FillStyle;
 import com.flagstone.transform.linestyle.LineStyle;
 import com.flagstone.transform.linestyle.LineStyle1;
@@ -71,6 +74,21 @@ import com.flagstone.transform.shape.ShapeStyle;
  * <p>
  *
  * <p>
+ * Paths drawn from large data sets, for example maps or charts, can be
+ * simplified when the shape is generated by setting a tolerance, in twips,
+ * and a grid that coordinates are snapped to. Runs of lines are reduced and,
+ * where the points follow a smooth curve, replaced by quadratic curves.
+ * </p>
+ *
+ * <p>
+ * Existing Java2D geometry, for example an Area, GeneralPath or the outline
+ * of a glyph, can be added using the draw() methods which read the segments
+ * directly from a PathIterator. Large numbers of lines or curves can be
+ * added from arrays of int or float coordinates using the lines() and
+ * curves() methods.
+ * </p>
+ *
+ * <p>
  * When drawing paths whether coordinates are specified in twips or pixels is
  * set when the Canvas object is created. When specifying coordinates in pixels
  * all coordinates are converted internally to twips to perform the actual
@@ -145,6 +163,19 @@ public final class Canvas {
     /** The list of fill styles available. */
     private final transient List<FillStyle> fillStyles;
 
+    /** The maximum distance, in twips, points move when simplifying. */
+    private transient int tolerance;
+    /** The size, in twips, of the grid coordinates are snapped to. */
+    private transient int grid;
+    /** The widest line drawn. */
+    private transient int maxWidth;
+    /** The simplified path, created on demand. */
+    private transient List<ShapeRecord> simplified;
+    /** The bounding box of the simplified path. */
+    private transient Bounds simplifiedBounds;
+    /** The number of records that were simplified. */
+    private transient int simplifiedCount;
+
     /**
      * Creates a new Canvas object with no path defined.
      */
@@ -180,13 +211,80 @@ public final class Canvas {
         pixels = arePixels;
     }
 
+    /**
+     * Get the tolerance used when simplifying the path.
+     *
+     * @return the maximum distance, in twips, that a point can be moved.
+     */
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the tolerance used to simplify the path when the shape is
+     * generated. Runs of straight lines are treated as polylines: sequences
+     * of points that lie on a smooth curve are replaced by quadratic curves
+     * and the remaining points are reduced using the Douglas-Peucker
+     * algorithm, so collinear lines are merged. No point on the simplified
+     * path is more than the tolerance from the path that was drawn. The path
+     * is not simplified if the tolerance is zero, the default.
+     *
+     * @param twips the maximum distance, in twips, that a point can be
+     * moved. Must be in the range 0..65535.
+     */
+    public void setTolerance(final int twips) {
+        if ((twips < 0) || (twips > Shape.MAX_COORD)) {
+            throw new IllegalArgumentRangeException(0, Shape.MAX_COORD, twips);
+        }
+        tolerance = twips;
+        simplified = null;
+    }
+
+    /**
+     * Get the size of the grid that coordinates are snapped to.
+     *
+     * @return the size of the grid in twips.
+     */
+    public int getGrid() {
+        return grid;
+    }
+
+    /**
+     * Sets the size of the grid that coordinates are snapped to when the
+     * shape is generated. Lines that become zero length are removed and
+     * collinear lines are merged. The coordinates are not changed if the
+     * size is zero or one. For example setting the size to 20 places every
+     * point on a whole pixel.
+     *
+     * @param twips the size of the grid in twips. Must be in the range
+     * 0..65535.
+     */
+    public void setGrid(final int twips) {
+        if ((twips < 0) || (twips > Shape.MAX_COORD)) {
+            throw new IllegalArgumentRangeException(0, Shape.MAX_COORD, twips);
+        }
+        grid = twips;
+        simplified = null;
+    }
+
     /**
      * Generates the bounding box that encloses the current path.
      *
      * @return the bounding box that encloses the current shape.
      */
     public Bounds getBounds() {
-        return new Bounds(minX, minY, maxX, maxY);
+        Bounds bounds = new Bounds(minX, minY, maxX, maxY);
+
+        if (isSimplified()) {
+            simplify();
+            final int pad = maxWidth / 2;
+            bounds = new Bounds(
+                    Math.min(minX, simplifiedBounds.getMinX() - pad),
+                    Math.min(minY, simplifiedBounds.getMinY() - pad),
+                    Math.max(maxX, simplifiedBounds.getMaxX() + pad),
+                    Math.max(maxY, simplifiedBounds.getMaxY() + pad));
+        }
+        return bounds;
     }
 
     /**
@@ -229,15 +327,48 @@ public final class Canvas {
      *         used to construct the current path.
      */
     public Shape getShape() {
-        final List<ShapeRecord> list = new ArrayList<ShapeRecord>(objects
+        final List<ShapeRecord> records;
+
+        if (isSimplified()) {
+            records = simplify();
+        } else {
+            records = objects;
+        }
+
+        final List<ShapeRecord> list = new ArrayList<ShapeRecord>(records
                 .size());
 
-        for (final ShapeRecord record : objects) {
+        for (final ShapeRecord record : records) {
             list.add(record.copy());
         }
         return new Shape(list);
     }
 
+    /**
+     * Is the path simplified when the shape is generated.
+     *
+     * @return true if either the tolerance or the grid size is set.
+     */
+    private boolean isSimplified() {
+        return tolerance > 0 || grid > 1;
+    }
+
+    /**
+     * Simplify the path. The simplified path is reused until more of the path
+     * is drawn.
+     *
+     * @return the simplified path.
+     */
+    private List<ShapeRecord> simplify() {
+        if (simplified == null || simplifiedCount != objects.size()) {
+            final Simplifier simplifier = new Simplifier(tolerance, grid);
+            simplified = simplifier.simplify(objects);
+            simplifiedBounds = simplifier.getBounds();
+            simplifiedCount = objects.size();
+        }
+        return simplified;
+    }
+
     /**
      * Set the style used to draw lines.
      *
@@ -254,6 +385,7 @@ public final class Canvas {
             lineStyles.add(style.copy());
         }
         lineWidth = style.getWidth();
+        maxWidth = Math.max(maxWidth, lineWidth);
         objects.add(new ShapeStyle().setLineStyle(index + 1));
     }
 
@@ -338,6 +470,8 @@ public final class Canvas {
         fillStyles.clear();
         objects.clear();
         lineWidth = 0;
+        maxWidth = 0;
+        simplified = null;
     }
 
     /**
@@ -365,14 +499,8 @@ public final class Canvas {
      *            the y-coordinate of the point to move to.
      */
     public void move(final int xCoord, final int yCoord) {
-        final int pointX = pixels ? xCoord * TWIPS_PER_PIXEL : xCoord;
-        final int pointY = pixels ? yCoord * TWIPS_PER_PIXEL : yCoord;
-
-        objects.add(new ShapeStyle().setMove(pointX, pointY));
-
-        setControl((currentX + pointX) / 2, (currentY + pointY) / 2);
-        setCurrent(pointX, pointY);
-        setInitial(pointX, pointY);
+        moveTo(pixels ? xCoord * TWIPS_PER_PIXEL : xCoord,
+                pixels ? yCoord * TWIPS_PER_PIXEL : yCoord);
     }
 
     /**
@@ -427,19 +555,8 @@ public final class Canvas {
      *            the y-coordinate of the end of the line.
      */
     public void line(final int xCoord, final int yCoord) {
-        final int pointX = (pixels ? xCoord * TWIPS_PER_PIXEL
-                : xCoord) - currentX;
-        final int pointY = (pixels ? yCoord * TWIPS_PER_PIXEL
-                : yCoord) - currentY;
-
-        objects.add(new Line(pointX, pointY));
-
-        if (!pathInProgress) {
-            setInitial(currentX, currentY);
-            pathInProgress = true;
-        }
-        setControl(currentX + pointX / 2, currentY + pointY / 2);
-        setCurrent(currentX + pointX, currentY + pointY);
+        lineTo(pixels ? xCoord * TWIPS_PER_PIXEL : xCoord,
+                pixels ? yCoord * TWIPS_PER_PIXEL : yCoord);
     }
 
     /**
@@ -479,32 +596,12 @@ public final class Canvas {
      */
     public void curve(final int acontrolX, final int acontrolY,
             final int aanchorX, final int aanchorY) {
-        int rcontrolX;
-        int rcontrolY;
-        int ranchorX;
-        int ranchorY;
-
         if (pixels) {
-            rcontrolX = acontrolX * TWIPS_PER_PIXEL - currentX;
-            rcontrolY = acontrolY * TWIPS_PER_PIXEL - currentY;
-            ranchorX = aanchorX * TWIPS_PER_PIXEL - currentX - rcontrolX;
-            ranchorY = aanchorY * TWIPS_PER_PIXEL - currentY - rcontrolY;
+            curveTo(acontrolX * TWIPS_PER_PIXEL, acontrolY * TWIPS_PER_PIXEL,
+                    aanchorX * TWIPS_PER_PIXEL, aanchorY * TWIPS_PER_PIXEL);
         } else {
-            rcontrolX = acontrolX - currentX;
-            rcontrolY = acontrolY - currentY;
-            ranchorX = aanchorX - currentX - rcontrolX;
-            ranchorY = aanchorY - currentY - rcontrolY;
+            curveTo(acontrolX, acontrolY, aanchorX, aanchorY);
         }
-
-        objects.add(new Curve(rcontrolX, rcontrolY, ranchorX, ranchorY));
-
-        if (!pathInProgress) {
-            setInitial(currentX, currentY);
-            pathInProgress = true;
-        }
-        setControl(currentX + rcontrolX, currentY + rcontrolY);
-        setCurrent(currentX + rcontrolX + ranchorX, currentY + rcontrolY
-                + ranchorY);
     }
 
     /**
@@ -861,6 +958,298 @@ public final class Canvas {
         close();
     }
 
+    /**
+     * Draw a series of straight lines. Each line is drawn from the current
+     * point to the next pair of coordinates in the array. No move is made
+     * before the first line is drawn and the path is not closed.
+     *
+     * @param points
+     *            an array of coordinate pairs, in pixels or twips.
+     * @param offset
+     *            the index of the first x-coordinate in the array.
+     * @param count
+     *            the number of points.
+     */
+    public void lines(final int[] points, final int offset, final int count) {
+        checkBatch(points.length, offset, count, 2);
+        final int end = offset + count * 2;
+        int xCoord;
+        int yCoord;
+
+        for (int i = offset; i < end; i += 2) {
+            xCoord = pixels ? points[i] * TWIPS_PER_PIXEL : points[i];
+            yCoord = pixels ? points[i + 1] * TWIPS_PER_PIXEL : points[i + 1];
+            if (xCoord != currentX || yCoord != currentY) {
+                lineTo(xCoord, yCoord);
+            }
+        }
+    }
+
+    /**
+     * Draw a series of straight lines. Each line is drawn from the current
+     * point to the next pair of coordinates in the array which are rounded
+     * to the nearest twip. No move is made before the first line is drawn
+     * and the path is not closed. Lines that are shorter than a twip are
+     * ignored.
+     *
+     * @param points
+     *            an array of coordinate pairs, in pixels or twips.
+     * @param offset
+     *            the index of the first x-coordinate in the array.
+     * @param count
+     *            the number of points.
+     */
+    public void lines(final float[] points, final int offset,
+            final int count) {
+        checkBatch(points.length, offset, count, 2);
+        final int end = offset + count * 2;
+        int xCoord;
+        int yCoord;
+
+        for (int i = offset; i < end; i += 2) {
+            xCoord = twips(points[i]);
+            yCoord = twips(points[i + 1]);
+            if (xCoord != currentX || yCoord != currentY) {
+                lineTo(xCoord, yCoord);
+            }
+        }
+    }
+
+    /**
+     * Draw a series of quadratic Bezier curves. Each curve is defined by
+     * four values in the array: the coordinates of the control point
+     * followed by the coordinates of the end of the curve.
+     *
+     * @param points
+     *            an array of coordinates, in pixels or twips.
+     * @param offset
+     *            the index of the first x-coordinate in the array.
+     * @param count
+     *            the number of curves.
+     */
+    // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 14 LINES
+    public void curves(final int[] points, final int offset,
+            final int count) {
+        checkBatch(points.length, offset, count, 4);
+        final int end = offset + count * 4;
+        final int scale = pixels ? TWIPS_PER_PIXEL : 1;
+
+        for (int i = offset; i < end; i += 4) {
+            curveTo(points[i] * scale, points[i + 1] * scale,
+                    points[i + 2] * scale, points[i + 3] * scale);
+        }
+    }
+
+    /**
+     * Draw a series of quadratic Bezier curves. Each curve is defined by
+     * four values in the array: the coordinates of the control point
+     * followed by the coordinates of the end of the curve. Coordinates are
+     * rounded to the nearest twip.
+     *
+     * @param points
+     *            an array of coordinates, in pixels or twips.
+     * @param offset
+     *            the index of the first x-coordinate in the array.
+     * @param count
+     *            the number of curves.
+     */
+    // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 14 LINES
+    public void curves(final float[] points, final int offset,
+            final int count) {
+        checkBatch(points.length, offset, count, 4);
+        final int end = offset + count * 4;
+
+        for (int i = offset; i < end; i += 4) {
+            curveTo(twips(points[i]), twips(points[i + 1]),
+                    twips(points[i + 2]), twips(points[i + 3]));
+        }
+    }
+
+    /**
+     * Draw the outline of a Java2D shape. Quadratic curves are added
+     * directly. Cubic curves are split in half repeatedly until each piece
+     * is close enough to a straight line and each piece is then drawn as a
+     * line to its end point. The coordinates after the transform is
+     * applied are treated as pixels or twips depending on the Canvas
+     * settings.
+     *
+     * Shapes filled using the non-zero winding rule that contain overlapping
+     * paths, such as glyphs from some fonts, should be converted to a
+     * java.awt.geom.Area first since Flash fills shapes using the even-odd
+     * rule.
+     *
+     * @param shape
+     *            the shape to draw.
+     * @param transform
+     *            the transform applied to the coordinates of the shape, may
+     *            be null.
+     */
+    public void draw(final java.awt.Shape shape,
+            final AffineTransform transform) {
+        draw(shape.getPathIterator(transform));
+    }
+
+    /**
+     * Draw the outline of a Java2D shape with all curves approximated by
+     * straight lines.
+     *
+     * @param shape
+     *            the shape to draw.
+     * @param transform
+     *            the transform applied to the coordinates of the shape, may
+     *            be null.
+     * @param flatness
+     *            the maximum distance, in the units of the transformed
+     *            coordinates, that a line segment may deviate from the curve.
+     */
+    public void draw(final java.awt.Shape shape,
+            final AffineTransform transform, final double flatness) {
+        draw(shape.getPathIterator(transform, flatness));
+    }
+
+    /**
+     * Draw the path defined by a PathIterator. Coordinates are rounded to
+     * the nearest twip. Lines that do not move the current point and
+     * quadratic curves where both the control and anchor points are the
+     * current point are ignored.
+     *
+     * @param iterator
+     *            the PathIterator that defines the path.
+     */
+    // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 60 LINES
+    public void draw(final PathIterator iterator) {
+        final double[] coords = new double[6];
+        int controlX;
+        int controlY;
+        int xCoord;
+        int yCoord;
+
+        while (!iterator.isDone()) {
+            switch (iterator.currentSegment(coords)) {
+            case PathIterator.SEG_MOVETO:
+                moveTo(twips(coords[0]), twips(coords[1]));
+                break;
+            case PathIterator.SEG_LINETO:
+                xCoord = twips(coords[0]);
+                yCoord = twips(coords[1]);
+                if (xCoord != currentX || yCoord != currentY) {
+                    lineTo(xCoord, yCoord);
+                }
+                break;
+            case PathIterator.SEG_QUADTO:
+                controlX = twips(coords[0]);
+                controlY = twips(coords[1]);
+                xCoord = twips(coords[2]);
+                yCoord = twips(coords[3]);
+                if (xCoord != currentX || yCoord != currentY
+                        || controlX != currentX || controlY != currentY) {
+                    curveTo(controlX, controlY, xCoord, yCoord);
+                }
+                break;
+            case PathIterator.SEG_CUBICTO:
+                cubicX[START] = currentX;
+                cubicY[START] = currentY;
+                cubicX[CTRLA] = twips(coords[0]);
+                cubicY[CTRLA] = twips(coords[1]);
+                cubicX[CTRLB] = twips(coords[2]);
+                cubicY[CTRLB] = twips(coords[3]);
+                cubicX[ANCHOR] = twips(coords[4]);
+                cubicY[ANCHOR] = twips(coords[5]);
+                flatten();
+                break;
+            case PathIterator.SEG_CLOSE:
+                close();
+                break;
+            default:
+                break;
+            }
+            iterator.next();
+        }
+    }
+
+    /**
+     * Check the range of values in a batch of coordinates.
+     *
+     * @param length the length of the array.
+     * @param offset the index of the first coordinate.
+     * @param count the number of lines or curves.
+     * @param size the number of coordinates for each line or curve.
+     */
+    private void checkBatch(final int length, final int offset,
+            final int count, final int size) {
+        if (offset < 0 || count < 0
+                || (long) offset + (long) count * size > length) {
+            throw new IllegalArgumentException(
+                    "Coordinates out of range: offset=" + offset
+                    + ", count=" + count);
+        }
+    }
+
+    /**
+     * Convert a coordinate into twips.
+     *
+     * @param coord the coordinate in pixels or twips.
+     * @return the coordinate rounded to the nearest twip.
+     */
+    private int twips(final double coord) {
+        return (int) Math.round(pixels ? coord * TWIPS_PER_PIXEL : coord);
+    }
+
+    /**
+     * Move to a point.
+     *
+     * @param xCoord the x-coordinate of the point in twips.
+     * @param yCoord the y-coordinate of the point in twips.
+     */
+    private void moveTo(final int xCoord, final int yCoord) {
+        objects.add(new ShapeStyle().setMove(xCoord, yCoord));
+
+        setControl((currentX + xCoord) / 2, (currentY + yCoord) / 2);
+        setCurrent(xCoord, yCoord);
+        setInitial(xCoord, yCoord);
+    }
+
+    /**
+     * Draw a line from the current point.
+     *
+     * @param xCoord the x-coordinate of the end of the line in twips.
+     * @param yCoord the y-coordinate of the end of the line in twips.
+     */
+    private void lineTo(final int xCoord, final int yCoord) {
+        final int pointX = xCoord - currentX;
+        final int pointY = yCoord - currentY;
+
+        objects.add(new Line(pointX, pointY));
+
+        if (!pathInProgress) {
+            setInitial(currentX, currentY);
+            pathInProgress = true;
+        }
+        setControl(currentX + pointX / 2, currentY + pointY / 2);
+        setCurrent(xCoord, yCoord);
+    }
+
+    /**
+     * Draw a quadratic Bezier curve from the current point.
+     *
+     * @param ctrlX the x-coordinate of the control point in twips.
+     * @param ctrlY the y-coordinate of the control point in twips.
+     * @param anchorX the x-coordinate of the end of the curve in twips.
+     * @param anchorY the y-coordinate of the end of the curve in twips.
+     */
+    private void curveTo(final int ctrlX, final int ctrlY,
+            final int anchorX, final int anchorY) {
+        objects.add(new Curve(ctrlX - currentX, ctrlY - currentY,
+                anchorX - ctrlX, anchorY - ctrlY));
+
+        if (!pathInProgress) {
+            setInitial(currentX, currentY);
+            pathInProgress = true;
+        }
+        setControl(ctrlX, ctrlY);
+        setCurrent(anchorX, anchorY);
+    }
+
     /**
      * Set the initial point.
      * @param xCoord the x-coordinate of the initial point.
@@ -0,0 +1,749 @@
+/*
+ * MorphInterpolator.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.shape;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.flagstone.transform.MovieTypes;
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.Color;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.fillstyle.BitmapFill;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.fillstyle.FocalGradientFill;
+import com.flagstone.transform.fillstyle.Gradient;
+import com.flagstone.transform.fillstyle.GradientFill;
+import com.flagstone.transform.fillstyle.MorphBitmapFill;
+import com.flagstone.transform.fillstyle.MorphFocalGradientFill;
+import com.flagstone.transform.fillstyle.MorphGradient;
+import com.flagstone.transform.fillstyle.MorphGradientFill;
+import com.flagstone.transform.fillstyle.MorphSolidFill;
+import com.flagstone.transform.fillstyle.SolidFill;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.linestyle.LineStyle1;
+import com.flagstone.transform.linestyle.LineStyle2;
+import com.flagstone.transform.linestyle.MorphLineStyle;
+import com.flagstone.transform.linestyle.MorphLineStyle2;
+import com.flagstone.transform.shape.Curve;
+import com.flagstone.transform.shape.DefineMorphShape;
+import com.flagstone.transform.shape.DefineMorphShape2;
+import com.flagstone.transform.shape.DefineShape3;
+import com.flagstone.transform.shape.DefineShape4;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeData;
+import com.flagstone.transform.shape.ShapePath;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.shape.ShapeStyle2;
+import com.flagstone.transform.shape.ShapeTag;
+import com.flagstone.transform.util.concurrent.Tasks;
+
+/**
+ * MorphInterpolator generates the intermediate shapes for a morphing shape,
+ * defined using either DefineMorphShape or DefineMorphShape2.
+ *
+ * <p>The edges in the start and end shapes are paired when the
+ * MorphInterpolator is created. Straight lines that are paired with curves
+ * are converted to curves and the coordinates are stored as absolute
+ * positions so generating a shape for a given ratio only requires the
+ * position of each point to be interpolated. The ratio is the same value
+ * used in the Place2 and Place3 objects to display a morphing shape: 0
+ * generates the start shape and 65535 the end shape.</p>
+ *
+ * <pre>
+ * MorphInterpolator morph = new MorphInterpolator(definition);
+ * ShapeTag shape = morph.getDefinition(identifier, 32768);
+ * </pre>
+ *
+ * <p>The definition returned is a DefineShape3 object for DefineMorphShape
+ * and a DefineShape4 object for DefineMorphShape2 so it can be drawn or
+ * encoded like any other shape. Several ratios can be generated in parallel
+ * using an ExecutorService since the interpolator is not changed once it
+ * has been created.</p>
+ */
+public final class MorphInterpolator {
+
+    /** Indicates a style record that does not move the drawing point. */
+    private static final byte STYLE = 0;
+    /** Indicates a style record that moves the drawing point. */
+    private static final byte MOVE = 1;
+    /** Indicates a straight line. */
+    private static final byte LINE = 2;
+    /** Indicates a curve. */
+    private static final byte CURVE = 3;
+
+    /** The morphing shape. */
+    private final transient ShapeTag definition;
+    /** The type of each record in the shape. */
+    private final transient byte[] types;
+    /** The style records, indexed by record number. */
+    private final transient ShapeRecord[] styles;
+    /** The absolute coordinates of the points in the start shape. */
+    private final transient int[] start;
+    /** The difference between the start and end points. */
+    private final transient int[] delta;
+    /** The number of records. */
+    private final transient int count;
+
+    /**
+     * Create a MorphInterpolator for a morphing shape.
+     *
+     * @param shape the definition of the morphing shape.
+     * @throws IOException if the start or end shape contains encoded
+     * records that cannot be decoded.
+     */
+    public MorphInterpolator(final DefineMorphShape shape) throws IOException {
+        this(shape, records(shape.getShape(),
+                        MovieTypes.DEFINE_MORPH_SHAPE),
+                records(shape.getEndShape(), MovieTypes.DEFINE_MORPH_SHAPE));
+    }
+
+    /**
+     * Create a MorphInterpolator for a morphing shape.
+     *
+     * @param shape the definition of the morphing shape.
+     * @throws IOException if the start or end shape contains encoded
+     * records that cannot be decoded.
+     */
+    public MorphInterpolator(final DefineMorphShape2 shape)
+            throws IOException {
+        this(shape, records(shape.getShape(),
+                        MovieTypes.DEFINE_MORPH_SHAPE),
+                records(shape.getEndShape(), MovieTypes.DEFINE_MORPH_SHAPE));
+    }
+
+    /**
+     * Pair the records in the start and end shapes.
+     *
+     * @param shape the definition of the morphing shape.
+     * @param from the records in the start shape.
+     * @param to the records in the end shape.
+     */
+    // CHECKSTYLE IGNORE CyclomaticComplexityCheck FOR NEXT 2 LINES
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private MorphInterpolator(final ShapeTag shape,
+            final List<ShapeRecord> from, final List<ShapeRecord> to) {
+        definition = shape;
+        count = from.size();
+        types = new byte[count];
+        styles = new ShapeRecord[count];
+        start = new int[count * 4];
+        delta = new int[count * 4];
+
+        int startX = 0;
+        int startY = 0;
+        int endX = 0;
+        int endY = 0;
+        int next = 0;
+        int index = 0;
+
+        for (int i = 0; i < count; i++) {
+            final ShapeRecord record = from.get(i);
+
+            if (record instanceof Line || record instanceof Curve) {
+                while (next < to.size() && !isEdge(to.get(next))) {
+                    final int[] move = move(to.get(next++));
+                    if (move != null) {
+                        endX = move[0];
+                        endY = move[1];
+                    }
+                }
+                if (next == to.size()) {
+                    throw new IllegalArgumentException(
+                            "End shape contains fewer edges.");
+                }
+                final int[] first = points(record, startX, startY);
+                final int[] last = points(to.get(next++), endX, endY);
+
+                if (first.length == last.length) {
+                    types[i] = first.length == 2 ? LINE : CURVE;
+                    index = add(index, first, last);
+                } else {
+                    types[i] = CURVE;
+                    index = add(index, toCurve(first, startX, startY),
+                            toCurve(last, endX, endY));
+                }
+                startX = first[first.length - 2];
+                startY = first[first.length - 1];
+                endX = last[last.length - 2];
+                endY = last[last.length - 1];
+            } else {
+                styles[i] = record;
+                final int[] move = move(record);
+
+                if (next < to.size() && !isEdge(to.get(next))) {
+                    final int[] endMove = move(to.get(next++));
+                    if (endMove != null) {
+                        endX = endMove[0];
+                        endY = endMove[1];
+                    }
+                }
+                if (move == null) {
+                    types[i] = STYLE;
+                } else {
+                    types[i] = MOVE;
+                    startX = move[0];
+                    startY = move[1];
+                    index = add(index, move, new int[] {endX, endY});
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the records from a shape, decoding any records that were left
+     * encoded and expanding ShapePaths.
+     *
+     * @param shape the shape.
+     * @param type the type of definition that contains the shape.
+     * @return the list of records.
+     * @throws IOException if the records cannot be decoded.
+     */
+    private static List<ShapeRecord> records(final Shape shape,
+            final int type) throws IOException {
+        final List<ShapeRecord> list = new ArrayList<ShapeRecord>();
+
+        for (final ShapeRecord record : shape.getObjects()) {
+            if (record instanceof ShapeData) {
+                final SWFDecoder coder = new SWFDecoder(
+                        new ByteArrayInputStream(
+                                ((ShapeData) record).getData()));
+                final Context context = new Context();
+                context.setRegistry(DecoderRegistry.getDefault());
+                context.put(Context.TYPE, type);
+                context.put(Context.ARRAY_EXTENDED, 1);
+                context.put(Context.TRANSPARENT, 1);
+                list.addAll(records(new Shape(coder, context), type));
+            } else if (record instanceof ShapePath) {
+                list.addAll(((ShapePath) record).getObjects());
+            } else {
+                list.add(record);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Is the record a line or curve.
+     *
+     * @param record a shape record.
+     * @return true if the record is an edge.
+     */
+    private static boolean isEdge(final ShapeRecord record) {
+        return record instanceof Line || record instanceof Curve;
+    }
+
+    /**
+     * Get the coordinates a style record moves to.
+     *
+     * @param record a ShapeStyle or ShapeStyle2 record.
+     * @return the coordinates or null if the record does not move the drawing
+     * point.
+     */
+    private static int[] move(final ShapeRecord record) {
+        Integer moveX = null;
+        Integer moveY = null;
+
+        if (record instanceof ShapeStyle) {
+            moveX = ((ShapeStyle) record).getMoveX();
+            moveY = ((ShapeStyle) record).getMoveY();
+        } else if (record instanceof ShapeStyle2) {
+            moveX = ((ShapeStyle2) record).getMoveX();
+            moveY = ((ShapeStyle2) record).getMoveY();
+        }
+        return moveX == null || moveY == null ? null
+                : new int[] {moveX, moveY};
+    }
+
+    /**
+     * Get the absolute coordinates of the points in an edge.
+     *
+     * @param record a Line or Curve.
+     * @param xCoord the x-coordinate of the start of the edge.
+     * @param yCoord the y-coordinate of the start of the edge.
+     * @return the coordinates of the end point for a line or the control
+     * and anchor points for a curve.
+     */
+    private static int[] points(final ShapeRecord record, final int xCoord,
+            final int yCoord) {
+        final int[] points;
+
+        if (record instanceof Line) {
+            final Line line = (Line) record;
+            points = new int[] {xCoord + line.getX(), yCoord + line.getY()};
+        } else {
+            final Curve curve = (Curve) record;
+            final int ctrlX = xCoord + curve.getControlX();
+            final int ctrlY = yCoord + curve.getControlY();
+            points = new int[] {ctrlX, ctrlY, ctrlX + curve.getAnchorX(),
+                    ctrlY + curve.getAnchorY()};
+        }
+        return points;
+    }
+
+    /**
+     * Convert a straight line into a curve by placing the control point
+     * half-way along the line.
+     *
+     * @param points the coordinates of the edge.
+     * @param xCoord the x-coordinate of the start of the edge.
+     * @param yCoord the y-coordinate of the start of the edge.
+     * @return the coordinates of the control and anchor points.
+     */
+    private static int[] toCurve(final int[] points, final int xCoord,
+            final int yCoord) {
+        final int[] curve;
+        if (points.length == 2) {
+            curve = new int[] {(xCoord + points[0]) / 2,
+                    (yCoord + points[1]) / 2, points[0], points[1]};
+        } else {
+            curve = points;
+        }
+        return curve;
+    }
+
+    /**
+     * Store the start point and the difference to the end point.
+     *
+     * @param index the position in the arrays to store the coordinates.
+     * @param first the coordinates in the start shape.
+     * @param last the coordinates in the end shape.
+     * @return the position following the stored coordinates.
+     */
+    private int add(final int index, final int[] first, final int[] last) {
+        for (int i = 0; i < first.length; i++) {
+            start[index + i] = first[i];
+            delta[index + i] = last[i] - first[i];
+        }
+        return index + first.length;
+    }
+
+    /**
+     * Get the shape for a given ratio.
+     *
+     * @param ratio the progress of the morph, in the range 0..65535.
+     * @return the outline of the shape.
+     */
+    public Shape getShape(final int ratio) {
+        final float fraction = fraction(ratio);
+        final ShapePath path = new ShapePath();
+
+        int index = 0;
+        int xCoord = 0;
+        int yCoord = 0;
+        int ctrlX;
+        int ctrlY;
+        int anchorX;
+        int anchorY;
+
+        for (int i = 0; i < count; i++) {
+            switch (types[i]) {
+            case LINE:
+                anchorX = lerp(index++, fraction);
+                anchorY = lerp(index++, fraction);
+                path.line(anchorX - xCoord, anchorY - yCoord);
+                xCoord = anchorX;
+                yCoord = anchorY;
+                break;
+            case CURVE:
+                ctrlX = lerp(index++, fraction);
+                ctrlY = lerp(index++, fraction);
+                anchorX = lerp(index++, fraction);
+                anchorY = lerp(index++, fraction);
+                path.curve(ctrlX - xCoord, ctrlY - yCoord,
+                        anchorX - ctrlX, anchorY - ctrlY);
+                xCoord = anchorX;
+                yCoord = anchorY;
+                break;
+            case MOVE:
+                xCoord = lerp(index++, fraction);
+                yCoord = lerp(index++, fraction);
+                path.add(moveTo(styles[i], xCoord, yCoord));
+                break;
+            default:
+                path.add(styles[i]);
+                break;
+            }
+        }
+        final Shape shape = new Shape();
+        shape.add(path);
+        return shape;
+    }
+
+    /**
+     * Get the fill styles for a given ratio.
+     *
+     * @param ratio the progress of the morph, in the range 0..65535.
+     * @return the list of fill styles.
+     */
+    public List<FillStyle> getFillStyles(final int ratio) {
+        final float fraction = fraction(ratio);
+        final List<FillStyle> list = new ArrayList<FillStyle>(
+                definition.getFillStyles().size());
+
+        for (final FillStyle style : definition.getFillStyles()) {
+            list.add(fill(style, fraction));
+        }
+        return list;
+    }
+
+    /**
+     * Get the line styles for a given ratio.
+     *
+     * @param ratio the progress of the morph, in the range 0..65535.
+     * @return the list of line styles.
+     */
+    public List<LineStyle> getLineStyles(final int ratio) {
+        final float fraction = fraction(ratio);
+        final List<LineStyle> list = new ArrayList<LineStyle>(
+                definition.getLineStyles().size());
+
+        for (final LineStyle style : definition.getLineStyles()) {
+            list.add(line(style, fraction));
+        }
+        return list;
+    }
+
+    /**
+     * Get the bounding box of the shape for a given ratio.
+     *
+     * @param ratio the progress of the morph, in the range 0..65535.
+     * @return the bounding box.
+     */
+    public Bounds getBounds(final int ratio) {
+        final Bounds end;
+        if (definition instanceof DefineMorphShape) {
+            end = ((DefineMorphShape) definition).getEndBounds();
+        } else {
+            end = ((DefineMorphShape2) definition).getEndBounds();
+        }
+        return bounds(definition.getBounds(), end, fraction(ratio));
+    }
+
+    /**
+     * Get the definition of the shape for a given ratio. A DefineShape3
+     * object is returned when interpolating a DefineMorphShape and a
+     * DefineShape4 object when interpolating a DefineMorphShape2.
+     *
+     * @param identifier the unique identifier for the shape definition.
+     * @param ratio the progress of the morph, in the range 0..65535.
+     * @return the definition of the shape.
+     */
+    public ShapeTag getDefinition(final int identifier, final int ratio) {
+        final ShapeTag shape;
+
+        if (definition instanceof DefineMorphShape) {
+            shape = new DefineShape3(identifier, getBounds(ratio),
+                    getFillStyles(ratio), getLineStyles(ratio),
+                    getShape(ratio));
+        } else {
+            final DefineMorphShape2 morph = (DefineMorphShape2) definition;
+            final Bounds bounds = getBounds(ratio);
+            Bounds edges = bounds;
+
+            if (morph.getEdgeBounds() != null
+                    && morph.getEndEdgeBounds() != null) {
+                edges = bounds(morph.getEdgeBounds(),
+                        morph.getEndEdgeBounds(), fraction(ratio));
+            }
+            shape = new DefineShape4(identifier, bounds, edges,
+                    getFillStyles(ratio), getLineStyles(ratio),
+                    getShape(ratio));
+        }
+        return shape;
+    }
+
+    /**
+     * Get the definitions of the shape for a set of ratios, generating each
+     * shape in parallel. All the definitions use the same identifier.
+     *
+     * @param identifier the unique identifier for the shape definitions.
+     * @param ratios the ratios for each shape, in the range 0..65535.
+     * @param executor the ExecutorService used to generate the shapes.
+     * @return the definitions in the same order as the ratios.
+     * @throws IOException if the thread is interrupted while waiting for
+     * the shapes to be generated.
+     */
+    public List<ShapeTag> getDefinitions(final int identifier,
+            final int[] ratios, final ExecutorService executor)
+            throws IOException {
+        final List<Callable<ShapeTag>> tasks =
+            new ArrayList<Callable<ShapeTag>>(ratios.length);
+
+        for (final int ratio : ratios) {
+            fraction(ratio);
+            tasks.add(new Callable<ShapeTag>() {
+                public ShapeTag call() {
+                    return getDefinition(identifier, ratio);
+                }
+            });
+        }
+        return Tasks.run(executor, tasks);
+    }
+
+    /**
+     * Convert a ratio into the fraction of the distance from the start to
+     * the end shape.
+     *
+     * @param ratio the progress of the morph, in the range 0..65535.
+     * @return the fraction in the range 0.0..1.0.
+     */
+    private float fraction(final int ratio) {
+        if (ratio < 0 || ratio > Coder.USHORT_MAX) {
+            throw new IllegalArgumentRangeException(0,
+                    Coder.USHORT_MAX, ratio);
+        }
+        return ratio / (float) Coder.USHORT_MAX;
+    }
+
+    /**
+     * Interpolate a coordinate.
+     *
+     * @param index the index of the coordinate.
+     * @param fraction the progress of the morph.
+     * @return the interpolated coordinate.
+     */
+    private int lerp(final int index, final float fraction) {
+        return start[index] + Math.round(delta[index] * fraction);
+    }
+
+    /**
+     * Interpolate a value.
+     *
+     * @param from the start value.
+     * @param to the end value.
+     * @param fraction the progress of the morph.
+     * @return the interpolated value.
+     */
+    private static int lerp(final int from, final int to,
+            final float fraction) {
+        return from + Math.round((to - from) * fraction);
+    }
+
+    /**
+     * Copy a style record and change the point it moves to.
+     *
+     * @param record a ShapeStyle or ShapeStyle2 record.
+     * @param xCoord the x-coordinate of the move.
+     * @param yCoord the y-coordinate of the move.
+     * @return the copy of the record.
+     */
+    private static ShapeRecord moveTo(final ShapeRecord record,
+            final int xCoord, final int yCoord) {
+        final ShapeRecord style;
+        if (record instanceof ShapeStyle) {
+            style = ((ShapeStyle) record).copy().setMove(xCoord, yCoord);
+        } else {
+            style = ((ShapeStyle2) record).copy().setMove(xCoord, yCoord);
+        }
+        return style;
+    }
+
+    /**
+     * Interpolate a bounding box.
+     *
+     * @param from the start bounds.
+     * @param to the end bounds.
+     * @param fraction the progress of the morph.
+     * @return the interpolated bounds.
+     */
+    private static Bounds bounds(final Bounds from, final Bounds to,
+            final float fraction) {
+        return new Bounds(lerp(from.getMinX(), to.getMinX(), fraction),
+                lerp(from.getMinY(), to.getMinY(), fraction),
+                lerp(from.getMaxX(), to.getMaxX(), fraction),
+                lerp(from.getMaxY(), to.getMaxY(), fraction));
+    }
+
+    /**
+     * Interpolate a colour.
+     *
+     * @param from the start colour.
+     * @param to the end colour.
+     * @param fraction the progress of the morph.
+     * @return the interpolated colour.
+     */
+    private static Color color(final Color from, final Color to,
+            final float fraction) {
+        return new Color(lerp(from.getRed(), to.getRed(), fraction),
+                lerp(from.getGreen(), to.getGreen(), fraction),
+                lerp(from.getBlue(), to.getBlue(), fraction),
+                lerp(from.getAlpha(), to.getAlpha(), fraction));
+    }
+
+    /**
+     * Interpolate a coordinate transform.
+     *
+     * @param from the start transform.
+     * @param to the end transform.
+     * @param fraction the progress of the morph.
+     * @return the interpolated transform.
+     */
+    private static CoordTransform transform(final CoordTransform from,
+            final CoordTransform to, final float fraction) {
+        final float[][] first = from.getMatrix();
+        final float[][] last = to.getMatrix();
+        final float[][] matrix = new float[first.length][];
+
+        for (int i = 0; i < first.length; i++) {
+            matrix[i] = new float[first[i].length];
+            for (int j = 0; j < first[i].length; j++) {
+                matrix[i][j] = first[i][j]
+                        + (last[i][j] - first[i][j]) * fraction;
+            }
+        }
+        return new CoordTransform(matrix);
+    }
+
+    /**
+     * Interpolate the colours in a gradient.
+     *
+     * @param gradients the colours in the morphing gradient.
+     * @param fraction the progress of the morph.
+     * @return the interpolated colours.
+     */
+    private static List<Gradient> gradients(
+            final List<MorphGradient> gradients, final float fraction) {
+        final List<Gradient> list = new ArrayList<Gradient>(
+                gradients.size());
+        for (final MorphGradient gradient : gradients) {
+            list.add(new Gradient(lerp(gradient.getStart().getRatio(),
+                    gradient.getEnd().getRatio(), fraction),
+                    color(gradient.getStart().getColor(),
+                            gradient.getEnd().getColor(), fraction)));
+        }
+        return list;
+    }
+
+    /**
+     * Interpolate a fill style. Fill styles that do not morph are returned
+     * unchanged.
+     *
+     * @param style the morphing fill style.
+     * @param fraction the progress of the morph.
+     * @return the interpolated fill style.
+     */
+    private static FillStyle fill(final FillStyle style,
+            final float fraction) {
+        final FillStyle fill;
+
+        if (style instanceof MorphSolidFill) {
+            final MorphSolidFill solid = (MorphSolidFill) style;
+            fill = new SolidFill(color(solid.getStartColor(),
+                    solid.getEndColor(), fraction));
+        } else if (style instanceof MorphGradientFill) {
+            final MorphGradientFill gradient = (MorphGradientFill) style;
+            fill = new GradientFill(gradient.getType(),
+                    transform(gradient.getStartTransform(),
+                            gradient.getEndTransform(), fraction),
+                    gradients(gradient.getGradients(), fraction));
+        } else if (style instanceof MorphFocalGradientFill) {
+            final MorphFocalGradientFill focal =
+                (MorphFocalGradientFill) style;
+            fill = new FocalGradientFill(
+                    transform(focal.getStartTransform(),
+                            focal.getEndTransform(), fraction),
+                    focal.getSpread(), focal.getInterpolation(),
+                    focal.getStartFocalPoint()
+                            + (focal.getEndFocalPoint()
+                            - focal.getStartFocalPoint()) * fraction,
+                    gradients(focal.getGradients(), fraction));
+        } else if (style instanceof MorphBitmapFill) {
+            final MorphBitmapFill bitmap = (MorphBitmapFill) style;
+            fill = new BitmapFill(bitmap.isTiled(), bitmap.isSmoothed(),
+                    bitmap.getIdentifier(),
+                    transform(bitmap.getStartTransform(),
+                            bitmap.getEndTransform(), fraction));
+        } else {
+            fill = style;
+        }
+        return fill;
+    }
+
+    /**
+     * Interpolate a line style. Line styles that do not morph are returned
+     * unchanged.
+     *
+     * @param style the morphing line style.
+     * @param fraction the progress of the morph.
+     * @return the interpolated line style.
+     */
+    private static LineStyle line(final LineStyle style,
+            final float fraction) {
+        final LineStyle line;
+
+        if (style instanceof MorphLineStyle) {
+            final MorphLineStyle morph = (MorphLineStyle) style;
+            line = new LineStyle1(lerp(morph.getStartWidth(),
+                    morph.getEndWidth(), fraction),
+                    color(morph.getStartColor(), morph.getEndColor(),
+                            fraction));
+        } else if (style instanceof MorphLineStyle2) {
+            final MorphLineStyle2 morph = (MorphLineStyle2) style;
+            final int width = lerp(morph.getStartWidth(),
+                    morph.getEndWidth(), fraction);
+            final LineStyle2 line2;
+
+            if (morph.getFillStyle() == null) {
+                line2 = new LineStyle2(width, color(morph.getStartColor(),
+                        morph.getEndColor(), fraction));
+            } else {
+                line2 = new LineStyle2(width,
+                        fill(morph.getFillStyle(), fraction));
+            }
+            line2.setStartCap(morph.getStartCap());
+            line2.setEndCap(morph.getEndCap());
+            line2.setJoinStyle(morph.getJoinStyle());
+            line2.setMiterLimit(morph.getMiterLimit());
+            line2.setHorizontal(morph.isHorizontal());
+            line2.setVertical(morph.isVertical());
+            line2.setPixelAligned(morph.isPixelAligned());
+            line2.setLineClosed(morph.isLineClosed());
+            line = line2;
+        } else {
+            line = style;
+        }
+        return line;
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * Simplifier.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.shape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.shape.Curve;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeStyle;
+
+/**
+ * Simplifier reduces the number of records used to draw a shape. Runs of
+ * straight lines are treated as polylines: coordinates are snapped to a grid,
+ * dense runs of points that lie on a smooth curve are replaced by quadratic
+ * Bezier curves and the remaining points are reduced using the
+ * Douglas-Peucker algorithm so collinear segments are merged.
+ */
+final class Simplifier {
+
+    /** The minimum number of lines that will be replaced by a curve. */
+    private static final int CURVE_SPAN = 3;
+    /** The maximum number of lines that will be replaced by a curve. */
+    private static final int MAX_SPAN = 256;
+    /** The initial size of the buffers used to hold the points. */
+    private static final int CAPACITY = 64;
+
+    /** The maximum distance, in twips, points can be moved. */
+    private final transient int tolerance;
+    /** The size, in twips, of the grid coordinates are snapped to. */
+    private final transient int grid;
+
+    /** The x-coordinates of the points in the current polyline. */
+    private transient int[] pointsX = new int[CAPACITY];
+    /** The y-coordinates of the points in the current polyline. */
+    private transient int[] pointsY = new int[CAPACITY];
+    /** The number of points in the current polyline. */
+    private transient int count;
+    /** Flags identifying the points kept by the Douglas-Peucker algorithm. */
+    private transient boolean[] keep = new boolean[CAPACITY];
+
+    /** The simplified records. */
+    private transient List<ShapeRecord> output;
+    /** The x-coordinate of the current point in the simplified shape. */
+    private transient int outX;
+    /** The y-coordinate of the current point in the simplified shape. */
+    private transient int outY;
+
+    /** The minimum x-coordinate of the simplified shape. */
+    private transient int minX;
+    /** The minimum y-coordinate of the simplified shape. */
+    private transient int minY;
+    /** The maximum x-coordinate of the simplified shape. */
+    private transient int maxX;
+    /** The maximum y-coordinate of the simplified shape. */
+    private transient int maxY;
+
+    /**
+     * Create a Simplifier.
+     *
+     * @param maxError the maximum distance in twips that a point can be
+     * moved when merging lines or fitting curves.
+     * @param size the size of the grid, in twips, that coordinates are
+     * snapped to. Values of 0 or 1 leave coordinates unchanged.
+     */
+    Simplifier(final int maxError, final int size) {
+        tolerance = maxError;
+        grid = Math.max(size, 1);
+    }
+
+    /**
+     * Simplify a list of shape records. Curves and moves are snapped to the
+     * grid but are otherwise unchanged.
+     *
+     * @param records the records that draw a shape.
+     * @return a new list containing the simplified records.
+     */
+    List<ShapeRecord> simplify(final List<ShapeRecord> records) {
+        output = new ArrayList<ShapeRecord>(records.size());
+        outX = 0;
+        outY = 0;
+        minX = 0;
+        minY = 0;
+        maxX = 0;
+        maxY = 0;
+        count = 0;
+
+        int xCoord = 0;
+        int yCoord = 0;
+
+        for (final ShapeRecord record : records) {
+            if (record instanceof Line) {
+                final Line line = (Line) record;
+                if (count == 0) {
+                    addPoint(xCoord, yCoord);
+                }
+                xCoord += line.getX();
+                yCoord += line.getY();
+                addPoint(xCoord, yCoord);
+            } else {
+                flush();
+
+                if (record instanceof Curve) {
+                    final Curve curve = (Curve) record;
+                    final int ctrlX = xCoord + curve.getControlX();
+                    final int ctrlY = yCoord + curve.getControlY();
+                    xCoord = ctrlX + curve.getAnchorX();
+                    yCoord = ctrlY + curve.getAnchorY();
+                    addCurve(snap(ctrlX), snap(ctrlY), snap(xCoord),
+                            snap(yCoord));
+                } else if (record instanceof ShapeStyle
+                        && ((ShapeStyle) record).getMoveX() != null) {
+                    final ShapeStyle style = ((ShapeStyle) record).copy();
+                    xCoord = style.getMoveX();
+                    yCoord = style.getMoveY();
+                    outX = snap(xCoord);
+                    outY = snap(yCoord);
+                    style.setMove(outX, outY);
+                    include(outX, outY);
+                    output.add(style);
+                } else {
+                    output.add(record.copy());
+                }
+            }
+        }
+        flush();
+        return output;
+    }
+
+    /**
+     * Get the bounding box of the points in the last shape that was
+     * simplified. The origin is always included.
+     *
+     * @return the bounding box enclosing the points and control points.
+     */
+    Bounds getBounds() {
+        return new Bounds(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Add a point to the current polyline. The point is snapped to the grid
+     * and discarded if it is the same as the previous point.
+     *
+     * @param xCoord the x-coordinate of the point.
+     * @param yCoord the y-coordinate of the point.
+     */
+    private void addPoint(final int xCoord, final int yCoord) {
+        final int pointX = snap(xCoord);
+        final int pointY = snap(yCoord);
+
+        if (count > 0 && pointsX[count - 1] == pointX
+                && pointsY[count - 1] == pointY) {
+            return;
+        }
+        if (count == pointsX.length) {
+            pointsX = Arrays.copyOf(pointsX, count << 1);
+            pointsY = Arrays.copyOf(pointsY, count << 1);
+        }
+        pointsX[count] = pointX;
+        pointsY[count] = pointY;
+        count++;
+    }
+
+    /**
+     * Simplify the current polyline and add the lines and curves to the
+     * output.
+     */
+    private void flush() {
+        if (count > 1) {
+            if (keep.length < count) {
+                keep = new boolean[pointsX.length];
+            }
+            int start = 0;
+            int index = 0;
+
+            while (tolerance > 0 && index < count - CURVE_SPAN) {
+                final int end = fitSpan(index);
+
+                if (end - index < CURVE_SPAN) {
+                    index++;
+                } else if (isStraight(index, end)) {
+                    index = end;
+                } else {
+                    addLines(start, index);
+                    addFittedCurve(index, end);
+                    index = end;
+                    start = end;
+                }
+            }
+            addLines(start, count - 1);
+        }
+        count = 0;
+    }
+
+    /**
+     * Find the longest run of points, starting at a given point, that can be
+     * replaced by a single curve.
+     *
+     * @param start the index of the first point.
+     * @return the index of the last point in the run or start if fewer than
+     * CURVE_SPAN lines can be replaced.
+     */
+    private int fitSpan(final int start) {
+        final int last = Math.min(count - 1, start + MAX_SPAN);
+        int good = start;
+        int bad = last + 1;
+        int span = CURVE_SPAN;
+
+        while (start + span <= last) {
+            if (fitCurve(start, start + span) == null) {
+                bad = start + span;
+                break;
+            }
+            good = start + span;
+            span <<= 1;
+        }
+        if (good == start) {
+            return start;
+        }
+        if (bad == last + 1 && good < last) {
+            if (fitCurve(start, last) == null) {
+                bad = last;
+            } else {
+                good = last;
+            }
+        }
+        while (bad - good > 1) {
+            final int mid = (good + bad) >>> 1;
+            if (fitCurve(start, mid) == null) {
+                bad = mid;
+            } else {
+                good = mid;
+            }
+        }
+        return good;
+    }
+
+    /**
+     * Fit a quadratic Bezier curve to a run of points. The end points of the
+     * curve are fixed and the control point is found using least squares with
+     * points parameterised by the distance along the polyline.
+     *
+     * @param start the index of the first point.
+     * @param end the index of the last point.
+     * @return the coordinates of the control point or null if the curve does
+     * not pass within the tolerance of every point.
+     */
+    private int[] fitCurve(final int start, final int end) {
+        final double[] params = new double[end - start + 1];
+        double length = 0.0;
+
+        for (int i = start + 1; i <= end; i++) {
+            length += Math.hypot(pointsX[i] - pointsX[i - 1],
+                    pointsY[i] - pointsY[i - 1]);
+            params[i - start] = length;
+        }
+
+        final int x0 = pointsX[start];
+        final int y0 = pointsY[start];
+        final int x2 = pointsX[end];
+        final int y2 = pointsY[end];
+
+        double sumX = 0.0;
+        double sumY = 0.0;
+        double sumB = 0.0;
+
+        for (int i = start + 1; i < end; i++) {
+            final double t = params[i - start] / length;
+            final double s = 1.0 - t;
+            final double b = 2.0 * t * s;
+            sumX += b * (pointsX[i] - s * s * x0 - t * t * x2);
+            sumY += b * (pointsY[i] - s * s * y0 - t * t * y2);
+            sumB += b * b;
+        }
+
+        final long ctrlX = Math.round(sumX / sumB);
+        final long ctrlY = Math.round(sumY / sumB);
+
+        if (!inRange(ctrlX - x0) || !inRange(ctrlY - y0)
+                || !inRange(x2 - ctrlX) || !inRange(y2 - ctrlY)) {
+            return null;
+        }
+
+        final double limit = (double) tolerance * tolerance;
+
+        for (int i = start + 1; i < end; i++) {
+            final double t = params[i - start] / length;
+            final double s = 1.0 - t;
+            final double px = s * s * x0 + 2.0 * t * s * ctrlX + t * t * x2;
+            final double py = s * s * y0 + 2.0 * t * s * ctrlY + t * t * y2;
+            final double dx = px - pointsX[i];
+            final double dy = py - pointsY[i];
+
+            if (dx * dx + dy * dy > limit) {
+                return null;
+            }
+        }
+        return new int[] {(int) ctrlX, (int) ctrlY};
+    }
+
+    /**
+     * Is a relative coordinate in the range supported by curves.
+     *
+     * @param value the relative coordinate.
+     * @return true if the coordinate can be encoded in a Curve.
+     */
+    private boolean inRange(final long value) {
+        return value >= Shape.MIN_COORD && value <= Shape.MAX_COORD;
+    }
+
+    /**
+     * Are all the points in a run within the tolerance of the straight line
+     * between the first and last points.
+     *
+     * @param start the index of the first point.
+     * @param end the index of the last point.
+     * @return true if the run can be replaced by a single line.
+     */
+    private boolean isStraight(final int start, final int end) {
+        final double limit = (double) tolerance * tolerance;
+        boolean straight = true;
+
+        for (int i = start + 1; straight && i < end; i++) {
+            straight = distance(i, start, end) <= limit;
+        }
+        return straight;
+    }
+
+    /**
+     * Add the curve fitted to a run of points to the output.
+     *
+     * @param start the index of the first point.
+     * @param end the index of the last point.
+     */
+    private void addFittedCurve(final int start, final int end) {
+        final int[] ctrl = fitCurve(start, end);
+        addCurve(ctrl[0], ctrl[1], pointsX[end], pointsY[end]);
+    }
+
+    /**
+     * Add a curve to the output.
+     *
+     * @param ctrlX the absolute x-coordinate of the control point.
+     * @param ctrlY the absolute y-coordinate of the control point.
+     * @param anchorX the absolute x-coordinate of the anchor point.
+     * @param anchorY the absolute y-coordinate of the anchor point.
+     */
+    private void addCurve(final int ctrlX, final int ctrlY,
+            final int anchorX, final int anchorY) {
+        if (ctrlX != outX || ctrlY != outY || anchorX != outX
+                || anchorY != outY) {
+            output.add(new Curve(ctrlX - outX, ctrlY - outY,
+                    anchorX - ctrlX, anchorY - ctrlY));
+            include(ctrlX, ctrlY);
+            include(anchorX, anchorY);
+            outX = anchorX;
+            outY = anchorY;
+        }
+    }
+
+    /**
+     * Reduce a run of points using the Douglas-Peucker algorithm and add the
+     * remaining lines to the output.
+     *
+     * @param start the index of the first point.
+     * @param end the index of the last point.
+     */
+    private void addLines(final int start, final int end) {
+        if (end <= start) {
+            return;
+        }
+        Arrays.fill(keep, start, end + 1, false);
+        keep[start] = true;
+        keep[end] = true;
+
+        final double limit = (double) tolerance * tolerance;
+        final int[] stack = new int[(end - start + 1) << 1];
+        int top = 0;
+
+        stack[top++] = start;
+        stack[top++] = end;
+
+        while (top > 0) {
+            final int last = stack[--top];
+            final int first = stack[--top];
+            double max = -1.0;
+            int index = -1;
+
+            for (int i = first + 1; i < last; i++) {
+                final double dist = distance(i, first, last);
+                if (dist > max) {
+                    max = dist;
+                    index = i;
+                }
+            }
+            if (index != -1 && max > limit) {
+                keep[index] = true;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+
+        for (int i = start + 1; i <= end; i++) {
+            if (keep[i]) {
+                output.add(new Line(pointsX[i] - outX, pointsY[i] - outY));
+                outX = pointsX[i];
+                outY = pointsY[i];
+                include(outX, outY);
+            }
+        }
+    }
+
+    /**
+     * Calculate the square of the distance from a point to the line segment
+     * between two other points.
+     *
+     * @param index the index of the point.
+     * @param start the index of the start of the segment.
+     * @param end the index of the end of the segment.
+     * @return the square of the distance.
+     */
+    private double distance(final int index, final int start, final int end) {
+        final double ax = pointsX[start];
+        final double ay = pointsY[start];
+        final double dx = pointsX[end] - ax;
+        final double dy = pointsY[end] - ay;
+        final double px = pointsX[index] - ax;
+        final double py = pointsY[index] - ay;
+        final double length = dx * dx + dy * dy;
+
+        double t = 0.0;
+
+        if (length > 0.0) {
+            t = Math.max(0.0, Math.min(1.0, (px * dx + py * dy) / length));
+        }
+        final double ex = px - t * dx;
+        final double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Snap a coordinate to the grid.
+     *
+     * @param value the coordinate.
+     * @return the nearest point on the grid.
+     */
+    private int snap(final int value) {
+        int result = value;
+        if (grid > 1) {
+            result = (int) Math.round((double) value / grid) * grid;
+        }
+        return result;
+    }
+
+    /**
+     * Extend the bounding box to include a point.
+     *
+     * @param xCoord the x-coordinate of the point.
+     * @param yCoord the y-coordinate of the point.
+     */
+    private void include(final int xCoord, final int yCoord) {
+        minX = Math.min(minX, xCoord);
+        minY = Math.min(minY, yCoord);
+        maxX = Math.max(maxX, xCoord);
+        maxY = Math.max(maxY, yCoord);
+    }
+}
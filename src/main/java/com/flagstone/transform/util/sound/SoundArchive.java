@@ -0,0 +1,198 @@
+/*
+ * SoundArchive.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.sound;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.sound.DefineSound;
+
+/**
+ * SoundArchive encodes and decodes the sounds stored in an AssetCache. The
+ * definition of the event sound, containing all the sound samples, is
+ * stored. When a sound is loaded from the cache the SoundArchive is used as
+ * the SoundDecoder by the SoundFactory. Streaming sounds and event sounds
+ * with a limited duration depend on the frame rate and duration requested so
+ * they are generated by decoding the original file when they are first used.
+ * If the SoundArchive is used to read another sound then a decoder for the
+ * format of the original sound is used and the stored sound is replaced.
+ */
+final class SoundArchive implements SoundDecoder {
+
+    /** The type used to identify sounds in an AssetCache. */
+    static final String TYPE = "sound";
+
+    /**
+     * Encode the sound decoded by a SoundDecoder.
+     *
+     * @param decoder the decoder containing the sound.
+     * @return the encoded sound.
+     * @throws IOException if there is an error encoding the sound.
+     * @throws DataFormatException if the sound is in an unsupported format.
+     */
+    static byte[] encode(final SoundDecoder decoder)
+            throws IOException, DataFormatException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder coder = new SWFEncoder(stream);
+        final Context context = new Context();
+        final DefineSound definition = decoder.defineSound(1);
+
+        definition.prepareToEncode(context);
+        definition.encode(coder, context);
+        coder.flush();
+        return stream.toByteArray();
+    }
+
+    /** The definition of the event sound, null if another sound is read. */
+    private transient DefineSound definition;
+    /** The file containing the original sound. */
+    private final transient File file;
+    /** The MIME type of the original sound. */
+    private final transient String mimeType;
+    /** The decoder for the original sound, created when first needed. */
+    private transient SoundDecoder decoder;
+
+    /**
+     * Create a SoundArchive containing a sound loaded from an AssetCache.
+     *
+     * @param stream the stream containing the encoded sound.
+     * @param source the file containing the original sound.
+     * @param type the MIME type of the original sound.
+     * @param sound the decoder containing the original sound if it has
+     * already been decoded, otherwise null.
+     * @throws IOException if there is an error reading the sound.
+     */
+    SoundArchive(final InputStream stream, final File source,
+            final String type, final SoundDecoder sound) throws IOException {
+        final SWFDecoder coder = new SWFDecoder(stream);
+        final Context context = new Context();
+        context.setRegistry(DecoderRegistry.getDefault());
+
+        final List<MovieTag> list = new ArrayList<MovieTag>(1);
+        context.getRegistry().getMovieDecoder().getObject(list, coder,
+                context);
+        definition = (DefineSound) list.get(0);
+        file = source;
+        mimeType = type;
+        decoder = sound;
+    }
+
+    /** {@inheritDoc} */
+    public void read(final File source)
+            throws IOException, DataFormatException {
+        final SoundDecoder sound = SoundRegistry.getSoundProvider(mimeType);
+        sound.read(source);
+        decoder = sound;
+        definition = null;
+    }
+
+    /** {@inheritDoc} */
+    public void read(final URL url) throws IOException, DataFormatException {
+        final SoundDecoder sound = SoundRegistry.getSoundProvider(mimeType);
+        sound.read(url);
+        decoder = sound;
+        definition = null;
+    }
+
+    /** {@inheritDoc} */
+    public void read(final InputStream stream)
+            throws IOException, DataFormatException {
+        final SoundDecoder sound = SoundRegistry.getSoundProvider(mimeType);
+        sound.read(stream);
+        decoder = sound;
+        definition = null;
+    }
+
+    /** {@inheritDoc} */
+    public DefineSound defineSound(final int identifier)
+            throws IOException, DataFormatException {
+        DefineSound object;
+        if (definition == null) {
+            object = source().defineSound(identifier);
+        } else {
+            object = definition.copy();
+            object.setIdentifier(identifier);
+        }
+        return object;
+    }
+
+    /** {@inheritDoc} */
+    public DefineSound defineSound(final int identifier, final float duration)
+            throws IOException, DataFormatException {
+        return source().defineSound(identifier, duration);
+    }
+
+    /** {@inheritDoc} */
+    public MovieTag streamHeader(final float frameRate) {
+        try {
+            return source().streamHeader(frameRate);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        } catch (final DataFormatException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public MovieTag streamSound() throws IOException, DataFormatException {
+        return source().streamSound();
+    }
+
+    /**
+     * Get the decoder for the original sound, decoding the file the first
+     * time it is used.
+     *
+     * @return the decoder for the original sound.
+     * @throws IOException if there is an error reading the file.
+     * @throws DataFormatException if the sound is in an unsupported format.
+     */
+    private SoundDecoder source() throws IOException, DataFormatException {
+        if (decoder == null) {
+            decoder = SoundRegistry.getSoundProvider(mimeType);
+            decoder.read(new FileInputStream(file));
+        }
+        return decoder;
+    }
+}
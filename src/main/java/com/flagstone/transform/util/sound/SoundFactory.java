@@ -31,6 +31,7 @@
 
 package com.flagstone.transform.util.sound;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -42,6 +43,7 @@ import java.util.zip.DataFormatException;
 
 import com.flagstone.transform.MovieTag;
 import com.flagstone.transform.sound.DefineSound;
+import com.flagstone.transform.util.cache.AssetCache;
 
 /**
  * SoundFactory is used to generate the objects representing an event or
@@ -49,10 +51,36 @@ import com.flagstone.transform.sound.DefineSound;
  * from an stream. An plug-in architecture allows decoders to be registered to
  * handle different formats. The SoundFactory provides a standard interface
  * for using the different decoders for each supported sound format.
+ *
+ * An AssetCache may be set so the event sounds read from files are stored on
+ * disk and loaded from the cache, rather than decoded again, the next time
+ * the program runs.
  */
 public final class SoundFactory {
     /** The object used to decode the sound. */
     private transient SoundDecoder decoder;
+    /** The persistent cache of decoded sounds. */
+    private transient AssetCache assets;
+
+    /**
+     * Get the persistent cache used to store decoded sounds.
+     * @return the AssetCache or null if sounds are not stored.
+     */
+    public AssetCache getAssetCache() {
+        return assets;
+    }
+
+    /**
+     * Set the persistent cache used to store the sounds decoded from files.
+     * Event sounds are loaded from the cache. Streaming sounds and event
+     * sounds with a limited duration are still generated from the original
+     * file.
+     * @param assetCache the AssetCache used to store decoded sounds. May be
+     * null if sounds are not stored.
+     */
+    public void setAssetCache(final AssetCache assetCache) {
+        assets = assetCache;
+    }
 
     /**
      * Decode a sound located in the specified file.
@@ -80,8 +108,23 @@ public final class SoundFactory {
             throw new DataFormatException("Unsupported format");
         }
 
-        decoder = SoundRegistry.getSoundProvider(mimeType);
-        decoder.read(new FileInputStream(file));
+        if (assets == null) {
+            decoder = SoundRegistry.getSoundProvider(mimeType);
+            decoder.read(new FileInputStream(file));
+        } else {
+            final String key = AssetCache.key(file);
+            InputStream stream = assets.get(key, SoundArchive.TYPE);
+            SoundDecoder source = null;
+
+            if (stream == null) {
+                source = SoundRegistry.getSoundProvider(mimeType);
+                source.read(new FileInputStream(file));
+                final byte[] data = SoundArchive.encode(source);
+                assets.put(key, SoundArchive.TYPE, data);
+                stream = new ByteArrayInputStream(data);
+            }
+            decoder = new SoundArchive(stream, file, mimeType, source);
+        }
     }
 
     /**
@@ -32,20 +32,23 @@
 package com.flagstone.transform.util.text;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * CharacterSet is a convenience class for created a sorted list of characters
  * that can be used to create a font definition.
+ *
+ * <p>The set is stored as a bit set indexed by character code so adding
+ * characters does not create any objects and sets collected from different
+ * pieces of text can be merged cheaply with add(CharacterSet). The characters
+ * can be read in ascending order either as a list or, without creating any
+ * objects, using nextCharacter().</p>
  */
 public final class CharacterSet {
 
     /** The set of characters. */
-    private final transient Set<Character>characters =
-        new LinkedHashSet<Character>();
+    private final transient BitSet characters = new BitSet();
 
     /**
      * Add a character to the set of existing characters.
@@ -53,7 +56,7 @@ public final class CharacterSet {
      * is ignored.
      */
     public void add(final char character) {
-        characters.add(character);
+        characters.set(character);
     }
 
     /**
@@ -63,18 +66,73 @@ public final class CharacterSet {
      */
     public void add(final String text) {
         for (int i = 0; i < text.length(); i++) {
-            characters.add(text.charAt(i));
+            characters.set(text.charAt(i));
         }
     }
 
+    /**
+     * Add all the characters from another set to this one.
+     * @param set a set of characters. Any character already included is
+     * ignored.
+     */
+    public void add(final CharacterSet set) {
+        characters.or(set.characters);
+    }
+
+    /**
+     * Does the set contain a character.
+     * @param character the character.
+     * @return true if the set contains the character, false otherwise.
+     */
+    public boolean contains(final char character) {
+        return characters.get(character);
+    }
+
+    /**
+     * Get the number of characters in the set.
+     * @return the number of characters.
+     */
+    public int size() {
+        return characters.cardinality();
+    }
+
+    /**
+     * Remove all the characters from the set.
+     */
+    public void clear() {
+        characters.clear();
+    }
+
+    /**
+     * Get the next character in the set, in ascending order, starting with
+     * the specified character code.
+     *
+     * <pre>
+     * for (int c = set.nextCharacter(0); c >= 0; c = set.nextCharacter(c + 1)) {
+     *     ...
+     * }
+     * </pre>
+     *
+     * @param code the character code to start searching from.
+     * @return the code of the next character in the set or -1 if there are
+     * no more characters.
+     */
+    public int nextCharacter(final int code) {
+        return characters.nextSetBit(code);
+    }
+
     /**
      * Get the sorted list of characters.
      *
      * @return a list containing the characters in ascending order.
      */
     public List<Character> getCharacters() {
-        final List<Character> list = new ArrayList<Character>(characters);
-        Collections.sort(list);
+        final List<Character> list = new ArrayList<Character>(
+                characters.cardinality());
+        for (int code = characters.nextSetBit(0); code >= 0;
+                code = characters.nextSetBit(code + 1)) {
+            list.add((char) code);
+        }
         return list;
     }
 }
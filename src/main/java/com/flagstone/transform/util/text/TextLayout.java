@@ -0,0 +1,618 @@
+/*
+ * TextLayout.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.Color;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.datatype.HorizontalAlign;
+import com.flagstone.transform.font.DefineFont2;
+import com.flagstone.transform.font.Kerning;
+import com.flagstone.transform.text.DefineText2;
+import com.flagstone.transform.text.GlyphIndex;
+import com.flagstone.transform.text.TextSpan;
+
+/**
+ * <p>
+ * TextLayout lays out text for a specific (fixed) point size of a font,
+ * wrapping lines to a given width and aligning or justifying each line.
+ * </p>
+ *
+ * <p>
+ * When a TextLayout is created the character codes, advances and kerning
+ * pairs from the font definition are converted into tables indexed directly by
+ * character code and glyph, with the advances scaled to the font size. Laying
+ * out text then only involves array lookups and the GlyphIndex objects for
+ * each glyph are shared between all the text spans created. A GlyphIndex is
+ * only created for a character when kerning or justification changes its
+ * advance. A TextLayout is not modified once it is created so it may be
+ * shared between threads.
+ * </p>
+ *
+ * <p>
+ * Lines are broken at spaces. A word that is too long to fit on a line is
+ * broken at the last character that fits. A newline character starts a new
+ * paragraph. Spaces at the end of a line, and at the start of a line created
+ * by wrapping, are not displayed. When text is justified the last line of
+ * each paragraph is left aligned.
+ * </p>
+ */
+public final class TextLayout {
+
+    /** Size in twips of the EM Square used for glyph coordinates. */
+    private static final float EMSQUARE = 1024.0f;
+    /** Value used to mark an unused entry in the table of kerning pairs. */
+    private static final long EMPTY = -1L;
+    /** Number of bits to shift the left glyph in a kerning pair key. */
+    private static final int PAIR_SHIFT = 16;
+    /** Initial size of the buffers used to hold the glyphs for a line. */
+    private static final int BUFFER_SIZE = 64;
+
+    /** The size, in twips, of the font. */
+    private final transient int size;
+    /** The height, in twips of the font above the baseline. */
+    private final transient int ascent;
+    /** The height, in twips of the font below the baseline. */
+    private final transient int descent;
+    /** The distance, in twips, between the baselines of successive lines. */
+    private final transient int spacing;
+    /** The unique identifier of the font. */
+    private final transient int identifier;
+
+    /** Table mapping character codes to glyphs, -1 if not in the font. */
+    private final transient int[] charToGlyph;
+    /** The scaled advance for each glyph. */
+    private final transient int[] advances;
+    /** The shared GlyphIndex for each glyph with its unadjusted advance. */
+    private final transient GlyphIndex[] indices;
+    /** The keys, formed from the pair of glyphs, of the kerning table. */
+    private final transient long[] pairs;
+    /** The scaled adjustments for each pair in the kerning table. */
+    private final transient int[] adjustments;
+    /** The glyph used for spaces or -1 if the font does not contain one. */
+    private final transient int space;
+
+    /**
+     * Creates a TextLayout for the specified font size.
+     * @param font the font definition.
+     * @param fontSize the size of the font in twips.
+     */
+    public TextLayout(final DefineFont2 font, final int fontSize) {
+
+        identifier = font.getIdentifier();
+        size = fontSize;
+
+        final List<Integer> codes = font.getCodes();
+        final List<Integer> widths = font.getAdvances();
+        final float scale = fontSize / EMSQUARE;
+        final int count = codes.size();
+
+        ascent = (int) (font.getAscent() * scale);
+        descent = (int) (font.getDescent() * scale);
+        spacing = ascent + descent + (int) (font.getLeading() * scale);
+
+        int highest = 0;
+        for (final Integer code : codes) {
+            highest = Math.max(highest, code);
+        }
+
+        charToGlyph = new int[highest + 1];
+        Arrays.fill(charToGlyph, -1);
+        advances = new int[count];
+        indices = new GlyphIndex[count];
+
+        for (int i = 0; i < count; i++) {
+            charToGlyph[codes.get(i)] = i;
+            if (i < widths.size()) {
+                advances[i] = (int) (widths.get(i) * scale);
+            }
+            indices[i] = new GlyphIndex(i, advances[i]);
+        }
+
+        space = ' ' < charToGlyph.length ? charToGlyph[' '] : -1;
+
+        final List<Kerning> kernings = font.getKernings();
+        int tableSize = 1;
+        while (tableSize < kernings.size() * 2) {
+            tableSize <<= 1;
+        }
+        pairs = new long[tableSize];
+        adjustments = new int[tableSize];
+        Arrays.fill(pairs, EMPTY);
+
+        for (final Kerning kerning : kernings) {
+            final long key = pair(kerning.getLeftGlyph(),
+                    kerning.getRightGlyph());
+            int slot = slot(key);
+            while (pairs[slot] != EMPTY && pairs[slot] != key) {
+                slot = (slot + 1) & (pairs.length - 1);
+            }
+            pairs[slot] = key;
+            adjustments[slot] = (int) (kerning.getAdjustment() * scale);
+        }
+    }
+
+    /**
+     * Get the size of the font.
+     * @return the font size in twips.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the height of the font above the baseline.
+     * @return the scaled ascent in twips.
+     */
+    public int getAscent() {
+        return ascent;
+    }
+
+    /**
+     * Get the height of the font below the baseline.
+     * @return the scaled descent in twips.
+     */
+    public int getDescent() {
+        return descent;
+    }
+
+    /**
+     * Get the default distance between the baselines of successive lines,
+     * the sum of the ascent, descent and leading of the font.
+     * @return the line spacing in twips.
+     */
+    public int getLineSpacing() {
+        return spacing;
+    }
+
+    /**
+     * Get the glyph displayed for a character.
+     *
+     * @param character the character.
+     * @return the index of the glyph in the font.
+     * @throws IllegalArgumentException if the font does not contain the
+     * character.
+     */
+    public int glyphForCharacter(final char character) {
+        final int glyph = character < charToGlyph.length
+                ? charToGlyph[character] : -1;
+        if (glyph < 0) {
+            throw new IllegalArgumentException(
+                    "Character not in font: " + character);
+        }
+        return glyph;
+    }
+
+    /**
+     * Get the adjustment to the advance between a pair of glyphs.
+     *
+     * @param left the glyph on the left.
+     * @param right the glyph on the right.
+     * @return the adjustment in twips, zero if the font does not define a
+     * kerning for the pair.
+     */
+    public int kerning(final int left, final int right) {
+        final long key = pair(left, right);
+        int slot = slot(key);
+        int adjustment = 0;
+
+        while (pairs[slot] != EMPTY) {
+            if (pairs[slot] == key) {
+                adjustment = adjustments[slot];
+                break;
+            }
+            slot = (slot + 1) & (pairs.length - 1);
+        }
+        return adjustment;
+    }
+
+    /**
+     * Get the width of a line of text, including any kerning.
+     *
+     * @param text the string to be displayed.
+     * @return the sum of the advances of each character, in twips.
+     */
+    public int advanceForText(final CharSequence text) {
+        int total = 0;
+        int last = -1;
+
+        for (int i = 0; i < text.length(); i++) {
+            final int glyph = glyphForCharacter(text.charAt(i));
+            if (last >= 0) {
+                total += kerning(last, glyph);
+            }
+            total += advances[glyph];
+            last = glyph;
+        }
+        return total;
+    }
+
+    /**
+     * Create a bound box that encloses the line of text when rendered using the
+     * specified font and size.
+     *
+     * @param text
+     *            the string to be displayed.
+     *
+     * @return the bounding box that completely encloses the text.
+     */
+    public Bounds boundsForText(final CharSequence text) {
+        return new Bounds(0, -ascent, advanceForText(text), descent);
+    }
+
+    /**
+     * Create a list of characters, with kerning applied, that can be added to
+     * a text span.
+     *
+     * @param text
+     *            the string to be displayed.
+     *
+     * @return the list of GlyphIndex objects for the text.
+     */
+    public List<GlyphIndex> charactersForText(final CharSequence text) {
+        final int length = text.length();
+        final int[] glyphs = new int[length];
+        final int[] widths = new int[length];
+
+        for (int i = 0; i < length; i++) {
+            glyphs[i] = glyphForCharacter(text.charAt(i));
+            widths[i] = advances[glyphs[i]];
+            if (i > 0) {
+                widths[i - 1] += kerning(glyphs[i - 1], glyphs[i]);
+            }
+        }
+        return characters(glyphs, widths, 0, length);
+    }
+
+    /**
+     * Create a definition for a static text field that displays a block of
+     * text, wrapped to a given width, using the default line spacing for the
+     * font.
+     *
+     * @param uid
+     *            the unique identifier that will be used to reference the text
+     *            field in a flash file.
+     * @param text
+     *            the string to be displayed.
+     * @param color
+     *            the colour used to display the text.
+     * @param width
+     *            the maximum width, in twips, of each line.
+     * @param align
+     *            the alignment of each line.
+     *
+     * @return a DefineText2 object that can be added to a Flash file.
+     */
+    public DefineText2 defineText(final int uid, final CharSequence text,
+            final Color color, final int width, final HorizontalAlign align) {
+        return defineText(uid, text, color, width, align, spacing);
+    }
+
+    /**
+     * Create a definition for a static text field that displays a block of
+     * text wrapped to a given width. The text is laid out in a single pass,
+     * creating a TextSpan for each line. The origin of the text field is at the
+     * top left corner of the first line.
+     *
+     * @param uid
+     *            the unique identifier that will be used to reference the text
+     *            field in a flash file.
+     * @param text
+     *            the string to be displayed.
+     * @param color
+     *            the colour used to display the text.
+     * @param width
+     *            the maximum width, in twips, of each line. Must be greater
+     *            than zero.
+     * @param align
+     *            the alignment of each line.
+     * @param lineSpacing
+     *            the distance, in twips, between the baselines of successive
+     *            lines.
+     *
+     * @return a DefineText2 object that can be added to a Flash file.
+     */
+    public DefineText2 defineText(final int uid, final CharSequence text,
+            final Color color, final int width, final HorizontalAlign align,
+            final int lineSpacing) {
+        final List<TextSpan> spans = layout(text, color, width, align,
+                lineSpacing);
+
+        int xMin = 0;
+        int xMax = 0;
+        int yMax = 0;
+
+        for (final TextSpan span : spans) {
+            xMin = Math.min(xMin, span.getOffsetX());
+            yMax = span.getOffsetY() + descent;
+
+            int right = span.getOffsetX();
+            for (final GlyphIndex index : span.getCharacters()) {
+                right += index.getAdvance();
+            }
+            xMax = Math.max(xMax, right);
+        }
+        return new DefineText2(uid, new Bounds(xMin, 0, xMax, yMax),
+                CoordTransform.translate(0, 0), spans);
+    }
+
+    /**
+     * Lay out a block of text wrapped to a given width. A TextSpan is created
+     * for each line. Only the first span specifies the font and colour, which
+     * are inherited by the following spans. The baseline of the first line is
+     * the ascent of the font so the top of the text is at zero.
+     *
+     * @param text
+     *            the string to be displayed.
+     * @param color
+     *            the colour used to display the text.
+     * @param width
+     *            the maximum width, in twips, of each line. Must be greater
+     *            than zero.
+     * @param align
+     *            the alignment of each line.
+     * @param lineSpacing
+     *            the distance, in twips, between the baselines of successive
+     *            lines.
+     *
+     * @return the list of TextSpans, one for each line.
+     */
+    @SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.NPathComplexity" })
+    public List<TextSpan> layout(final CharSequence text, final Color color,
+            final int width, final HorizontalAlign align,
+            final int lineSpacing) {
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive.");
+        }
+        final Lines lines = new Lines(color, width, align, lineSpacing);
+
+        int[] glyphs = new int[BUFFER_SIZE];
+        int[] widths = new int[BUFFER_SIZE];
+        int count = 0;
+        int lineWidth = 0;
+        int lastSpace = -1;
+        boolean wrapped = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            final char character = text.charAt(i);
+
+            if (character == '\n') {
+                lines.add(glyphs, widths, count, false);
+                count = 0;
+                lineWidth = 0;
+                lastSpace = -1;
+                wrapped = false;
+                continue;
+            }
+
+            final int glyph = glyphForCharacter(character);
+
+            if (glyph == space && wrapped && count == 0) {
+                continue;
+            }
+
+            final int advance = advances[glyph];
+            final int kern = count > 0 ? kerning(glyphs[count - 1], glyph) : 0;
+
+            if (count > 0 && lineWidth + kern + advance > width) {
+                if (glyph == space) {
+                    lines.add(glyphs, widths, count, true);
+                    count = 0;
+                    lineWidth = 0;
+                    lastSpace = -1;
+                    wrapped = true;
+                    continue;
+                } else if (lastSpace >= 0) {
+                    lines.add(glyphs, widths, lastSpace, true);
+                    final int carried = count - lastSpace - 1;
+                    System.arraycopy(glyphs, lastSpace + 1, glyphs, 0, carried);
+                    System.arraycopy(widths, lastSpace + 1, widths, 0, carried);
+                    count = carried;
+                    lineWidth = 0;
+                    for (int j = 0; j < count; j++) {
+                        lineWidth += widths[j];
+                    }
+                } else {
+                    lines.add(glyphs, widths, count, true);
+                    count = 0;
+                    lineWidth = 0;
+                }
+                lastSpace = -1;
+                wrapped = true;
+            }
+
+            if (count > 0) {
+                final int adjust = kerning(glyphs[count - 1], glyph);
+                widths[count - 1] += adjust;
+                lineWidth += adjust;
+            }
+            if (count == glyphs.length) {
+                glyphs = Arrays.copyOf(glyphs, count * 2);
+                widths = Arrays.copyOf(widths, count * 2);
+            }
+            if (glyph == space) {
+                lastSpace = count;
+            }
+            glyphs[count] = glyph;
+            widths[count++] = advance;
+            lineWidth += advance;
+        }
+        lines.add(glyphs, widths, count, false);
+        return lines.spans;
+    }
+
+    /**
+     * Create the list of GlyphIndex objects for a range of glyphs, sharing
+     * the GlyphIndex for each glyph where the advance is unchanged.
+     *
+     * @param glyphs the glyphs.
+     * @param widths the advance for each glyph.
+     * @param start the index of the first glyph.
+     * @param end the index after the last glyph.
+     * @return the list of GlyphIndex objects.
+     */
+    private List<GlyphIndex> characters(final int[] glyphs,
+            final int[] widths, final int start, final int end) {
+        final List<GlyphIndex> list = new ArrayList<GlyphIndex>(end - start);
+
+        for (int i = start; i < end; i++) {
+            if (widths[i] == advances[glyphs[i]]) {
+                list.add(indices[glyphs[i]]);
+            } else {
+                list.add(new GlyphIndex(glyphs[i], widths[i]));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Generate the key for a pair of glyphs.
+     * @param left the glyph on the left.
+     * @param right the glyph on the right.
+     * @return the key used in the kerning table.
+     */
+    private static long pair(final int left, final int right) {
+        return ((long) left << PAIR_SHIFT) | (right & Coder.USHORT_MAX);
+    }
+
+    /**
+     * Get the first slot to search for a key in the kerning table.
+     * @param key the key for a pair of glyphs.
+     * @return the index in the table.
+     */
+    private int slot(final long key) {
+        // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 2 LINES
+        final int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B1;
+        return (hash ^ (hash >>> 16)) & (pairs.length - 1);
+    }
+
+    /**
+     * Lines accumulates the TextSpans for each line as the text is laid out.
+     */
+    private final class Lines {
+        /** The spans created. */
+        private final transient List<TextSpan> spans =
+            new ArrayList<TextSpan>();
+        /** The colour of the text. */
+        private final transient Color color;
+        /** The width to wrap and align lines to. */
+        private final transient int width;
+        /** The alignment of each line. */
+        private final transient HorizontalAlign align;
+        /** The distance between the baselines of successive lines. */
+        private final transient int lineSpacing;
+        /** The baseline of the next line. */
+        private transient int baseline;
+
+        /**
+         * Create a Lines object.
+         * @param aColor the colour of the text.
+         * @param lineWidth the width of each line.
+         * @param alignment the alignment of each line.
+         * @param distance the distance between baselines.
+         */
+        Lines(final Color aColor, final int lineWidth,
+                final HorizontalAlign alignment, final int distance) {
+            color = aColor;
+            width = lineWidth;
+            align = alignment;
+            lineSpacing = distance;
+            baseline = ascent;
+        }
+
+        /**
+         * Add a line of text.
+         * @param glyphs the glyphs in the line.
+         * @param widths the advance for each glyph.
+         * @param length the number of glyphs in the line.
+         * @param wrapped true if the line was wrapped, false if it is the
+         * last line of a paragraph.
+         */
+        void add(final int[] glyphs, final int[] widths, final int length,
+                final boolean wrapped) {
+            int count = length;
+            while (count > 0 && glyphs[count - 1] == space) {
+                count--;
+            }
+            if (count > 0) {
+                widths[count - 1] = advances[glyphs[count - 1]];
+            }
+
+            int total = 0;
+            int spaces = 0;
+            for (int i = 0; i < count; i++) {
+                total += widths[i];
+                if (glyphs[i] == space) {
+                    spaces++;
+                }
+            }
+
+            int offset = 0;
+            final int extra = width - total;
+
+            if (align == HorizontalAlign.RIGHT) {
+                offset = extra;
+            } else if (align == HorizontalAlign.CENTER) {
+                offset = extra / 2;
+            } else if (align == HorizontalAlign.JUSTIFY && wrapped
+                    && spaces > 0 && extra > 0) {
+                int remainder = extra % spaces;
+                for (int i = 0; i < count; i++) {
+                    if (glyphs[i] == space) {
+                        widths[i] += extra / spaces;
+                        if (remainder > 0) {
+                            widths[i]++;
+                            remainder--;
+                        }
+                    }
+                }
+            }
+
+            final List<GlyphIndex> list = characters(glyphs, widths, 0, count);
+
+            if (spans.isEmpty()) {
+                spans.add(new TextSpan(identifier, size, color, offset,
+                        baseline, list));
+            } else {
+                spans.add(new TextSpan(null, size, null, offset,
+                        baseline, list));
+            }
+            baseline += lineSpacing;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.Color;
+
+public final class MovieTest {
+
+    private Movie createMovie(final boolean compressed) {
+        final MovieHeader header = new MovieHeader();
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        header.setFrameRate(12f);
+        header.setCompressed(compressed);
+
+        final byte[] data = new byte[SWFEncoder.GATHER_SIZE * 4];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        final List<Action> actions = new ArrayList<Action>();
+        actions.add(BasicAction.STOP);
+
+        final Movie movie = new Movie();
+        movie.add(header);
+        movie.add(new Background(new Color(255, 255, 255)));
+        movie.add(new DefineData(1, data));
+        movie.add(new DefineData(2, new byte[] {1, 2, 3 }));
+        movie.add(new DoAction(actions));
+        movie.add(ShowFrame.getInstance());
+        return movie;
+    }
+
+    private byte[] encodeToStream(final Movie movie)
+            throws IOException, DataFormatException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        movie.encodeToStream(stream);
+        return stream.toByteArray();
+    }
+
+    private byte[] encodeToChannel(final Movie movie)
+            throws IOException, DataFormatException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        movie.encodeToChannel(Channels.newChannel(stream));
+        return stream.toByteArray();
+    }
+
+    private Movie decode(final byte[] data)
+            throws IOException, DataFormatException {
+        final Movie movie = new Movie();
+        movie.decodeFromStream(new ByteArrayInputStream(data));
+        return movie;
+    }
+
+    @Test
+    public void checkChannelMatchesStream()
+            throws IOException, DataFormatException {
+        final Movie movie = createMovie(false);
+
+        assertArrayEquals(encodeToStream(movie), encodeToChannel(movie));
+    }
+
+    @Test
+    public void checkCompressedChannelMatchesStream()
+            throws IOException, DataFormatException {
+        final Movie movie = createMovie(true);
+
+        assertArrayEquals(encodeToStream(movie), encodeToChannel(movie));
+    }
+
+    @Test
+    public void checkChannelRoundTrip()
+            throws IOException, DataFormatException {
+        final Movie movie = createMovie(false);
+        final Movie decoded = decode(encodeToChannel(movie));
+
+        assertEquals(movie.getObjects().size(), decoded.getObjects().size());
+        assertArrayEquals(((DefineData) movie.getObjects().get(2)).getData(),
+                ((DefineData) decoded.getObjects().get(2)).getData());
+        assertArrayEquals(encodeToStream(movie), encodeToStream(decoded));
+    }
+
+    @Test
+    public void checkCompressedChannelRoundTrip()
+            throws IOException, DataFormatException {
+        final Movie movie = createMovie(true);
+        final Movie decoded = decode(encodeToChannel(movie));
+
+        assertEquals(movie.getObjects().size(), decoded.getObjects().size());
+        assertArrayEquals(encodeToStream(movie), encodeToStream(decoded));
+    }
+}
@@ -33,6 +33,7 @@ package com.flagstone.transform.action;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -46,6 +47,7 @@ import org.junit.Test;
 import com.flagstone.transform.coder.Context;
 import com.flagstone.transform.coder.SWFDecoder;
 import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
 
 public final class PushTest {
 
@@ -111,4 +113,65 @@ public final class PushTest {
 
         assertEquals(values.toString(), fixture.getValues().toString());
     }
+
+    @Test
+    public void checkAccessors() {
+        fixture = new Push(values);
+
+        assertEquals(values.size(), fixture.size());
+        assertEquals(Push.Type.STRING, fixture.getType(0));
+        assertEquals("a", fixture.getString(0));
+        assertEquals(Property.ALPHA.getValue(), fixture.getProperty(1));
+        assertEquals(Push.Type.NULL, fixture.getType(2));
+        assertEquals(Push.Type.VOID, fixture.getType(3));
+        assertEquals(1, fixture.getRegister(4));
+        assertTrue(fixture.getBoolean(5));
+        assertEquals(1.0, fixture.getDouble(6), 0.0);
+        assertEquals(1, fixture.getInteger(7));
+        assertEquals(256, fixture.getTableIndex(9));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkAccessorWithWrongType() {
+        fixture = new Push(values);
+        fixture.getInteger(0);
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void checkAccessorOutOfRange() {
+        fixture = new Push(values);
+        fixture.getType(values.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkUnsupportedType() {
+        final List<Object> list = new ArrayList<Object>();
+        list.add(new Object());
+        fixture = new Push(list);
+    }
+
+    @Test
+    public void decodeManyValues() throws IOException {
+        final Push.Builder builder = new Push.Builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add(i);
+        }
+        fixture = builder.build();
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(stream);
+        final Context context = new Context();
+
+        fixture.prepareToEncode(context);
+        fixture.encode(encoder, context);
+        encoder.flush();
+
+        final SWFDecoder decoder = new SWFDecoder(
+                new ByteArrayInputStream(stream.toByteArray()));
+        decoder.readByte();
+        final Push push = new Push(decoder, context);
+
+        assertEquals(100, push.size());
+        assertEquals(99, push.getInteger(99));
+    }
 }
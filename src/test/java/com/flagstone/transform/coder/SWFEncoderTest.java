@@ -36,6 +36,8 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 
 import org.junit.Test;
 
@@ -389,4 +391,77 @@ public final class SWFEncoderTest {
 
         assertArrayEquals(data, stream.toByteArray());
     }
+
+    @Test
+    public void writeBytesToChannel() throws IOException {
+        final byte[] bytes = new byte[SWFEncoder.GATHER_SIZE];
+        bytes[0] = 1;
+        bytes[bytes.length - 1] = 2;
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(Channels.newChannel(stream));
+        encoder.writeShort(0x0201);
+        encoder.writeBytes(bytes);
+        encoder.writeByte(3);
+        encoder.flush();
+
+        final byte[] data = stream.toByteArray();
+
+        assertEquals(bytes.length + 3, data.length);
+        assertEquals(1, data[0]);
+        assertEquals(2, data[1]);
+        assertEquals(1, data[2]);
+        assertEquals(2, data[data.length - 2]);
+        assertEquals(3, data[data.length - 1]);
+    }
+
+    @Test
+    public void markTracksQueuedBytes() throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder fixture = new SWFEncoder(Channels.newChannel(stream));
+        fixture.writeByte(0);
+        fixture.writeBytes(new byte[SWFEncoder.GATHER_SIZE]);
+
+        assertEquals(SWFEncoder.GATHER_SIZE + 1, fixture.mark());
+    }
+
+    @Test
+    public void writeBytesToChannelWithSmallBuffer() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4, 5 };
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(
+                Channels.newChannel(stream), 2);
+        encoder.writeByte(1);
+        encoder.writeBytes(new byte[] {2, 3, 4 });
+        encoder.writeByte(5);
+        encoder.flush();
+
+        assertArrayEquals(data, stream.toByteArray());
+    }
+
+    @Test
+    public void writeStringToChannelWithFullBuffer() throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(
+                Channels.newChannel(stream), 8);
+        for (int i = 0; i < 8; i++) {
+            encoder.writeByte(1);
+        }
+        encoder.writeString("abc");
+        encoder.flush();
+
+        assertArrayEquals(new byte[] {1, 1, 1, 1, 1, 1, 1, 1,
+                'a', 'b', 'c', 0 }, stream.toByteArray());
+    }
+
+    @Test
+    public void writeBuffer() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3 };
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(Channels.newChannel(stream));
+        encoder.writeByte(1);
+        encoder.writeBuffer(ByteBuffer.wrap(new byte[] {0, 2, 3 }, 1, 2));
+        encoder.flush();
+
+        assertArrayEquals(data, stream.toByteArray());
+    }
 }
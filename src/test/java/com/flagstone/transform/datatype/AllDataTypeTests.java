@@ -42,7 +42,8 @@ import org.junit.runners.Suite;
     ColorTransformTest.class,
     ColorTransformCodingTest.class,
     CoordTransformTest.class,
-    CoordTransformCodingTest.class
+    CoordTransformCodingTest.class,
+    ValueCacheTest.class
     }
 )
 public final class AllDataTypeTests { //NOPMD class for defining test suite
@@ -0,0 +1,157 @@
+/*
+ * ValueCacheTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.datatype;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+
+public final class ValueCacheTest {
+
+    @Test
+    public void equalColorsAreShared() {
+        final ValueCache cache = new ValueCache();
+        final Color color = cache.intern(new Color(1, 2, 3));
+        assertSame(color, cache.intern(new Color(1, 2, 3)));
+    }
+
+    @Test
+    public void differentValuesAreNotShared() {
+        final ValueCache cache = new ValueCache();
+        final Bounds bounds = cache.intern(new Bounds(0, 0, 10, 10));
+        assertNotSame(bounds, cache.intern(new Bounds(0, 0, 10, 20)));
+    }
+
+    @Test
+    public void identityTransformsArePreloaded() {
+        final ValueCache cache = new ValueCache();
+        assertSame(CoordTransform.IDENTITY,
+                cache.intern(CoordTransform.translate(0, 0)));
+        assertSame(ColorTransform.IDENTITY,
+                cache.intern(new ColorTransform(1.0f, 1.0f, 1.0f, 1.0f)));
+    }
+
+    @Test
+    public void identityTransformsAreKeptAfterClear() {
+        final ValueCache cache = new ValueCache();
+        cache.intern(new Color(1, 2, 3));
+        cache.clear();
+
+        assertEquals(2, cache.size());
+        assertSame(CoordTransform.IDENTITY,
+                cache.intern(CoordTransform.translate(0, 0)));
+        assertSame(ColorTransform.IDENTITY,
+                cache.intern(new ColorTransform(1.0f, 1.0f, 1.0f, 1.0f)));
+    }
+
+    @Test
+    public void otherTypesAreNotCached() {
+        final ValueCache cache = new ValueCache();
+        final String value = new String("value");
+        assertSame(value, cache.intern(value));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedValueIsDiscarded() {
+        final ValueCache cache = new ValueCache(2);
+        final Color first = cache.intern(new Color(1, 1, 1));
+        final Color second = cache.intern(new Color(2, 2, 2));
+        cache.intern(new Color(1, 1, 1));
+        cache.intern(new Color(3, 3, 3));
+
+        assertEquals(2, cache.size());
+        assertSame(first, cache.intern(new Color(1, 1, 1)));
+        assertNotSame(second, cache.intern(new Color(2, 2, 2)));
+    }
+
+    @Test
+    public void colorTransformsWithDifferentTermsAreNotShared()
+            throws IOException {
+        final ValueCache cache = new ValueCache();
+        cache.intern(new ColorTransform(1.0f, 1.0f, 1.0f, 1.0f));
+        // add terms, all zero, and no multiply terms.
+        final byte[] binary = new byte[] {(byte) 0x80 };
+        final SWFDecoder decoder = new SWFDecoder(
+                new ByteArrayInputStream(binary));
+        final ColorTransform decoded = new ColorTransform(decoder,
+                new Context());
+
+        assertSame(decoded, cache.intern(decoded));
+    }
+
+    @Test
+    public void contextInternsDecodedValues() throws IOException {
+        final Context context = new Context();
+        context.setInterner(new ValueCache());
+        final byte[] binary = new byte[] {1, 2, 3, 1, 2, 3 };
+        final SWFDecoder decoder = new SWFDecoder(
+                new ByteArrayInputStream(binary));
+
+        final Color first = context.intern(new Color(decoder, context));
+        final Color second = context.intern(new Color(decoder, context));
+        assertSame(first, second);
+    }
+
+    @Test
+    public void sharedColorTransformEncodesForEachContext()
+            throws IOException {
+        final ColorTransform object = new ColorTransform(1, 2, 3, 4);
+        final Context opaque = new Context();
+        final Context transparent = new Context();
+        transparent.put(Context.TRANSPARENT, 1);
+
+        final int opaqueLength = object.prepareToEncode(opaque);
+        object.prepareToEncode(transparent);
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(stream);
+        object.encode(encoder, opaque);
+        encoder.flush();
+
+        assertEquals(opaqueLength, stream.size());
+        assertArrayEquals(new byte[] {(byte) 0x8C, (byte) 0xA6 },
+                stream.toByteArray());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.font;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieHeader;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.Color;
+import com.flagstone.transform.datatype.ValueCache;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeData;
+
+public final class GlyphCacheTest {
+
+    private static Shape glyph(final int... bytes) {
+        final byte[] data = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            data[i] = (byte) bytes[i];
+        }
+        final Shape shape = new Shape();
+        shape.add(new ShapeData(data));
+        return shape;
+    }
+
+    private static byte[] encode(final DefineFont2 font)
+            throws IOException, DataFormatException {
+        final Movie movie = new Movie();
+        final MovieHeader header = new MovieHeader();
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        header.setFrameRate(1f);
+        header.setCompressed(false);
+        movie.add(header);
+        movie.add(font);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        movie.encodeToStream(out);
+        return out.toByteArray();
+    }
+
+    private static DefineFont2 decode(final byte[] data,
+            final GlyphCache cache) throws IOException, DataFormatException {
+        final Movie movie = new Movie();
+        movie.setInterner(cache);
+        movie.decodeFromStream(new ByteArrayInputStream(data));
+        return (DefineFont2) movie.getObjects().get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkCapacityMustBePositive() {
+        new GlyphCache(0);
+    }
+
+    @Test
+    public void checkEqualGlyphsAreShared() {
+        final GlyphCache cache = new GlyphCache();
+        final Shape first = glyph(0x10, 1, 2, 3);
+
+        assertSame(first, cache.intern(first));
+        assertSame(first, cache.intern(glyph(0x10, 1, 2, 3)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void checkDifferentGlyphsAreNotShared() {
+        final GlyphCache cache = new GlyphCache();
+        final Shape first = cache.intern(glyph(0x10, 1, 2, 3));
+        final Shape second = cache.intern(glyph(0x10, 1, 2, 4));
+
+        assertNotSame(first, second);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void checkOtherShapesAreUnchanged() {
+        final GlyphCache cache = new GlyphCache();
+        final Shape shape = new Shape();
+        shape.add(new Line(1, 2));
+
+        assertSame(shape, cache.intern(shape));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void checkOtherValuesArePassedOn() {
+        final GlyphCache cache = new GlyphCache(GlyphCache.DEFAULT_CAPACITY,
+                new ValueCache());
+        final Color color = new Color(1, 2, 3);
+
+        assertSame(color, cache.intern(color));
+        assertSame(color, cache.intern(new Color(1, 2, 3)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void checkLeastRecentlyUsedGlyphsAreDiscarded() {
+        final Shape first = glyph(1);
+        final GlyphCache cache = new GlyphCache(1);
+
+        assertSame(first, cache.intern(first));
+        assertEquals(0, cache.size());
+
+        final GlyphCache small = new GlyphCache(150);
+        small.intern(first);
+        small.intern(glyph(2));
+        assertEquals(1, small.size());
+        assertNotSame(first, small.intern(glyph(1)));
+    }
+
+    @Test
+    public void checkDecodedGlyphsAreShared()
+            throws IOException, DataFormatException {
+        final DefineFont2 font = new DefineFont2(1, "font");
+        font.setEncoding(CharacterFormat.UCS2);
+        font.setShapes(Arrays.asList(glyph(0x10, 0x00),
+                glyph(0x10, 0x01, 0x00)));
+        font.setCodes(Arrays.asList(65, 66));
+        font.setAdvances(Arrays.asList(100, 200));
+        font.setBounds(Arrays.asList(new Bounds(0, 0, 1, 1),
+                new Bounds(0, 0, 2, 2)));
+
+        final byte[] data = encode(font);
+        final GlyphCache cache = new GlyphCache();
+        final DefineFont2 first = decode(data, cache);
+        final DefineFont2 second = decode(data, cache);
+
+        assertEquals(2, cache.size());
+        assertSame(first.getShapes().get(0), second.getShapes().get(0));
+        assertSame(first.getShapes().get(1), second.getShapes().get(1));
+        assertArrayEquals(data, encode(second));
+    }
+}
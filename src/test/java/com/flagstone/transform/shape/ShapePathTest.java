@@ -0,0 +1,186 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.shape;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.MovieTypes;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.datatype.WebPalette;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.fillstyle.SolidFill;
+
+public final class ShapePathTest {
+
+    private transient List<ShapeRecord> records;
+
+    @Before
+    public void setUp() {
+        records = new ArrayList<ShapeRecord>();
+        records.add(new ShapeStyle().setMove(100, -200).setFillStyle(1)
+                .setLineStyle(0));
+        records.add(new Line(0, 300));
+        records.add(new Line(-400, 0));
+        records.add(new Line(5, -6));
+        records.add(new Curve(10, 20, -30, 40000));
+        records.add(new ShapeStyle().add(new SolidFill(
+                WebPalette.RED.color())).setFillStyle(1));
+        records.add(new ShapeStyle().setAltFillStyle(1));
+        records.add(new Line(1, 1));
+    }
+
+    private Context context(final int type) {
+        final Context context = new Context();
+        final DecoderRegistry registry = new DecoderRegistry(
+                DecoderRegistry.getDefault());
+        registry.setShapeDecoder(new ShapePathDecoder());
+        context.setRegistry(registry);
+        context.put(Context.TYPE, type);
+        context.put(Context.FILL_SIZE, 1);
+        context.put(Context.LINE_SIZE, 1);
+        return context;
+    }
+
+    private byte[] encode(final Shape shape) throws IOException {
+        final Context context = context(MovieTypes.DEFINE_SHAPE_3);
+        final int length = shape.prepareToEncode(context);
+
+        context.put(Context.FILL_SIZE, 1);
+        context.put(Context.LINE_SIZE, 1);
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(stream);
+        shape.encode(encoder, context);
+        encoder.flush();
+
+        assertEquals(length, stream.size());
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void recordsAreStoredAsValues() {
+        final ShapePath path = new ShapePath(records);
+        assertEquals(records.size(), path.size());
+        assertEquals(records.toString(), path.getObjects().toString());
+    }
+
+    @Test
+    public void encodingMatchesShape() throws IOException {
+        final byte[] expected = encode(new Shape(records));
+        final byte[] actual = encode(new Shape().add(new ShapePath(records)));
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void decodeIntoPath() throws IOException {
+        final byte[] encoded = encode(new Shape(records));
+        final SWFDecoder decoder = new SWFDecoder(
+                new ByteArrayInputStream(encoded));
+        final Shape shape = new Shape(decoder,
+                context(MovieTypes.DEFINE_SHAPE_3));
+
+        assertEquals(1, shape.getObjects().size());
+        final ShapePath path = (ShapePath) shape.getObjects().get(0);
+        assertEquals(records.toString(), path.getObjects().toString());
+        assertArrayEquals(encoded, encode(shape));
+    }
+
+    @Test
+    public void decodeShapeStyle2() throws IOException {
+        final byte[] encoded = encode(new Shape(records));
+        final SWFDecoder decoder = new SWFDecoder(
+                new ByteArrayInputStream(encoded));
+        final Shape shape = new Shape(decoder,
+                context(MovieTypes.DEFINE_SHAPE_4));
+        final ShapePath path = (ShapePath) shape.getObjects().get(0);
+        final ShapeStyle2 style = (ShapeStyle2) path.getObjects().get(0);
+
+        assertEquals(Integer.valueOf(100), style.getMoveX());
+        assertEquals(Integer.valueOf(-200), style.getMoveY());
+        assertNull(style.getAltFillStyle());
+    }
+
+    @Test
+    public void stylesAreStoredAsObjects() {
+        final ShapePath path = new ShapePath(records);
+        assertSame(records.get(5), path.getObjects().get(5));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        final ShapePath path = new ShapePath(records);
+        final ShapePath copy = path.copy();
+        path.line(1, 2);
+
+        assertEquals(records.size(), copy.size());
+        assertEquals(records.size() + 1, path.size());
+        assertTrue(path.getObjects().get(records.size()) instanceof Line);
+    }
+
+    @Test
+    public void pathIsBuilt() {
+        final ShapePath path = new ShapePath().move(1, 2).line(3, 4)
+                .curve(5, 6, 7, 8);
+        assertEquals("[ShapeStyle: { move=(1, 2); fill=null; alt=null;"
+                + " line=null; fillStyles=[]; lineStyles=[]},"
+                + " Line: (3, 4), Curve: (5, 6) (7, 8)]",
+                path.getObjects().toString());
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void checkCoordinateBelowRangeIsRejected() {
+        new ShapePath().line(Shape.MIN_COORD - 1, 0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void checkObjectsCannotBeModified() {
+        new ShapePath(records).getObjects().add(new Line(1, 1));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.Background;
+import com.flagstone.transform.DoAction;
+import com.flagstone.transform.Event;
+import com.flagstone.transform.EventHandler;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieHeader;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.ShowFrame;
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.GetUrl;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.WebPalette;
+import com.flagstone.transform.movieclip.DefineMovieClip;
+import com.flagstone.transform.util.action.ActionRewriter;
+import com.flagstone.transform.util.action.StringMapping;
+
+public final class MovieRewriterTest {
+
+    private transient ActionRewriter actions;
+    private transient MovieRewriter rewriter;
+
+    @Before
+    public void setUp() {
+        actions = new ActionRewriter();
+        actions.setUrlMapping(new StringMapping() {
+            public String map(final String value) {
+                return value.replace("http://old", "https://new");
+            }
+        });
+        rewriter = new MovieRewriter(actions);
+    }
+
+    private List<Action> getUrl(final String url) {
+        final List<Action> list = new ArrayList<Action>();
+        list.add(new GetUrl(url, ""));
+        list.add(BasicAction.END);
+        return list;
+    }
+
+    private Movie movie(final boolean compressed, final String url) {
+        final MovieHeader header = new MovieHeader();
+        header.setVersion(7);
+        header.setFrameSize(new Bounds(0, 0, 8000, 4000));
+        header.setFrameRate(12.0f);
+        header.setCompressed(compressed);
+
+        final List<MovieTag> clip = new ArrayList<MovieTag>();
+        clip.add(new DoAction(getUrl(url + "clip.html")));
+        clip.add(ShowFrame.getInstance());
+
+        final Place2 place = Place2.show(1, 1, 0, 0);
+        place.add(new EventHandler(EnumSet.of(Event.LOAD),
+                getUrl(url + "event.html")));
+
+        final Movie movie = new Movie();
+        movie.add(header);
+        movie.add(new Background(WebPalette.WHITE.color()));
+        movie.add(new DefineMovieClip(1, clip));
+        movie.add(place);
+        movie.add(new DoAction(getUrl(url + "frame.html")));
+        movie.add(ShowFrame.getInstance());
+        return movie;
+    }
+
+    private byte[] encode(final Movie movie)
+            throws DataFormatException, IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        movie.encodeToStream(stream);
+        return stream.toByteArray();
+    }
+
+    private byte[] rewrite(final byte[] data)
+            throws DataFormatException, IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        rewriter.rewrite(new ByteArrayInputStream(data), stream);
+        return stream.toByteArray();
+    }
+
+    private String url(final List<Action> list) {
+        return ((GetUrl) list.get(0)).getUrl();
+    }
+
+    private void checkUrls(final byte[] data)
+            throws DataFormatException, IOException {
+        final Movie movie = new Movie();
+        movie.decodeFromStream(new ByteArrayInputStream(data));
+
+        final DefineMovieClip clip = (DefineMovieClip) movie.getObjects()
+                .get(2);
+        final Place2 place = (Place2) movie.getObjects().get(3);
+        final DoAction frame = (DoAction) movie.getObjects().get(4);
+
+        assertEquals("https://new/clip.html",
+                url(((DoAction) clip.getObjects().get(0)).getActions()));
+        assertEquals("https://new/event.html",
+                url(place.getEvents().get(0).getActions()));
+        assertEquals("https://new/frame.html", url(frame.getActions()));
+    }
+
+    @Test
+    public void actionsAreRewritten()
+            throws DataFormatException, IOException {
+        final byte[] data = rewrite(encode(movie(false, "http://old/")));
+        checkUrls(data);
+        assertEquals(3, rewriter.getRewrittenCount());
+    }
+
+    @Test
+    public void compressedMovieIsRewritten()
+            throws DataFormatException, IOException {
+        final byte[] data = rewrite(encode(movie(true, "http://old/")));
+        assertEquals('C', data[0]);
+        checkUrls(data);
+    }
+
+    @Test
+    public void rewrittenMovieMatchesEncodedMovie()
+            throws DataFormatException, IOException {
+        final byte[] expected = encode(movie(false, "https://new/"));
+        assertArrayEquals(expected,
+                rewrite(encode(movie(false, "http://old/"))));
+    }
+
+    @Test
+    public void unchangedMovieIsCopied()
+            throws DataFormatException, IOException {
+        final byte[] data = encode(movie(false, "https://new/"));
+        assertArrayEquals(data, rewrite(data));
+        assertEquals(0, rewriter.getRewrittenCount());
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void checkInvalidSignatureIsRejected()
+            throws DataFormatException, IOException {
+        rewrite(new byte[] {'A', 'B', 'C', 7, 0, 0, 0, 0});
+    }
+}
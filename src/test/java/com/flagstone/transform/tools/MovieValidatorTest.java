@@ -0,0 +1,237 @@
+/*
+ * MovieValidatorTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.DoAction;
+import com.flagstone.transform.Event;
+import com.flagstone.transform.EventHandler;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieHeader;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.Place3;
+import com.flagstone.transform.PlaceType;
+import com.flagstone.transform.ShowFrame;
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.ActionTypes;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.button.ButtonShape;
+import com.flagstone.transform.button.ButtonState;
+import com.flagstone.transform.button.DefineButton;
+import com.flagstone.transform.datatype.Blend;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.filter.BlurFilter;
+
+public final class MovieValidatorTest {
+
+    private transient MovieValidator validator;
+
+    @Before
+    public void setUp() {
+        validator = new MovieValidator();
+    }
+
+    private byte[] encode(final boolean compressed)
+            throws IOException, DataFormatException {
+        final MovieHeader header = new MovieHeader();
+        header.setFrameRate(1.0f);
+        header.setFrameSize(new Bounds(0, 0, 8000, 4000));
+        header.setCompressed(compressed);
+
+        final Movie movie = new Movie();
+        movie.add(header);
+        movie.add(new DoAction().add(BasicAction.STOP)
+                .add(BasicAction.END));
+        movie.add(ShowFrame.getInstance());
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        movie.encodeToStream(stream);
+        return stream.toByteArray();
+    }
+
+    private byte[] encode(final int version, final MovieTag tag)
+            throws IOException, DataFormatException {
+        final MovieHeader header = new MovieHeader();
+        header.setVersion(version);
+        header.setFrameRate(1.0f);
+        header.setFrameSize(new Bounds(0, 0, 8000, 4000));
+        header.setCompressed(false);
+
+        final Movie movie = new Movie();
+        movie.add(header);
+        movie.add(tag);
+        movie.add(ShowFrame.getInstance());
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        movie.encodeToStream(stream);
+        return stream.toByteArray();
+    }
+
+    private List<Action> actions() {
+        final List<Action> actions = new ArrayList<Action>();
+        actions.add(BasicAction.STOP);
+        actions.add(BasicAction.END);
+        return actions;
+    }
+
+    private EventHandler handler() {
+        return new EventHandler(EnumSet.of(Event.KEY_PRESS), 'a', actions());
+    }
+
+    private boolean validate(final byte[] data) throws IOException {
+        return validator.validate(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void validMovie() throws IOException, DataFormatException {
+        assertTrue(validate(encode(false)));
+        assertEquals(0, validator.getProblems().size());
+    }
+
+    @Test
+    public void validCompressedMovie() throws IOException,
+            DataFormatException {
+        assertTrue(validate(encode(true)));
+    }
+
+    @Test
+    public void invalidSignature() throws IOException, DataFormatException {
+        final byte[] data = encode(false);
+        data[0] = 'X';
+
+        assertFalse(validate(data));
+        assertEquals(0, validator.getProblems().get(0).getOffset());
+    }
+
+    @Test
+    public void truncatedMovie() throws IOException, DataFormatException {
+        final byte[] data = encode(false);
+        final byte[] truncated = new byte[data.length - 4];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        assertFalse(validate(truncated));
+    }
+
+    @Test
+    public void missingEndAction() throws IOException, DataFormatException {
+        final byte[] data = encode(false);
+        // The End action is the byte before the ShowFrame and End tags.
+        data[data.length - 5] = ActionTypes.PLAY;
+
+        assertFalse(validate(data));
+        assertEquals(data.length - 4, validator.getProblems().get(0)
+                .getOffset());
+    }
+
+    @Test
+    public void invalidButtonActions()
+            throws IOException, DataFormatException {
+        final List<ButtonShape> shapes = new ArrayList<ButtonShape>();
+        shapes.add(new ButtonShape().addState(ButtonState.UP)
+                .setIdentifier(1).setLayer(1)
+                .setTransform(CoordTransform.translate(100, 200)));
+        final byte[] data = encode(10, new DefineButton(2, shapes,
+                actions()));
+
+        assertTrue(validate(data));
+        // The End action is the byte before the ShowFrame and End tags.
+        data[data.length - 5] = ActionTypes.PLAY;
+        assertFalse(validate(data));
+    }
+
+    @Test
+    public void invalidPlace2Actions()
+            throws IOException, DataFormatException {
+        final byte[] data = encode(10, new Place2().setType(PlaceType.NEW)
+                .setLayer(1).setIdentifier(1)
+                .setTransform(CoordTransform.translate(100, 200))
+                .setName("clip").add(handler()));
+
+        assertTrue(validate(data));
+        // The End action precedes the 32-bit end of events marker.
+        data[data.length - 9] = ActionTypes.PLAY;
+        assertFalse(validate(data));
+    }
+
+    @Test
+    public void invalidPlace2ActionsVersion5()
+            throws IOException, DataFormatException {
+        final byte[] data = encode(5, new Place2().setType(PlaceType.NEW)
+                .setLayer(1).setIdentifier(1).add(new EventHandler(
+                        EnumSet.of(Event.LOAD), actions())));
+
+        assertTrue(validate(data));
+        // The End action precedes the 16-bit end of events marker.
+        data[data.length - 7] = ActionTypes.PLAY;
+        assertFalse(validate(data));
+    }
+
+    @Test
+    public void invalidPlace3Actions()
+            throws IOException, DataFormatException {
+        final byte[] data = encode(10, new Place3().setType(PlaceType.NEW)
+                .setLayer(1).setIdentifier(1).setClassName("Clip")
+                .setTransform(CoordTransform.translate(100, 200))
+                .add(new BlurFilter(1.0f, 1.0f, 1)).setBlend(Blend.MULTIPLY)
+                .setBitmapCache(1).add(handler()));
+
+        assertTrue(validate(data));
+        data[data.length - 9] = ActionTypes.PLAY;
+        assertFalse(validate(data));
+    }
+
+    @Test
+    public void incorrectTagLength() throws IOException, DataFormatException {
+        final byte[] data = encode(false);
+        // Increase the length of the ShowFrame tag.
+        data[data.length - 4] = 0x41;
+
+        assertFalse(validate(data));
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * ABCFileTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.abc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.DoABC;
+import com.flagstone.transform.coder.CoderException;
+
+public final class ABCFileTest {
+
+    private static final byte[] CODE = {(byte) 0xD0, 0x30, 0x47};
+
+    private transient byte[] encoded;
+
+    @Before
+    public void setUp() {
+        final ABCWriter writer = new ABCWriter(0);
+        writer.writeU16(16);
+        writer.writeU16(46);
+        // integers
+        writer.writeU30(2);
+        writer.writeS32(-5);
+        // unsigned integers
+        writer.writeU30(0);
+        // doubles
+        writer.writeU30(2);
+        writer.writeD64(1.5);
+        // strings
+        writer.writeU30(4);
+        writer.writeString("Sprite");
+        writer.writeString("flash.display");
+        writer.writeString("Main");
+        // namespaces
+        writer.writeU30(3);
+        writer.writeU8(ABCConstants.PACKAGE_NAMESPACE);
+        writer.writeU30(2);
+        writer.writeU8(ABCConstants.PACKAGE_NAMESPACE);
+        writer.writeU30(0);
+        // namespace sets
+        writer.writeU30(2);
+        writer.writeU30(2);
+        writer.writeU30(1);
+        writer.writeU30(2);
+        // multinames
+        writer.writeU30(4);
+        writer.writeU8(ABCConstants.QNAME);
+        writer.writeU30(1);
+        writer.writeU30(1);
+        writer.writeU8(ABCConstants.QNAME);
+        writer.writeU30(2);
+        writer.writeU30(3);
+        writer.writeU8(ABCConstants.TYPE_NAME);
+        writer.writeU30(1);
+        writer.writeU30(1);
+        writer.writeU30(2);
+        // methods
+        writer.writeU30(2);
+        writer.writeU30(0);
+        writer.writeU30(0);
+        writer.writeU30(3);
+        writer.writeU8(0);
+        writer.writeU30(0);
+        writer.writeU30(0);
+        writer.writeU30(0);
+        writer.writeU8(0);
+        // metadata
+        writer.writeU30(0);
+        // classes
+        writer.writeU30(1);
+        writer.writeU30(2);
+        writer.writeU30(1);
+        writer.writeU8(0);
+        writer.writeU30(0);
+        writer.writeU30(0);
+        writer.writeU30(0);
+        writer.writeU30(1);
+        writer.writeU30(0);
+        // scripts
+        writer.writeU30(1);
+        writer.writeU30(1);
+        writer.writeU30(1);
+        writer.writeU30(2);
+        writer.writeU8(4);
+        writer.writeU30(1);
+        writer.writeU30(0);
+        // method bodies
+        writer.writeU30(2);
+        for (int i = 0; i < 2; i++) {
+            writer.writeU30(i);
+            writer.writeU30(1);
+            writer.writeU30(1);
+            writer.writeU30(0);
+            writer.writeU30(1);
+            writer.writeU30(CODE.length);
+            writer.writeBytes(CODE, 0, CODE.length);
+            writer.writeU30(0);
+            writer.writeU30(0);
+        }
+        encoded = writer.toByteArray();
+    }
+
+    @Test
+    public void checkConstants() throws CoderException {
+        final ABCConstants pool = new ABCFile(encoded).getConstants();
+
+        assertEquals(-5, pool.getInt(1));
+        assertEquals(1, pool.getUintCount());
+        assertEquals(1.5, pool.getDouble(1), 0.0);
+        assertEquals(4, pool.getStringCount());
+        assertNull(pool.getString(0));
+        assertEquals("Main", pool.getString(3));
+        assertEquals(ABCConstants.PACKAGE_NAMESPACE, pool.getNamespaceKind(1));
+        assertArrayEquals(new int[] {1, 2}, pool.getNamespaceSet(1));
+        assertEquals("flash.display.Sprite", pool.getName(1));
+        assertEquals("Main", pool.getName(2));
+        assertArrayEquals(new int[] {2}, pool.getTypeParameters(3));
+    }
+
+    @Test
+    public void checkDefinitions() throws CoderException {
+        final ABCFile abc = new ABCFile(encoded);
+
+        assertEquals(46, abc.getMajorVersion());
+        assertEquals(2, abc.getMethodCount());
+        assertEquals("Main", abc.getMethodName(0));
+        assertNull(abc.getMethodName(1));
+        assertEquals(1, abc.getClassCount());
+        assertEquals("Main", abc.getClassName(0));
+        assertEquals("flash.display.Sprite", abc.getSuperclassName(0));
+        assertEquals(1, abc.getScriptCount());
+        assertEquals(2, abc.getMethodBodyCount());
+    }
+
+    @Test
+    public void checkMethodBody() throws CoderException {
+        final MethodBody body = new ABCFile(encoded).getMethodBody(1);
+
+        assertEquals(1, body.getMethod());
+        assertEquals(1, body.getMaxScopeDepth());
+        assertEquals(0, body.getExceptionCount());
+        assertArrayEquals(CODE, body.getCode());
+    }
+
+    @Test
+    public void unchangedFileIsCopied() throws IOException {
+        final DoABC doABC = new DoABC("script", false, encoded);
+
+        assertArrayEquals(encoded, new ABCFile(doABC).encode());
+    }
+
+    @Test
+    public void changedStringIsEncoded() throws CoderException {
+        final ABCFile abc = new ABCFile(encoded);
+        abc.getConstants().setString(3, "Application");
+
+        final ABCFile copy = new ABCFile(abc.encode());
+
+        assertEquals("Application", copy.getClassName(0));
+        assertEquals("flash.display.Sprite", copy.getSuperclassName(0));
+        assertEquals(2, copy.getMethodBodyCount());
+        assertEquals(encoded.length + 7, abc.encode().length);
+    }
+
+    @Test
+    public void changedCodeIsEncoded() throws CoderException {
+        final byte[] code = {(byte) 0xD0, 0x30, 0x02, 0x47};
+        final ABCFile abc = new ABCFile(encoded);
+        abc.getMethodBody(0).setCode(code);
+
+        final ABCFile copy = new ABCFile(abc.encode());
+
+        assertArrayEquals(code, copy.getMethodBody(0).getCode());
+        assertArrayEquals(CODE, copy.getMethodBody(1).getCode());
+    }
+
+    @Test(expected = CoderException.class)
+    public void truncatedFileIsRejected() throws CoderException {
+        final byte[] bytes = new byte[encoded.length - 2];
+        System.arraycopy(encoded, 0, bytes, 0, bytes.length);
+        new ABCFile(bytes);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.action;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.Push;
+import com.flagstone.transform.action.Table;
+import com.flagstone.transform.action.TableIndex;
+
+/**
+ * Factory methods and assertions shared by the tests for the action
+ * utilities.
+ */
+final class ActionFixtures {
+
+    static Push push(final Object... values) {
+        final Push.Builder builder = new Push.Builder();
+        for (final Object value : values) {
+            builder.add(value);
+        }
+        return builder.build();
+    }
+
+    static Table table(final String... values) {
+        final Table table = new Table();
+        for (final String value : values) {
+            table.add(value);
+        }
+        return table;
+    }
+
+    static TableIndex index(final int index) {
+        return new TableIndex(index);
+    }
+
+    static void assertActions(final List<Action> expected,
+            final List<Action> actual) {
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    private ActionFixtures() {
+        // Class only contains static methods.
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * ActionOptimizerTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import static com.flagstone.transform.util.action.ActionFixtures.assertActions;
+import static com.flagstone.transform.util.action.ActionFixtures.push;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.If;
+import com.flagstone.transform.action.Jump;
+import com.flagstone.transform.action.NewFunction2;
+import com.flagstone.transform.action.RegisterCopy;
+import com.flagstone.transform.action.RegisterIndex;
+
+public final class ActionOptimizerTest {
+
+    private transient ActionOptimizer optimizer;
+    private transient List<Action> actions;
+
+    @Before
+    public void setUp() {
+        optimizer = new ActionOptimizer();
+        actions = new ArrayList<Action>();
+    }
+
+    @Test
+    public void adjacentPushesAreMerged() {
+        actions.add(push(1));
+        actions.add(push("a"));
+        actions.add(BasicAction.TRACE);
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(push(1, "a"));
+        expected.add(BasicAction.TRACE);
+
+        assertActions(expected, optimizer.optimize(actions));
+    }
+
+    @Test
+    public void constantsAreFolded() {
+        actions.add(push(1, 2, 3));
+        actions.add(BasicAction.MULTIPLY);
+        actions.add(BasicAction.ADD);
+        actions.add(push("a", "b"));
+        actions.add(BasicAction.STRING_ADD);
+        actions.add(BasicAction.TRACE);
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(push(7, "ab"));
+        expected.add(BasicAction.TRACE);
+
+        assertActions(expected, optimizer.optimize(actions));
+    }
+
+    @Test
+    public void divisionByZeroIsNotFolded() {
+        actions.add(push(1, 0));
+        actions.add(BasicAction.DIVIDE);
+
+        assertActions(actions, optimizer.optimize(actions));
+    }
+
+    @Test
+    public void wholeDoublesArePushedAsIntegers() {
+        actions.add(push(2.0, 0.5));
+        actions.add(BasicAction.TRACE);
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(push(2, 0.5));
+        expected.add(BasicAction.TRACE);
+
+        assertActions(expected, optimizer.optimize(actions));
+    }
+
+    @Test
+    public void pushFollowedByPopIsRemoved() {
+        actions.add(push("a"));
+        actions.add(BasicAction.POP);
+        actions.add(BasicAction.END);
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(BasicAction.END);
+
+        assertActions(expected, optimizer.optimize(actions));
+    }
+
+    @Test
+    public void unreachableActionsAreRemoved() {
+        actions.add(new Jump(1));
+        actions.add(BasicAction.STOP);
+        actions.add(BasicAction.PLAY);
+        actions.add(BasicAction.END);
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(BasicAction.PLAY);
+        expected.add(BasicAction.END);
+
+        assertActions(expected, optimizer.optimize(actions));
+    }
+
+    @Test
+    public void jumpChainsAreShortened() {
+        actions.add(push(true));
+        actions.add(new If(7));
+        actions.add(BasicAction.STOP);
+        actions.add(new Jump(1));
+        actions.add(BasicAction.NEXT_FRAME);
+        actions.add(new Jump(0));
+        actions.add(BasicAction.PLAY);
+        actions.add(BasicAction.END);
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(push(true));
+        expected.add(new If(1));
+        expected.add(BasicAction.STOP);
+        expected.add(BasicAction.PLAY);
+        expected.add(BasicAction.END);
+
+        assertActions(expected, optimizer.optimize(actions));
+    }
+
+    @Test
+    public void offsetsAreUpdated() {
+        actions.add(push(true));
+        actions.add(new If(18));
+        actions.add(push(1));
+        actions.add(push(2));
+        actions.add(BasicAction.ADD);
+        actions.add(BasicAction.TRACE);
+        actions.add(BasicAction.PLAY);
+        actions.add(BasicAction.END);
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(push(true));
+        expected.add(new If(9));
+        expected.add(push(3));
+        expected.add(BasicAction.TRACE);
+        expected.add(BasicAction.PLAY);
+        expected.add(BasicAction.END);
+
+        assertActions(expected, optimizer.optimize(actions));
+    }
+
+    @Test
+    public void branchIntoActionIsNotChanged() {
+        actions.add(new Jump(2));
+        actions.add(push(1));
+        actions.add(push(2));
+        actions.add(BasicAction.END);
+
+        assertSame(actions, optimizer.optimize(actions));
+    }
+
+    @Test
+    public void localVariablesAreMovedToRegisters() {
+        actions.add(new NewFunction2.Builder().setName("f")
+                .addAction(push("x", 5))
+                .addAction(BasicAction.INIT_VARIABLE)
+                .addAction(push("x"))
+                .addAction(BasicAction.GET_VARIABLE)
+                .addAction(BasicAction.RETURN)
+                .build());
+
+        final NewFunction2 function =
+            (NewFunction2) optimizer.optimize(actions).get(0);
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(push(5));
+        expected.add(new RegisterCopy(1));
+        expected.add(BasicAction.POP);
+        expected.add(push(new RegisterIndex(1)));
+        expected.add(BasicAction.RETURN);
+
+        assertActions(expected, function.getActions());
+        assertEquals(2, function.getRegisterCount());
+    }
+
+    @Test
+    public void variablesWithCalculatedNamesAreNotMoved() {
+        final List<Action> body = new ArrayList<Action>();
+        body.add(push("x", 5));
+        body.add(BasicAction.INIT_VARIABLE);
+        body.add(push("y"));
+        body.add(BasicAction.TO_STRING);
+        body.add(BasicAction.GET_VARIABLE);
+        body.add(BasicAction.RETURN);
+
+        final NewFunction2.Builder builder = new NewFunction2.Builder();
+        for (final Action action : body) {
+            builder.addAction(action);
+        }
+        actions.add(builder.build());
+
+        final NewFunction2 function =
+            (NewFunction2) optimizer.optimize(actions).get(0);
+
+        assertActions(body, function.getActions());
+        assertEquals(0, function.getRegisterCount());
+    }
+}
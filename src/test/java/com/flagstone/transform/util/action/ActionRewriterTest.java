@@ -0,0 +1,182 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.DoAction;
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.GetUrl;
+import com.flagstone.transform.action.If;
+import com.flagstone.transform.action.Jump;
+import com.flagstone.transform.action.Push;
+import com.flagstone.transform.action.Table;
+import com.flagstone.transform.action.With;
+
+public final class ActionRewriterTest {
+
+    private static final StringMapping UPPER = new StringMapping() {
+        public String map(final String value) {
+            return value.toUpperCase();
+        }
+    };
+
+    private static final StringMapping HOST = new StringMapping() {
+        public String map(final String value) {
+            return value.replace("http://old", "https://new");
+        }
+    };
+
+    private transient ActionRewriter rewriter;
+    private transient List<Action> actions;
+
+    @Before
+    public void setUp() {
+        rewriter = new ActionRewriter();
+        actions = new ArrayList<Action>();
+    }
+
+    @Test
+    public void stringsInPushAreReplaced() {
+        rewriter.setStringMapping(UPPER);
+        actions.add(new Push.Builder().add("a").add(1).add("b").build());
+
+        final Push push = (Push) rewriter.rewrite(actions).get(0);
+
+        assertEquals("A", push.getString(0));
+        assertEquals(1, push.getInteger(1));
+        assertEquals("B", push.getString(2));
+    }
+
+    @Test
+    public void urlsInGetUrlAreReplaced() {
+        rewriter.setUrlMapping(HOST);
+        actions.add(new GetUrl("http://old/page.html", "_blank"));
+
+        final GetUrl getUrl = (GetUrl) rewriter.rewrite(actions).get(0);
+
+        assertEquals("https://new/page.html", getUrl.getUrl());
+        assertEquals("_blank", getUrl.getTarget());
+    }
+
+    @Test
+    public void stringsInTableAreReplaced() {
+        rewriter.setStringMapping(UPPER);
+        final Table table = new Table();
+        table.add("a");
+        table.add("b");
+        actions.add(table);
+
+        final Table result = (Table) rewriter.rewrite(actions).get(0);
+
+        assertEquals("A", result.getValues().get(0));
+        assertEquals("B", result.getValues().get(1));
+    }
+
+    @Test
+    public void offsetsAreUpdated() {
+        actions.add(new If(9));
+        actions.add(new Push.Builder().add("abc").build());
+        actions.add(BasicAction.END);
+        rewriter.setStringMapping(new StringMapping() {
+            public String map(final String value) {
+                return value + value;
+            }
+        });
+
+        final List<Action> list = rewriter.rewrite(actions);
+
+        assertEquals(12, ((If) list.get(0)).getOffset());
+        assertEquals("abcabc", ((Push) list.get(1)).getString(0));
+    }
+
+    @Test
+    public void backwardOffsetsAreUpdated() {
+        actions.add(new Push.Builder().add("abc").build());
+        actions.add(new Jump(-13));
+        rewriter.setStringMapping(new StringMapping() {
+            public String map(final String value) {
+                return "a";
+            }
+        });
+
+        final List<Action> list = rewriter.rewrite(actions);
+
+        assertEquals(-11, ((Jump) list.get(1)).getOffset());
+    }
+
+    @Test
+    public void nestedActionsAreReplaced() {
+        rewriter.setUrlMapping(HOST);
+        final List<Action> block = new ArrayList<Action>();
+        block.add(new GetUrl("http://old/index.html", ""));
+        actions.add(new With(block));
+
+        final With with = (With) rewriter.rewrite(actions).get(0);
+
+        assertEquals("https://new/index.html",
+                ((GetUrl) with.getActions().get(0)).getUrl());
+    }
+
+    @Test
+    public void unchangedListIsReturned() {
+        rewriter.setStringMapping(UPPER);
+        rewriter.setUrlMapping(HOST);
+        actions.add(new Push.Builder().add("ABC").build());
+        actions.add(new GetUrl("https://new/", ""));
+
+        assertSame(actions, rewriter.rewrite(actions));
+    }
+
+    @Test
+    public void changesAreReported() {
+        rewriter.setStringMapping(UPPER);
+        actions.add(new Push.Builder().add("abc").build());
+        final DoAction tag = new DoAction(actions);
+
+        assertTrue(rewriter.rewrite(tag));
+        assertEquals("ABC", ((Push) tag.getActions().get(0)).getString(0));
+        assertFalse(rewriter.rewrite(tag));
+    }
+}
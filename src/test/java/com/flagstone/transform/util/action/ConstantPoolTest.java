@@ -0,0 +1,198 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import static com.flagstone.transform.util.action.ActionFixtures.assertActions;
+import static com.flagstone.transform.util.action.ActionFixtures.index;
+import static com.flagstone.transform.util.action.ActionFixtures.push;
+import static com.flagstone.transform.util.action.ActionFixtures.table;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.ExceptionHandler;
+import com.flagstone.transform.action.If;
+import com.flagstone.transform.action.Jump;
+import com.flagstone.transform.action.NewFunction2;
+import com.flagstone.transform.action.Table;
+
+public final class ConstantPoolTest {
+
+    private transient ConstantPool pool;
+    private transient List<Action> actions;
+
+    @Before
+    public void setUp() {
+        pool = new ConstantPool();
+        actions = new ArrayList<Action>();
+    }
+
+    @Test
+    public void repeatedStringsAreAddedToTable() {
+        actions.add(push("name", "value"));
+        actions.add(BasicAction.SET_VARIABLE);
+        actions.add(push("name", "name"));
+        actions.add(BasicAction.GET_VARIABLE);
+        actions.add(BasicAction.SET_VARIABLE);
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(table("name"));
+        expected.add(push(index(0), "value"));
+        expected.add(BasicAction.SET_VARIABLE);
+        expected.add(push(index(0), index(0)));
+        expected.add(BasicAction.GET_VARIABLE);
+        expected.add(BasicAction.SET_VARIABLE);
+
+        assertActions(expected, pool.optimize(actions));
+    }
+
+    @Test
+    public void tableIsOrderedByFrequency() {
+        actions.add(push("first", "second", "second", "second"));
+        actions.add(push("first", "first"));
+        actions.add(push("second", "second"));
+
+        final List<Action> list = pool.optimize(actions);
+
+        assertEquals("[second, first]",
+                ((Table) list.get(0)).getValues().toString());
+    }
+
+    @Test
+    public void listWithoutRepeatedStringsIsNotChanged() {
+        actions.add(push("name", "value"));
+        actions.add(BasicAction.SET_VARIABLE);
+
+        assertSame(actions, pool.optimize(actions));
+    }
+
+    @Test
+    public void existingTableIsReplaced() {
+        actions.add(table("unused", "name"));
+        actions.add(push(index(1), index(1), "unused"));
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(table("name"));
+        expected.add(push(index(0), index(0), "unused"));
+
+        assertActions(expected, pool.optimize(actions));
+    }
+
+    @Test
+    public void undefinedIndexIsNotChanged() {
+        actions.add(push(index(0), "name", "name", "name"));
+
+        assertSame(actions, pool.optimize(actions));
+    }
+
+    @Test
+    public void largeIndexUsedAfter256Entries() {
+        for (int i = 0; i < 257; i++) {
+            actions.add(push("name" + i, "name" + i));
+        }
+        final List<Action> list = pool.optimize(actions);
+
+        assertEquals(258, list.size());
+        assertEquals(push(index(255), index(255)).prepareToEncode(null),
+                list.get(256).prepareToEncode(null));
+        assertEquals(push(index(256), index(256)).prepareToEncode(null),
+                list.get(257).prepareToEncode(null));
+    }
+
+    @Test
+    public void offsetsAreUpdated() {
+        actions.add(push("name"));
+        actions.add(BasicAction.GET_VARIABLE);
+        actions.add(new If(21));
+        actions.add(push("name", "name"));
+        actions.add(BasicAction.SET_VARIABLE);
+        actions.add(new Jump(-36));
+
+        final List<Action> expected = new ArrayList<Action>();
+        expected.add(table("name"));
+        expected.add(push(index(0)));
+        expected.add(BasicAction.GET_VARIABLE);
+        expected.add(new If(13));
+        expected.add(push(index(0), index(0)));
+        expected.add(BasicAction.SET_VARIABLE);
+        expected.add(new Jump(-24));
+
+        assertActions(expected, pool.optimize(actions));
+    }
+
+    @Test
+    public void functionsAndHandlersUseTable() {
+        final NewFunction2.Builder function = new NewFunction2.Builder();
+        function.setName("name");
+        function.addAction(push("name"));
+        function.addAction(BasicAction.TRACE);
+
+        final ExceptionHandler.Builder handler =
+            new ExceptionHandler.Builder();
+        handler.setRegister(1);
+        handler.addToTry(push("name"));
+        handler.addToTry(BasicAction.TRACE);
+        handler.addToCatch(push("name"));
+        handler.addToCatch(BasicAction.TRACE);
+
+        actions.add(function.build());
+        actions.add(handler.build());
+
+        final List<Action> list = pool.optimize(actions);
+
+        assertEquals(table("name").toString(), list.get(0).toString());
+        assertEquals(push(index(0)).toString(),
+                ((NewFunction2) list.get(1)).getActions().get(0).toString());
+        assertEquals(push(index(0)).toString(), ((ExceptionHandler)
+                list.get(2)).getCatchActions().get(0).toString());
+    }
+
+    @Test
+    public void nestedTableIsNotChanged() {
+        final NewFunction2.Builder function = new NewFunction2.Builder();
+        function.setName("name");
+        function.addAction(table("name"));
+        function.addAction(push("name", "name", "name"));
+
+        actions.add(function.build());
+
+        assertSame(actions, pool.optimize(actions));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * ControlFlowGraphTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.action;
+
+import static com.flagstone.transform.util.action.ActionFixtures.push;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.ExceptionHandler;
+import com.flagstone.transform.action.If;
+import com.flagstone.transform.action.Jump;
+import com.flagstone.transform.action.NewFunction2;
+import com.flagstone.transform.action.WaitForFrame;
+
+public final class ControlFlowGraphTest {
+
+    private transient List<Action> actions;
+
+    @Before
+    public void setUp() {
+        actions = new ArrayList<Action>();
+    }
+
+    @Test
+    public void emptyListHasOnlyExit() {
+        final ControlFlowGraph graph = new ControlFlowGraph(actions);
+
+        assertTrue(graph.getBlocks().isEmpty());
+        assertSame(graph.getExit(), graph.getEntry());
+    }
+
+    @Test
+    public void straightLineIsSingleBlock() {
+        actions.add(push(1));
+        actions.add(BasicAction.TRACE);
+
+        final ControlFlowGraph graph = new ControlFlowGraph(actions);
+        final BasicBlock block = graph.getEntry();
+
+        assertEquals(1, graph.getBlocks().size());
+        assertEquals(2, block.getActions().size());
+        assertSame(graph.getExit(), block.getNext());
+        assertNull(block.getBranch());
+        assertEquals(9, graph.getOffset(2));
+    }
+
+    @Test
+    public void branchesAreResolved() {
+        actions.add(push("a"));
+        actions.add(BasicAction.GET_VARIABLE);
+        actions.add(new If(14));
+        actions.add(push(1));
+        actions.add(BasicAction.TRACE);
+        actions.add(new Jump(-26));
+        actions.add(BasicAction.END);
+
+        final ControlFlowGraph graph = new ControlFlowGraph(actions);
+        final List<BasicBlock> blocks = graph.getBlocks();
+
+        assertEquals(3, blocks.size());
+        assertEquals(12, blocks.get(1).getOffset());
+        assertEquals(14, blocks.get(1).getLength());
+
+        assertSame(blocks.get(1), blocks.get(0).getNext());
+        assertSame(blocks.get(2), blocks.get(0).getBranch());
+        assertNull(blocks.get(1).getNext());
+        assertSame(blocks.get(0), blocks.get(1).getBranch());
+        assertTrue(blocks.get(2).getSuccessors().isEmpty());
+
+        assertEquals(1, blocks.get(0).getPredecessors().size());
+        assertSame(blocks.get(1), blocks.get(0).getPredecessors().get(0));
+        assertSame(blocks.get(1), graph.getBlock(4));
+    }
+
+    @Test
+    public void skippedActionsAreResolved() {
+        actions.add(new WaitForFrame(1, 2));
+        actions.add(push(1));
+        actions.add(BasicAction.TRACE);
+        actions.add(push(2));
+        actions.add(BasicAction.TRACE);
+
+        final List<BasicBlock> blocks =
+            new ControlFlowGraph(actions).getBlocks();
+
+        assertEquals(3, blocks.size());
+        assertSame(blocks.get(1), blocks.get(0).getNext());
+        assertSame(blocks.get(2), blocks.get(0).getBranch());
+        assertEquals(3, blocks.get(2).getStart());
+    }
+
+    @Test
+    public void branchToEndGoesToExit() {
+        actions.add(push(true));
+        actions.add(new If(1));
+        actions.add(BasicAction.TRACE);
+
+        final ControlFlowGraph graph = new ControlFlowGraph(actions);
+
+        assertSame(graph.getExit(), graph.getEntry().getBranch());
+        assertEquals(2, graph.getExit().getPredecessors().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void branchInsideActionIsRejected() {
+        actions.add(push(1));
+        actions.add(new Jump(-3));
+
+        new ControlFlowGraph(actions);
+    }
+
+    @Test
+    public void regionsAreAnalysed() {
+        final NewFunction2.Builder function = new NewFunction2.Builder();
+        function.setName("f");
+        function.addAction(push(1));
+        function.addAction(BasicAction.RETURN);
+
+        final ExceptionHandler.Builder handler =
+            new ExceptionHandler.Builder();
+        handler.setRegister(1);
+        handler.addToTry(BasicAction.THROW);
+        handler.addToCatch(BasicAction.TRACE);
+
+        actions.add(function.build());
+        actions.add(handler.build());
+
+        final List<Region> regions =
+            new ControlFlowGraph(actions).getRegions();
+
+        assertEquals(3, regions.size());
+        assertEquals(Region.Type.FUNCTION, regions.get(0).getType());
+        assertEquals(Region.Type.TRY, regions.get(1).getType());
+        assertEquals(Region.Type.CATCH, regions.get(2).getType());
+        assertEquals(1, regions.get(2).getIndex());
+        assertTrue(regions.get(0).getGraph().getEntry()
+                .getSuccessors().isEmpty());
+    }
+}
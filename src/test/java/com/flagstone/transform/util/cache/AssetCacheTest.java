@@ -0,0 +1,345 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.font.DefineFont2;
+import com.flagstone.transform.util.font.Font;
+import com.flagstone.transform.util.font.FontFactory;
+import com.flagstone.transform.util.font.Glyph;
+import com.flagstone.transform.util.image.ImageFactory;
+import com.flagstone.transform.util.sound.SoundFactory;
+import com.flagstone.transform.util.text.CharacterSet;
+
+public final class AssetCacheTest {
+
+    private static final File FONT =
+        new File("src/test/resources/ttf-reference/Vera.ttf");
+    private static final File IMAGE =
+        new File("src/test/resources/png-reference/basn6a08.png");
+    private static final File OTHER_IMAGE =
+        new File("src/test/resources/png-reference/basn2c08.png");
+    private static final File SOUND =
+        new File("src/test/resources/wav-reference/"
+                + "tone-1000Hz_44100Hz_16bit.wav");
+
+    private File directory;
+    private AssetCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("assets", "");
+        directory.delete();
+        cache = new AssetCache(directory);
+    }
+
+    @After
+    public void tearDown() {
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static byte[] read(final InputStream stream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[256];
+        int count;
+        while ((count = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encode(final MovieTag tag) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SWFEncoder coder = new SWFEncoder(out);
+        final Context context = new Context();
+        context.put(Context.VERSION, 10);
+        tag.prepareToEncode(context);
+        tag.encode(coder, context);
+        coder.flush();
+        return out.toByteArray();
+    }
+
+    private static DefineFont2 define(final Font font) {
+        final CharacterSet set = new CharacterSet();
+        set.add("Hello, World!");
+        return font.defineFont(1, set.getCharacters());
+    }
+
+    @Test
+    public void checkDirectoryIsCreated() {
+        assertTrue(directory.isDirectory());
+        assertEquals(directory, cache.getDirectory());
+    }
+
+    @Test
+    public void checkKeyDependsOnContents() throws IOException {
+        final String key = AssetCache.key(FONT);
+
+        assertEquals(40, key.length());
+        assertEquals(key, AssetCache.key(new File(FONT.getPath())));
+        assertFalse(key.equals(AssetCache.key(IMAGE)));
+    }
+
+    @Test
+    public void checkEntryIsStored() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4, 5};
+
+        assertNull(cache.get("key", "test"));
+        cache.put("key", "test", data);
+        assertArrayEquals(data, read(cache.get("key", "test")));
+        assertNull(cache.get("key", "other"));
+
+        assertTrue(cache.remove("key", "test"));
+        assertNull(cache.get("key", "test"));
+    }
+
+    @Test
+    public void checkInvalidEntryIsIgnored() throws IOException {
+        final FileOutputStream stream =
+            new FileOutputStream(new File(directory, "key.test"));
+        stream.write(new byte[] {'T', 'F', 'A', 'C', 99, 0, 0, 0, 0, 0, 0, 0});
+        stream.close();
+
+        assertNull(cache.get("key", "test"));
+        cache.put("key", "test", new byte[] {1});
+        assertNotNull(cache.get("key", "test"));
+    }
+
+    @Test
+    public void checkFontsAreStored() throws IOException, DataFormatException {
+        final FontFactory factory = new FontFactory();
+        factory.setAssetCache(cache);
+        factory.read(FONT);
+        final Font expected = factory.getFonts().get(0);
+
+        assertNotNull(cache.get(AssetCache.key(FONT), "font"));
+
+        final FontFactory other = new FontFactory();
+        other.setAssetCache(cache);
+        other.read(FONT);
+        final Font actual = other.getFonts().get(0);
+
+        assertEquals(expected.getFace().getName(),
+                actual.getFace().getName());
+        assertEquals(expected.getNumberOfGlyphs(),
+                actual.getNumberOfGlyphs());
+        assertEquals(expected.getAscent(), actual.getAscent());
+        assertEquals(expected.glyphForCharacter('W'),
+                actual.glyphForCharacter('W'));
+        assertArrayEquals(encode(define(expected)), encode(define(actual)));
+    }
+
+    @Test
+    public void checkStoredGlyphsMatchDecodedGlyphs()
+            throws IOException, DataFormatException {
+        final FontFactory factory = new FontFactory();
+        factory.setAssetCache(cache);
+        factory.read(FONT);
+
+        final FontFactory other = new FontFactory();
+        other.setAssetCache(cache);
+        other.read(FONT);
+        final Font actual = other.getFonts().get(0);
+
+        final FontFactory fresh = new FontFactory();
+        fresh.read(FONT);
+        final Font expected = fresh.getFonts().get(0);
+
+        for (int i = 0; i < expected.getNumberOfGlyphs(); i++) {
+            final Glyph glyph = expected.getGlyph(i);
+            if (glyph != null) {
+                assertEquals(glyph.getShape().toString(),
+                        actual.getGlyph(i).getShape().toString());
+            }
+        }
+    }
+
+    @Test
+    public void checkImagesAreStored()
+            throws IOException, DataFormatException {
+        final ImageFactory expected = new ImageFactory();
+        expected.read(IMAGE);
+        final byte[] image = expected.getDecoder().getImage();
+        final byte[] definition = encode(expected.defineImage(2));
+
+        final ImageFactory factory = new ImageFactory();
+        factory.setAssetCache(cache);
+        factory.read(IMAGE);
+
+        final ImageFactory other = new ImageFactory();
+        other.setAssetCache(cache);
+        other.read(IMAGE);
+
+        assertEquals(expected.getDecoder().getWidth(),
+                other.getDecoder().getWidth());
+        assertEquals(expected.getDecoder().getHeight(),
+                other.getDecoder().getHeight());
+        assertArrayEquals(image, other.getDecoder().getImage());
+        assertEquals(2, other.defineImage(2).getIdentifier());
+        assertArrayEquals(definition, encode(factory.defineImage(2)));
+        assertArrayEquals(definition, encode(factory.defineImage(2)));
+        assertArrayEquals(definition, encode(other.defineImage(2)));
+    }
+
+    @Test
+    public void checkStoredImageDecoderReadsOtherImages()
+            throws IOException, DataFormatException {
+        final ImageFactory expected = new ImageFactory();
+        expected.read(OTHER_IMAGE);
+
+        final ImageFactory factory = new ImageFactory();
+        factory.setAssetCache(cache);
+        factory.read(IMAGE);
+        factory.read(IMAGE);
+
+        final InputStream stream = new FileInputStream(OTHER_IMAGE);
+        try {
+            factory.read(stream);
+        } finally {
+            stream.close();
+        }
+
+        assertEquals(expected.getDecoder().getWidth(),
+                factory.getDecoder().getWidth());
+        assertArrayEquals(expected.getDecoder().getImage(),
+                factory.getDecoder().getImage());
+        assertArrayEquals(encode(expected.defineImage(2)),
+                encode(factory.defineImage(2)));
+    }
+
+    @Test
+    public void checkStoredSoundDecoderReadsOtherSounds()
+            throws IOException, DataFormatException {
+        final SoundFactory expected = new SoundFactory();
+        expected.read(SOUND);
+
+        final SoundFactory factory = new SoundFactory();
+        factory.setAssetCache(cache);
+        factory.read(SOUND);
+        factory.read(SOUND);
+
+        final InputStream stream = new FileInputStream(SOUND);
+        try {
+            factory.read(stream);
+        } finally {
+            stream.close();
+        }
+
+        assertArrayEquals(encode(expected.defineSound(3)),
+                encode(factory.defineSound(3)));
+        assertArrayEquals(encode(expected.streamHeader(12f)),
+                encode(factory.streamHeader(12f)));
+        assertArrayEquals(encode(expected.streamSound()),
+                encode(factory.streamSound()));
+    }
+
+    @Test
+    public void checkSoundsAreStored()
+            throws IOException, DataFormatException {
+        final SoundFactory expected = new SoundFactory();
+        expected.read(SOUND);
+
+        final SoundFactory factory = new SoundFactory();
+        factory.setAssetCache(cache);
+        factory.read(SOUND);
+
+        final SoundFactory other = new SoundFactory();
+        other.setAssetCache(cache);
+        other.read(SOUND);
+
+        assertArrayEquals(encode(expected.defineSound(3)),
+                encode(factory.defineSound(3)));
+        assertArrayEquals(encode(expected.defineSound(3)),
+                encode(other.defineSound(3)));
+        assertArrayEquals(encode(expected.streamHeader(12f)),
+                encode(other.streamHeader(12f)));
+        assertArrayEquals(encode(expected.streamSound()),
+                encode(other.streamSound()));
+    }
+
+    @Test
+    public void checkStoredSoundIsDecodedOnce()
+            throws IOException, DataFormatException {
+        final SoundFactory expected = new SoundFactory();
+        expected.read(SOUND);
+
+        final File file = File.createTempFile("sound", ".wav");
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            final InputStream in = new FileInputStream(SOUND);
+            try {
+                out.write(read(in));
+            } finally {
+                in.close();
+            }
+        } finally {
+            out.close();
+        }
+
+        final SoundFactory factory = new SoundFactory();
+        factory.setAssetCache(cache);
+        factory.read(file);
+        file.delete();
+
+        assertArrayEquals(encode(expected.streamHeader(12f)),
+                encode(factory.streamHeader(12f)));
+        assertArrayEquals(encode(expected.streamSound()),
+                encode(factory.streamSound()));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * TasksTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings({"PMD.JUnitAssertionsShouldIncludeMessage" })
+public final class TasksTest {
+
+    private transient ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static Callable<Integer> value(final int value) {
+        return new Callable<Integer>() {
+            public Integer call() {
+                return value;
+            }
+        };
+    }
+
+    private static Callable<Integer> failure(final Exception exception) {
+        return new Callable<Integer>() {
+            public Integer call() throws Exception {
+                throw exception;
+            }
+        };
+    }
+
+    @Test
+    public void resultsAreInTheSameOrderAsTasks() throws IOException {
+        final List<Callable<Integer>> tasks =
+            new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(value(i));
+        }
+        final List<Integer> results = Tasks.run(executor, tasks);
+
+        assertEquals(10, results.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), results.get(i));
+        }
+    }
+
+    @Test
+    public void failureCancelsOutstandingTasks() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final List<Callable<Integer>> tasks =
+            new ArrayList<Callable<Integer>>();
+
+        tasks.add(new Callable<Integer>() {
+            public Integer call() throws InterruptedException {
+                started.await();
+                throw new IllegalStateException();
+            }
+        });
+        tasks.add(new Callable<Integer>() {
+            public Integer call() {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (final InterruptedException e) {
+                    cancelled.countDown();
+                }
+                return 0;
+            }
+        });
+
+        try {
+            Tasks.run(executor, tasks);
+            fail();
+        } catch (final IllegalStateException e) {
+            assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        } catch (final IOException e) {
+            fail();
+        }
+    }
+
+    @Test
+    public void ioExceptionIsRethrown() {
+        final IOException exception = new IOException();
+        final List<Callable<Integer>> tasks =
+            new ArrayList<Callable<Integer>>();
+        tasks.add(failure(exception));
+
+        try {
+            Tasks.run(executor, tasks);
+            fail();
+        } catch (final IOException e) {
+            assertSame(exception, e);
+        }
+    }
+
+    @Test
+    public void checkedExceptionIsWrapped() {
+        final Exception exception = new Exception("checked");
+        final List<Callable<Integer>> tasks =
+            new ArrayList<Callable<Integer>>();
+        tasks.add(failure(exception));
+
+        try {
+            Tasks.run(executor, tasks);
+            fail();
+        } catch (final IOException e) {
+            assertSame(exception, e.getCause());
+            assertEquals("checked", e.getMessage());
+        }
+    }
+
+    @Test
+    public void runtimeExceptionIsRethrown() throws IOException {
+        final RuntimeException exception = new IllegalArgumentException();
+        final List<Callable<Integer>> tasks =
+            new ArrayList<Callable<Integer>>();
+        tasks.add(failure(exception));
+
+        try {
+            Tasks.run(executor, tasks);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            assertSame(exception, e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.font;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.FontFormatException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.flagstone.transform.util.text.CharacterSet;
+
+public final class AWTDecoderTest {
+
+    private static final File FONT =
+        new File("src/test/resources/ttf-reference/Vera.ttf");
+
+    private static java.awt.Font awtFont;
+
+    @BeforeClass
+    public static void load() throws IOException, FontFormatException {
+        awtFont = java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT, FONT);
+    }
+
+    private Font read(final AWTDecoder decoder)
+            throws IOException, DataFormatException {
+        decoder.read(awtFont);
+        return decoder.getFonts().get(0);
+    }
+
+    private void assertSameGlyphs(final Font expected, final Font actual) {
+        assertEquals(expected.getNumberOfGlyphs(),
+                actual.getNumberOfGlyphs());
+        assertEquals(expected.getAscent(), actual.getAscent());
+        assertEquals(expected.getDescent(), actual.getDescent());
+        assertEquals(expected.getLeading(), actual.getLeading());
+
+        for (int i = 0; i < expected.getNumberOfGlyphs(); i++) {
+            final Glyph glyph = expected.getGlyph(i);
+            if (glyph != null) {
+                assertEquals(expected.characterForGlyph(i),
+                        actual.characterForGlyph(i));
+                assertEquals(glyph.getAdvance(),
+                        actual.getGlyph(i).getAdvance());
+                assertEquals(glyph.getShape().toString(),
+                        actual.getGlyph(i).getShape().toString());
+            }
+        }
+    }
+
+    @Test
+    public void checkDefaultIsSequential() {
+        final AWTDecoder decoder = new AWTDecoder();
+        assertEquals(null, decoder.getExecutor());
+        assertEquals(null, decoder.getCharacters());
+    }
+
+    @Test
+    public void checkAllCharactersDecoded()
+            throws IOException, DataFormatException {
+        final Font font = read(new AWTDecoder());
+
+        assertEquals(awtFont.getNumGlyphs(), font.getNumberOfGlyphs());
+        assertEquals(-1, font.canDisplay("abcXYZ"));
+        assertNotNull(font.getGlyph(font.glyphForCharacter('a')).getShape());
+    }
+
+    @Test
+    public void checkParallelDecodingMatchesSequential()
+            throws IOException, DataFormatException {
+        final Font expected = read(new AWTDecoder());
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final AWTDecoder decoder = new AWTDecoder();
+            decoder.setExecutor(executor);
+            assertSameGlyphs(expected, read(decoder));
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void checkFailedDecodingCancelsBatches()
+            throws IOException, DataFormatException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<RunnableFuture<?>> tasks =
+            new ArrayList<RunnableFuture<?>>();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(
+                    final Callable<T> callable) {
+                final boolean first = tasks.isEmpty();
+                final RunnableFuture<T> task = super.newTaskFor(
+                        new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        if (first) {
+                            throw new IllegalStateException();
+                        }
+                        latch.await();
+                        return callable.call();
+                    }
+                });
+                tasks.add(task);
+                return task;
+            }
+        };
+
+        try {
+            final AWTDecoder decoder = new AWTDecoder();
+            decoder.setExecutor(executor);
+            read(decoder);
+            fail();
+        } catch (final IllegalStateException e) {
+            assertTrue(tasks.size() > 1);
+            for (final RunnableFuture<?> task : tasks.subList(1,
+                    tasks.size())) {
+                assertTrue(task.isCancelled());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void checkOnlyRequestedCharactersDecoded()
+            throws IOException, DataFormatException {
+        final CharacterSet set = new CharacterSet();
+        set.add("cab\u4e2d");
+
+        final AWTDecoder decoder = new AWTDecoder();
+        decoder.setCharacters(set);
+        final Font font = read(decoder);
+
+        assertEquals(4, font.getNumberOfGlyphs());
+        assertEquals(-1, font.canDisplay("abc"));
+        assertFalse(font.canDisplay('d'));
+        assertEquals(0, font.glyphForCharacter('\u4e2d'));
+        assertEquals('a', font.characterForGlyph(1));
+        assertEquals('c', font.characterForGlyph(3));
+    }
+
+    @Test
+    public void checkSubsetMatchesFullFont()
+            throws IOException, DataFormatException {
+        final Font full = read(new AWTDecoder());
+        final CharacterSet set = new CharacterSet();
+        set.add("Transform");
+
+        final AWTDecoder decoder = new AWTDecoder();
+        decoder.setCharacters(set);
+        final Font subset = read(decoder);
+
+        for (final char character : set.getCharacters()) {
+            assertEquals(full.advanceForCharacter(character),
+                    subset.advanceForCharacter(character));
+            assertEquals(full.getGlyph(full.glyphForCharacter(character))
+                    .getShape().toString(),
+                    subset.getGlyph(subset.glyphForCharacter(character))
+                    .getShape().toString());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.font;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieHeader;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.font.AlignmentZone;
+import com.flagstone.transform.font.DefineFont3;
+import com.flagstone.transform.font.FontAlignment;
+import com.flagstone.transform.font.GlyphAlignment;
+import com.flagstone.transform.shape.Curve;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeStyle;
+
+public final class AlignmentAnalyserTest {
+
+    private static final File FONT =
+        new File("src/test/resources/ttf-reference/Vera.ttf");
+
+    private static Shape square() {
+        final Shape shape = new Shape();
+        shape.add(new ShapeStyle().setMove(10, -100));
+        shape.add(new Line(50, 0));
+        shape.add(new Line(0, 100));
+        shape.add(new Line(-50, 0));
+        shape.add(new Line(0, -100));
+        return shape;
+    }
+
+    private static DefineFont3 font() throws IOException,
+            DataFormatException {
+        final TTFDecoder decoder = new TTFDecoder();
+        decoder.read(FONT);
+        final FontSubset subset = new FontSubset(decoder.getFonts().get(0));
+        subset.add("The quick brown fox jumps over the lazy dog 0123456789");
+        subset.add("THE QUICK BROWN FOX JUMPS OVER THE LAZY DOG .,;:!?");
+        return subset.defineFont3(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkCapacityMustBePositive() {
+        new AlignmentAnalyser(0);
+    }
+
+    @Test
+    public void checkZonesForLines() throws IOException {
+        final GlyphAlignment alignment =
+            new AlignmentAnalyser().alignGlyph(square());
+
+        assertTrue(alignment.alignmentX());
+        assertTrue(alignment.alignmentY());
+        assertEquals(new AlignmentZone(10, 50),
+                alignment.getAlignments().get(0));
+        assertEquals(new AlignmentZone(0, 100),
+                alignment.getAlignments().get(1));
+    }
+
+    @Test
+    public void checkZonesIncludeCurveExtremes() throws IOException {
+        final Shape shape = new Shape();
+        shape.add(new ShapeStyle().setMove(0, 0));
+        shape.add(new Curve(50, -100, 50, 100));
+        shape.add(new Line(-100, 0));
+
+        final GlyphAlignment alignment =
+            new AlignmentAnalyser().alignGlyph(shape);
+
+        assertEquals(new AlignmentZone(0, 100),
+                alignment.getAlignments().get(0));
+        assertEquals(new AlignmentZone(0, 50),
+                alignment.getAlignments().get(1));
+    }
+
+    @Test
+    public void checkEmptyGlyphHasNoZones() throws IOException {
+        final GlyphAlignment alignment =
+            new AlignmentAnalyser().alignGlyph(new Shape());
+
+        assertFalse(alignment.alignmentX());
+        assertFalse(alignment.alignmentY());
+        assertEquals(2, alignment.getAlignments().size());
+    }
+
+    @Test
+    public void checkAlignmentsAreCached() throws IOException {
+        final AlignmentAnalyser analyser = new AlignmentAnalyser();
+        final GlyphAlignment first = analyser.alignGlyph(square());
+
+        assertSame(first, analyser.alignGlyph(square()));
+        assertSame(first, analyser.alignGlyph(FontSubset.encode(square())));
+        assertEquals(1, analyser.size());
+
+        analyser.clear();
+        assertEquals(0, analyser.size());
+    }
+
+    @Test
+    public void checkParallelMatchesSequential()
+            throws IOException, DataFormatException {
+        final DefineFont3 font = font();
+        final FontAlignment expected = new AlignmentAnalyser().align(font);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final AlignmentAnalyser analyser = new AlignmentAnalyser();
+            analyser.setExecutor(executor);
+            final FontAlignment actual = analyser.align(font);
+
+            assertEquals(font.getShapes().size(), actual.getZones().size());
+            assertEquals(expected.toString(), actual.toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void checkFontAlignmentIsEncoded()
+            throws IOException, DataFormatException {
+        final DefineFont3 font = font();
+        final AlignmentAnalyser analyser = new AlignmentAnalyser();
+        analyser.setStrokeWidth(FontAlignment.StrokeWidth.THIN);
+        final FontAlignment alignment = analyser.align(font);
+
+        final Movie movie = new Movie();
+        final MovieHeader header = new MovieHeader();
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        header.setFrameRate(1f);
+        header.setCompressed(false);
+        movie.add(header);
+        movie.add(font);
+        movie.add(alignment);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        movie.encodeToStream(out);
+
+        final Movie decoded = new Movie();
+        decoded.decodeFromStream(new ByteArrayInputStream(out.toByteArray()));
+        final FontAlignment copy = (FontAlignment) decoded.getObjects().get(2);
+
+        assertEquals(font.getIdentifier(), copy.getIdentifier());
+        assertEquals(FontAlignment.StrokeWidth.THIN, copy.getStrokeWidth());
+        assertEquals(alignment.getZones().size(), copy.getZones().size());
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.font;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public final class FontCacheTest {
+
+    private static final File REGULAR =
+        new File("src/test/resources/ttf-reference/Vera.ttf");
+    private static final File BOLD =
+        new File("src/test/resources/ttf-reference/VeraBd.ttf");
+
+    private transient FontCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new FontCache();
+    }
+
+    private List<Font> read(final File file)
+            throws IOException, DataFormatException {
+        final FontFactory factory = new FontFactory();
+        factory.setCache(cache);
+        factory.read(file);
+        return factory.getFonts();
+    }
+
+    @Test
+    public void fontsAreDecodedOnce() throws IOException, DataFormatException {
+        final List<Font> first = read(REGULAR);
+        final List<Font> second = read(REGULAR);
+
+        assertSame(first.get(0), second.get(0));
+        assertEquals(1, cache.size());
+        assertTrue(cache.getSize() > 0);
+    }
+
+    @Test
+    public void factoryWithoutCacheDecodesFont()
+            throws IOException, DataFormatException {
+        final FontFactory factory = new FontFactory();
+        factory.read(REGULAR);
+        final Font font = factory.getFonts().get(0);
+        factory.read(REGULAR);
+
+        assertNotSame(font, factory.getFonts().get(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cachedListIsUnmodifiable()
+            throws IOException, DataFormatException {
+        read(REGULAR).clear();
+    }
+
+    @Test
+    public void changedFileIsDecodedAgain()
+            throws IOException, DataFormatException {
+        final File file = File.createTempFile("font", ".ttf");
+        file.deleteOnExit();
+        copy(REGULAR, file);
+
+        final List<Font> first = read(file);
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+
+        assertNull(cache.get(file));
+        assertNotSame(first.get(0), read(file).get(0));
+    }
+
+    @Test
+    public void leastRecentlyUsedFontsAreEvicted()
+            throws IOException, DataFormatException {
+        final long size = read(REGULAR).get(0).estimateSize();
+        cache = new FontCache(size * 3 / 2);
+
+        read(REGULAR);
+        read(BOLD);
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(REGULAR));
+        assertTrue(cache.getSize() <= cache.getCapacity());
+    }
+
+    @Test
+    public void lazyFontsIncludeGlyphsNotDecoded()
+            throws IOException, DataFormatException {
+        final TTFDecoder decoder = new TTFDecoder();
+        decoder.setLazy(true);
+        decoder.read(REGULAR);
+        final Font font = decoder.getFonts().get(0);
+        final long size = font.estimateSize();
+        final long eager = read(REGULAR).get(0).estimateSize();
+
+        assertTrue(size > eager / 2);
+        assertTrue(size < eager * 2);
+
+        font.getGlyph(font.glyphForCharacter('a'));
+        assertEquals(size, font.estimateSize());
+    }
+
+    @Test
+    public void fontsLargerThanCacheAreNotStored()
+            throws IOException, DataFormatException {
+        cache = new FontCache(1);
+        read(REGULAR);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void threadsShareFonts() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<List<Font>>> results =
+            new ArrayList<Future<List<Font>>>();
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<List<Font>>() {
+                    @Override
+                    public List<Font> call() throws Exception {
+                        return read(REGULAR);
+                    }
+                }));
+            }
+            final Font font = results.get(0).get().get(0);
+
+            for (final Future<List<Font>> result : results) {
+                assertSame(font, result.get().get(0));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkCapacityIsPositive() {
+        new FontCache(0);
+    }
+
+    private void copy(final File src, final File dst) throws IOException {
+        final InputStream in = new FileInputStream(src);
+        final OutputStream out = new FileOutputStream(dst);
+        final byte[] buffer = new byte[4096];
+        int count;
+        try {
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.font;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieHeader;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.font.CharacterFormat;
+import com.flagstone.transform.font.DefineFont2;
+import com.flagstone.transform.font.DefineFont3;
+import com.flagstone.transform.font.GlyphCache;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeData;
+import com.flagstone.transform.util.text.CharacterSet;
+
+public final class FontSubsetTest {
+
+    private static final File FONT =
+        new File("src/test/resources/ttf-reference/Vera.ttf");
+
+    private static final String ALPHABET = "abc XYZ";
+
+    private Font font;
+    private FontSubset subset;
+
+    @Before
+    public void setUp() throws IOException, DataFormatException {
+        final TTFDecoder decoder = new TTFDecoder();
+        decoder.read(FONT);
+        font = decoder.getFonts().get(0);
+        subset = new FontSubset(font);
+    }
+
+    private byte[] encode(final MovieTag definition)
+            throws IOException, DataFormatException {
+        final Movie movie = new Movie();
+        final MovieHeader header = new MovieHeader();
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        header.setFrameRate(1f);
+        header.setCompressed(false);
+        movie.add(header);
+        movie.add(definition);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        movie.encodeToStream(out);
+        return out.toByteArray();
+    }
+
+    private MovieTag decode(final byte[] data)
+            throws IOException, DataFormatException {
+        final Movie movie = new Movie();
+        movie.decodeFromStream(new ByteArrayInputStream(data));
+        return movie.getObjects().get(1);
+    }
+
+    @Test
+    public void checkCharactersAreMerged() {
+        final CharacterSet set = new CharacterSet();
+        set.add("cab");
+        subset.add(set).add("abd").add('e');
+        assertEquals(5, subset.size());
+        subset.clear();
+        assertEquals(0, subset.size());
+    }
+
+    @Test
+    public void checkDefineFontMatchesFont()
+            throws IOException, DataFormatException {
+        final CharacterSet set = new CharacterSet();
+        set.add(ALPHABET);
+        subset.add(ALPHABET);
+
+        final DefineFont2 expected = font.defineFont(1,
+                set.getCharacters());
+        final DefineFont2 actual = subset.defineFont(1);
+
+        assertEquals(expected.getCodes(), actual.getCodes());
+        assertEquals(expected.getAdvances(), actual.getAdvances());
+        assertEquals(expected.getBounds(), actual.getBounds());
+        assertArrayEquals(encode(expected), encode(actual));
+    }
+
+    @Test
+    public void checkEncodedGlyphsAreReused() throws IOException {
+        subset.add("ab");
+        final DefineFont2 first = subset.defineFont(1);
+        subset.clear();
+        subset.add("b");
+        final DefineFont2 second = subset.defineFont(2);
+
+        assertEquals(1, second.getShapes().size());
+        assertSame(first.getShapes().get(1), second.getShapes().get(0));
+    }
+
+    @Test
+    public void checkEncodedGlyphsAreScaled() throws IOException {
+        subset.add(ALPHABET);
+        final SWFFontDecoder decoder = new SWFFontDecoder();
+        decoder.decode(subset.defineFont(1));
+        final FontSubset encoded = new FontSubset(decoder.getFonts().get(0));
+        encoded.add(ALPHABET);
+
+        assertEquals(subset.defineFont3(1).getAdvances(),
+                encoded.defineFont3(1).getAdvances());
+
+        final List<Shape> expected = subset.defineFont3(1).getShapes();
+        final List<Shape> actual = encoded.defineFont3(1).getShapes();
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(
+                    ((ShapeData) expected.get(i).getObjects().get(0)).getData(),
+                    ((ShapeData) actual.get(i).getObjects().get(0)).getData());
+        }
+    }
+
+    @Test
+    public void checkGlyphsAreSharedBetweenSubsets() throws IOException {
+        final GlyphCache cache = new GlyphCache();
+        subset.setGlyphCache(cache).add("a");
+        final FontSubset other = new FontSubset(font).setGlyphCache(cache);
+        other.add("a");
+
+        assertSame(subset.defineFont(1).getShapes().get(0),
+                other.defineFont(2).getShapes().get(0));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void checkUnsupportedCharactersUseMissingGlyph()
+            throws IOException {
+        final char code = '\u4e2d';
+        assertFalse(font.canDisplay(code));
+        subset.add(code);
+        final DefineFont2 definition = subset.defineFont(1);
+
+        assertEquals(Integer.valueOf(code), definition.getCodes().get(0));
+        assertEquals(Integer.valueOf(font.getGlyph(
+                font.getMissingGlyph()).getAdvance()),
+                definition.getAdvances().get(0));
+    }
+
+    @Test
+    public void checkGlyphsAreIndexedByGlyph() throws IOException {
+        final Font small = new Font();
+        small.setFace(new FontFace("Small", false, false));
+        small.setEncoding(CharacterFormat.UCS2);
+        small.setNumberOfGlyphs(3);
+        small.setHighestChar('\u0001');
+        for (int i = 0; i < 3; i++) {
+            small.setGlyph(i, i == 2 ? '\u0001' : '\u0000', new Glyph(
+                    new Shape(), new Bounds(0, 0, 0, 0), 10 * (i + 1)));
+        }
+        small.mapCharacter('\u0001', 2);
+
+        final FontSubset builder = new FontSubset(small).add('\u0001');
+
+        assertEquals(Integer.valueOf(30),
+                builder.defineFont(1).getAdvances().get(0));
+        assertEquals(Integer.valueOf(600),
+                builder.defineFont3(1).getAdvances().get(0));
+    }
+
+    @Test
+    public void checkDefineFont3IsScaled()
+            throws IOException, DataFormatException {
+        subset.add(ALPHABET);
+        final DefineFont2 font2 = subset.defineFont(1);
+        final DefineFont3 font3 = subset.defineFont3(1);
+
+        assertEquals(font2.getCodes(), font3.getCodes());
+        assertEquals(font2.getAscent() * 20, font3.getAscent());
+
+        final List<Integer> advances = font2.getAdvances();
+        for (int i = 0; i < advances.size(); i++) {
+            assertEquals(advances.get(i) * 20,
+                    font3.getAdvances().get(i).intValue());
+        }
+
+        final DefineFont3 decoded = (DefineFont3) decode(encode(font3));
+        assertEquals(font3.getCodes(), decoded.getCodes());
+        assertEquals(font3.getAdvances(), decoded.getAdvances());
+        assertEquals(font3.getBounds(), decoded.getBounds());
+    }
+
+    @Test
+    public void checkDefineFont3IsNotScaledTwice()
+            throws IOException, DataFormatException {
+        subset.add(ALPHABET);
+        final DefineFont3 font3 = subset.defineFont3(1);
+
+        final SWFFontDecoder decoder = new SWFFontDecoder();
+        decoder.decode((DefineFont3) decode(encode(font3)));
+        final Font decoded = decoder.getFonts().get(0);
+        assertEquals(Font.FONT3_EM_SQUARE, decoded.getEmSquare());
+
+        final DefineFont3 copy = new FontSubset(decoded)
+                .add(ALPHABET).defineFont3(1);
+
+        assertEquals(font3.getAscent(), copy.getAscent());
+        assertEquals(font3.getAdvances(), copy.getAdvances());
+        assertEquals(font3.getBounds(), copy.getBounds());
+        assertArrayEquals(encode(font3), encode(copy));
+    }
+}
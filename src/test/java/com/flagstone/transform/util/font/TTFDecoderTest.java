@@ -0,0 +1,169 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.font;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.font.DefineFont2;
+import com.flagstone.transform.util.text.CharacterSet;
+
+public final class TTFDecoderTest {
+
+    private static final File FONT =
+        new File("src/test/resources/ttf-reference/Vera.ttf");
+
+    private static final String ALPHABET = "abcXYZ é€";
+
+    private Font read(final boolean lazy)
+            throws IOException, DataFormatException {
+        final TTFDecoder decoder = new TTFDecoder();
+        decoder.setLazy(lazy);
+        decoder.read(FONT);
+        return decoder.getFonts().get(0);
+    }
+
+    private DefineFont2 define(final Font font) {
+        final CharacterSet set = new CharacterSet();
+        set.add(ALPHABET);
+        return font.defineFont(1, set.getCharacters());
+    }
+
+    @Test
+    public void checkDefaultIsEager() {
+        assertFalse(new TTFDecoder().isLazy());
+    }
+
+    @Test
+    public void lazyFontMatchesEagerFont()
+            throws IOException, DataFormatException {
+        final DefineFont2 eager = define(read(false));
+        final DefineFont2 lazy = define(read(true));
+
+        assertEquals(eager.getCodes(), lazy.getCodes());
+        assertEquals(eager.getAdvances(), lazy.getAdvances());
+        assertEquals(eager.getBounds().toString(),
+                lazy.getBounds().toString());
+
+        for (int i = 0; i < eager.getShapes().size(); i++) {
+            assertEquals(eager.getShapes().get(i).getObjects().toString(),
+                    lazy.getShapes().get(i).getObjects().toString());
+        }
+    }
+
+    @Test
+    public void lazyFontDecodesGlyphsOnce()
+            throws IOException, DataFormatException {
+        final Font font = read(true);
+        final int index = font.glyphForCharacter('a');
+
+        assertNotNull(font.getGlyph(index));
+        assertSame(font.getGlyph(index), font.getGlyph(index));
+        assertEquals(font.getGlyph(index).getAdvance(),
+                font.advanceForCharacter('a'));
+    }
+
+    @Test
+    public void advancesDoNotDecodeGlyphs() {
+        final int[] loaded = new int[1];
+        final Font font = new Font();
+        font.setNumberOfGlyphs(1);
+        font.setHighestChar('a');
+        font.addGlyph('a', null);
+        font.setGlyphLoader(new GlyphLoader() {
+            public Glyph loadGlyph(final int index) {
+                loaded[0]++;
+                return null;
+            }
+            public int loadAdvance(final int index) {
+                return 512;
+            }
+            public long estimateSize() {
+                return 0;
+            }
+        });
+
+        assertEquals(512, font.advanceForCharacter('a'));
+        assertEquals(0, loaded[0]);
+    }
+
+    @Test
+    public void emptyGlyphsHaveNoOutline()
+            throws IOException, DataFormatException {
+        final Font font = read(true);
+        final Glyph space = font.getGlyph(font.glyphForCharacter(' '));
+
+        assertTrue(space.getShape().getObjects().isEmpty());
+        assertTrue(space.getAdvance() > 0);
+    }
+
+    @Test
+    public void compositeGlyphsAreDecoded()
+            throws IOException, DataFormatException {
+        final Font font = read(false);
+        final Glyph glyph = font.getGlyph(font.glyphForCharacter('é'));
+
+        assertFalse(glyph.getShape().getObjects().isEmpty());
+    }
+
+    @Test
+    public void lazyFontFromStream() throws IOException {
+        final TTFDecoder decoder = new TTFDecoder();
+        decoder.setLazy(true);
+
+        final InputStream stream = new FileInputStream(FONT);
+        try {
+            decoder.read(stream);
+        } finally {
+            stream.close();
+        }
+        final List<Font> fonts = decoder.getFonts();
+
+        assertEquals(1, fonts.size());
+        assertEquals(ALPHABET.length(),
+                define(fonts.get(0)).getShapes().size());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.image.ImageTag;
+
+public final class PNGDecoderTest {
+
+    private static final String DIR = "src/test/resources/png-reference/";
+
+    private PNGDecoder decode(final String name)
+            throws IOException, DataFormatException {
+        final PNGDecoder decoder = new PNGDecoder();
+        decoder.read(new FileInputStream(new File(DIR + name)));
+        return decoder;
+    }
+
+    private byte[] encode(final ImageTag tag) throws IOException {
+        final Context context = new Context();
+        context.put(Context.VERSION, 10);
+        tag.prepareToEncode(context);
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder coder = new SWFEncoder(stream);
+        tag.encode(coder, context);
+        coder.flush();
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void checkInterlacedMatchesProgressive()
+            throws IOException, DataFormatException {
+        assertArrayEquals(decode("basn2c08.png").getImage(),
+                decode("basi2c08.png").getImage());
+        assertArrayEquals(decode("basn6a16.png").getImage(),
+                decode("basi6a16.png").getImage());
+    }
+
+    @Test
+    public void checkImageSplitAcrossChunks()
+            throws IOException, DataFormatException {
+        final byte[] expected = decode("basn2c16.png").getImage();
+
+        assertArrayEquals(expected, decode("oi1n2c16.png").getImage());
+        assertArrayEquals(expected, decode("oi9n2c16.png").getImage());
+    }
+
+    @Test
+    public void checkCompressionLevelsAreDecoded()
+            throws IOException, DataFormatException {
+        final byte[] expected = decode("z00n2c08.png").getImage();
+
+        assertArrayEquals(expected, decode("z09n2c08.png").getImage());
+    }
+
+    @Test
+    public void checkDefineImageIsRepeatable()
+            throws IOException, DataFormatException {
+        final PNGDecoder decoder = decode("basn6a08.png");
+        final byte[] image = decoder.getImage();
+        final byte[] definition = encode(decoder.defineImage(1));
+
+        assertArrayEquals(definition, encode(decoder.defineImage(1)));
+        assertArrayEquals(image, decoder.getImage());
+    }
+
+    @Test
+    public void checkDecoderIsReusable()
+            throws IOException, DataFormatException {
+        final PNGDecoder decoder = decode("basi6a08.png");
+        decoder.read(new FileInputStream(new File(DIR + "basn2c08.png")));
+
+        assertArrayEquals(decode("basn2c08.png").getImage(),
+                decoder.getImage());
+    }
+
+    @Test
+    public void checkDecoderIsReusableAfterError()
+            throws IOException, DataFormatException {
+        final File file = new File(DIR + "basn2c08.png");
+        final byte[] data = new byte[(int) file.length()];
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            new DataInputStream(stream).readFully(data);
+        } finally {
+            stream.close();
+        }
+
+        final byte[] corrupt = Arrays.copyOf(data, data.length);
+        Arrays.fill(corrupt, corrupt.length / 2, corrupt.length / 2 + 16,
+                (byte) -1);
+
+        final PNGDecoder decoder = new PNGDecoder();
+        try {
+            decoder.read(new ByteArrayInputStream(corrupt));
+            fail();
+        } catch (final DataFormatException e) {
+            decoder.read(new ByteArrayInputStream(data));
+        }
+
+        assertArrayEquals(decode("basn2c08.png").getImage(),
+                decoder.getImage());
+    }
+
+    @Test
+    public void checkIndexedImage() throws IOException, DataFormatException {
+        final PNGDecoder decoder = decode("basn3p08.png");
+
+        assertEquals(32 * 32 * 4, decoder.getImage().length);
+    }
+
+    @Test
+    public void checkSmallInterlacedImage()
+            throws IOException, DataFormatException {
+        final PNGDecoder decoder = decode("s01i3p01.png");
+
+        assertEquals(1, decoder.getWidth());
+        assertEquals(1, decoder.getHeight());
+        assertArrayEquals(decode("s01n3p01.png").getImage(),
+                decoder.getImage());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.movie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+
+public final class SpatialIndexTest {
+
+    private transient SpatialIndex index;
+
+    @Before
+    public void setUp() {
+        index = new SpatialIndex(100);
+    }
+
+    private Placement add(final int layer, final int xmin, final int ymin,
+            final int xmax, final int ymax) {
+        final Placement placement = new Placement(new int[] {layer}, layer,
+                new Bounds(xmin, ymin, xmax, ymax));
+        index.add(placement);
+        return placement;
+    }
+
+    @Test
+    public void pointQueryFindsContainingObjects() {
+        add(1, 0, 0, 50, 50);
+        add(2, 40, 40, 250, 250);
+        add(3, 300, 300, 400, 400);
+
+        final List<Placement> hits = index.query(45, 45);
+
+        assertEquals(2, hits.size());
+        assertEquals(1, hits.get(0).getLayer());
+        assertEquals(2, hits.get(1).getLayer());
+    }
+
+    @Test
+    public void areaQueryFindsOverlappingObjects() {
+        add(1, 0, 0, 50, 50);
+        add(2, 40, 40, 250, 250);
+        add(3, 300, 300, 400, 400);
+
+        assertEquals(2, index.query(new Bounds(200, 200, 350, 350)).size());
+        assertEquals(0, index.query(new Bounds(500, 0, 600, 100)).size());
+    }
+
+    @Test
+    public void negativeCoordinatesAreIndexed() {
+        add(1, -250, -250, -150, -150);
+
+        assertEquals(1, index.query(-200, -200).size());
+        assertEquals(0, index.query(-100, -100).size());
+    }
+
+    @Test
+    public void largeObjectsAreFound() {
+        add(1, -100000, -100000, 100000, 100000);
+        add(2, 10, 10, 20, 20);
+
+        final List<Placement> hits = index.query(15, 15);
+
+        assertEquals(2, hits.size());
+        assertEquals(1, index.query(5000, 5000).size());
+    }
+
+    @Test
+    public void removedObjectsAreNotFound() {
+        final Placement first = add(1, 0, 0, 150, 150);
+        final Placement second = add(2, -1000000, 0, 1000000, 10);
+
+        assertTrue(index.remove(first));
+        assertTrue(index.remove(second));
+        assertFalse(index.remove(first));
+        assertEquals(0, index.size());
+        assertEquals(0, index.query(5, 5).size());
+    }
+
+    @Test
+    public void resultsAreInStackingOrder() {
+        final Placement clip = new Placement(new int[] {2}, 10,
+                new Bounds(0, 0, 100, 100));
+        final Placement child = new Placement(new int[] {2, 1}, 11,
+                new Bounds(0, 0, 100, 100));
+        final Placement top = new Placement(new int[] {3}, 12,
+                new Bounds(0, 0, 100, 100));
+        index.add(top);
+        index.add(child);
+        index.add(clip);
+
+        final List<Placement> hits = index.query(50, 50);
+
+        assertSame(clip, hits.get(0));
+        assertSame(child, hits.get(1));
+        assertSame(top, hits.get(2));
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void checkCellSizeIsPositive() {
+        new SpatialIndex(0);
+    }
+}
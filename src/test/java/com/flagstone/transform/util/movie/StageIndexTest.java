@@ -0,0 +1,217 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.movie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.PlaceType;
+import com.flagstone.transform.Remove2;
+import com.flagstone.transform.ShowFrame;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.movieclip.DefineMovieClip;
+import com.flagstone.transform.shape.DefineShape;
+import com.flagstone.transform.shape.Shape;
+
+public final class StageIndexTest {
+
+    private transient Movie movie;
+
+    @Before
+    public void setUp() {
+        movie = new Movie();
+        movie.add(new DefineShape(1, new Bounds(0, 0, 100, 100),
+                new ArrayList<FillStyle>(), new ArrayList<LineStyle>(),
+                new Shape()));
+    }
+
+    @Test
+    public void placedShapeIsIndexed() {
+        movie.add(Place2.show(1, 1, 1000, 2000));
+        movie.add(ShowFrame.getInstance());
+
+        final StageIndex stage = new StageIndex(movie);
+
+        assertTrue(stage.nextFrame());
+        final Placement placement = stage.getIndex().getPlacements().get(0);
+
+        assertEquals(1, placement.getIdentifier());
+        assertEquals(1000, placement.getBounds().getMinX());
+        assertEquals(2100, placement.getBounds().getMaxY());
+        assertFalse(stage.nextFrame());
+    }
+
+    @Test
+    public void indexFollowsDisplayList() {
+        movie.add(Place2.show(1, 1, 0, 0));
+        movie.add(ShowFrame.getInstance());
+        movie.add(Place2.move(1, 500, 0));
+        movie.add(ShowFrame.getInstance());
+        movie.add(ShowFrame.getInstance());
+        movie.add(new Remove2(1));
+        movie.add(ShowFrame.getInstance());
+
+        final StageIndex stage = new StageIndex(movie);
+
+        stage.nextFrame();
+        assertEquals(1, stage.getIndex().query(50, 50).size());
+        stage.nextFrame();
+        assertEquals(0, stage.getIndex().query(50, 50).size());
+        assertEquals(1, stage.getIndex().query(550, 50).size());
+        stage.nextFrame();
+        assertEquals(1, stage.getIndex().size());
+        stage.nextFrame();
+        assertEquals(0, stage.getIndex().size());
+        assertEquals(4, stage.getFrame());
+    }
+
+    @Test
+    public void unchangedLayersKeepPlacements() {
+        movie.add(Place2.show(1, 1, 0, 0));
+        movie.add(ShowFrame.getInstance());
+        movie.add(Place2.show(1, 2, 1000, 0));
+        movie.add(ShowFrame.getInstance());
+
+        final StageIndex stage = new StageIndex(movie);
+
+        stage.nextFrame();
+        final Placement first = stage.getIndex().query(50, 50).get(0);
+        stage.nextFrame();
+
+        assertSame(first, stage.getIndex().query(50, 50).get(0));
+        assertEquals(2, stage.getIndex().size());
+    }
+
+    @Test
+    public void nestedClipsComposeTransforms() {
+        final List<MovieTag> objects = new ArrayList<MovieTag>();
+        objects.add(Place2.show(1, 1, 100, 0));
+        objects.add(ShowFrame.getInstance());
+        objects.add(Place2.move(1, 300, 0));
+        objects.add(ShowFrame.getInstance());
+        movie.add(new DefineMovieClip(2, objects));
+
+        movie.add(new Place2().setType(PlaceType.NEW)
+                .setIdentifier(2).setLayer(1)
+                .setTransform(new CoordTransform(2.0f, 2.0f, 0, 0, 1000, 0)));
+        movie.add(ShowFrame.getInstance());
+        movie.add(ShowFrame.getInstance());
+        movie.add(ShowFrame.getInstance());
+
+        final StageIndex stage = new StageIndex(movie);
+
+        stage.nextFrame();
+        List<Placement> list = stage.getIndex().getPlacements();
+        assertEquals(2, list.size());
+        assertEquals(2, list.get(0).getIdentifier());
+        assertEquals(1, list.get(1).getIdentifier());
+        assertEquals(2, list.get(1).getLayers().length);
+        assertEquals(1200, list.get(1).getBounds().getMinX());
+        assertEquals(1400, list.get(1).getBounds().getMaxX());
+
+        stage.nextFrame();
+        list = stage.getIndex().getPlacements();
+        assertEquals(1600, list.get(1).getBounds().getMinX());
+        assertEquals(1600, list.get(0).getBounds().getMinX());
+
+        stage.nextFrame();
+        list = stage.getIndex().getPlacements();
+        assertEquals(1200, list.get(1).getBounds().getMinX());
+    }
+
+    @Test
+    public void nestedClipsStartWhenPlaced() {
+        final List<MovieTag> inner = new ArrayList<MovieTag>();
+        inner.add(Place2.show(1, 1, 100, 0));
+        inner.add(ShowFrame.getInstance());
+        inner.add(Place2.move(1, 300, 0));
+        inner.add(ShowFrame.getInstance());
+        movie.add(new DefineMovieClip(2, inner));
+
+        final List<MovieTag> outer = new ArrayList<MovieTag>();
+        outer.add(ShowFrame.getInstance());
+        outer.add(Place2.show(2, 1, 0, 0));
+        outer.add(ShowFrame.getInstance());
+        outer.add(ShowFrame.getInstance());
+        movie.add(new DefineMovieClip(3, outer));
+
+        movie.add(Place2.show(3, 1, 0, 0));
+        movie.add(ShowFrame.getInstance());
+        movie.add(ShowFrame.getInstance());
+        movie.add(ShowFrame.getInstance());
+
+        final StageIndex stage = new StageIndex(movie);
+
+        stage.nextFrame();
+        assertEquals(0, stage.getIndex().size());
+
+        stage.nextFrame();
+        List<Placement> list = stage.getIndex().getPlacements();
+        assertEquals(3, list.size());
+        assertEquals(100, list.get(2).getBounds().getMinX());
+
+        stage.nextFrame();
+        list = stage.getIndex().getPlacements();
+        assertEquals(300, list.get(2).getBounds().getMinX());
+    }
+
+    @Test
+    public void resetReturnsToStart() {
+        movie.add(Place2.show(1, 1, 0, 0));
+        movie.add(ShowFrame.getInstance());
+
+        final StageIndex stage = new StageIndex(movie);
+        stage.nextFrame();
+        stage.reset();
+
+        assertEquals(0, stage.getFrame());
+        assertEquals(0, stage.getIndex().size());
+        assertTrue(stage.nextFrame());
+        assertEquals(1, stage.getIndex().size());
+    }
+}
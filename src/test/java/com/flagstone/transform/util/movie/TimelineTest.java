@@ -0,0 +1,159 @@
+/*
+ * TimelineTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.util.movie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.Remove2;
+import com.flagstone.transform.ShowFrame;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.movieclip.DefineMovieClip;
+
+public final class TimelineTest {
+
+    private transient Movie movie;
+
+    @Before
+    public void setUp() {
+        movie = new Movie();
+    }
+
+    @Test
+    public void frameCount() {
+        movie.add(ShowFrame.getInstance());
+        movie.add(ShowFrame.getInstance());
+
+        assertEquals(2, new Timeline(movie).getFrameCount());
+    }
+
+    @Test
+    public void objectsForFrame() {
+        final Place2 place = Place2.show(1, 1, 0, 0);
+        movie.add(ShowFrame.getInstance());
+        movie.add(place);
+        movie.add(ShowFrame.getInstance());
+
+        final List<MovieTag> objects = new Timeline(movie).getObjects(2);
+
+        assertEquals(1, objects.size());
+        assertEquals(place, objects.get(0));
+    }
+
+    @Test
+    public void displayListMatchesReplay() {
+        for (int i = 1; i <= 100; i++) {
+            movie.add(Place2.show(1, i % 7 + 1, i, i));
+            if (i % 5 == 0) {
+                movie.add(new Remove2(i % 7 + 1));
+            }
+            movie.add(Place2.move(1, i * 2, i * 3));
+            movie.add(ShowFrame.getInstance());
+        }
+
+        final Timeline timeline = new Timeline(movie, 8);
+        final DisplayList replay = new DisplayList();
+        int frame = 1;
+
+        for (final MovieTag tag : movie.getObjects()) {
+            if (tag instanceof ShowFrame) {
+                assertEquals(replay.toString(),
+                        timeline.getDisplayList(frame++).toString());
+            } else {
+                replay.apply(tag);
+            }
+        }
+    }
+
+    @Test
+    public void modifyKeepsIdentifier() {
+        movie.add(Place2.show(3, 1, 0, 0));
+        movie.add(ShowFrame.getInstance());
+        movie.add(Place2.move(1, 20, 40));
+        movie.add(ShowFrame.getInstance());
+
+        final DisplayItem item = new Timeline(movie).getDisplayList(2).get(1);
+
+        assertEquals(3, item.getIdentifier());
+        assertEquals(20, item.getTransform().getTranslateX());
+        assertEquals(40, item.getTransform().getTranslateY());
+    }
+
+    @Test
+    public void removeClearsLayer() {
+        movie.add(Place2.show(3, 1, 0, 0));
+        movie.add(ShowFrame.getInstance());
+        movie.add(new Remove2(1));
+        movie.add(ShowFrame.getInstance());
+
+        assertNull(new Timeline(movie).getDisplayList(2).get(1));
+    }
+
+    @Test
+    public void movieClipTimeline() {
+        final List<MovieTag> objects = new ArrayList<MovieTag>();
+        objects.add(Place2.show(1, 1, 0, 0));
+        objects.add(ShowFrame.getInstance());
+        objects.add(new Remove2(1));
+        objects.add(ShowFrame.getInstance());
+
+        movie.add(new DefineMovieClip(2, objects));
+        movie.add(ShowFrame.getInstance());
+
+        final Timeline clip = new Timeline(movie).getTimeline(2);
+
+        assertEquals(2, clip.getFrameCount());
+        assertEquals(1, clip.getDisplayList(1).size());
+        assertEquals(0, clip.getDisplayList(2).size());
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void frameOutOfRange() {
+        movie.add(ShowFrame.getInstance());
+        new Timeline(movie).getDisplayList(2);
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void intervalOutOfRange() {
+        new Timeline(movie.getObjects(), 0);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.Color;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.fillstyle.Gradient;
+import com.flagstone.transform.fillstyle.GradientFill;
+import com.flagstone.transform.fillstyle.GradientType;
+import com.flagstone.transform.fillstyle.SolidFill;
+import com.flagstone.transform.font.DefineFont;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.linestyle.LineStyle1;
+import com.flagstone.transform.shape.DefineShape;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.shape.ShapeTag;
+import com.flagstone.transform.text.DefineText;
+import com.flagstone.transform.text.GlyphIndex;
+import com.flagstone.transform.text.StaticTextTag;
+import com.flagstone.transform.text.TextSpan;
+
+public final class RendererTest {
+
+    private static final int RED = 0xFFFF0000;
+    private static final int BLUE = 0xFF0000FF;
+
+    private transient Renderer renderer;
+
+    @Before
+    public void setUp() {
+        renderer = new Renderer();
+    }
+
+    private Shape square(final int size) {
+        final Shape shape = new Shape();
+        shape.add(new ShapeStyle().setMove(0, 0).setFillStyle(1));
+        shape.add(new Line(size, 0));
+        shape.add(new Line(0, size));
+        shape.add(new Line(-size, 0));
+        shape.add(new Line(0, -size));
+        return shape;
+    }
+
+    private DefineShape square(final int identifier, final int size,
+            final FillStyle fill) {
+        final List<FillStyle> fills = new ArrayList<FillStyle>();
+        fills.add(fill);
+        return new DefineShape(identifier, new Bounds(0, 0, size, size),
+                fills, new ArrayList<LineStyle>(), square(size));
+    }
+
+    @Test
+    public void squareIsFilled() throws Exception {
+        renderer.add(square(1, 2000, new SolidFill(new Color(255, 0, 0))));
+        final BufferedImage image = renderer.render(1);
+
+        assertEquals(100, image.getWidth());
+        assertEquals(100, image.getHeight());
+        assertEquals(RED, image.getRGB(0, 0));
+        assertEquals(RED, image.getRGB(50, 50));
+        assertEquals(RED, image.getRGB(99, 99));
+    }
+
+    @Test
+    public void scaleSetsImageSize() throws Exception {
+        renderer.add(square(1, 2000, new SolidFill(new Color(255, 0, 0))));
+        renderer.setScale(0.25f);
+        final BufferedImage image = renderer.render(1);
+
+        assertEquals(25, image.getWidth());
+        assertEquals(25, image.getHeight());
+    }
+
+    @Test
+    public void holeIsNotFilled() throws Exception {
+        final Shape shape = square(2000);
+        shape.add(new ShapeStyle().setMove(500, 500));
+        shape.add(new Line(1000, 0));
+        shape.add(new Line(0, 1000));
+        shape.add(new Line(-1000, 0));
+        shape.add(new Line(0, -1000));
+
+        final List<FillStyle> fills = new ArrayList<FillStyle>();
+        fills.add(new SolidFill(new Color(255, 0, 0)));
+        renderer.add(new DefineShape(1, new Bounds(0, 0, 2000, 2000),
+                fills, new ArrayList<LineStyle>(), shape));
+        renderer.setBackground(new Color(0, 0, 255));
+        final BufferedImage image = renderer.render(1);
+
+        assertEquals(RED, image.getRGB(10, 10));
+        assertEquals(BLUE, image.getRGB(50, 50));
+    }
+
+    @Test
+    public void lineIsDrawn() throws Exception {
+        final Shape shape = new Shape();
+        shape.add(new ShapeStyle().setMove(0, 1000).setLineStyle(1));
+        shape.add(new Line(2000, 0));
+
+        final List<LineStyle> lines = new ArrayList<LineStyle>();
+        lines.add(new LineStyle1(200, new Color(0, 0, 255)));
+        renderer.add(new DefineShape(1, new Bounds(0, 0, 2000, 2000),
+                new ArrayList<FillStyle>(), lines, shape));
+        final BufferedImage image = renderer.render(1);
+
+        assertEquals(BLUE, image.getRGB(50, 50));
+        assertEquals(0, image.getRGB(50, 10));
+    }
+
+    @Test
+    public void gradientChangesAcrossShape() throws Exception {
+        final List<Gradient> gradients = new ArrayList<Gradient>();
+        gradients.add(new Gradient(0, new Color(255, 0, 0)));
+        gradients.add(new Gradient(255, new Color(0, 0, 255)));
+        final CoordTransform matrix = new CoordTransform(
+                2000 / 32768.0f, 2000 / 32768.0f, 0, 0, 1000, 1000);
+
+        renderer.add(square(1, 2000, new GradientFill(GradientType.LINEAR,
+                matrix, gradients)));
+        final BufferedImage image = renderer.render(1);
+
+        assertTrue(((image.getRGB(0, 50) >> 16) & 0xFF) > 200);
+        assertTrue((image.getRGB(0, 50) & 0xFF0000)
+                > (image.getRGB(99, 50) & 0xFF0000));
+        assertTrue((image.getRGB(0, 50) & 0xFF)
+                < (image.getRGB(99, 50) & 0xFF));
+    }
+
+    @Test
+    public void tilesMatchSingleImage() throws Exception {
+        final List<Gradient> gradients = new ArrayList<Gradient>();
+        gradients.add(new Gradient(0, new Color(255, 0, 0)));
+        gradients.add(new Gradient(255, new Color(0, 255, 0)));
+        final CoordTransform matrix = new CoordTransform(
+                0.25f, 0.25f, 0, 0, 5000, 5000);
+
+        renderer.add(square(1, 10000, new GradientFill(GradientType.RADIAL,
+                matrix, gradients)));
+        renderer.setTileSize(64);
+
+        final BufferedImage expected = renderer.render(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final BufferedImage actual;
+        try {
+            actual = renderer.render(1, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertTrue(Arrays.equals(
+                expected.getRGB(0, 0, 500, 500, null, 0, 500),
+                actual.getRGB(0, 0, 500, 500, null, 0, 500)));
+    }
+
+    @Test
+    public void textIsDrawnWithGlyphs() throws Exception {
+        final List<Shape> shapes = new ArrayList<Shape>();
+        shapes.add(square(1024));
+        renderer.add(new DefineFont(1, shapes));
+
+        final List<GlyphIndex> characters = new ArrayList<GlyphIndex>();
+        characters.add(new GlyphIndex(0, 1000));
+        characters.add(new GlyphIndex(0, 1000));
+        final List<TextSpan> spans = new ArrayList<TextSpan>();
+        spans.add(new TextSpan(1, 500, new Color(255, 0, 0), 0, 0,
+                characters));
+        renderer.add(new DefineText(2, new Bounds(0, 0, 2000, 500),
+                CoordTransform.IDENTITY, spans));
+
+        final BufferedImage image = renderer.render(2);
+
+        assertEquals(100, image.getWidth());
+        assertEquals(RED, image.getRGB(10, 10));
+        assertEquals(0, image.getRGB(35, 10));
+        assertEquals(RED, image.getRGB(60, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void undefinedObjectIsRejected() throws Exception {
+        renderer.render(1);
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void tileSizeIsChecked() {
+        renderer.setTileSize(0);
+    }
+
+    @Test
+    public void referenceMoviesAreRendered() throws Exception {
+        final String[] files = {"DefineShape.swf", "DefineShape2.swf",
+            "DefineShape3.swf", "DefineText.swf", "DefineText2.swf",
+            "DefineImage.swf", "DefineImage2.swf", "DefineJPEGImage.swf",
+            "DefineJPEGImage2.swf", "DefineJPEGImage3.swf"};
+        final File dir = new File("src/test/resources/swf-reference");
+        int count = 0;
+
+        for (final String file : files) {
+            final Movie movie = new Movie();
+            movie.decodeFromFile(new File(dir, file));
+
+            final Renderer instance = new Renderer();
+            instance.addAll(movie.getObjects());
+
+            for (final MovieTag tag : movie.getObjects()) {
+                if (tag instanceof ShapeTag
+                        && !(tag.getClass().getSimpleName()
+                                .startsWith("DefineMorph"))) {
+                    assertTrue(instance.render(
+                            ((ShapeTag) tag).getIdentifier()) != null);
+                    count++;
+                } else if (tag instanceof StaticTextTag) {
+                    assertTrue(instance.render(
+                            ((StaticTextTag) tag).getIdentifier()) != null);
+                    count++;
+                }
+            }
+        }
+        assertTrue(count > 0);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.shape;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.QuadCurve2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.shape.Curve;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeStyle;
+
+public final class CanvasTest {
+
+    private transient Canvas canvas;
+
+    @Before
+    public void setUp() {
+        canvas = new Canvas();
+    }
+
+    private List<ShapeRecord> records() {
+        return canvas.getShape().getObjects();
+    }
+
+    private int[] end(final List<ShapeRecord> list) {
+        int xCoord = 0;
+        int yCoord = 0;
+
+        for (final ShapeRecord record : list) {
+            if (record instanceof Line) {
+                xCoord += ((Line) record).getX();
+                yCoord += ((Line) record).getY();
+            } else if (record instanceof Curve) {
+                final Curve curve = (Curve) record;
+                xCoord += curve.getControlX() + curve.getAnchorX();
+                yCoord += curve.getControlY() + curve.getAnchorY();
+            } else if (((ShapeStyle) record).getMoveX() != null) {
+                xCoord = ((ShapeStyle) record).getMoveX();
+                yCoord = ((ShapeStyle) record).getMoveY();
+            }
+        }
+        return new int[] {xCoord, yCoord};
+    }
+
+    private void arc() {
+        canvas.move(1000, 0);
+        for (int i = 1; i <= 60; i++) {
+            final double angle = Math.PI * i / 120;
+            canvas.line((int) Math.round(1000 * Math.cos(angle)),
+                    (int) Math.round(1000 * Math.sin(angle)));
+        }
+    }
+
+    @Test
+    public void pathIsNotSimplifiedByDefault() {
+        canvas.move(0, 0);
+        for (int i = 1; i <= 10; i++) {
+            canvas.line(i * 10, 0);
+        }
+        assertEquals(11, records().size());
+    }
+
+    @Test
+    public void collinearLinesAreMerged() {
+        canvas.setTolerance(1);
+        canvas.move(0, 0);
+        for (int i = 1; i <= 100; i++) {
+            canvas.line(i * 10, i * 5);
+        }
+        final List<ShapeRecord> list = records();
+
+        assertEquals(2, list.size());
+        assertEquals(1000, ((Line) list.get(1)).getX());
+        assertEquals(500, ((Line) list.get(1)).getY());
+    }
+
+    @Test
+    public void pointsWithinToleranceAreRemoved() {
+        canvas.setTolerance(10);
+        canvas.move(0, 0);
+        for (int i = 1; i <= 10; i++) {
+            canvas.line(i * 100, (i % 2) * 5);
+        }
+        canvas.line(1000, 1000);
+
+        assertEquals(3, records().size());
+        assertEquals(1000, end(records())[0]);
+        assertEquals(1000, end(records())[1]);
+    }
+
+    @Test
+    public void pointsOutsideToleranceAreKept() {
+        canvas.setTolerance(10);
+        canvas.move(0, 0);
+        for (int i = 1; i <= 10; i++) {
+            canvas.line(i * 100, (i % 2) * 50);
+        }
+        assertEquals(11, records().size());
+    }
+
+    @Test
+    public void denseRunsAreReplacedByCurves() {
+        canvas.setTolerance(5);
+        arc();
+        final List<ShapeRecord> list = records();
+
+        assertTrue(list.size() < 10);
+        assertTrue(list.get(1) instanceof Curve);
+        assertEquals(0, end(list)[0]);
+        assertEquals(1000, end(list)[1]);
+    }
+
+    @Test
+    public void closedPathRemainsClosed() {
+        canvas.setTolerance(5);
+        arc();
+        canvas.close();
+
+        assertEquals(1000, end(records())[0]);
+        assertEquals(0, end(records())[1]);
+    }
+
+    @Test
+    public void coordinatesAreSnappedToGrid() {
+        canvas.setGrid(20);
+        canvas.move(3, 7);
+        canvas.line(22, 18);
+        canvas.line(38, 41);
+        canvas.line(41, 39);
+        final List<ShapeRecord> list = records();
+
+        assertEquals(2, list.size());
+        assertEquals(Integer.valueOf(0), ((ShapeStyle) list.get(0))
+                .getMoveX());
+        assertEquals(40, ((Line) list.get(1)).getX());
+        assertEquals(40, ((Line) list.get(1)).getY());
+    }
+
+    @Test
+    public void boundsContainSimplifiedPath() {
+        canvas.setTolerance(5);
+        arc();
+        final Bounds bounds = canvas.getBounds();
+
+        assertTrue(bounds.getMaxX() >= 1000);
+        assertTrue(bounds.getMaxY() >= 1000);
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void checkNegativeToleranceIsRejected() {
+        canvas.setTolerance(-1);
+    }
+
+    @Test
+    public void transformedShapeIsDrawn() {
+        canvas.draw(new Rectangle2D.Double(10, 20, 100, 50),
+                AffineTransform.getScaleInstance(2, 2));
+        final List<ShapeRecord> list = records();
+        final Bounds bounds = canvas.getBounds();
+
+        assertEquals(Integer.valueOf(20), ((ShapeStyle) list.get(0))
+                .getMoveX());
+        assertEquals(220, bounds.getMaxX());
+        assertEquals(140, bounds.getMaxY());
+        assertEquals(20, end(list)[0]);
+        assertEquals(40, end(list)[1]);
+    }
+
+    @Test
+    public void quadraticCurvesAreKept() {
+        canvas.draw(new QuadCurve2D.Double(0, 0, 50, 100, 100, 0), null);
+        final List<ShapeRecord> list = records();
+
+        assertEquals(2, list.size());
+        assertEquals(50, ((Curve) list.get(1)).getControlX());
+        assertEquals(-100, ((Curve) list.get(1)).getAnchorY());
+    }
+
+    @Test
+    public void closedQuadraticCurvesAreKept() {
+        final GeneralPath path = new GeneralPath();
+        path.moveTo(0, 0);
+        path.quadTo(50, 100, 0, 0);
+        path.quadTo(0, 0, 0, 0);
+        canvas.draw(path, null);
+        final List<ShapeRecord> list = records();
+
+        assertEquals(2, list.size());
+        assertEquals(50, ((Curve) list.get(1)).getControlX());
+        assertEquals(-50, ((Curve) list.get(1)).getAnchorX());
+    }
+
+    @Test
+    public void flattenedShapeContainsOnlyLines() {
+        canvas.draw(new Ellipse2D.Double(0, 0, 1000, 1000), null, 1.0);
+        final List<ShapeRecord> list = records();
+
+        assertTrue(list.size() > 8);
+        for (final ShapeRecord record : list.subList(1, list.size())) {
+            assertTrue(record instanceof Line);
+        }
+    }
+
+    @Test
+    public void pixelsAreConvertedWhenDrawingShapes() {
+        canvas.setPixels(true);
+        canvas.draw(new Line2D.Float(0.5f, 0, 10.02f, 0), null);
+
+        assertEquals(Integer.valueOf(10), ((ShapeStyle) records().get(0))
+                .getMoveX());
+        assertEquals(190, ((Line) records().get(1)).getX());
+    }
+
+    @Test
+    public void floatLinesAreRoundedAndMerged() {
+        canvas.move(0, 0);
+        canvas.lines(new float[] {99, 99, 10.2f, 0.4f, 9.8f, 0.1f, 20, 5},
+                2, 3);
+        final List<ShapeRecord> list = records();
+
+        assertEquals(3, list.size());
+        assertEquals(10, ((Line) list.get(1)).getX());
+        assertEquals(10, ((Line) list.get(2)).getX());
+        assertEquals(5, ((Line) list.get(2)).getY());
+    }
+
+    @Test
+    public void intLinesSkipZeroLengthSegments() {
+        canvas.move(0, 0);
+        canvas.lines(new int[] {10, 0, 10, 0, 10, 5, 10, 5}, 0, 4);
+        final List<ShapeRecord> intLines = records();
+
+        setUp();
+        canvas.move(0, 0);
+        canvas.lines(new float[] {10, 0, 10, 0, 10, 5, 10, 5}, 0, 4);
+
+        assertEquals(3, intLines.size());
+        assertEquals(records().toString(), intLines.toString());
+    }
+
+    @Test
+    public void intLinesAndCurvesAreDrawn() {
+        canvas.move(0, 0);
+        canvas.lines(new int[] {10, 0, 10, 10}, 0, 2);
+        canvas.curves(new int[] {20, 10, 20, 20, 30, 20, 30, 30}, 0, 2);
+        final List<ShapeRecord> list = records();
+
+        assertEquals(5, list.size());
+        assertTrue(list.get(3) instanceof Curve);
+        assertEquals(30, end(list)[0]);
+        assertEquals(30, end(list)[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkBatchOutOfRangeIsRejected() {
+        canvas.lines(new int[] {10, 0, 10, 10}, 2, 2);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.shape;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.Color;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.fillstyle.MorphSolidFill;
+import com.flagstone.transform.fillstyle.SolidFill;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.linestyle.LineStyle2;
+import com.flagstone.transform.linestyle.MorphLineStyle2;
+import com.flagstone.transform.shape.Curve;
+import com.flagstone.transform.shape.DefineMorphShape;
+import com.flagstone.transform.shape.DefineMorphShape2;
+import com.flagstone.transform.shape.DefineShape3;
+import com.flagstone.transform.shape.DefineShape4;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapePath;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.shape.ShapeTag;
+
+public final class MorphInterpolatorTest {
+
+    private transient List<FillStyle> fills;
+    private transient Shape start;
+    private transient Shape end;
+
+    @Before
+    public void setUp() {
+        fills = new ArrayList<FillStyle>();
+        fills.add(new MorphSolidFill(new Color(0, 0, 0),
+                new Color(200, 100, 50)));
+
+        start = new Shape();
+        start.add(new ShapeStyle().setMove(0, 0).setFillStyle(1));
+        start.add(new Line(100, 0));
+        start.add(new Line(0, 100));
+        start.add(new Line(-100, -100));
+
+        end = new Shape();
+        end.add(new ShapeStyle().setMove(100, 100));
+        end.add(new Line(200, 0));
+        end.add(new Curve(100, 100, -100, 100));
+        end.add(new Line(-200, -200));
+    }
+
+    private MorphInterpolator morph() throws Exception {
+        return new MorphInterpolator(new DefineMorphShape(1,
+                new Bounds(0, 0, 100, 100), new Bounds(100, 100, 400, 400),
+                fills, new ArrayList<LineStyle>(), start, end));
+    }
+
+    @Test
+    public void startShapeIsUnchanged() throws Exception {
+        final List<ShapeRecord> objects = records(morph().getShape(0));
+
+        assertEquals(4, objects.size());
+        assertEquals(0, (int) ((ShapeStyle) objects.get(0)).getMoveX());
+        assertEquals(1, (int) ((ShapeStyle) objects.get(0)).getFillStyle());
+        assertEquals(100, ((Line) objects.get(1)).getX());
+        assertEquals(100, ((Curve) objects.get(2)).getControlY()
+                + ((Curve) objects.get(2)).getAnchorY());
+    }
+
+    @Test
+    public void endShapeIsReached() throws Exception {
+        final List<ShapeRecord> objects = records(morph().getShape(65535));
+
+        assertEquals(100, (int) ((ShapeStyle) objects.get(0)).getMoveX());
+        assertEquals(200, ((Line) objects.get(1)).getX());
+        assertEquals(100, ((Curve) objects.get(2)).getControlX());
+        assertEquals(-100, ((Curve) objects.get(2)).getAnchorX());
+        assertEquals(-200, ((Line) objects.get(3)).getX());
+    }
+
+    @Test
+    public void midpointIsInterpolated() throws Exception {
+        final List<ShapeRecord> objects = records(morph().getShape(32768));
+
+        assertEquals(50, (int) ((ShapeStyle) objects.get(0)).getMoveX());
+        assertEquals(150, ((Line) objects.get(1)).getX());
+    }
+
+    @Test
+    public void fillColourIsInterpolated() throws Exception {
+        final SolidFill fill = (SolidFill) morph().getFillStyles(32768)
+                .get(0);
+
+        assertEquals(100, fill.getColor().getRed());
+        assertEquals(50, fill.getColor().getGreen());
+        assertEquals(25, fill.getColor().getBlue());
+    }
+
+    @Test
+    public void boundsAreInterpolated() throws Exception {
+        final Bounds bounds = morph().getBounds(32768);
+
+        assertEquals(50, bounds.getMinX());
+        assertEquals(250, bounds.getMaxX());
+    }
+
+    @Test
+    public void definitionIsStaticShape() throws Exception {
+        assertTrue(morph().getDefinition(2, 100) instanceof DefineShape3);
+
+        final List<LineStyle> lines = new ArrayList<LineStyle>();
+        lines.add(new MorphLineStyle2(20, 60, new Color(0, 0, 0),
+                new Color(0, 0, 0)));
+        final MorphInterpolator morph = new MorphInterpolator(
+                new DefineMorphShape2(1, new Bounds(0, 0, 100, 100),
+                new Bounds(100, 100, 400, 400), fills, lines, start, end));
+        final ShapeTag shape = morph.getDefinition(2, 32768);
+
+        assertTrue(shape instanceof DefineShape4);
+        assertEquals(40, ((LineStyle2) shape.getLineStyles().get(0))
+                .getWidth());
+    }
+
+    @Test
+    public void parallelDefinitionsMatch() throws Exception {
+        final MorphInterpolator morph = morph();
+        final int[] ratios = {0, 1000, 20000, 40000, 65535};
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final List<ShapeTag> shapes;
+        try {
+            shapes = morph.getDefinitions(2, ratios, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(ratios.length, shapes.size());
+        for (int i = 0; i < ratios.length; i++) {
+            assertEquals(morph.getDefinition(2, ratios[i]).toString(),
+                    shapes.get(i).toString());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mismatchedEdgesAreRejected() throws Exception {
+        end.add(new Line(10, 10));
+        start.add(new Line(10, 10));
+        start.add(new Line(10, 10));
+        morph();
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void ratioIsChecked() throws Exception {
+        morph().getShape(65536);
+    }
+
+    @Test
+    public void referenceMorphIsInterpolated() throws Exception {
+        final Movie movie = new Movie();
+        movie.decodeFromFile(new File(
+                "src/test/resources/swf-reference/DefineMorphShape.swf"));
+        int count = 0;
+
+        for (final MovieTag tag : movie.getObjects()) {
+            if (tag instanceof DefineMorphShape) {
+                final MorphInterpolator morph = new MorphInterpolator(
+                        (DefineMorphShape) tag);
+                for (int ratio = 0; ratio <= 65535; ratio += 16383) {
+                    final DefineShape3 shape = (DefineShape3)
+                            morph.getDefinition(1, ratio);
+                    assertTrue(shape.prepareToEncode(
+                            new Context()) > 0);
+                }
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+    }
+
+    private List<ShapeRecord> records(final Shape shape) {
+        final List<ShapeRecord> objects = new ArrayList<ShapeRecord>();
+        for (final ShapeRecord record : shape.getObjects()) {
+            objects.addAll(((ShapePath) record).getObjects());
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public final class CharacterSetTest {
+
+    @Test
+    public void checkCharactersAreUnique() {
+        final CharacterSet set = new CharacterSet();
+        set.add("abba");
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void checkCharactersAreSorted() {
+        final CharacterSet set = new CharacterSet();
+        set.add("zya");
+        set.add('€');
+        assertEquals(Arrays.asList('a', 'y', 'z', '€'),
+                set.getCharacters());
+    }
+
+    @Test
+    public void checkSetsAreMerged() {
+        final CharacterSet first = new CharacterSet();
+        first.add("abc");
+        final CharacterSet second = new CharacterSet();
+        second.add("cde");
+
+        first.add(second);
+        assertEquals(5, first.size());
+        assertTrue(first.contains('e'));
+        assertFalse(second.contains('a'));
+    }
+
+    @Test
+    public void checkNextCharacter() {
+        final CharacterSet set = new CharacterSet();
+        set.add("bd");
+        assertEquals('b', set.nextCharacter(0));
+        assertEquals('d', set.nextCharacter('c'));
+        assertEquals(-1, set.nextCharacter('e'));
+    }
+
+    @Test
+    public void checkClear() {
+        final CharacterSet set = new CharacterSet();
+        set.add("abc");
+        set.clear();
+        assertEquals(0, set.size());
+        assertFalse(set.contains('a'));
+    }
+}
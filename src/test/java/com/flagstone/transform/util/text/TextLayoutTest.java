@@ -0,0 +1,178 @@
+/*
+ * ConstantPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package com.flagstone.transform.util.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.HorizontalAlign;
+import com.flagstone.transform.datatype.WebPalette;
+import com.flagstone.transform.font.DefineFont2;
+import com.flagstone.transform.font.Kerning;
+import com.flagstone.transform.text.DefineText2;
+import com.flagstone.transform.text.GlyphIndex;
+import com.flagstone.transform.text.TextSpan;
+
+public final class TextLayoutTest {
+
+    private static final int A = 1;
+    private static final int V = 2;
+
+    private transient TextLayout layout;
+
+    @Before
+    public void setUp() {
+        final DefineFont2 font = new DefineFont2(1, "Test");
+        font.setCodes(Arrays.asList((int) ' ', (int) 'A', (int) 'V',
+                (int) 'a'));
+        font.setAdvances(Arrays.asList(50, 200, 200, 100));
+        font.setAscent(800);
+        font.setDescent(200);
+        font.setLeading(24);
+        final List<Kerning> kernings = new ArrayList<Kerning>();
+        kernings.add(new Kerning(A, V, -40));
+        font.setKernings(kernings);
+
+        layout = new TextLayout(font, 1024);
+    }
+
+    private int width(final TextSpan span) {
+        int total = 0;
+        for (final GlyphIndex index : span.getCharacters()) {
+            total += index.getAdvance();
+        }
+        return total;
+    }
+
+    @Test
+    public void kerningIsApplied() {
+        assertEquals(-40, layout.kerning(A, V));
+        assertEquals(0, layout.kerning(V, A));
+        assertEquals(360, layout.advanceForText("AV"));
+        assertEquals(new Bounds(0, -800, 560, 200),
+                layout.boundsForText("AVA"));
+    }
+
+    @Test
+    public void glyphIndicesAreShared() {
+        final List<GlyphIndex> list = layout.charactersForText("AVAa");
+
+        assertEquals(160, list.get(0).getAdvance());
+        assertNotSame(list.get(0), list.get(2));
+        assertSame(list.get(1), layout.charactersForText("V").get(0));
+        assertSame(list.get(3), layout.charactersForText("a").get(0));
+    }
+
+    @Test
+    public void linesAreWrappedAtSpaces() {
+        final List<TextSpan> spans = layout.layout("aa aa aa", null, 500,
+                HorizontalAlign.LEFT, 1000);
+
+        assertEquals(2, spans.size());
+        assertEquals(5, spans.get(0).getCharacters().size());
+        assertEquals(2, spans.get(1).getCharacters().size());
+        assertEquals(Integer.valueOf(800), spans.get(0).getOffsetY());
+        assertEquals(Integer.valueOf(1800), spans.get(1).getOffsetY());
+        assertEquals(Integer.valueOf(1), spans.get(0).getIdentifier());
+        assertNull(spans.get(1).getIdentifier());
+    }
+
+    @Test
+    public void longWordsAreBroken() {
+        final List<TextSpan> spans = layout.layout("aaaaaaa", null, 300,
+                HorizontalAlign.LEFT, 1000);
+
+        assertEquals(3, spans.size());
+        assertEquals(3, spans.get(0).getCharacters().size());
+        assertEquals(1, spans.get(2).getCharacters().size());
+    }
+
+    @Test
+    public void newlinesStartParagraphs() {
+        final List<TextSpan> spans = layout.layout("a\n\n a", null, 1000,
+                HorizontalAlign.LEFT, 1000);
+
+        assertEquals(3, spans.size());
+        assertEquals(0, spans.get(1).getCharacters().size());
+        assertEquals(2, spans.get(2).getCharacters().size());
+    }
+
+    @Test
+    public void linesAreAligned() {
+        assertEquals(Integer.valueOf(800), layout.layout("aa", null, 1000,
+                HorizontalAlign.RIGHT, 1000).get(0).getOffsetX());
+        assertEquals(Integer.valueOf(400), layout.layout("aa", null, 1000,
+                HorizontalAlign.CENTER, 1000).get(0).getOffsetX());
+    }
+
+    @Test
+    public void wrappedLinesAreJustified() {
+        final List<TextSpan> spans = layout.layout("a a a aaa a", null, 600,
+                HorizontalAlign.JUSTIFY, 1000);
+
+        assertEquals(2, spans.size());
+        assertEquals(600, width(spans.get(0)));
+        assertEquals(450, width(spans.get(1)));
+    }
+
+    @Test
+    public void textIsDefined() {
+        final DefineText2 text = layout.defineText(2, "aa aa aa",
+                WebPalette.BLACK.color(), 500, HorizontalAlign.LEFT);
+
+        assertEquals(2, text.getSpans().size());
+        assertEquals(new Bounds(0, 0, 450, 800 + 1024 + 200),
+                text.getBounds());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkMissingCharacterThrowsException() {
+        layout.advanceForText("b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkWidthIsPositive() {
+        layout.layout("a", null, 0, HorizontalAlign.LEFT, 1000);
+    }
+}